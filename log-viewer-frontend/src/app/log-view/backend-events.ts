@@ -136,3 +136,15 @@ export interface FileAttributes {
 export interface EventsLogChanged extends BackendEvent {
     changedLogs: { [key: string]: FileAttributes };
 }
+
+export interface ArchivePreparationProgress {
+    processed: number;
+    total: number;
+    preparedSize: number;
+    finished: boolean;
+}
+
+export interface EventArchivePreparation extends BackendEvent {
+    logId: string;
+    progress: ArchivePreparationProgress;
+}
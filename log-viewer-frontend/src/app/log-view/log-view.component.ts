@@ -23,7 +23,9 @@ import {State} from './log-view-states';
 import {LogFile} from './log-file';
 import {Position} from './position';
 import {
+    ArchivePreparationProgress,
     BackendErrorEvent,
+    EventArchivePreparation,
     EventInitByPermalink,
     EventNextDataLoaded,
     EventResponseAfterFilterScrollDown,
@@ -120,6 +122,8 @@ export class LogViewComponent implements OnInit, OnDestroy, AfterViewChecked, Ba
 
     recordWithDetails: Record;
 
+    archivePreparation: { [key: string]: ArchivePreparationProgress } = {};
+
     touch: Touch;
 
     constructor(
@@ -378,6 +382,12 @@ export class LogViewComponent implements OnInit, OnDestroy, AfterViewChecked, Ba
 
             if (i > 0) {
                 this.deleteRecords(children.length - i, i);
+
+                if (!this.hasRecordAfter) {
+                    // The backend pushes the appended records while the end of the log is shown
+                    this.commService.send(new Command('stopFollowingTail', {stateVersion: this.stateVersion}));
+                }
+
                 this.hasRecordAfter = true;
             }
 
@@ -1542,6 +1552,35 @@ export class LogViewComponent implements OnInit, OnDestroy, AfterViewChecked, Ba
         }
     }
 
+    @BackendEventHandler()
+    private onArchivePreparation(event: EventArchivePreparation) {
+        if (event.progress.finished) {
+            delete this.archivePreparation[event.logId];
+        } else {
+            this.archivePreparation[event.logId] = event.progress;
+        }
+    }
+
+    hasArchivePreparation(): boolean {
+        return Object.keys(this.archivePreparation).length > 0;
+    }
+
+    archivePreparationPercent(): string {
+        let processed = 0;
+        let total = 0;
+
+        for (const progress of Object.values(this.archivePreparation)) {
+            if (!progress.total) {
+                return '';
+            }
+
+            processed += progress.processed;
+            total += progress.total;
+        }
+
+        return Math.floor(processed * 100 / total) + '%';
+    }
+
     private hasEmptySpaceAtBottom() {
         return this.logView.nativeElement.clientHeight - this.shiftView < this.logPane.nativeElement.clientHeight
     }
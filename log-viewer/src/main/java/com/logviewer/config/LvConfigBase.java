@@ -4,6 +4,7 @@ import com.logviewer.api.LvFileAccessManager;
 import com.logviewer.api.LvFileNavigationManager;
 import com.logviewer.api.LvFilterStorage;
 import com.logviewer.api.LvPermalinkStorage;
+import com.logviewer.data2.BlockCache;
 import com.logviewer.data2.FileWatcherService;
 import com.logviewer.data2.LogService;
 import com.logviewer.data2.RemoteLogChangeListenerService;
@@ -14,6 +15,7 @@ import com.logviewer.impl.LvFileNavigationManagerImpl;
 import com.logviewer.services.FileSystemFilterStorage;
 import com.logviewer.services.LvPermalinkStorageImpl;
 import com.logviewer.utils.LvTimer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
@@ -32,8 +34,19 @@ public class LvConfigBase {
     }
 
     @Bean
-    public FileWatcherService lvFileWatcherService() {
-        return new FileWatcherService();
+    public FileWatcherService lvFileWatcherService(
+            @Value("${log-viewer.file-watcher.coalesce-window:" + FileWatcherService.DEFAULT_COALESCE_WINDOW + "}") long coalesceWindow,
+            @Value("${log-viewer.file-watcher.dispatcher-threads:" + FileWatcherService.DEFAULT_DISPATCHER_THREADS + "}") int dispatcherThreads,
+            @Value("${log-viewer.file-watcher.polling:false}") boolean forcePolling,
+            @Value("${log-viewer.file-watcher.polling-interval:" + FileWatcherService.DEFAULT_POLLING_INTERVAL + "}") long pollingInterval,
+            @Value("${log-viewer.file-watcher.polling-file-systems:" + FileWatcherService.DEFAULT_POLLING_FILE_SYSTEMS + "}") String pollingFileSystems) {
+        return new FileWatcherService(coalesceWindow, dispatcherThreads, forcePolling, pollingInterval, pollingFileSystems);
+    }
+
+    @Bean
+    public BlockCache lvBlockCache(@Value("${log-viewer.parser.block-cache.size:0}") long maxSize,
+                                   @Value("${log-viewer.parser.block-cache.off-heap:false}") boolean offHeap) {
+        return new BlockCache(maxSize, offHeap);
     }
 
     @Bean
@@ -62,7 +75,7 @@ public class LvConfigBase {
     }
 
     @Bean(destroyMethod = "cancel")
-    public LvTimer lvTimer() {
-        return new LvTimer();
+    public LvTimer lvTimer(@Value("${log-viewer.timer.threads:" + LvTimer.DEFAULT_THREADS + "}") int threads) {
+        return new LvTimer(threads);
     }
 }
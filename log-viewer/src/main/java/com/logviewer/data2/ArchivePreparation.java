@@ -0,0 +1,374 @@
+package com.logviewer.data2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Prepares a version of an archive for reading in the background: builds the index of a gzip file or unpacks
+ * the archive to a temporary file. The data prepared so far can be read before the preparation is finished. All
+ * snapshots of the same version of the archive share one preparation, see {@link Log}.
+ */
+abstract class ArchivePreparation {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArchivePreparation.class);
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    protected final Path file;
+    protected final long compressedSize;
+    protected final long lastModification;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private final CountDownLatch finishLatch = new CountDownLatch(1);
+
+    private volatile boolean finished;
+
+    private volatile IOException error;
+
+    private volatile Future<?> future;
+
+    ArchivePreparation(@NonNull Path file, long compressedSize, long lastModification) {
+        this.file = file;
+        this.compressedSize = compressedSize;
+        this.lastModification = lastModification;
+    }
+
+    /**
+     * @return {@code true} if the preparation has been created for the specified version of the archive.
+     */
+    boolean isFor(long compressedSize, long lastModification) {
+        return this.compressedSize == compressedSize && this.lastModification == lastModification;
+    }
+
+    long getLastModification() {
+        return lastModification;
+    }
+
+    /**
+     * Starts the preparation in the executor.
+     *
+     * @param previous the preparation of the previous version of the archive, the preparations write the same files,
+     *                 so the new one waits until the previous one stops.
+     * @param finishListener is called when the preparation is finished successfully or not.
+     */
+    void start(@NonNull ExecutorService executor, @Nullable ArchivePreparation previous, @NonNull Runnable finishListener) {
+        try {
+            future = executor.submit(() -> {
+                if (!started.compareAndSet(false, true))
+                    return; // Cancelled
+
+                IOException error = null;
+
+                try {
+                    if (previous != null)
+                        previous.finishLatch.await();
+
+                    prepare();
+                } catch (InterruptedException e) {
+                    error = new InterruptedIOException("The archive preparation has been cancelled: " + file);
+                } catch (IOException e) {
+                    error = e;
+                } catch (Throwable e) {
+                    LOG.error("Failed to prepare the archive: {}", file, e);
+                    error = new IOException("Failed to prepare the archive: " + file, e);
+                } finally {
+                    finish(error);
+                    finishListener.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (started.compareAndSet(false, true)) {
+                finish(new IOException("Failed to start the archive preparation: " + file, e));
+                finishListener.run();
+            }
+        }
+    }
+
+    /**
+     * Stops the preparation, the preparation is not needed anymore because a new version of the archive has appeared.
+     */
+    void cancel() {
+        if (started.compareAndSet(false, true)) {
+            finish(new InterruptedIOException("The archive preparation has been cancelled: " + file));
+            return;
+        }
+
+        Future<?> future = this.future;
+        if (future != null)
+            future.cancel(true);
+    }
+
+    /**
+     * Marks the preparation as finished without starting it, used when the archive was prepared before.
+     */
+    protected final void markPrepared() {
+        started.set(true);
+        finish(null);
+    }
+
+    private void finish(@Nullable IOException error) {
+        this.error = error;
+        finished = true;
+        finishLatch.countDown();
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the error if the preparation has failed.
+     */
+    @Nullable
+    IOException getError() {
+        return error;
+    }
+
+    @NonNull
+    ArchivePreparationProgress getProgress() {
+        boolean finished = this.finished;
+        return new ArchivePreparationProgress(finished ? getTotal() : getProcessed(), getTotal(), getPreparedSize(), finished);
+    }
+
+    protected abstract void prepare() throws IOException;
+
+    protected abstract long getProcessed();
+
+    protected abstract long getTotal();
+
+    /**
+     * @return the size of the data available for reading.
+     */
+    abstract long getPreparedSize();
+
+    /**
+     * @return the index to read the data by or {@code null} if the data is read from {@link #getUnpackedFile()}.
+     */
+    @Nullable
+    abstract GzipSeekIndex getIndex() throws IOException;
+
+    @Nullable
+    abstract Path getUnpackedFile();
+
+    /**
+     * Builds {@link GzipSeekIndex}, the data is read from the gzip file by the index built so far.
+     */
+    static class GzipIndexing extends ArchivePreparation {
+
+        private final GzipSeekIndex.Builder builder;
+
+        private volatile GzipSeekIndex index;
+
+        GzipIndexing(@NonNull Path file, long compressedSize, long lastModification, int span, @Nullable Path indexFile) {
+            super(file, compressedSize, lastModification);
+
+            builder = new GzipSeekIndex.Builder(file, compressedSize, lastModification, span, indexFile);
+        }
+
+        /**
+         * Creates a finished preparation by the index loaded from the disk.
+         */
+        GzipIndexing(@NonNull Path file, @NonNull GzipSeekIndex index, long compressedSize, long lastModification) {
+            super(file, compressedSize, lastModification);
+
+            builder = null;
+            this.index = index;
+            markPrepared();
+        }
+
+        @Override
+        protected void prepare() throws IOException {
+            index = builder.build();
+        }
+
+        @Override
+        protected long getProcessed() {
+            GzipSeekIndex index = this.index;
+            return index != null ? compressedSize : builder.getProcessedBytes();
+        }
+
+        @Override
+        protected long getTotal() {
+            return compressedSize;
+        }
+
+        @Override
+        long getPreparedSize() {
+            GzipSeekIndex index = this.index;
+            return index != null ? index.getSize() : builder.getPreparedSize();
+        }
+
+        @NonNull
+        @Override
+        GzipSeekIndex getIndex() throws IOException {
+            GzipSeekIndex index = this.index;
+            return index != null ? index : builder.getPartialIndex();
+        }
+
+        @Override
+        Path getUnpackedFile() {
+            return null;
+        }
+    }
+
+    /**
+     * Unpacks a zip or gzip archive to a temporary file, the unpacked part of the file can be read while the rest is
+     * being unpacked. The modification time of the unpacked file is set to the time of the archive when the unpacking
+     * is finished, so a completely unpacked file is reused after restart.
+     */
+    static class Unpacking extends ArchivePreparation {
+
+        private final Path unpackedFile;
+
+        private final boolean gzip;
+
+        private volatile long processed;
+
+        private volatile long total;
+
+        private volatile long written;
+
+        /**
+         * @param unpackedSize the size of the file unpacked before or {@code -1} if the archive must be unpacked.
+         */
+        Unpacking(@NonNull Path file, long compressedSize, long lastModification, @NonNull Path unpackedFile,
+                  boolean gzip, long unpackedSize) {
+            super(file, compressedSize, lastModification);
+
+            this.unpackedFile = unpackedFile;
+            this.gzip = gzip;
+
+            if (unpackedSize >= 0) {
+                written = unpackedSize;
+                markPrepared();
+            }
+        }
+
+        @Override
+        protected void prepare() throws IOException {
+            LOG.info("Unpacking {} into {}...", file, unpackedFile);
+
+            // A new file is created, the snapshots reading the previous version of the file are not affected
+            Files.deleteIfExists(unpackedFile);
+
+            if (gzip) {
+                total = compressedSize;
+
+                try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ);
+                     InputStream in = new GZIPInputStream(Channels.newInputStream(channel), COPY_BUFFER_SIZE)) {
+                    copy(in, channel);
+                }
+            } else {
+                try (ZipFile zipFile = new ZipFile(file.toFile())) {
+                    ZipEntry fileEntry = findLogEntry(zipFile);
+
+                    total = Math.max(fileEntry.getSize(), 0);
+
+                    try (InputStream in = zipFile.getInputStream(fileEntry)) {
+                        copy(in, null);
+                    }
+                }
+            }
+
+            Files.setLastModifiedTime(unpackedFile, FileTime.fromMillis(lastModification));
+
+            LOG.info("{} has been unpacked, {} bytes", file, written);
+        }
+
+        /**
+         * @param channel the channel of the compressed data to report the progress by, {@code null} if the progress
+         *                is the number of unpacked bytes.
+         */
+        private void copy(InputStream in, @Nullable SeekableByteChannel channel) throws IOException {
+            byte[] buf = new byte[COPY_BUFFER_SIZE];
+
+            try (OutputStream out = Files.newOutputStream(unpackedFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                unpackedFile.toFile().deleteOnExit();
+
+                int n;
+                while ((n = in.read(buf)) >= 0) {
+                    if (Thread.currentThread().isInterrupted())
+                        throw new InterruptedIOException();
+
+                    // The stream is not buffered, the written data is visible to the readers of the file immediately
+                    out.write(buf, 0, n);
+
+                    written += n;
+                    processed = channel == null ? written : channel.position();
+                }
+            }
+        }
+
+        private static ZipEntry findLogEntry(ZipFile zipFile) throws IOException {
+            ZipEntry fileEntry = null;
+
+            for (ZipEntry zipEntry : Collections.list(zipFile.entries())) {
+                if (zipEntry.isDirectory())
+                    continue;
+
+                if (fileEntry != null) {
+                    throw new IOException("Failed to read the zip archive: the archive contains more than one file. " +
+                            "Log-viewer expects that the zip archive contains exactly one log file");
+                }
+
+                fileEntry = zipEntry;
+            }
+
+            if (fileEntry == null) {
+                throw new IOException("Failed to read the zip archive: no files in the the archive. " +
+                        "Log-viewer expects that the zip archive contains exactly one log file");
+            }
+
+            return fileEntry;
+        }
+
+        @Override
+        protected long getProcessed() {
+            return processed;
+        }
+
+        @Override
+        protected long getTotal() {
+            return total;
+        }
+
+        @Override
+        long getPreparedSize() {
+            return written;
+        }
+
+        @Override
+        GzipSeekIndex getIndex() {
+            return null;
+        }
+
+        @NonNull
+        @Override
+        Path getUnpackedFile() {
+            return unpackedFile;
+        }
+    }
+}
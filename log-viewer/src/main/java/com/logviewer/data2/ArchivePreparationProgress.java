@@ -0,0 +1,55 @@
+package com.logviewer.data2;
+
+import java.io.Serializable;
+
+/**
+ * The progress of unpacking or indexing an archive, see {@link LogView#addPreparationListener(java.util.function.Consumer)}.
+ */
+public class ArchivePreparationProgress implements Serializable {
+
+    /**
+     * The amount of processed data, the unit is defined by the archive type, compare it with {@link #total} only.
+     */
+    private final long processed;
+
+    /**
+     * The total amount of data to process or {@code 0} if it's unknown.
+     */
+    private final long total;
+
+    /**
+     * The size of the data available for reading.
+     */
+    private final long preparedSize;
+
+    private final boolean finished;
+
+    public ArchivePreparationProgress(long processed, long total, long preparedSize, boolean finished) {
+        this.processed = processed;
+        this.total = total;
+        this.preparedSize = preparedSize;
+        this.finished = finished;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getPreparedSize() {
+        return preparedSize;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public String toString() {
+        return "{processed=" + processed + ", total=" + total + ", preparedSize=" + preparedSize +
+                (finished ? ", finished" : "") + '}';
+    }
+}
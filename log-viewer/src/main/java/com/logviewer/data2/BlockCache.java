@@ -0,0 +1,166 @@
+package com.logviewer.data2;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.logviewer.utils.Utils;
+import org.springframework.lang.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import static com.logviewer.data2.ParserConfig.WINDOW_SIZE;
+import static com.logviewer.data2.ParserConfig.WINDOW_SIZE_BITS;
+
+/**
+ * A cache of file pages shared between all snapshots and sessions. The pages are identified by (log id, log hash, page number),
+ * the page size is {@link ParserConfig#WINDOW_SIZE}. When a file grows, only the last page becomes incomplete, the incomplete
+ * page is reloaded when a snapshot needs the bytes beyond the cached part.
+ */
+public class BlockCache {
+
+    private final long maxSize;
+
+    private final boolean offHeap;
+
+    private final Cache<BlockKey, ByteBuffer> cache;
+
+    /**
+     * @param maxSize the maximum size of cached data in bytes, {@code 0} disables the cache.
+     * @param offHeap store the pages in direct buffers.
+     */
+    public BlockCache(long maxSize, boolean offHeap) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("Block cache size must not be negative: " + maxSize);
+
+        this.maxSize = maxSize;
+        this.offHeap = offHeap;
+
+        if (maxSize > 0) {
+            cache = Caffeine.newBuilder()
+                    .maximumWeight(maxSize)
+                    .weigher((BlockKey key, ByteBuffer value) -> value.capacity() + 64)
+                    .recordStats()
+                    .build();
+        } else {
+            cache = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    @NonNull
+    public CacheStats getStats() {
+        return cache == null ? CacheStats.empty() : cache.stats();
+    }
+
+    public long getCachedBlockCount() {
+        return cache == null ? 0 : cache.estimatedSize();
+    }
+
+    /**
+     * Returns a source reading the data through the cache.
+     *
+     * @param source the source to load the data missing in the cache.
+     * @param logId the id of the log.
+     * @param hash the hash of the log, see {@link Snapshot#getHash()}.
+     * @param size the size of the file.
+     */
+    @NonNull
+    public BufferedFile.Source wrap(@NonNull BufferedFile.Source source, @NonNull String logId, @NonNull String hash, long size) {
+        if (cache == null)
+            return source;
+
+        return new CachingSource(source, logId, hash, size);
+    }
+
+    private class CachingSource implements BufferedFile.Source {
+
+        private final BufferedFile.Source source;
+        private final String logId;
+        private final String hash;
+        private final long size;
+
+        CachingSource(BufferedFile.Source source, String logId, String hash, long size) {
+            this.source = source;
+            this.logId = logId;
+            this.hash = hash;
+            this.size = size;
+        }
+
+        @Override
+        public void read(long position, ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                long page = position >>> WINDOW_SIZE_BITS;
+                int offset = (int) (position & (WINDOW_SIZE - 1));
+                int length = Math.min(buf.remaining(), WINDOW_SIZE - offset);
+
+                ByteBuffer block = getBlock(page, offset + length).duplicate();
+                Utils.setLimitSafely(block, offset + length);
+                Utils.setPositionSafely(block, offset);
+
+                buf.put(block);
+
+                position += length;
+            }
+        }
+
+        private ByteBuffer getBlock(long page, int requiredLength) throws IOException {
+            BlockKey key = new BlockKey(logId, hash, page);
+
+            ByteBuffer cached = cache.getIfPresent(key);
+            if (cached != null && cached.limit() >= requiredLength)
+                return cached;
+
+            long pageStart = page << WINDOW_SIZE_BITS;
+            int length = (int) Math.min(WINDOW_SIZE, size - pageStart);
+            if (length < requiredLength)
+                throw new EOFException();
+
+            ByteBuffer res = offHeap ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+            source.read(pageStart, res);
+            Utils.setPositionSafely(res, 0);
+
+            cache.asMap().merge(key, res, (oldBlock, newBlock) -> oldBlock.limit() >= newBlock.limit() ? oldBlock : newBlock);
+
+            return res;
+        }
+    }
+
+    private static final class BlockKey {
+        private final String logId;
+        private final String hash;
+        private final long page;
+
+        BlockKey(String logId, String hash, long page) {
+            this.logId = logId;
+            this.hash = hash;
+            this.page = page;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BlockKey)) return false;
+            BlockKey blockKey = (BlockKey) o;
+            return page == blockKey.page && logId.equals(blockKey.logId) && hash.equals(blockKey.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(logId, hash, page);
+        }
+    }
+}
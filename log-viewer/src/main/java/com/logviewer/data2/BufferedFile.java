@@ -5,6 +5,7 @@ import com.logviewer.utils.Utils;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 
 import static com.logviewer.data2.ParserConfig.WINDOW_SIZE;
@@ -12,7 +13,7 @@ import static com.logviewer.data2.ParserConfig.WINDOW_SIZE_BITS;
 
 public class BufferedFile {
 
-    private final SeekableByteChannel channel;
+    private final Source source;
 
     private static final int ARRAY_LENGTH = WINDOW_SIZE * 2;
 
@@ -26,7 +27,11 @@ public class BufferedFile {
     private final long size;
 
     public BufferedFile(SeekableByteChannel channel, long size) {
-        this.channel = channel;
+        this(new ChannelSource(channel), size);
+    }
+
+    public BufferedFile(Source source, long size) {
+        this.source = source;
         this.size = size;
     }
 
@@ -102,9 +107,7 @@ public class BufferedFile {
         Utils.setPositionSafely(buf, 0);
         Utils.setLimitSafely(buf, (int) Math.min(size - winPos, WINDOW_SIZE));
 
-        channel.position(winPos);
-
-        Utils.readFully(channel, buf);
+        source.read(winPos, buf);
 
         this.loadedPage = page;
         loadedPageCount = 1;
@@ -117,9 +120,7 @@ public class BufferedFile {
         Utils.setLimitSafely(buf, (int) Math.min(size - winPos, WINDOW_SIZE * 2));
         assert buf.limit() > WINDOW_SIZE;
 
-        channel.position(winPos);
-
-        Utils.readFully(channel, buf);
+        source.read(winPos, buf);
 
         this.loadedPage = page;
         loadedPageCount = 2;
@@ -133,9 +134,7 @@ public class BufferedFile {
         Utils.setLimitSafely(buf, WINDOW_SIZE + (int) Math.min(size - winPos, WINDOW_SIZE));
         Utils.setPositionSafely(buf, WINDOW_SIZE);
 
-        channel.position(winPos);
-
-        Utils.readFully(channel, buf);
+        source.read(winPos, buf);
 
         loadedPageCount = 2;
     }
@@ -406,6 +405,48 @@ public class BufferedFile {
         line.trim13();
     }
 
+    /**
+     * The storage the file data is read from.
+     */
+    public interface Source {
+        /**
+         * Reads {@code buf.remaining()} bytes starting from the specified file position to the buffer.
+         *
+         * @throws EOFException if the file is shorter than expected.
+         */
+        void read(long position, ByteBuffer buf) throws IOException;
+    }
+
+    public static class ChannelSource implements Source {
+
+        private final SeekableByteChannel channel;
+
+        public ChannelSource(SeekableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void read(long position, ByteBuffer buf) throws IOException {
+            if (channel instanceof FileChannel) {
+                // Positional reads don't change the channel state, so the source may be used by several threads
+                FileChannel fileChannel = (FileChannel) channel;
+
+                while (buf.hasRemaining()) {
+                    int n = fileChannel.read(buf, position);
+                    if (n == -1)
+                        throw new EOFException();
+
+                    position += n;
+                }
+            } else {
+                synchronized (channel) {
+                    channel.position(position);
+                    Utils.readFully(channel, buf);
+                }
+            }
+        }
+    }
+
     public interface SearchConsumer {
         boolean data(byte[] buf, int bufOffset, int length, long position);
 
@@ -0,0 +1,313 @@
+package com.logviewer.data2;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A prefilter for substring search working with raw file bytes, it allows to skip the parts of the file that cannot
+ * contain the searched text without decoding them to strings. The pattern finds "candidates": the positions where the
+ * encoded text occurs and the positions of the bytes that may be transformed during parsing (the escape character of
+ * ASCII color codes, the characters having ASCII case variants in case-insensitive mode). A record containing the text
+ * always contains a candidate, so the records without candidates may be skipped, the records with candidates must be
+ * checked by the usual matcher.
+ */
+public final class BytePattern {
+
+    /**
+     * Shorter patterns produce too many candidates, the plain search is faster for them.
+     */
+    private static final int MIN_LENGTH = 3;
+
+    private static final byte ESC = 0x1B;
+
+    /**
+     * Non-ASCII characters that are equal to an ASCII character ignoring case, see {@link String#regionMatches(boolean, int, String, int, int)}.
+     */
+    private static final char[] ASCII_CASE_VARIANTS = findAsciiCaseVariants();
+
+    private static final byte[] FOLD = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            FOLD[i] = (byte) (i >= 'A' && i <= 'Z' ? i + ('a' - 'A') : i);
+        }
+    }
+
+    private final byte[] pattern;
+
+    private final boolean ignoreCase;
+
+    private final int[] shift = new int[256];
+
+    /**
+     * Byte sequences that are reported as candidates regardless of the pattern.
+     */
+    private final byte[][] wildcards;
+
+    /**
+     * {@code true} if a byte may be the first byte of a wildcard sequence.
+     */
+    private final boolean[] wildcardStart = new boolean[256];
+
+    private final int maxLength;
+
+    private BytePattern(byte[] pattern, boolean ignoreCase, byte[][] wildcards) {
+        this.pattern = pattern;
+        this.ignoreCase = ignoreCase;
+        this.wildcards = wildcards;
+
+        Arrays.fill(shift, pattern.length);
+        for (int i = 0; i < pattern.length - 1; i++) {
+            int b = pattern[i] & 0xFF;
+            shift[b] = pattern.length - 1 - i;
+
+            if (ignoreCase && b >= 'a' && b <= 'z')
+                shift[b - ('a' - 'A')] = pattern.length - 1 - i;
+        }
+
+        int maxLength = pattern.length;
+
+        for (byte[] wildcard : wildcards) {
+            wildcardStart[wildcard[0] & 0xFF] = true;
+            maxLength = Math.max(maxLength, wildcard.length);
+        }
+
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Creates a prefilter for {@link String#contains(CharSequence)} or {@link com.logviewer.utils.Utils#containsIgnoreCase(String, String)}
+     * search.
+     *
+     * @param text the text to search.
+     * @param matchCase whether the search is case-sensitive.
+     * @param charset the encoding of the log.
+     * @return the pattern or {@code null} if the prefilter cannot be used for the specified text and encoding.
+     */
+    @Nullable
+    public static BytePattern create(@NonNull String text, boolean matchCase, @NonNull Charset charset) {
+        if (!isAsciiCompatible(charset))
+            return null;
+
+        for (int i = 0; i < text.length(); i++) {
+            char a = text.charAt(i);
+            if (a == '\n' || a == '\r' || a == ESC || a == '\uFFFD')
+                return null;
+        }
+
+        CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        List<byte[]> wildcards = new ArrayList<>();
+        wildcards.add(new byte[]{ESC});
+
+        byte[] pattern;
+
+        if (matchCase) {
+            pattern = encode(encoder, text);
+            if (pattern == null)
+                return null;
+        } else {
+            // Non-ASCII characters may have case variants with different encoding, only the longest ASCII part of the text
+            // can be searched as bytes
+            String asciiPart = longestAsciiPart(text);
+
+            pattern = asciiPart.getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < pattern.length; i++) {
+                pattern[i] = FOLD[pattern[i] & 0xFF];
+            }
+
+            for (char a : ASCII_CASE_VARIANTS) {
+                if (encoder.canEncode(a)) {
+                    byte[] bytes = encode(encoder, String.valueOf(a));
+                    if (bytes != null)
+                        wildcards.add(bytes);
+                }
+            }
+        }
+
+        if (pattern.length < MIN_LENGTH || pattern.length > ParserConfig.MAX_LINE_LENGTH)
+            return null;
+
+        return new BytePattern(pattern, !matchCase, wildcards.toArray(new byte[0][]));
+    }
+
+    /**
+     * @return the maximum length of a candidate in bytes, the data must be searched by overlapping blocks, the overlap
+     * size is {@code getMaxLength() - 1}.
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Finds the first candidate located entirely inside [from, to).
+     *
+     * @return the index of the first byte of the candidate or {@code -1} if there are no candidates.
+     */
+    public int indexOf(byte[] data, int from, int to) {
+        int res = indexOfPattern(data, from, to);
+
+        int limit = res < 0 ? to : res;
+
+        for (int i = from; i < limit; i++) {
+            if (wildcardStart[data[i] & 0xFF] && matchesWildcard(data, i, to))
+                return i;
+        }
+
+        return res;
+    }
+
+    /**
+     * Finds the last candidate located entirely inside [from, to).
+     *
+     * @return the index of the first byte of the candidate or {@code -1} if there are no candidates.
+     */
+    public int lastIndexOf(byte[] data, int from, int to) {
+        int res = -1;
+
+        for (int idx = indexOfPattern(data, from, to); idx >= 0; idx = indexOfPattern(data, idx + 1, to)) {
+            res = idx;
+        }
+
+        for (int i = to - 1; i > res && i >= from; i--) {
+            if (wildcardStart[data[i] & 0xFF] && matchesWildcard(data, i, to))
+                return i;
+        }
+
+        return res;
+    }
+
+    private boolean matchesWildcard(byte[] data, int idx, int to) {
+        for (byte[] wildcard : wildcards) {
+            if (idx + wildcard.length <= to && data[idx] == wildcard[0]) {
+                int i = 1;
+                while (i < wildcard.length && data[idx + i] == wildcard[i])
+                    i++;
+
+                if (i == wildcard.length)
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Boyer-Moore-Horspool search.
+     */
+    private int indexOfPattern(byte[] data, int from, int to) {
+        int last = pattern.length - 1;
+
+        for (int i = from + last; i < to; ) {
+            int k = 0;
+
+            if (ignoreCase) {
+                while (k <= last && FOLD[data[i - k] & 0xFF] == pattern[last - k])
+                    k++;
+            } else {
+                while (k <= last && data[i - k] == pattern[last - k])
+                    k++;
+            }
+
+            if (k > last)
+                return i - last;
+
+            i += shift[data[i] & 0xFF];
+        }
+
+        return -1;
+    }
+
+    @Nullable
+    private static byte[] encode(CharsetEncoder encoder, String s) {
+        try {
+            ByteBuffer buf = encoder.encode(CharBuffer.wrap(s));
+            byte[] res = new byte[buf.remaining()];
+            buf.get(res);
+            return res;
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    private static String longestAsciiPart(String s) {
+        int bestStart = 0;
+        int bestLength = 0;
+
+        int start = 0;
+        for (int i = 0; i <= s.length(); i++) {
+            if (i == s.length() || s.charAt(i) >= 0x80) {
+                if (i - start > bestLength) {
+                    bestStart = start;
+                    bestLength = i - start;
+                }
+
+                start = i + 1;
+            }
+        }
+
+        return s.substring(bestStart, bestStart + bestLength);
+    }
+
+    /**
+     * @return {@code true} if the charset encodes each character by a fixed byte sequence and the ASCII characters are
+     * encoded as is. Such charsets are UTF-8 and most of single-byte charsets.
+     */
+    private static boolean isAsciiCompatible(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8))
+            return true;
+
+        if (!charset.canEncode())
+            return false;
+
+        CharsetEncoder encoder = charset.newEncoder();
+        if (encoder.maxBytesPerChar() != 1)
+            return false;
+
+        char[] ascii = new char[0x80];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (char) i;
+        }
+
+        byte[] bytes = encode(encoder, new String(ascii));
+        if (bytes == null || bytes.length != ascii.length)
+            return false;
+
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != i)
+                return false;
+        }
+
+        return true;
+    }
+
+    private static char[] findAsciiCaseVariants() {
+        StringBuilder res = new StringBuilder();
+
+        for (int i = 0x80; i <= Character.MAX_VALUE; i++) {
+            char a = (char) i;
+            if (Character.isSurrogate(a))
+                continue;
+
+            char upper = Character.toUpperCase(a);
+
+            if (upper < 0x80 || Character.toLowerCase(a) < 0x80 || Character.toLowerCase(upper) < 0x80)
+                res.append(a);
+        }
+
+        return res.toString().toCharArray();
+    }
+}
@@ -20,10 +20,33 @@ public class CompaundLogReader extends LogReader {
         this.readers = readers;
     }
 
+    @Override
+    public boolean parseRecord(BufferedFile.Line line) {
+        // canStartRecord() of each reader is checked in the loop below, no need to check all readers before
+        return parseRecord(line.getBuf(), line.getBufOffset(), line.getDataLength(), line.getStart(), line.getEnd());
+    }
+
+    /**
+     * The readers are tried in the fixed order, the first reader that parses the line wins. The order is not changed
+     * depending on the hit statistics: a reader can be chosen only after all the previous readers have failed, so
+     * trying the most frequent reader first doesn't save any attempts.
+     */
     @Override
     public boolean parseRecord(byte[] data, int offset, int length, long start, long end) {
+        boolean prepared = false;
+
         for (activeReader = 0; activeReader < readers.length; activeReader++) {
-            if (readers[activeReader].parseRecord(data, offset, length, start, end))
+            LogReader reader = readers[activeReader];
+
+            if (!reader.canStartRecord(data, offset, length))
+                continue;
+
+            if (!prepared) {
+                prepareLine(data, offset, length);
+                prepared = true;
+            }
+
+            if (reader.parseRecord(data, offset, length, start, end))
                 return true;
         }
 
@@ -31,6 +54,24 @@ public class CompaundLogReader extends LogReader {
         return false;
     }
 
+    /**
+     * Called once per line before the first reader parses it, the subclasses can decode the line here and share
+     * the result between the readers.
+     */
+    protected void prepareLine(byte[] data, int offset, int length) {
+
+    }
+
+    @Override
+    public boolean canStartRecord(byte[] data, int offset, int length) {
+        for (LogReader reader : readers) {
+            if (reader.canStartRecord(data, offset, length))
+                return true;
+        }
+
+        return false;
+    }
+
     @Override
     public boolean canAppendTail() {
         return readers[activeReader].canAppendTail();
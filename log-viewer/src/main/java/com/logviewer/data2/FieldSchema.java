@@ -0,0 +1,112 @@
+package com.logviewer.data2;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.lang.NonNull;
+
+import java.util.*;
+
+/**
+ * An immutable map from a field name to the field index in {@link LogRecord#getFieldPositions()}, the index of a field
+ * is the position of the field in the schema. The instances are interned, all records with the same field list share
+ * one instance, so the schemas can be compared by identity and the field indexes resolved for a schema can be cached.
+ * The interned instances are weakly referenced, the schemas received from remote peers don't stay in memory after
+ * the records using them are gone.
+ */
+public final class FieldSchema extends AbstractMap<String, Integer> {
+
+    private static final Cache<List<String>, FieldSchema> SCHEMAS = Caffeine.newBuilder().weakValues().build();
+
+    public static final FieldSchema EMPTY = of(Collections.emptyList());
+
+    private final String[] names;
+
+    private final Map<String, Integer> indexes;
+
+    private FieldSchema(@NonNull List<String> names) {
+        this.names = names.toArray(new String[0]);
+
+        Map<String, Integer> indexes = new LinkedHashMap<>();
+        for (int i = 0; i < this.names.length; i++) {
+            if (indexes.put(this.names[i], i) != null)
+                throw new IllegalArgumentException("Duplicated field name: " + this.names[i]);
+        }
+
+        this.indexes = Collections.unmodifiableMap(indexes);
+    }
+
+    @NonNull
+    public static FieldSchema of(@NonNull String ... names) {
+        return of(Arrays.asList(names));
+    }
+
+    @NonNull
+    public static FieldSchema of(@NonNull List<String> names) {
+        FieldSchema res = SCHEMAS.getIfPresent(names);
+        if (res == null)
+            res = SCHEMAS.get(Collections.unmodifiableList(new ArrayList<>(names)), FieldSchema::new);
+
+        return res;
+    }
+
+    /**
+     * Returns the schema with the same field order as the map. The map values must be the positions of the fields.
+     */
+    @NonNull
+    public static FieldSchema of(@NonNull Map<String, Integer> fieldIndexes) {
+        if (fieldIndexes instanceof FieldSchema)
+            return (FieldSchema) fieldIndexes;
+
+        String[] names = new String[fieldIndexes.size()];
+
+        for (Entry<String, Integer> entry : fieldIndexes.entrySet()) {
+            int idx = entry.getValue();
+            if (idx < 0 || idx >= names.length || names[idx] != null)
+                throw new IllegalArgumentException("Invalid field indexes: " + fieldIndexes);
+
+            names[idx] = entry.getKey();
+        }
+
+        return of(names);
+    }
+
+    /**
+     * @return the index of the field or {@code -1} if there is no field with the specified name.
+     */
+    public int indexOf(@NonNull String fieldName) {
+        Integer res = indexes.get(fieldName);
+        return res == null ? -1 : res;
+    }
+
+    @NonNull
+    public String getName(int fieldIndex) {
+        return names[fieldIndex];
+    }
+
+    @Override
+    public int size() {
+        return names.length;
+    }
+
+    @Override
+    public Integer get(Object key) {
+        return indexes.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexes.containsKey(key);
+    }
+
+    @NonNull
+    @Override
+    public Set<String> keySet() {
+        return indexes.keySet();
+    }
+
+    @NonNull
+    @Override
+    public Set<Entry<String, Integer>> entrySet() {
+        return indexes.entrySet();
+    }
+}
@@ -1,34 +1,136 @@
 package com.logviewer.data2;
 
 import com.logviewer.utils.Destroyer;
-import com.logviewer.utils.Pair;
 import com.logviewer.utils.RuntimeInterruptedException;
 import com.logviewer.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 
 import java.io.IOException;
 import java.nio.file.*;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
+/**
+ * Watches directories and files. The watcher thread only collects the events, the listeners are invoked by a small
+ * pool of dispatcher threads. The listeners of a file are indexed by the path of the file, a burst of events for
+ * one file is coalesced into one notification. The directories on file systems where {@link WatchService} doesn't
+ * work well are polled.
+ */
 public class FileWatcherService implements DisposableBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(FileWatcherService.class);
 
     static final String THREAD_NAME = "logviewer-file-watcher-thread";
 
+    static final String DISPATCHER_THREAD_NAME = "logviewer-file-change-dispatcher-";
+
+    public static final long DEFAULT_COALESCE_WINDOW = 50;
+
+    public static final int DEFAULT_DISPATCHER_THREADS = 2;
+
+    public static final long DEFAULT_POLLING_INTERVAL = 1000;
+
+    public static final String DEFAULT_POLLING_FILE_SYSTEMS = "nfs,nfs4,cifs,smbfs,smb2";
+
+    private static final long DISPATCHER_KEEP_ALIVE = 20; // sec
+
+    private final long coalesceWindow;
+
+    private final boolean forcePolling;
+
+    private final long pollingInterval;
+
+    private final Set<String> pollingFileSystems;
+
+    /**
+     * Single-thread executors, the events of a path are always dispatched by the same executor, so the listeners of
+     * a path are never invoked concurrently.
+     */
+    private final ScheduledThreadPoolExecutor[] dispatchers;
+
     private Thread watcherThread;
 
     private WatchService watchService;
 
-    private final Map<Path, Pair<WatchKey, List<WatcherDestroyer>>> listeners = new HashMap<>();
+    private final Map<Path, WatchedDir> dirs = new HashMap<>();
+
+    /**
+     * The files having a scheduled notification, the value is the time of the first event of the burst.
+     */
+    private final Map<Path, Long> pendingFiles = new HashMap<>();
 
+    private final Map<Path, PendingDirChanges> pendingDirs = new HashMap<>();
+
+    private long dispatchCount;
+    private long coalescedEventCount;
+    private long totalDispatchLatency;
+    private long maxDispatchLatency;
+
+    public FileWatcherService() {
+        this(DEFAULT_COALESCE_WINDOW, DEFAULT_DISPATCHER_THREADS, false, DEFAULT_POLLING_INTERVAL, DEFAULT_POLLING_FILE_SYSTEMS);
+    }
+
+    /**
+     * @param coalesceWindow the delay of the notification about a changed file in milliseconds, all events for the file
+     *                       received during the delay are delivered as one notification.
+     * @param dispatcherThreads the number of threads invoking the listeners.
+     * @param forcePolling poll all directories instead of using {@link WatchService}.
+     * @param pollingInterval the interval of polling in milliseconds.
+     * @param pollingFileSystems comma-separated types of the file systems to poll, see {@link FileStore#type()}, for
+     *                           example "nfs,overlay".
+     */
+    public FileWatcherService(long coalesceWindow, int dispatcherThreads, boolean forcePolling, long pollingInterval,
+                              @Nullable String pollingFileSystems) {
+        if (coalesceWindow < 0)
+            throw new IllegalArgumentException("coalesceWindow must not be negative: " + coalesceWindow);
+        if (dispatcherThreads <= 0)
+            throw new IllegalArgumentException("dispatcherThreads must be positive: " + dispatcherThreads);
+        if (pollingInterval <= 0)
+            throw new IllegalArgumentException("pollingInterval must be positive: " + pollingInterval);
+
+        this.coalesceWindow = coalesceWindow;
+        this.forcePolling = forcePolling;
+        this.pollingInterval = pollingInterval;
+
+        this.pollingFileSystems = new HashSet<>();
+        if (pollingFileSystems != null) {
+            for (String type : pollingFileSystems.split(",")) {
+                type = type.trim();
+                if (!type.isEmpty())
+                    this.pollingFileSystems.add(type.toLowerCase(Locale.ROOT));
+            }
+        }
+
+        dispatchers = new ScheduledThreadPoolExecutor[dispatcherThreads];
+        for (int i = 0; i < dispatcherThreads; i++) {
+            String threadName = DISPATCHER_THREAD_NAME + i;
+
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, run -> {
+                Thread res = new Thread(run, threadName);
+                res.setDaemon(true);
+                res.setUncaughtExceptionHandler((t, e) -> LOG.error("Unhandled error", e));
+                return res;
+            });
+            executor.setKeepAliveTime(DISPATCHER_KEEP_ALIVE, TimeUnit.SECONDS);
+            executor.allowCoreThreadTimeOut(true);
+            executor.setRemoveOnCancelPolicy(true);
+
+            dispatchers[i] = executor;
+        }
+    }
+
+    /**
+     * Watches the changes of the files in the directory, the listener receives the changed paths.
+     */
     public Destroyer watchDirectory(@NonNull Path dir, @NonNull Consumer<List<Path>> listener) throws IOException {
         assert dir.isAbsolute();
 
@@ -37,36 +139,138 @@ public class FileWatcherService implements DisposableBean {
         }
 
         synchronized (this) {
-            if (watchService == null)
-                watchService = dir.getFileSystem().newWatchService();
+            WatchedDir watchedDir = startWatching(dir);
 
-            Pair<WatchKey, List<WatcherDestroyer>> pair = listeners.get(dir);
-            if (pair == null) {
-                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
-                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            WatcherDestroyer closer = new WatcherDestroyer(dir, null, listener);
+            watchedDir.dirListeners.add(closer);
 
-                pair = Pair.of(key, new ArrayList<>());
-                listeners.put(dir, pair);
+            return closer;
+        }
+    }
 
-                if (LOG.isDebugEnabled())
-                    LOG.debug("Started watching {}", dir);
-            }
+    /**
+     * Watches the changes of the file. The listener is invoked once for a burst of changes, not earlier than
+     * the coalescing window after the first change.
+     */
+    public Destroyer watchFile(@NonNull Path file, @NonNull Runnable listener) throws IOException {
+        Path absolutePath = file.toAbsolutePath();
+        Path dir = absolutePath.getParent();
+
+        if (dir == null)
+            throw new IllegalArgumentException("Invalid file: " + file);
+
+        if (Files.exists(dir) && !Files.isDirectory(dir)) {
+            throw new IllegalArgumentException("path must be a directory: " + dir);
+        }
 
-            WatcherDestroyer closer = new WatcherDestroyer(dir, listener);
+        synchronized (this) {
+            WatchedDir watchedDir = startWatching(dir);
 
-            pair.getSecond().add(closer);
+            WatcherDestroyer closer = new WatcherDestroyer(dir, absolutePath, paths -> listener.run());
+            watchedDir.fileListeners.computeIfAbsent(absolutePath, f -> new ArrayList<>()).add(closer);
 
+            return closer;
+        }
+    }
+
+    public synchronized List<Path> watchedDirectories() {
+        return new ArrayList<>(dirs.keySet());
+    }
+
+    /**
+     * @return the directories that are polled instead of being watched by {@link WatchService}.
+     */
+    public synchronized List<Path> polledDirectories() {
+        List<Path> res = new ArrayList<>();
+
+        for (WatchedDir watchedDir : dirs.values()) {
+            if (watchedDir.pollingTask != null)
+                res.add(watchedDir.dir);
+        }
+
+        return res;
+    }
+
+    public synchronized DispatchStats getDispatchStats() {
+        return new DispatchStats(pendingFiles.size() + pendingDirs.size(), dispatchCount, coalescedEventCount,
+                dispatchCount == 0 ? 0 : totalDispatchLatency / dispatchCount, maxDispatchLatency);
+    }
+
+    private WatchedDir startWatching(Path dir) throws IOException {
+        assert Thread.holdsLock(this);
+
+        WatchedDir res = dirs.get(dir);
+        if (res != null)
+            return res;
+
+        res = new WatchedDir(dir);
+
+        if (!isPollingRequired(dir))
+            res.key = register(dir);
+
+        if (res.key == null) {
+            if (!Files.isDirectory(dir))
+                throw new NoSuchFileException(dir.toString());
+
+            res.snapshot = readDirectory(dir);
+
+            WatchedDir watchedDir = res;
+            res.pollingTask = dispatcher(dir).scheduleWithFixedDelay(() -> poll(watchedDir), pollingInterval,
+                    pollingInterval, TimeUnit.MILLISECONDS);
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Started polling {}", dir);
+        } else {
             if (watcherThread == null) {
                 watcherThread = new Thread(this::doWatch, THREAD_NAME);
                 watcherThread.start();
             }
 
-            return closer;
+            if (LOG.isDebugEnabled())
+                LOG.debug("Started watching {}", dir);
         }
+
+        dirs.put(dir, res);
+
+        return res;
     }
 
-    public synchronized List<Path> watchedDirectories() {
-        return new ArrayList<>(listeners.keySet());
+    private boolean isPollingRequired(Path dir) {
+        if (forcePolling)
+            return true;
+
+        if (pollingFileSystems.isEmpty())
+            return false;
+
+        try {
+            return pollingFileSystems.contains(Files.getFileStore(dir).type().toLowerCase(Locale.ROOT));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the key or {@code null} if the directory must be polled.
+     */
+    @Nullable
+    private WatchKey register(Path dir) throws IOException {
+        try {
+            if (watchService == null)
+                watchService = dir.getFileSystem().newWatchService();
+
+            if (watchService.getClass().getSimpleName().equals("PollingWatchService")) {
+                // The JDK implementation polls the directories every 10 seconds
+                return null;
+            }
+
+            return dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (UnsupportedOperationException | IOException e) {
+            LOG.warn("Failed to watch {}, the directory will be polled: {}", dir, e.toString());
+            return null;
+        }
     }
 
     private void doWatch() {
@@ -82,45 +286,206 @@ public class FileWatcherService implements DisposableBean {
                 Path dir = (Path) key.watchable();
 
                 for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        LOG.warn("Some file events have been lost: {}", dir);
+                        continue;
+                    }
+
                     paths.add(dir.resolve((Path) event.context()));
                 }
 
-                List<WatcherDestroyer> listeners;
+                key.reset();
+
+                if (!onChanges(dir, paths)) {
+                    LOG.error("Unregistered path: {}", dir);
+                    key.cancel();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
 
-                synchronized (this.listeners) {
-                    Pair<WatchKey, List<WatcherDestroyer>> pair = this.listeners.get(dir);
-                    if (pair == null) {
-                        LOG.error("Unregistered path: {}", dir);
-                        key.cancel();
-                        continue;
-                    }
+        }
+    }
+
+    private void poll(WatchedDir watchedDir) {
+        Map<Path, FileAttributes> snapshot = readDirectory(watchedDir.dir);
+
+        List<Path> changed = new ArrayList<>();
+
+        synchronized (this) {
+            if (dirs.get(watchedDir.dir) != watchedDir)
+                return;
+
+            for (Map.Entry<Path, FileAttributes> entry : snapshot.entrySet()) {
+                if (!entry.getValue().equals(watchedDir.snapshot.get(entry.getKey())))
+                    changed.add(entry.getKey());
+            }
+
+            for (Path path : watchedDir.snapshot.keySet()) {
+                if (!snapshot.containsKey(path))
+                    changed.add(path);
+            }
+
+            watchedDir.snapshot = snapshot;
 
-                    listeners = new ArrayList<>(pair.getSecond());
+            if (!changed.isEmpty())
+                onChanges(watchedDir.dir, changed);
+        }
+    }
+
+    private static Map<Path, FileAttributes> readDirectory(Path dir) {
+        Map<Path, FileAttributes> res = new HashMap<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                try {
+                    res.put(path, new FileAttributes(Files.readAttributes(path, BasicFileAttributes.class)));
+                } catch (NoSuchFileException ignored) {
+                    // The file has been deleted
                 }
+            }
+        } catch (NoSuchFileException ignored) {
+            // All files have been deleted with the directory
+        } catch (IOException e) {
+            LOG.error("Failed to poll {}", dir, e);
+        }
 
-                if (LOG.isDebugEnabled())
-                    LOG.debug("Listeners invoked for {}", dir);
+        return res;
+    }
 
-                for (WatcherDestroyer watcherDestroyer : listeners) {
-                    try {
-                        watcherDestroyer.listener.accept(paths);
-                    } catch (Throwable e) {
-                        if (Thread.currentThread().isInterrupted())
-                            break;
+    /**
+     * Schedules the notifications about the changed paths.
+     *
+     * @return {@code false} if the directory is not watched.
+     */
+    private synchronized boolean onChanges(Path dir, List<Path> paths) {
+        WatchedDir watchedDir = dirs.get(dir);
+        if (watchedDir == null)
+            return false;
+
+        long now = System.nanoTime();
+
+        if (!watchedDir.dirListeners.isEmpty()) {
+            PendingDirChanges pending = pendingDirs.get(dir);
+
+            if (pending == null) {
+                pending = new PendingDirChanges(now);
+                pendingDirs.put(dir, pending);
+
+                // The directory listeners receive the list of the changes, the list is not delayed
+                if (!schedule(dir, () -> dispatchDirChanges(dir), 0))
+                    pendingDirs.remove(dir);
+            } else {
+                coalescedEventCount++;
+            }
 
-                        LOG.error("Failed to invoke listener for dir: {}", dir, e);
-                    }
+            pending.paths.addAll(paths);
+        }
+
+        if (!watchedDir.fileListeners.isEmpty()) {
+            for (Path path : paths) {
+                if (!watchedDir.fileListeners.containsKey(path))
+                    continue;
+
+                if (pendingFiles.putIfAbsent(path, now) != null) {
+                    coalescedEventCount++;
+                    continue;
                 }
 
-                key.reset();
+                if (!schedule(path, () -> dispatchFileChange(dir, path), coalesceWindow))
+                    pendingFiles.remove(path);
             }
-        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+
+        return true;
+    }
+
+    private boolean schedule(Path path, Runnable task, long delay) {
+        try {
+            dispatcher(path).schedule(task, delay, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false; // The service has been destroyed
+        }
+    }
+
+    private ScheduledThreadPoolExecutor dispatcher(Path path) {
+        return dispatchers[(path.hashCode() & Integer.MAX_VALUE) % dispatchers.length];
+    }
+
+    private void dispatchFileChange(Path dir, Path file) {
+        List<WatcherDestroyer> listeners;
+
+        synchronized (this) {
+            Long firstEventTime = pendingFiles.remove(file);
+            if (firstEventTime == null)
+                return;
+
+            onDispatch(firstEventTime);
+
+            WatchedDir watchedDir = dirs.get(dir);
+            List<WatcherDestroyer> fileListeners = watchedDir == null ? null : watchedDir.fileListeners.get(file);
+            if (fileListeners == null)
+                return;
+
+            listeners = new ArrayList<>(fileListeners);
+        }
+
+        invokeListeners(file, listeners, Collections.singletonList(file));
+    }
+
+    private void dispatchDirChanges(Path dir) {
+        List<WatcherDestroyer> listeners;
+        PendingDirChanges pending;
+
+        synchronized (this) {
+            pending = pendingDirs.remove(dir);
+            if (pending == null)
+                return;
+
+            onDispatch(pending.firstEventTime);
+
+            WatchedDir watchedDir = dirs.get(dir);
+            if (watchedDir == null)
+                return;
+
+            listeners = new ArrayList<>(watchedDir.dirListeners);
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Listeners invoked for {}", dir);
+
+        invokeListeners(dir, listeners, pending.paths);
+    }
+
+    private void onDispatch(long firstEventTime) {
+        assert Thread.holdsLock(this);
+
+        long latency = System.nanoTime() - firstEventTime;
 
+        dispatchCount++;
+        totalDispatchLatency += latency;
+        maxDispatchLatency = Math.max(maxDispatchLatency, latency);
+    }
+
+    private static void invokeListeners(Path path, List<WatcherDestroyer> listeners, List<Path> paths) {
+        for (WatcherDestroyer watcherDestroyer : listeners) {
+            try {
+                watcherDestroyer.listener.accept(paths);
+            } catch (Throwable e) {
+                if (Thread.currentThread().isInterrupted())
+                    break;
+
+                LOG.error("Failed to invoke listener for: {}", path, e);
+            }
         }
     }
 
     @Override
     public void destroy() {
+        for (ScheduledThreadPoolExecutor dispatcher : dispatchers) {
+            dispatcher.shutdownNow();
+        }
+
         if (watchService != null) {
             Utils.closeQuietly(watchService);
             watchService = null;
@@ -136,31 +501,145 @@ public class FileWatcherService implements DisposableBean {
         }
     }
 
+    private static class WatchedDir {
+        private final Path dir;
+
+        /**
+         * {@code null} if the directory is polled.
+         */
+        private WatchKey key;
+
+        private ScheduledFuture<?> pollingTask;
+
+        /**
+         * The attributes of the files seen by the last poll.
+         */
+        private Map<Path, FileAttributes> snapshot;
+
+        private final List<WatcherDestroyer> dirListeners = new ArrayList<>();
+
+        private final Map<Path, List<WatcherDestroyer>> fileListeners = new HashMap<>();
+
+        WatchedDir(Path dir) {
+            this.dir = dir;
+        }
+
+        boolean hasListeners() {
+            return !dirListeners.isEmpty() || !fileListeners.isEmpty();
+        }
+    }
+
+    private static class PendingDirChanges {
+        private final long firstEventTime;
+
+        private final List<Path> paths = new ArrayList<>();
+
+        PendingDirChanges(long firstEventTime) {
+            this.firstEventTime = firstEventTime;
+        }
+    }
+
+    /**
+     * The statistics of the change dispatching for diagnostics.
+     */
+    public static class DispatchStats {
+        private final int queueDepth;
+        private final long dispatchCount;
+        private final long coalescedEventCount;
+        private final long averageLatencyNanos;
+        private final long maxLatencyNanos;
+
+        DispatchStats(int queueDepth, long dispatchCount, long coalescedEventCount, long averageLatencyNanos,
+                      long maxLatencyNanos) {
+            this.queueDepth = queueDepth;
+            this.dispatchCount = dispatchCount;
+            this.coalescedEventCount = coalescedEventCount;
+            this.averageLatencyNanos = averageLatencyNanos;
+            this.maxLatencyNanos = maxLatencyNanos;
+        }
+
+        /**
+         * The number of files and directories having changes waiting for dispatching.
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getDispatchCount() {
+            return dispatchCount;
+        }
+
+        /**
+         * The number of events merged into an already scheduled notification.
+         */
+        public long getCoalescedEventCount() {
+            return coalescedEventCount;
+        }
+
+        /**
+         * The average time between the first event of a burst and the invocation of the listeners, the time includes
+         * the coalescing window.
+         */
+        public long getAverageLatencyNanos() {
+            return averageLatencyNanos;
+        }
+
+        public long getMaxLatencyNanos() {
+            return maxLatencyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "{queueDepth=" + queueDepth + ", dispatchCount=" + dispatchCount +
+                    ", coalescedEventCount=" + coalescedEventCount +
+                    ", averageLatency=" + TimeUnit.NANOSECONDS.toMicros(averageLatencyNanos) + "us" +
+                    ", maxLatency=" + TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos) + "us}";
+        }
+    }
+
     private class WatcherDestroyer implements Destroyer {
         private final Path dir;
+        @Nullable
+        private final Path file;
         private final Consumer<List<Path>> listener;
 
-        WatcherDestroyer(Path dir, Consumer<List<Path>> listener) {
+        WatcherDestroyer(Path dir, @Nullable Path file, Consumer<List<Path>> listener) {
             this.dir = dir;
+            this.file = file;
             this.listener = listener;
         }
 
         @Override
         public void close() {
             synchronized (FileWatcherService.this) {
-                Pair<WatchKey, List<WatcherDestroyer>> p = listeners.get(dir);
-                if (p == null)
+                WatchedDir watchedDir = dirs.get(dir);
+                if (watchedDir == null)
                     return;
 
-                p.getSecond().remove(this);
-                if (p.getSecond().isEmpty()) {
-                    p.getFirst().cancel();
-                    listeners.remove(dir);
+                if (file == null) {
+                    watchedDir.dirListeners.remove(this);
+                } else {
+                    List<WatcherDestroyer> fileListeners = watchedDir.fileListeners.get(file);
+                    if (fileListeners == null || !fileListeners.remove(this))
+                        return;
+
+                    if (fileListeners.isEmpty())
+                        watchedDir.fileListeners.remove(file);
+                }
+
+                if (!watchedDir.hasListeners()) {
+                    if (watchedDir.key != null)
+                        watchedDir.key.cancel();
+
+                    if (watchedDir.pollingTask != null)
+                        watchedDir.pollingTask.cancel(false);
+
+                    dirs.remove(dir);
 
                     if (LOG.isDebugEnabled())
                         LOG.debug("Stopped watching {}", dir);
 
-                    if (listeners.isEmpty()) {
+                    if (dirs.values().stream().allMatch(d -> d.key == null)) {
                         if (watcherThread != null) {
                             watcherThread.interrupt();
                             watcherThread = null;
@@ -0,0 +1,571 @@
+package com.logviewer.data2;
+
+import com.logviewer.utils.GzipDecoder;
+import com.logviewer.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An index of a gzip file allowing to read the decompressed data at random positions without unpacking the whole file.
+ * The index contains checkpoints every {@link #getSpan()} bytes of the decompressed data, a checkpoint is a deflate
+ * block boundary with the last 32Kb of the data decoded before it. A read inflates the data from the nearest checkpoint.
+ * The index is built by one pass over the file and is stored to disk, the windows of the checkpoints are read from
+ * the index file on demand.
+ */
+public class GzipSeekIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GzipSeekIndex.class);
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+
+    private static final int CHECKPOINT_HEADER_SIZE = 8 + 8 + 4;
+
+    /**
+     * The default number of decoded spans kept in memory.
+     */
+    private static final int CACHED_SPANS = 2;
+
+    private final Path file;
+    private final long compressedSize;
+    private final long lastModified;
+    private final int span;
+
+    @Nullable
+    private final Path indexFile;
+
+    private final long size;
+
+    /**
+     * The checkpoint 0 is the start of the file, it has no window.
+     */
+    private final long[] outputOffsets;
+    private final long[] bitPositions;
+    private final long[] windowPositions;
+    private final int[] windowLengths;
+
+    /**
+     * The compressed windows, used when the index could not be stored to disk.
+     */
+    @Nullable
+    private final byte[][] windows;
+
+    private volatile int cachedSpans = CACHED_SPANS;
+
+    /**
+     * The decoded spans, a span is decoded by the first thread requesting it, the other threads wait for the result.
+     */
+    private final Map<Integer, CompletableFuture<byte[]>> spanCache = new LinkedHashMap<Integer, CompletableFuture<byte[]>>(CACHED_SPANS * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, CompletableFuture<byte[]>> eldest) {
+            return size() > cachedSpans;
+        }
+    };
+
+    private GzipSeekIndex(Path file, long compressedSize, long lastModified, int span, @Nullable Path indexFile,
+                          long size, long[] outputOffsets, long[] bitPositions, long[] windowPositions,
+                          int[] windowLengths, @Nullable byte[][] windows) {
+        this.file = file;
+        this.compressedSize = compressedSize;
+        this.lastModified = lastModified;
+        this.span = span;
+        this.indexFile = indexFile;
+        this.size = size;
+        this.outputOffsets = outputOffsets;
+        this.bitPositions = bitPositions;
+        this.windowPositions = windowPositions;
+        this.windowLengths = windowLengths;
+        this.windows = windows;
+    }
+
+    /**
+     * @return the size of the decompressed data.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public int getSpan() {
+        return span;
+    }
+
+    public int getCheckpointCount() {
+        return outputOffsets.length;
+    }
+
+    /**
+     * @return {@code true} if the index has been built for the specified version of the file.
+     */
+    public boolean isValidFor(long compressedSize, long lastModified) {
+        return this.compressedSize == compressedSize && this.lastModified == lastModified;
+    }
+
+    /**
+     * Loads the index from the index file or builds it if the file doesn't exist or was built for another version
+     * of the gzip file.
+     */
+    @NonNull
+    public static GzipSeekIndex loadOrBuild(@NonNull Path file, long compressedSize, long lastModified, int span,
+                                            @Nullable Path indexFile) throws IOException {
+        if (span <= 0)
+            throw new IllegalArgumentException("span must be positive: " + span);
+
+        if (indexFile != null) {
+            GzipSeekIndex res = load(file, compressedSize, lastModified, span, indexFile);
+            if (res != null)
+                return res;
+        }
+
+        return new Builder(file, compressedSize, lastModified, span, indexFile).build();
+    }
+
+    /**
+     * Loads the index from the index file.
+     *
+     * @return the index or {@code null} if the index file doesn't exist, is broken or was built for another version of
+     * the gzip file.
+     */
+    @Nullable
+    public static GzipSeekIndex load(@NonNull Path file, long compressedSize, long lastModified, int span,
+                                     @NonNull Path indexFile) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != VERSION || in.readInt() != span || in.readLong() != compressedSize || in.readLong() != lastModified)
+                return null;
+
+            Checkpoints checkpoints = new Checkpoints();
+            checkpoints.add(0, 0, 0, 0);
+
+            long position = HEADER_SIZE;
+
+            while (true) {
+                long outputOffset = in.readLong();
+                if (outputOffset < 0)
+                    break;
+
+                long bitPosition = in.readLong();
+                int windowLength = in.readInt();
+                position += CHECKPOINT_HEADER_SIZE;
+
+                checkpoints.add(outputOffset, bitPosition, position, windowLength);
+
+                if (in.skipBytes(windowLength) != windowLength)
+                    throw new EOFException();
+
+                position += windowLength;
+            }
+
+            long size = in.readLong();
+
+            return checkpoints.createIndex(file, compressedSize, lastModified, span, indexFile, size, null);
+        } catch (NoSuchFileException ignored) {
+            return null;
+        } catch (IOException e) {
+            LOG.warn("Failed to load gzip index: {}", indexFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Builds the index by one pass over the gzip file. The part of the index built so far is available from other threads
+     * by {@link #getPartialIndex()}, so the beginning of the file can be read while the index is being built.
+     */
+    public static class Builder {
+
+        private final Path file;
+        private final long compressedSize;
+        private final long lastModified;
+        private final int span;
+
+        @Nullable
+        private final Path indexFile;
+
+        private final Checkpoints checkpoints = new Checkpoints();
+
+        /**
+         * The compressed windows of the checkpoints, the partial index reads the windows from memory because the index
+         * file is incomplete.
+         */
+        private final List<byte[]> windows = new ArrayList<>();
+
+        private long processedBytes;
+
+        private GzipSeekIndex partialIndex;
+
+        public Builder(@NonNull Path file, long compressedSize, long lastModified, int span, @Nullable Path indexFile) {
+            if (span <= 0)
+                throw new IllegalArgumentException("span must be positive: " + span);
+
+            this.file = file;
+            this.compressedSize = compressedSize;
+            this.lastModified = lastModified;
+            this.span = span;
+            this.indexFile = indexFile;
+
+            checkpoints.add(0, 0, 0, 0);
+            windows.add(new byte[0]);
+        }
+
+        /**
+         * @return the number of bytes of the gzip file processed so far.
+         */
+        public synchronized long getProcessedBytes() {
+            return processedBytes;
+        }
+
+        /**
+         * @return the size of the data available by {@link #getPartialIndex()}.
+         */
+        public synchronized long getPreparedSize() {
+            return checkpoints.outputOffsets[checkpoints.count - 1];
+        }
+
+        /**
+         * @return the index of the data decompressed so far, the data ends at the last checkpoint.
+         */
+        @NonNull
+        public synchronized GzipSeekIndex getPartialIndex() throws IOException {
+            int count = checkpoints.count;
+
+            if (partialIndex == null || partialIndex.getCheckpointCount() != count) {
+                partialIndex = checkpoints.createIndex(file, compressedSize, lastModified, span, null,
+                        checkpoints.outputOffsets[count - 1], windows.toArray(new byte[0][]));
+            }
+
+            return partialIndex;
+        }
+
+        private synchronized void addCheckpoint(long outputOffset, long bitPosition, long windowPosition, byte[] window) {
+            checkpoints.add(outputOffset, bitPosition, windowPosition, window.length);
+            windows.add(window);
+        }
+
+        private synchronized void setProcessedBytes(long processedBytes) {
+            this.processedBytes = processedBytes;
+        }
+
+        @NonNull
+        public GzipSeekIndex build() throws IOException {
+            long startTime = System.currentTimeMillis();
+
+            Path tmp = null;
+            DataOutputStream out = null;
+
+            if (indexFile != null) {
+                try {
+                    Files.createDirectories(indexFile.getParent());
+                    tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+                    out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+
+                    out.writeInt(VERSION);
+                    out.writeInt(span);
+                    out.writeLong(compressedSize);
+                    out.writeLong(lastModified);
+                } catch (IOException e) {
+                    LOG.warn("Failed to save gzip index: {}", indexFile, e);
+                    Utils.closeQuietly(out);
+                    out = null;
+                }
+            }
+
+            long size;
+            boolean stored = false;
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+            try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ)) {
+                GzipDecoder decoder = new GzipDecoder(channel);
+
+                long nextCheckpoint = span;
+
+                while (decoder.decode()) {
+                    if (Thread.currentThread().isInterrupted())
+                        throw new InterruptedIOException();
+
+                    if (decoder.isAtBlockBoundary() && decoder.getOutputPosition() >= nextCheckpoint) {
+                        byte[] window = compress(deflater, decoder.getWindow());
+
+                        long windowPosition = 0;
+
+                        if (out != null) {
+                            try {
+                                out.writeLong(decoder.getOutputPosition());
+                                out.writeLong(decoder.getBitPosition());
+                                out.writeInt(window.length);
+                                windowPosition = out.size();
+                                out.write(window);
+                            } catch (IOException e) {
+                                throw new IOException("Failed to write gzip index: " + indexFile, e);
+                            }
+                        }
+
+                        addCheckpoint(decoder.getOutputPosition(), decoder.getBitPosition(), windowPosition, window);
+
+                        nextCheckpoint = decoder.getOutputPosition() + span;
+                    }
+
+                    setProcessedBytes(decoder.getBitPosition() >>> 3);
+                }
+
+                size = decoder.getOutputPosition();
+
+                if (out != null) {
+                    out.writeLong(-1);
+                    out.writeLong(size);
+                    out.close();
+                    out = null;
+
+                    Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    tmp = null;
+                    stored = true;
+                }
+            } finally {
+                deflater.end();
+
+                if (out != null)
+                    Utils.closeQuietly(out);
+
+                if (tmp != null)
+                    Files.deleteIfExists(tmp);
+            }
+
+            LOG.info("Gzip index of {} has been built in {} ms, {} checkpoints", file, System.currentTimeMillis() - startTime,
+                    checkpoints.count);
+
+            synchronized (this) {
+                processedBytes = compressedSize;
+
+                // The windows are kept in memory only if the index cannot be stored
+                return checkpoints.createIndex(file, compressedSize, lastModified, span, stored ? indexFile : null,
+                        size, stored ? null : windows.toArray(new byte[0][]));
+            }
+        }
+    }
+
+    private static byte[] compress(Deflater deflater, byte[] data) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream res = new ByteArrayOutputStream(data.length / 2 + 16);
+        byte[] buf = new byte[8192];
+
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buf);
+            res.write(buf, 0, n);
+        }
+
+        return res.toByteArray();
+    }
+
+    /**
+     * Creates a source reading the decompressed data. The channel must be opened on the gzip file.
+     */
+    public BufferedFile.Source createSource(@NonNull SeekableByteChannel channel) {
+        return (position, buf) -> read(channel, position, buf);
+    }
+
+    private void read(SeekableByteChannel channel, long position, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (position >= size)
+                throw new EOFException();
+
+            int idx = Arrays.binarySearch(outputOffsets, position);
+            if (idx < 0)
+                idx = -idx - 2;
+
+            byte[] data = getSpan(channel, idx);
+
+            int offset = (int) (position - outputOffsets[idx]);
+            int n = Math.min(buf.remaining(), data.length - offset);
+
+            buf.put(data, offset, n);
+            position += n;
+        }
+    }
+
+    /**
+     * Makes the cache keep at least the specified number of spans, the parallel search reads a span per thread.
+     */
+    public void ensureCachedSpans(int spans) {
+        synchronized (spanCache) {
+            cachedSpans = Math.max(cachedSpans, spans);
+        }
+    }
+
+    private byte[] getSpan(SeekableByteChannel channel, int idx) throws IOException {
+        CompletableFuture<byte[]> res;
+        boolean decode = false;
+
+        synchronized (spanCache) {
+            res = spanCache.get(idx);
+
+            if (res == null) {
+                res = new CompletableFuture<>();
+                spanCache.put(idx, res);
+                decode = true;
+            }
+        }
+
+        if (decode) {
+            // The span is decoded outside the lock, the threads reading other spans are not blocked
+            try {
+                res.complete(decodeSpan(channel, idx));
+            } catch (IOException | RuntimeException | Error e) {
+                synchronized (spanCache) {
+                    spanCache.remove(idx, res);
+                }
+
+                res.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return res.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException)
+                throw new IOException(cause.getMessage(), cause);
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new IOException(cause);
+        }
+    }
+
+    private byte[] decodeSpan(SeekableByteChannel channel, int idx) throws IOException {
+        long start = outputOffsets[idx];
+        long end = idx + 1 < outputOffsets.length ? outputOffsets[idx + 1] : size;
+
+        byte[] res = new byte[(int) (end - start)];
+
+        GzipDecoder decoder = new GzipDecoder(channel);
+
+        if (idx > 0)
+            decoder.resume(bitPositions[idx], start, loadWindow(idx));
+
+        int filled = 0;
+
+        while (filled < res.length) {
+            if (!decoder.decode())
+                throw new EOFException("The gzip file is shorter than the index: " + file);
+
+            int n = Math.min(decoder.getChunkEnd() - decoder.getChunkStart(), res.length - filled);
+            System.arraycopy(decoder.getBuffer(), decoder.getChunkStart(), res, filled, n);
+            filled += n;
+        }
+
+        return res;
+    }
+
+    private byte[] loadWindow(int idx) throws IOException {
+        byte[] compressed;
+
+        if (windows != null) {
+            compressed = windows[idx];
+        } else {
+            assert indexFile != null;
+
+            compressed = new byte[windowLengths[idx]];
+
+            try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                ByteBuffer buf = ByteBuffer.wrap(compressed);
+
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, windowPositions[idx] + buf.position()) < 0)
+                        throw new EOFException("Gzip index file is truncated: " + indexFile);
+                }
+            }
+        }
+
+        Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(compressed);
+
+            byte[] res = new byte[GzipDecoder.WINDOW_SIZE];
+            int len = 0;
+
+            while (!inflater.finished() && len < res.length) {
+                int n = inflater.inflate(res, len, res.length - len);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IOException("Gzip index file is corrupted: " + indexFile);
+
+                len += n;
+            }
+
+            return len == res.length ? res : Arrays.copyOf(res, len);
+        } catch (DataFormatException e) {
+            throw new IOException("Gzip index file is corrupted: " + indexFile, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static class Checkpoints {
+        private int count;
+        private long[] outputOffsets = new long[16];
+        private long[] bitPositions = new long[16];
+        private long[] windowPositions = new long[16];
+        private int[] windowLengths = new int[16];
+
+        void add(long outputOffset, long bitPosition, long windowPosition, int windowLength) {
+            if (count == outputOffsets.length) {
+                int newLength = count * 2;
+                outputOffsets = Arrays.copyOf(outputOffsets, newLength);
+                bitPositions = Arrays.copyOf(bitPositions, newLength);
+                windowPositions = Arrays.copyOf(windowPositions, newLength);
+                windowLengths = Arrays.copyOf(windowLengths, newLength);
+            }
+
+            outputOffsets[count] = outputOffset;
+            bitPositions[count] = bitPosition;
+            windowPositions[count] = windowPosition;
+            windowLengths[count] = windowLength;
+            count++;
+        }
+
+        GzipSeekIndex createIndex(Path file, long compressedSize, long lastModified, int span, @Nullable Path indexFile,
+                                  long size, @Nullable byte[][] windows) throws IOException {
+            if (count == 0 || outputOffsets[0] != 0)
+                throw new IOException("Invalid gzip index: " + indexFile);
+
+            return new GzipSeekIndex(file, compressedSize, lastModified, span, indexFile, size,
+                    Arrays.copyOf(outputOffsets, count), Arrays.copyOf(bitPositions, count),
+                    Arrays.copyOf(windowPositions, count), Arrays.copyOf(windowLengths, count), windows);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GzipSeekIndex[" + file + ", size=" + size + ", checkpoints=" + outputOffsets.length + ']';
+    }
+}
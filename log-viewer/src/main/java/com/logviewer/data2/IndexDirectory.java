@@ -0,0 +1,151 @@
+package com.logviewer.data2;
+
+import com.logviewer.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.NonNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * The directory containing the persistent indexes of the logs: {@link LogCheckpointIndex} and {@link GzipSeekIndex}.
+ * The indexes are a cache only, so the size of the directory is limited, the least recently used index files are
+ * deleted when the limit is exceeded. An index file is considered as used when it's opened or rewritten. The files
+ * registered by {@link #register(Object, Path)} are not deleted while their owners are alive.
+ */
+final class IndexDirectory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexDirectory.class);
+
+    static final String NAME = "index";
+
+    /**
+     * A temporary file not modified during this time is considered as left by a crashed process.
+     */
+    private static final long TMP_FILE_TTL = TimeUnit.HOURS.toMillis(1);
+
+    private static final Map<Object, Path> usedFiles = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final AtomicBoolean evictionInProgress = new AtomicBoolean();
+
+    private IndexDirectory() {
+
+    }
+
+    @NonNull
+    static Path getIndexFile(@NonNull String fileName) throws IOException {
+        return Utils.getTempDir().resolve(NAME).resolve(fileName);
+    }
+
+    /**
+     * Marks the index file as used by the owner, the file is not deleted until the owner is garbage collected.
+     */
+    static void register(@NonNull Object owner, @NonNull Path indexFile) {
+        usedFiles.put(owner, indexFile);
+
+        try {
+            Files.setLastModifiedTime(indexFile, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException ignored) {
+            // The index has not been built yet
+        } catch (IOException e) {
+            LOG.debug("Failed to update the modification time of the index file: {}", indexFile, e);
+        }
+    }
+
+    static void evict(long maxSize) {
+        try {
+            evict(Utils.getTempDir().resolve(NAME), maxSize);
+        } catch (IOException e) {
+            LOG.warn("Failed to clean up the index directory", e);
+        }
+    }
+
+    /**
+     * Deletes the least recently used index files until the total size of the directory fits the limit.
+     */
+    static void evict(@NonNull Path dir, long maxSize) {
+        if (!evictionInProgress.compareAndSet(false, true))
+            return;
+
+        try {
+            Set<Path> used;
+            synchronized (usedFiles) {
+                used = new HashSet<>(usedFiles.values());
+            }
+
+            long now = System.currentTimeMillis();
+
+            List<Map.Entry<Path, BasicFileAttributes>> files = new ArrayList<>();
+            long totalSize = 0;
+
+            try (Stream<Path> stream = Files.list(dir)) {
+                for (Iterator<Path> itr = stream.iterator(); itr.hasNext(); ) {
+                    Path file = itr.next();
+
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    } catch (NoSuchFileException ignored) {
+                        continue;
+                    }
+
+                    if (!attrs.isRegularFile())
+                        continue;
+
+                    if (file.getFileName().toString().endsWith(".tmp")) {
+                        if (now - attrs.lastModifiedTime().toMillis() > TMP_FILE_TTL)
+                            delete(file);
+                        else
+                            totalSize += attrs.size(); // An index being built
+
+                        continue;
+                    }
+
+                    files.add(new AbstractMap.SimpleImmutableEntry<>(file, attrs));
+                    totalSize += attrs.size();
+                }
+            } catch (NoSuchFileException ignored) {
+                return;
+            }
+
+            if (totalSize <= maxSize)
+                return;
+
+            files.sort(Comparator.comparing(e -> e.getValue().lastModifiedTime()));
+
+            for (Map.Entry<Path, BasicFileAttributes> entry : files) {
+                if (totalSize <= maxSize)
+                    break;
+
+                if (used.contains(entry.getKey()))
+                    continue;
+
+                if (delete(entry.getKey()))
+                    totalSize -= entry.getValue().size();
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to clean up the index directory: {}", dir, e);
+        } finally {
+            evictionInProgress.set(false);
+        }
+    }
+
+    private static boolean delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            return true;
+        } catch (IOException e) {
+            LOG.debug("Failed to delete the index file: {}", file, e);
+            return false;
+        }
+    }
+}
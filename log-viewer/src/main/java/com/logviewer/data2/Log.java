@@ -20,19 +20,15 @@ import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.zip.CRC32;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import static com.logviewer.files.FileTypes.GZ;
 import static com.logviewer.files.FileTypes.ZIP;
@@ -60,9 +56,11 @@ public class Log implements LogView {
 
     public static Function<String, String> LOG_ID_GENERATOR = DEFAULT_ID_GENERATOR;
 
-    public static final long CHANGE_NOTIFICATION_TIMEOUT = 50;
+    public static final long CHANGE_NOTIFICATION_TIMEOUT = FileWatcherService.DEFAULT_COALESCE_WINDOW;
 
-    private final Object logChangedTaskKey = new Object();
+    public static final long PREPARATION_NOTIFICATION_INTERVAL = 500;
+
+    private final Object preparationProgressTaskKey = new Object();
 
     private final Path file;
 
@@ -83,15 +81,44 @@ public class Log implements LogView {
     private FileWatcherService fileWatcherService;
     @Autowired
     private LvFileAccessManager accessManager;
+    @Autowired(required = false)
+    private BlockCache blockCache;
     @Value("${log-viewer.parser.max-unparsable-block-size:2097152}") // 2Mb
     private long unparsableBlockMaxSize;
     @Value("${" + UNPACK_GZ_ARCHIVES + ":false}")
     private boolean unpackArchive;
+    @Value("${log-viewer.parser.gzip-index.enabled:true}")
+    private boolean gzipIndexEnabled;
+    @Value("${log-viewer.parser.gzip-index.span:4194304}") // 4Mb
+    private int gzipIndexSpan;
+    @Value("${log-viewer.parser.archive-preparation.wait:300}") // ms
+    private long archivePreparationWait;
+    @Value("${log-viewer.parser.use-mmap:false}")
+    private boolean useMmap;
+    @Value("${log-viewer.parser.checkpoint-index.enabled:true}")
+    private boolean checkpointIndexEnabled;
+    @Value("${log-viewer.parser.checkpoint-index.interval:262144}") // 256Kb
+    private int checkpointIndexInterval;
+    @Value("${log-viewer.parser.index-dir.max-size:268435456}") // 256Mb
+    private long indexDirMaxSize;
+    @Value("${log-viewer.search.parallelism:4}")
+    private int searchParallelism;
+    @Value("${log-viewer.search.parallel-chunk-size:16777216}") // 16Mb
+    private long searchChunkSize;
 
     private final MultiListener<Consumer<FileAttributes>> changeListener = new MultiListener<>(this::createFileListener);
 
+    private final MultiListener<Consumer<ArchivePreparationProgress>> preparationListener = new MultiListener<>(() -> () -> {});
+
     private LogIndex logIndex;
 
+    private MappedLogFile mappedFile;
+
+    /**
+     * The preparation of the last seen version of the archive, {@code null} if the log is not an archive.
+     */
+    private ArchivePreparation archivePreparation;
+
     public Log(@NonNull Path path, @NonNull LogFormat format, @NonNull ExecutorService executor) {
         file = path;
         this.format = LvGsonUtils.copy(format);
@@ -126,6 +153,10 @@ public class Log implements LogView {
         return format;
     }
 
+    public Charset getEncoding() {
+        return encoding;
+    }
+
     @Override
     public boolean isConnected() {
         return true;
@@ -151,37 +182,207 @@ public class Log implements LogView {
         }
     }
 
-    private static void decompressGZipFile(Path file, Path unpackedFile) throws IOException {
-        try (GZIPInputStream gis = new GZIPInputStream(Files.newInputStream(file))) {
-            Files.copy(gis, unpackedFile, StandardCopyOption.REPLACE_EXISTING);
+    @Nullable
+    private LogCheckpointIndex createCheckpointIndex(String hash) {
+        if (!checkpointIndexEnabled)
+            return null;
+
+        Path indexFile;
+
+        try {
+            indexFile = IndexDirectory.getIndexFile("checkpoints-" + DEFAULT_ID_GENERATOR.apply(file.toString())
+                    + '-' + Long.toHexString(Utils.getFormatHash(format)) + ".idx");
+        } catch (IOException e) {
+            LOG.warn("Failed to create a directory for the log index", e);
+            indexFile = null;
+        }
+
+        LogCheckpointIndex res = new LogCheckpointIndex(indexFile, hash, checkpointIndexInterval);
+
+        if (indexFile != null)
+            IndexDirectory.register(res, indexFile);
+
+        return res;
+    }
+
+    /**
+     * Returns a memory mapping of the file shared between snapshots. The caller must call {@link MappedLogFile#release()}
+     * when the mapping is not needed anymore.
+     */
+    private MappedLogFile acquireMappedFile(Path path) throws IOException {
+        Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+
+        synchronized (this) {
+            if (mappedFile != null && mappedFile.isMappingOf(path, fileKey) && mappedFile.retain())
+                return mappedFile;
+
+            mappedFile = new MappedLogFile(path, fileKey);
+
+            return mappedFile;
         }
     }
 
-    private static void decompressZipFile(Path file, Path unpackedFile) throws IOException {
-        try (ZipFile zipFile = new ZipFile(file.toFile())) {
-            ZipEntry fileEntry = null;
+    private void scheduleCheckpointIndexUpdate(LogIndex logIndex, long size) {
+        LogCheckpointIndex checkpoints = logIndex.getCheckpoints();
+        if (checkpoints == null || !checkpoints.needsUpdate(size) || !checkpoints.tryStartUpdate())
+            return;
 
-            for (ZipEntry zipEntry : Collections.list(zipFile.entries())) {
-                if (zipEntry.isDirectory())
-                    continue;
+        boolean submitted = false;
 
-                if (fileEntry != null) {
-                    throw new IOException("Failed to read the zip archive: the archive contains more than one file. " +
-                            "Log-viewer expects that the zip archive contains exactly one log file");
+        try {
+            executor.submit(() -> {
+                try (Snapshot snapshot = createSnapshot()) {
+                    if (snapshot.getError() == null && snapshot instanceof LogSnapshot) {
+                        checkpoints.update((LogSnapshot) snapshot);
+                        IndexDirectory.evict(indexDirMaxSize);
+                    }
+                } catch (Throwable e) {
+                    LOG.warn("Failed to update the log index: {}", file, e);
+                } finally {
+                    checkpoints.finishUpdate();
                 }
+            });
+
+            submitted = true;
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Failed to schedule the log index update", e);
+        } finally {
+            if (!submitted)
+                checkpoints.finishUpdate();
+        }
+    }
+
+    /**
+     * Returns the preparation of the specified version of the archive, starts the preparation if the version is seen
+     * first time. The snapshots of the same version share the preparation, a snapshot never waits for the whole
+     * preparation under the monitor of the log.
+     */
+    private ArchivePreparation getArchivePreparation(boolean isGzipFile, long compressedSize, long lastModification) throws IOException {
+        assert Thread.holdsLock(this);
+
+        ArchivePreparation previous = archivePreparation;
+        if (previous != null && previous.isFor(compressedSize, lastModification))
+            return previous;
+
+        if (previous != null)
+            previous.cancel();
 
-                fileEntry = zipEntry;
+        ArchivePreparation res;
+
+        if (isGzipFile && gzipIndexEnabled) {
+            // The data is inflated on demand from the checkpoints of the index, no unpacked copy is created
+            Path indexFile;
+
+            try {
+                indexFile = IndexDirectory.getIndexFile("gzip-" + DEFAULT_ID_GENERATOR.apply(file.toString()) + ".idx");
+            } catch (IOException e) {
+                LOG.warn("Failed to create a directory for the gzip index", e);
+                indexFile = null;
             }
 
-            if (fileEntry == null) {
-                throw new IOException("Failed to read the zip archive: no files in the the archive. " +
-                        "Log-viewer expects that the zip archive contains exactly one log file");
+            GzipSeekIndex index = indexFile == null ? null
+                    : GzipSeekIndex.load(file, compressedSize, lastModification, gzipIndexSpan, indexFile);
+
+            if (index != null) {
+                res = new ArchivePreparation.GzipIndexing(file, index, compressedSize, lastModification);
+            } else {
+                res = new ArchivePreparation.GzipIndexing(file, compressedSize, lastModification, gzipIndexSpan, indexFile);
+            }
+
+            if (indexFile != null)
+                IndexDirectory.register(res, indexFile); // The windows of the index are read from the file on demand
+        } else {
+            Path unpackedFile = Utils.getTempDir().resolve("unpacked-" + file.getFileName() + DEFAULT_ID_GENERATOR.apply(file.toString()) + ".log");
+
+            long unpackedSize = -1;
+
+            try {
+                BasicFileAttributes unpackedAttrs = Files.readAttributes(unpackedFile, BasicFileAttributes.class);
+                if (unpackedAttrs.lastModifiedTime().toMillis() == lastModification)
+                    unpackedSize = unpackedAttrs.size();
+            } catch (NoSuchFileException ignored) {
+                // The archive has not been unpacked yet
             }
 
-            Files.copy(zipFile.getInputStream(fileEntry), unpackedFile, StandardCopyOption.REPLACE_EXISTING);
+            res = new ArchivePreparation.Unpacking(file, compressedSize, lastModification, unpackedFile, isGzipFile, unpackedSize);
         }
+
+        archivePreparation = res;
+
+        if (!res.isFinished()) {
+            res.start(executor, previous, this::onArchivePrepared);
+
+            timer.scheduleTask(preparationProgressTaskKey, this::notifyPreparationProgress, PREPARATION_NOTIFICATION_INTERVAL);
+        }
+
+        return res;
     }
 
+    /**
+     * Waits a short time for the preparation, small archives are prepared in a moment, it's better to show the whole
+     * log at once than a growing one. The monitor of the log is released while waiting.
+     */
+    private void awaitArchivePreparation(ArchivePreparation preparation) {
+        assert Thread.holdsLock(this);
+
+        long deadline = System.currentTimeMillis() + archivePreparationWait;
+
+        while (!preparation.isFinished()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+                break;
+
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void onArchivePrepared() {
+        synchronized (this) {
+            notifyAll();
+        }
+
+        if (gzipIndexEnabled)
+            IndexDirectory.evict(indexDirMaxSize);
+
+        timer.scheduleTask(preparationProgressTaskKey, this::notifyPreparationProgress, 0);
+    }
+
+    private void notifyPreparationProgress() {
+        ArchivePreparation preparation;
+
+        synchronized (this) {
+            preparation = archivePreparation;
+        }
+
+        if (preparation == null)
+            return;
+
+        ArchivePreparationProgress progress = preparation.getProgress();
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Sending notification about archive preparation {}: {}", file, progress);
+
+        for (Consumer<ArchivePreparationProgress> listener : preparationListener.getListeners()) {
+            try {
+                listener.accept(progress);
+            } catch (Throwable e) {
+                LOG.error("Failed to notify listener", e);
+            }
+        }
+
+        // The prepared part of the archive grows like an appended log
+        fireLogChanged(preparation.getError() == null
+                ? new FileAttributes(progress.getPreparedSize(), preparation.getLastModification())
+                : null);
+
+        if (!progress.isFinished())
+            timer.scheduleTask(preparationProgressTaskKey, this::notifyPreparationProgress, PREPARATION_NOTIFICATION_INTERVAL);
+    }
 
     public class LogSnapshot implements Snapshot {
 
@@ -190,10 +391,23 @@ public class Log implements LogView {
         private IOException error;
         private String hash;
 
+        /**
+         * {@code true} if the file is a Zip or GZ archive.
+         */
+        private boolean archive;
+
         private Path unpackedFile;
 
+        private GzipSeekIndex gzipIndex;
+
+        /**
+         * {@code true} if the archive is being prepared, the snapshot contains the prepared part only.
+         */
+        private boolean preparing;
+
         private SeekableByteChannel channel;
-        private BufferedFile buf;
+
+        private MappedLogFile mappedFile;
 
         private LogIndex logIndex;
 
@@ -220,19 +434,19 @@ public class Log implements LogView {
                     size = attrs.size();
 
                     // Unpack archive is needed
-                    unpackArchiveIfNeeded();
+                    prepareArchiveIfNeeded();
 
                     if (cachedHashTimestamp == lastModification) {
                         hash = cachedHash;
                     } else {
-                         if (unpackedFile != null) { // Zip or GZ archive
+                         if (archive) { // Zip or GZ archive
                              hash = Long.toHexString(lastModification);
                         } else {
                              hash = calculateHash(size);
                          }
 
                         if (!hash.equals(cachedHash)) {
-                            Log.this.logIndex = new LogIndex();
+                            Log.this.logIndex = new LogIndex(createCheckpointIndex(hash));
                         }
 
                         cachedHash = hash;
@@ -241,6 +455,8 @@ public class Log implements LogView {
 
                     logIndex = Log.this.logIndex;
 
+                    scheduleCheckpointIndexUpdate(logIndex, size);
+
                     success = true;
                 } catch (IOException e) {
                     error = e;
@@ -260,7 +476,7 @@ public class Log implements LogView {
             return lastModification;
         }
 
-        private void unpackArchiveIfNeeded() throws IOException {
+        private void prepareArchiveIfNeeded() throws IOException {
             String fileName = file.getFileName().toString();
             boolean isGzipFile = GZ.getPattern().matcher(fileName).matches();
             boolean isZipFile = ZIP.getPattern().matcher(fileName).matches();
@@ -274,35 +490,24 @@ public class Log implements LogView {
                         "Be caution, automatic unpacking archive files can fill up all the disk space.");
             }
 
-            unpackedFile = Utils.getTempDir().resolve("unpacked-" + fileName + DEFAULT_ID_GENERATOR.apply(file.toString()) + ".log");
+            archive = true;
 
-            BasicFileAttributes unpackedAttrs;
-            try {
-                unpackedAttrs = Files.readAttributes(unpackedFile, BasicFileAttributes.class);
-            } catch (NoSuchFileException ignored) {
-                unpackedAttrs = null;
-            }
+            ArchivePreparation preparation = getArchivePreparation(isGzipFile, size, lastModification);
 
-            if (unpackedAttrs == null || unpackedAttrs.lastModifiedTime().toMillis() != lastModification) {
-                LOG.info("Unpacking {} into {}...", file, unpackedFile);
-                if (isGzipFile) {
-                    decompressGZipFile(file, unpackedFile);
-                } else {
-                    decompressZipFile(file, unpackedFile);
-                }
+            if (!preparation.isFinished() && archivePreparationWait > 0)
+                awaitArchivePreparation(preparation);
 
-                Files.setLastModifiedTime(unpackedFile, FileTime.fromMillis(lastModification));
+            preparing = !preparation.isFinished();
 
-                if (unpackedAttrs == null)
-                    unpackedFile.toFile().deleteOnExit();
+            if (!preparing && preparation.getError() != null)
+                throw preparation.getError();
 
-                unpackedAttrs = Files.readAttributes(unpackedFile, BasicFileAttributes.class);
-            }
-
-            size = unpackedAttrs.size();
+            gzipIndex = preparation.getIndex();
+            unpackedFile = preparation.getUnpackedFile();
+            size = gzipIndex != null ? gzipIndex.getSize() : preparation.getPreparedSize();
         }
 
-        private SeekableByteChannel getChannel() throws IOException {
+        private synchronized SeekableByteChannel getChannel() throws IOException {
             if (channel == null) {
                 if (error != null)
                     throw new IOException(error);
@@ -310,15 +515,38 @@ public class Log implements LogView {
                 channel = Files.newByteChannel(unpackedFile == null ? file : unpackedFile, StandardOpenOption.READ);
             }
 
-            buf = new BufferedFile(channel, size);
-
             return channel;
         }
 
-        private BufferedFile getBuffer() throws IOException {
-            getChannel();
+        private synchronized BufferedFile getBuffer() throws IOException {
+            if (gzipIndex != null) {
+                // The parallel search reads a span per thread, the decoded spans must not evict each other
+                gzipIndex.ensureCachedSpans(searchParallelism + 1);
+
+                BufferedFile.Source source = gzipIndex.createSource(getChannel());
+
+                if (blockCache != null && hash != null)
+                    source = blockCache.wrap(source, id, hash, size);
+
+                return new BufferedFile(source, size);
+            }
+
+            if (useMmap && !preparing) { // The mapping of a growing file would not see the appended data
+                if (error != null)
+                    throw new IOException(error);
+
+                if (mappedFile == null)
+                    mappedFile = acquireMappedFile(unpackedFile == null ? file : unpackedFile);
+
+                return new BufferedFile(mappedFile, size);
+            }
+
+            BufferedFile.Source source = new BufferedFile.ChannelSource(getChannel());
+
+            if (blockCache != null && hash != null)
+                source = blockCache.wrap(source, id, hash, size);
 
-            return buf;
+            return new BufferedFile(source, size);
         }
 
         private void assertUnparsedBlockSize(long blockStart, long blockEnd) throws IncorrectFormatException {
@@ -375,6 +603,65 @@ public class Log implements LogView {
             reader.appendTail(b.array(), b.position(), b.remaining(), tailLength);
         }
 
+        /**
+         * Finds the nearest candidate of the byte pattern, see {@link BytePattern}.
+         *
+         * @param position the position to start the search from.
+         * @param backward if {@code true} the candidates located before {@code position} are searched, otherwise the
+         *                 candidates located after {@code position}.
+         * @param limit the candidates starting beyond this position are not returned.
+         * @return the offset of the first byte of the candidate or {@code -1} if there are no candidates.
+         */
+        public long findCandidate(long position, boolean backward, long limit, @NonNull BytePattern pattern) throws IOException {
+            if (error != null)
+                throw error;
+
+            assert position >= 0 && position <= size;
+
+            BufferedFile buf = getBuffer();
+
+            int overlap = pattern.getMaxLength() - 1;
+
+            if (backward) {
+                limit = Math.max(limit, 0);
+
+                while (position > limit) {
+                    long start = Math.max(limit, position - ParserConfig.WINDOW_SIZE);
+
+                    ByteBuffer b = buf.read(start, position - start);
+                    int idx = pattern.lastIndexOf(b.array(), b.position(), b.limit());
+                    if (idx >= 0)
+                        return start + idx - b.position();
+
+                    if (start == limit)
+                        break;
+
+                    position = start + overlap;
+                }
+            } else {
+                // A candidate starting before the limit may end after it
+                long end = Math.min(size, limit + overlap);
+
+                while (position < limit) {
+                    long windowEnd = Math.min(end, position + ParserConfig.WINDOW_SIZE);
+
+                    ByteBuffer b = buf.read(position, windowEnd - position);
+                    int idx = pattern.indexOf(b.array(), b.position(), b.limit());
+                    if (idx >= 0) {
+                        long res = position + idx - b.position();
+                        return res < limit ? res : -1;
+                    }
+
+                    if (windowEnd == end)
+                        break;
+
+                    position = windowEnd - overlap;
+                }
+            }
+
+            return -1;
+        }
+
         @Override
         public boolean processRecordsBack(long position, boolean fromPrevLine, Predicate<LogRecord> consumer) throws IOException {
             if (position < 0)
@@ -694,7 +981,7 @@ public class Log implements LogView {
             try {
                 long tLong = Long.parseUnsignedLong(hash, 16);
 
-                if (unpackedFile != null) { // Hash is Long.toHexString(lastModification) for Zip and GZ archive.
+                if (archive) { // Hash is Long.toHexString(lastModification) for Zip and GZ archive.
                     return tLong == lastModification;
                 }
 
@@ -721,6 +1008,11 @@ public class Log implements LogView {
                 Utils.closeQuietly(channel);
                 channel = null;
             }
+
+            if (mappedFile != null) {
+                mappedFile.release();
+                mappedFile = null;
+            }
         }
 
         @Override
@@ -745,7 +1037,7 @@ public class Log implements LogView {
                                            @Nullable String hash, int recordCount, @NonNull SearchPattern searchPattern,
                                            @NonNull Consumer<SearchResult> listener) {
         return new LocalFileRecordSearcher(this::createSnapshot, executor, start, backward, recordPredicate, hash,
-                recordCount, searchPattern, listener);
+                recordCount, searchPattern, listener, searchParallelism, searchChunkSize);
     }
 
     private void notifyLogChanged() {
@@ -760,6 +1052,10 @@ public class Log implements LogView {
         if (LOG.isDebugEnabled())
             LOG.debug("Sending notification about log changing {}", file);
 
+        fireLogChanged(attr);
+    }
+
+    private void fireLogChanged(@Nullable FileAttributes attr) {
         for (Consumer<FileAttributes> listener : changeListener.getListeners()) {
             try {
                 listener.accept(attr);
@@ -771,15 +1067,8 @@ public class Log implements LogView {
 
     private Destroyer createFileListener() {
         try {
-            return fileWatcherService.watchDirectory(file.toAbsolutePath().getParent(), files -> {
-                if (files.contains(file)) {
-                    boolean scheduled = timer.scheduleTask(logChangedTaskKey, this::notifyLogChanged,
-                            CHANGE_NOTIFICATION_TIMEOUT);
-
-                    if (LOG.isDebugEnabled())
-                        LOG.debug("Scheduled notification about log changes {}, [new timer task={}]", file, scheduled);
-                }
-            });
+            // The watcher coalesces the changes of the file, the notification is sent by a dispatcher thread
+            return fileWatcherService.watchFile(file, this::notifyLogChanged);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -790,6 +1079,11 @@ public class Log implements LogView {
         return this.changeListener.addListener(changeListener);
     }
 
+    @Override
+    public Destroyer addPreparationListener(Consumer<ArchivePreparationProgress> listener) {
+        return preparationListener.addListener(listener);
+    }
+
     @Override
     public CompletableFuture<Throwable> tryRead() {
         try (Snapshot snapshot = createSnapshot()) {
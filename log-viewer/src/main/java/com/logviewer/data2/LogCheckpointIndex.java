@@ -0,0 +1,298 @@
+package com.logviewer.data2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * A sparse index of record boundaries. The index contains a checkpoint every {@link #getInterval()} bytes, each
+ * checkpoint is a start offset of a record having a timestamp and the timestamp. The index is built in the background
+ * and is extended incrementally when the file grows. The index is stored to disk, so it survives a restart. The index is bound to the log hash ({@link Snapshot#getHash()}), the index
+ * is thrown away when the hash changes.
+ */
+public class LogCheckpointIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogCheckpointIndex.class);
+
+    private static final int VERSION = 2;
+
+    @Nullable
+    private final Path file;
+
+    private final String hash;
+
+    private final int interval;
+
+    private boolean loaded;
+
+    private boolean updateInProgress;
+
+    private boolean broken;
+
+    private int count;
+    private long[] offsets = new long[16];
+    private long[] times = new long[16];
+
+    /**
+     * The size of the file at the moment of the last index update.
+     */
+    private long indexedSize;
+
+    /**
+     * The start of the last record in the indexed part, the next update starts from this position because the last
+     * record may be extended by appended lines.
+     */
+    private long resumeOffset;
+
+    private long nextCheckpoint;
+
+    public LogCheckpointIndex(@Nullable Path file, @NonNull String hash, int interval) {
+        if (interval <= 0)
+            throw new IllegalArgumentException("interval must be positive: " + interval);
+
+        this.file = file;
+        this.hash = hash;
+        this.interval = interval;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public synchronized int getCheckpointCount() {
+        return count;
+    }
+
+    public synchronized long getIndexedSize() {
+        return indexedSize;
+    }
+
+    /**
+     * @return {@code true} if the index should be extended to cover the file of the specified size.
+     */
+    public synchronized boolean needsUpdate(long size) {
+        if (broken || updateInProgress)
+            return false;
+
+        if (!loaded)
+            return size >= interval;
+
+        return size < indexedSize || size - indexedSize >= interval;
+    }
+
+    /**
+     * Marks the index as being updated. Only one update may be run at the same time.
+     *
+     * @return {@code false} if another update is in progress.
+     */
+    synchronized boolean tryStartUpdate() {
+        if (updateInProgress || broken)
+            return false;
+
+        updateInProgress = true;
+        return true;
+    }
+
+    synchronized void finishUpdate() {
+        updateInProgress = false;
+    }
+
+    /**
+     * Extends the index up to the end of the snapshot.
+     */
+    void update(@NonNull Log.LogSnapshot snapshot) throws IOException {
+        if (!hash.equals(snapshot.getHash()))
+            return;
+
+        long startOffset;
+        long[] nextCheckpoint = new long[1];
+
+        synchronized (this) {
+            if (!loaded) {
+                load();
+                loaded = true;
+            }
+
+            if (snapshot.getSize() < indexedSize)
+                clear();
+
+            startOffset = resumeOffset;
+            nextCheckpoint[0] = this.nextCheckpoint;
+        }
+
+        long[] lastRecordStart = {startOffset};
+        boolean[] interrupted = new boolean[1];
+
+        try {
+            snapshot.processRecords(startOffset, false, record -> {
+                if (Thread.currentThread().isInterrupted()) {
+                    interrupted[0] = true;
+                    return false;
+                }
+
+                if (record.getStart() >= nextCheckpoint[0] && record.hasTime()) {
+                    addCheckpoint(record.getStart(), record.getTime());
+
+                    nextCheckpoint[0] = record.getStart() + interval;
+                }
+
+                lastRecordStart[0] = record.getStart();
+                return true;
+            });
+        } catch (IncorrectFormatException e) {
+            synchronized (this) {
+                broken = true;
+            }
+
+            LOG.debug("Failed to build the index, the format doesn't match the file: {}", snapshot.getLog(), e);
+            return;
+        }
+
+        if (interrupted[0])
+            return;
+
+        synchronized (this) {
+            this.resumeOffset = lastRecordStart[0];
+            this.nextCheckpoint = nextCheckpoint[0];
+            this.indexedSize = snapshot.getSize();
+        }
+
+        save();
+    }
+
+    private synchronized void addCheckpoint(long offset, long time) {
+        if (count > 0 && offsets[count - 1] >= offset)
+            return;
+
+        if (count == offsets.length) {
+            int newLength = count * 2;
+            offsets = Arrays.copyOf(offsets, newLength);
+            times = Arrays.copyOf(times, newLength);
+        }
+
+        offsets[count] = offset;
+        times[count] = time;
+        count++;
+    }
+
+    private void clear() {
+        count = 0;
+        indexedSize = 0;
+        resumeOffset = 0;
+        nextCheckpoint = 0;
+    }
+
+    /**
+     * Finds the checkpoints surrounding the specified time.
+     *
+     * @param time the timestamp in nanoseconds.
+     * @param lastBound if {@code true} the low checkpoint is the last one with time {@code <= time}, the high checkpoint
+     *                  is the first one with time {@code > time}. Otherwise the low checkpoint is the last one with
+     *                  time {@code < time} and the high one is the first with time {@code >= time}.
+     * @param sizeLimit checkpoints located after this position are ignored.
+     * @return a pair of record start offsets [low, high], -1 means that there is no corresponding checkpoint.
+     */
+    @NonNull
+    public synchronized long[] findTimeRange(long time, boolean lastBound, long sizeLimit) {
+        int limit = count;
+        while (limit > 0 && offsets[limit - 1] >= sizeLimit)
+            limit--;
+
+        // The index of the first checkpoint that belongs to the "high" part
+        int idx = 0;
+        int high = limit;
+
+        while (idx < high) {
+            int mid = (idx + high) >>> 1;
+
+            boolean isLow = lastBound ? times[mid] <= time : times[mid] < time;
+            if (isLow) {
+                idx = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return new long[]{idx > 0 ? offsets[idx - 1] : -1, idx < limit ? offsets[idx] : -1};
+    }
+
+    private void load() {
+        if (file == null)
+            return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != VERSION || in.readInt() != interval || !in.readUTF().equals(hash))
+                return;
+
+            long indexedSize = in.readLong();
+            long resumeOffset = in.readLong();
+            long nextCheckpoint = in.readLong();
+
+            int count = in.readInt();
+
+            long[] offsets = new long[Math.max(count, 16)];
+            long[] times = new long[offsets.length];
+
+            for (int i = 0; i < count; i++) {
+                offsets[i] = in.readLong();
+                times[i] = in.readLong();
+            }
+
+            this.indexedSize = indexedSize;
+            this.resumeOffset = resumeOffset;
+            this.nextCheckpoint = nextCheckpoint;
+            this.count = count;
+            this.offsets = offsets;
+            this.times = times;
+        } catch (NoSuchFileException ignored) {
+
+        } catch (IOException e) {
+            LOG.warn("Failed to load log index: {}", file, e);
+        }
+    }
+
+    private void save() {
+        if (file == null)
+            return;
+
+        try {
+            Files.createDirectories(file.getParent());
+
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                synchronized (this) {
+                    out.writeInt(VERSION);
+                    out.writeInt(interval);
+                    out.writeUTF(hash);
+                    out.writeLong(indexedSize);
+                    out.writeLong(resumeOffset);
+                    out.writeLong(nextCheckpoint);
+
+                    out.writeInt(count);
+
+                    for (int i = 0; i < count; i++) {
+                        out.writeLong(offsets[i]);
+                        out.writeLong(times[i]);
+                    }
+                }
+            }
+
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Failed to save log index: {}", file, e);
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package com.logviewer.data2;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Weigher;
 import com.logviewer.utils.LvDateUtils;
 import com.logviewer.utils.Utils;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Date;
 import java.util.function.Predicate;
 
@@ -12,21 +17,49 @@ public class LogIndex {
 
 //    private static final Logger LOG = LoggerFactory.getLogger(LogIndex.class);
 
+    private static final long PROBE_CACHE_MAX_WEIGHT = 700 * 1024;
+
     private FindFirstProcessor firstRecord;
     private FindFirstProcessor lastRecord;
 
     private long size = 0;
 
-//    private Cache<Long, FindFirstProcessor> cache = CacheBuilder.newBuilder()
-//            .weigher((Weigher<Long, FindFirstProcessor>) (key, value) -> {
-//                return (8 + 12) + (12 + recordSize(value.firstRecordWithoutTime) + recordSize(value.result));
-//            })
-//            .maximumWeight(700 * 1024)
-//            .build();
+    @Nullable
+    private final LogCheckpointIndex checkpoints;
+
+    public LogIndex() {
+        this(null);
+    }
+
+    public LogIndex(@Nullable LogCheckpointIndex checkpoints) {
+        this.checkpoints = checkpoints;
+    }
+
+    @Nullable
+    public LogCheckpointIndex getCheckpoints() {
+        return checkpoints;
+    }
 
-//    private static int recordSize(@Nullable LogRecord record) {
-//        return record == null ? 0 : record.getSizeBytes();
-//    }
+    /**
+     * Caches the results of the probes made by the bisection: offset -> the first record having a timestamp located
+     * after the offset. The cached values remain valid while the file only grows, the whole LogIndex is replaced when the
+     * log hash changes.
+     */
+    private final Cache<Long, FindFirstProcessor> probeCache = Caffeine.newBuilder()
+            .weigher((Weigher<Long, FindFirstProcessor>) (key, value) -> {
+                return (8 + 12) + (12 + recordSize(value.firstRecordWithoutTime) + recordSize(value.result));
+            })
+            .maximumWeight(PROBE_CACHE_MAX_WEIGHT)
+            .build();
+
+    private static int recordSize(@Nullable LogRecord record) {
+        if (record == null)
+            return 0;
+
+        // The message may be not decoded yet, the loaded text length is used so as not to decode it for weighing,
+        // the decoded message takes up to 2 bytes per a loaded byte
+        return 64 + record.getLoadedTextLengthBytes() * 2 + record.getFieldPositions().length * 4;
+    }
 
     public LogRecord findRecordBound(@NonNull Date time, boolean lastBound, Snapshot buffer) throws IOException, LogCrashedException {
         return findRecordBound(LvDateUtils.toNanos(time), lastBound, buffer);
@@ -37,21 +70,17 @@ public class LogIndex {
         FindFirstProcessor firstRecord;
         FindFirstProcessor lastRecord;
 
-//        Cache<Long, FindFirstProcessor> cache;
-
         boolean useCache;
 
         if (size > buffer.getSize()) { // Find without cache
             firstRecord = null;
             lastRecord = null;
             useCache = false;
-//            cache = null;
         }
         else {
             firstRecord = this.firstRecord;
             lastRecord = this.lastRecord;
             useCache = true;
-//            cache = this.cache;
 
             if (size != buffer.getSize()) {
                 if (firstRecord != null) {
@@ -107,34 +136,30 @@ public class LogIndex {
         LogRecord low = firstRecord.result;
         LogRecord high = lastRecord.result;
 
+        if (checkpoints != null) {
+            // Narrow the range using the checkpoints, the records at the checkpoints are rechecked because the index may be
+            // built on other snapshot.
+            long[] range = checkpoints.findTimeRange(time, lastBound, buffer.getSize());
+
+            if (range[0] > low.getStart() && range[0] < high.getStart()) {
+                LogRecord r = probe(buffer, range[0], useCache).result;
+                if (r != null && r.getStart() == range[0] && (lastBound ? r.getTime() <= time : r.getTime() < time))
+                    low = r;
+            }
+
+            if (range[1] > low.getStart() && range[1] < high.getStart()) {
+                LogRecord r = probe(buffer, range[1], useCache).result;
+                if (r != null && r.getStart() == range[1] && (lastBound ? r.getTime() > time : r.getTime() >= time))
+                    high = r;
+            }
+        }
+
         while (high.getStart() - low.getEnd() > 8 * 1024) {
             long mid = (low.getEnd() + high.getStart()) >>> 1;
 
-            FindFirstProcessor processor;
-
-            processor = new FindFirstProcessor();
-            buffer.processRecords(mid, false, processor);
+            FindFirstProcessor processor = probe(buffer, mid, useCache);
             assert processor.result != null;
 
-//            if (cache == null) {
-//                processor = new FindFirstProcessor();
-//                buffer.processRecords(mid, false, processor);
-//                assert processor.result != null;
-//            }
-//            else {
-//                try {
-//                    processor = cache.get(mid, () -> {
-//                        search++;
-//                        FindFirstProcessor p = new FindFirstProcessor();
-//                        buffer.processRecords(mid, false, p);
-//                        assert p.result != null;
-//                        return p;
-//                    });
-//                } catch (ExecutionException e) {
-//                    throw new RuntimeException(e.getCause());
-//                }
-//            }
-
             assert processor.result.getStart() > low.getStart();
             assert processor.result.getEnd() < high.getEnd();
 
@@ -186,8 +211,35 @@ public class LogIndex {
         return res[0];
     }
 
-//    private static int req = 0;
-//    private static int search = 0;
+    private FindFirstProcessor probe(Snapshot buffer, long position, boolean useCache) throws IOException {
+        if (!useCache)
+            return doProbe(buffer, position);
+
+        FindFirstProcessor res;
+
+        try {
+            res = probeCache.get(position, p -> {
+                try {
+                    return doProbe(buffer, p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (res.result == null)
+            probeCache.invalidate(position); // A record with timestamp may appear after the file grows
+
+        return res;
+    }
+
+    private static FindFirstProcessor doProbe(Snapshot buffer, long position) throws IOException {
+        FindFirstProcessor processor = new FindFirstProcessor();
+        buffer.processRecords(position, false, processor);
+        return processor;
+    }
 
     private static class FindFirstProcessor implements Predicate<LogRecord> {
 
@@ -3,9 +3,22 @@ package com.logviewer.data2;
 public abstract class LogReader {
 
     public boolean parseRecord(BufferedFile.Line line) {
+        if (!canStartRecord(line.getBuf(), line.getBufOffset(), line.getDataLength()))
+            return false;
+
         return parseRecord(line.getBuf(), line.getBufOffset(), line.getDataLength(), line.getStart(), line.getEnd());
     }
 
+    /**
+     * A cheap check that the line may be a record start. The check is called before
+     * {@link #parseRecord(byte[], int, int, long, long)}, the full parsing is skipped if the method returns {@code false}.
+     *
+     * @return {@code false} if the line definitely cannot be parsed by this reader.
+     */
+    public boolean canStartRecord(byte[] data, int offset, int length) {
+        return true;
+    }
+
     public abstract boolean parseRecord(byte[] data, int offset, int length, long start, long end);
 
     public abstract boolean canAppendTail();
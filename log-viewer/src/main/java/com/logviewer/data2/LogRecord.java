@@ -3,11 +3,13 @@ package com.logviewer.data2;
 import com.logviewer.utils.TextRange;
 import com.logviewer.utils.Utils;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class LogRecord implements Comparable<LogRecord>, Externalizable {
@@ -19,14 +21,30 @@ public class LogRecord implements Comparable<LogRecord>, Externalizable {
 
     private String logId;
 
-    private String message;
+    /**
+     * The record text, {@code null} if the record is created from the raw bytes and the text has not been requested yet.
+     */
+    private volatile String message;
+
+    /**
+     * The raw ASCII text of the record, the message is decoded on the first {@link #getMessage()} call. Many records
+     * are dropped by the time filters right after parsing, such records don't need the message at all.
+     */
+    private byte[] asciiText;
+
+    /**
+     * The end offsets of the lines in {@link #asciiText} if the lines contain color codes to remove, {@code null} if
+     * the text doesn't contain color codes, in this case the field positions are the offsets in {@link #asciiText}.
+     * Unlike {@link #asciiText}, the field is not cleared after decoding.
+     */
+    private int[] asciiLineEnds;
 
     /**
      * Timestamp in NANOseconds.
      */
     private long timeNanos;
 
-    private Map<String, Integer> fieldNames;
+    private FieldSchema fieldNames;
     private int[] fieldPositions;
 
     private long start;
@@ -46,7 +64,7 @@ public class LogRecord implements Comparable<LogRecord>, Externalizable {
     }
 
     public LogRecord(@NonNull String message, long timeNanos, long start, long end, int loadedTextLengthBytes) {
-        this(message, timeNanos, start, end, loadedTextLengthBytes, Utils.EMPTY_INT_ARRAY, Collections.emptyMap());
+        this(message, timeNanos, start, end, loadedTextLengthBytes, Utils.EMPTY_INT_ARRAY, FieldSchema.EMPTY);
     }
 
     public LogRecord(@NonNull String message, long timeNanos, long start, long end, int loadedTextLengthBytes,
@@ -63,7 +81,62 @@ public class LogRecord implements Comparable<LogRecord>, Externalizable {
         this.loadedTextLengthBytes = loadedTextLengthBytes;
 
         this.fieldPositions = fieldPositions;
-        this.fieldNames = fieldNames;
+        this.fieldNames = FieldSchema.of(fieldNames);
+    }
+
+    /**
+     * Creates a record with the text that will be decoded on demand.
+     *
+     * @param asciiText the record text, the bytes must be in the range [0, 127]. The array is owned by the record.
+     * @param lineEnds the end offsets of the lines in {@code asciiText} if the lines contain color codes, the codes are
+     *                 removed from each line separately, the same way as {@link Utils#removeAsciiColorCodes(String)} does.
+     *                 {@code null} if the text contains no color codes.
+     */
+    public LogRecord(@NonNull byte[] asciiText, @Nullable int[] lineEnds, long timeNanos, long start, long end,
+                     int loadedTextLengthBytes, @NonNull int[] fieldPositions, @NonNull Map<String, Integer> fieldNames) {
+        assert fieldPositions.length == fieldNames.size() * 2;
+
+        Utils.assertValidTimestamp(timeNanos);
+
+        this.asciiText = asciiText;
+        this.asciiLineEnds = lineEnds;
+        this.timeNanos = timeNanos;
+
+        this.start = start;
+        this.end = end;
+        this.loadedTextLengthBytes = loadedTextLengthBytes;
+
+        this.fieldPositions = fieldPositions;
+        this.fieldNames = FieldSchema.of(fieldNames);
+    }
+
+    private LogRecord(@NonNull LogRecord record, @NonNull int[] fieldPositions, @NonNull Map<String, Integer> fieldNames) {
+        byte[] text = record.asciiText;
+        if (text != null) {
+            this.asciiText = text;
+            this.asciiLineEnds = record.asciiLineEnds;
+        } else {
+            this.message = record.getMessage();
+        }
+
+        this.logId = record.logId;
+        this.timeNanos = record.timeNanos;
+        this.start = record.start;
+        this.end = record.end;
+        this.loadedTextLengthBytes = record.loadedTextLengthBytes;
+
+        this.fieldPositions = fieldPositions;
+        this.fieldNames = FieldSchema.of(fieldNames);
+    }
+
+    /**
+     * Creates a copy of the record with other fields. The text is not decoded if the record has not decoded it yet.
+     */
+    @NonNull
+    public LogRecord withFields(@NonNull int[] fieldPositions, @NonNull Map<String, Integer> fieldNames) {
+        assert fieldPositions.length == fieldNames.size() * 2;
+
+        return new LogRecord(this, fieldPositions, fieldNames);
     }
 
     public String getLogId() {
@@ -104,12 +177,42 @@ public class LogRecord implements Comparable<LogRecord>, Externalizable {
     }
 
     public String getMessage() {
-        return message;
+        String res = message;
+
+        if (res == null) {
+            synchronized (this) {
+                res = message;
+
+                if (res == null) {
+                    res = decodeMessage();
+                    message = res;
+                    asciiText = null;
+                }
+            }
+        }
+
+        return res;
+    }
+
+    private String decodeMessage() {
+        if (asciiLineEnds == null)
+            return new String(asciiText, StandardCharsets.ISO_8859_1);
+
+        StringBuilder res = new StringBuilder(asciiText.length);
+
+        int lineStart = 0;
+
+        for (int lineEnd : asciiLineEnds) {
+            res.append(Utils.removeAsciiColorCodes(new String(asciiText, lineStart, lineEnd - lineStart, StandardCharsets.ISO_8859_1)));
+            lineStart = lineEnd;
+        }
+
+        return res.toString();
     }
 
     public TextRange getFieldOffset(String fieldName) {
-        Integer fieldIndex = fieldNames.get(fieldName);
-        if (fieldIndex == null)
+        int fieldIndex = fieldNames.indexOf(fieldName);
+        if (fieldIndex < 0)
             return null;
 
         int i = fieldIndex * 2;
@@ -121,22 +224,50 @@ public class LogRecord implements Comparable<LogRecord>, Externalizable {
     }
 
     public String getFieldText(String fieldName) {
-        Integer fieldIndex = fieldNames.get(fieldName);
-        if (fieldIndex == null)
+        int fieldIndex = fieldNames.indexOf(fieldName);
+        if (fieldIndex < 0)
             return null;
-        
+
+        return getFieldText(fieldIndex);
+    }
+
+    /**
+     * @param fieldIndex the index of the field in {@link #getFieldSchema()}.
+     * @return the field text or {@code null} if the field is absent in the record.
+     */
+    public String getFieldText(int fieldIndex) {
         int i = fieldIndex * 2;
 
         if (fieldPositions[i] == -1)
             return null;
 
-        return message.substring(fieldPositions[i], fieldPositions[i + 1]);
+        // The field is read from the raw text without decoding the whole message
+        byte[] text = asciiText;
+        if (text != null && asciiLineEnds == null)
+            return new String(text, fieldPositions[i], fieldPositions[i + 1] - fieldPositions[i], StandardCharsets.ISO_8859_1);
+
+        return getMessage().substring(fieldPositions[i], fieldPositions[i + 1]);
     }
 
     public Set<String> getFieldNames() {
         return fieldNames.keySet();
     }
 
+    /**
+     * The map from a field name to the field index in {@link #getFieldPositions()}. The map must not be modified.
+     */
+    public Map<String, Integer> getFieldIndexes() {
+        return fieldNames;
+    }
+
+    /**
+     * The same as {@link #getFieldIndexes()}. The records of one log share the schema instance.
+     */
+    @NonNull
+    public FieldSchema getFieldSchema() {
+        return fieldNames;
+    }
+
     /**
      * An array containing field positions. The start offset of a field with index "i" is located in getFieldPositions()[i * 2],
      * the end is in getFieldPositions()[i * 2 + 1]
@@ -147,7 +278,7 @@ public class LogRecord implements Comparable<LogRecord>, Externalizable {
 
     @Override
     public String toString() {
-        return message;
+        return getMessage();
     }
 
     @Override
@@ -166,7 +297,7 @@ public class LogRecord implements Comparable<LogRecord>, Externalizable {
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
         out.writeUTF(logId);
-        out.writeObject(message); // Don't use writeUTF(), it has a limit on string length!!!
+        out.writeObject(getMessage()); // Don't use writeUTF(), it has a limit on string length!!!
         out.writeLong(timeNanos);
         out.writeLong(start);
         out.writeLong(end);
@@ -201,10 +332,12 @@ public class LogRecord implements Comparable<LogRecord>, Externalizable {
             fieldPositions[i] = in.readInt();
         }
 
-        fieldNames = new LinkedHashMap<>();
+        String[] names = new String[fieldCount];
         for (int i = 0; i < fieldCount; i++) {
-            fieldNames.put(in.readUTF(), i);
+            names[i] = in.readUTF();
         }
+
+        fieldNames = FieldSchema.of(names);
     }
 
     @NonNull
@@ -218,13 +351,13 @@ public class LogRecord implements Comparable<LogRecord>, Externalizable {
         if (o == null || getClass() != o.getClass()) return false;
         LogRecord record = (LogRecord) o;
         return timeNanos == record.timeNanos && start == record.start && end == record.end && loadedTextLengthBytes == record.loadedTextLengthBytes
-                && logId.equals(record.logId) && message.equals(record.message)
+                && logId.equals(record.logId) && getMessage().equals(record.getMessage())
                 && Arrays.equals(fieldPositions, record.fieldPositions)
-                && fieldNames.keySet().equals(record.fieldNames.keySet());
+                && (fieldNames == record.fieldNames || fieldNames.keySet().equals(record.fieldNames.keySet()));
     }
 
     @Override
     public int hashCode() {
-        return message.hashCode();
+        return getMessage().hashCode();
     }
 }
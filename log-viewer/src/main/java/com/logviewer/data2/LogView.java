@@ -37,6 +37,17 @@ public interface LogView {
     @Nullable
     Destroyer addChangeListener(Consumer<FileAttributes> changeListener);
 
+    /**
+     * Adds a listener of the progress of unpacking or indexing the archive. The log is readable while the archive is
+     * being prepared, the prepared part grows like an appended log.
+     *
+     * @return {@code null} if the log doesn't report the progress.
+     */
+    @Nullable
+    default Destroyer addPreparationListener(Consumer<ArchivePreparationProgress> listener) {
+        return null;
+    }
+
     CompletableFuture<Throwable> tryRead();
 
     CompletableFuture<LogRecord> readRecordAt(long offset);
@@ -0,0 +1,120 @@
+package com.logviewer.data2;
+
+import com.logviewer.utils.Utils;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A memory-mapped view of a log file. The instance is shared between the snapshots of the same {@link Log}, the snapshots
+ * read the data from the page cache directly, without system calls. The file is mapped by chunks of 1Gb, the last chunk is
+ * remapped when the file grows. The instance is reference counted, the file is closed when the last snapshot releases it.
+ */
+class MappedLogFile implements BufferedFile.Source {
+
+    private static final int CHUNK_SIZE_BITS = 30;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_SIZE_BITS;
+
+    private final Path path;
+
+    @Nullable
+    private final Object fileKey;
+
+    private final FileChannel channel;
+
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+    private int refCount = 1;
+
+    MappedLogFile(@NonNull Path path, @Nullable Object fileKey) throws IOException {
+        this.path = path;
+        this.fileKey = fileKey;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    /**
+     * @return {@code true} if the mapping can be used to read the specified file.
+     */
+    boolean isMappingOf(@NonNull Path path, @Nullable Object fileKey) {
+        return this.path.equals(path) && fileKey != null && Objects.equals(this.fileKey, fileKey);
+    }
+
+    /**
+     * Increments the reference counter.
+     *
+     * @return {@code false} if the mapping has been closed already.
+     */
+    synchronized boolean retain() {
+        if (refCount == 0)
+            return false;
+
+        refCount++;
+        return true;
+    }
+
+    void release() {
+        synchronized (this) {
+            assert refCount > 0;
+
+            if (--refCount > 0)
+                return;
+
+            chunks = new MappedByteBuffer[0];
+        }
+
+        // The mapped buffers are unmapped by GC.
+        Utils.closeQuietly(channel);
+    }
+
+    @Override
+    public void read(long position, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            int chunkIdx = (int) (position >>> CHUNK_SIZE_BITS);
+            int offset = (int) (position & (CHUNK_SIZE - 1));
+            int length = Math.min(buf.remaining(), CHUNK_SIZE - offset);
+
+            ByteBuffer chunk = getChunk(chunkIdx, offset + length).duplicate();
+            Utils.setLimitSafely(chunk, offset + length);
+            Utils.setPositionSafely(chunk, offset);
+
+            try {
+                buf.put(chunk);
+            } catch (InternalError e) {
+                // The file has been truncated after mapping, the JVM reports SIGBUS as InternalError
+                throw new EOFException(path.toString());
+            }
+
+            position += length;
+        }
+    }
+
+    private synchronized MappedByteBuffer getChunk(int idx, int requiredLength) throws IOException {
+        if (idx >= chunks.length)
+            chunks = Arrays.copyOf(chunks, idx + 1);
+
+        MappedByteBuffer res = chunks[idx];
+
+        if (res == null || res.capacity() < requiredLength) {
+            long chunkStart = (long) idx << CHUNK_SIZE_BITS;
+            long length = Math.min(CHUNK_SIZE, channel.size() - chunkStart);
+
+            if (length < requiredLength)
+                throw new EOFException(path.toString());
+
+            res = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, length);
+            chunks[idx] = res;
+        }
+
+        return res;
+    }
+}
@@ -12,16 +12,47 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
+import java.util.zip.Deflater;
 
 public abstract class AbstractConnection implements AutoCloseable {
 
     private static final int OUTCOME_BUFFER_SIZE = 1024*1024;
 
+    /**
+     * The features negotiated during the handshake, the client offers the features it supports, the server answers with
+     * the supported subset. See {@link OutcomeConnection#init()}.
+     */
+    public static final int FEATURE_BINARY_PROTOCOL = 1;
+    public static final int FEATURE_COMPRESSION = 2;
+
+    protected static final int SUPPORTED_FEATURES = FEATURE_BINARY_PROTOCOL | FEATURE_COMPRESSION;
+
+    /**
+     * The maximum size of uncompressed data in one compressed chunk.
+     */
+    private static final int COMPRESSION_CHUNK_SIZE = 256 * 1024;
+
     private static final Logger LOG = LoggerFactory.getLogger(AbstractConnection.class);
 
     private final AsynchronousSocketChannel socket;
 
-    private final MessageReader messageReader = new MessageReader();
+    private final BinaryMessageCodec codec = new BinaryMessageCodec();
+
+    private final MessageReader messageReader = new MessageReader(codec);
+
+    /**
+     * Whether the outgoing messages are encoded by {@link #codec}, the peer must confirm that it supports the binary protocol.
+     */
+    private boolean binaryProtocol;
+
+    /**
+     * Compresses the outgoing data, {@code null} if the peer doesn't support compression.
+     */
+    private Deflater deflater;
+    private byte[] deflaterBuffer;
+
+    private volatile long uncompressedBytesSent;
+    private volatile long compressedBytesSent;
 
     private OpenByteArrayOutputStream outcomeMsgQueue;
 
@@ -39,6 +70,18 @@ public abstract class AbstractConnection implements AutoCloseable {
         closed = true;
         Utils.closeQuietly(socket);
 
+        notifyAll(); // Wake up the threads waiting for free space in the outgoing queue
+
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+
+        if (LOG.isDebugEnabled() && (compressedBytesSent > 0 || messageReader.getCompressedBytesReceived() > 0)) {
+            LOG.debug("Connection closed, compression ratio [sent={}, received={}]", getSentCompressionRatio(),
+                    getReceivedCompressionRatio());
+        }
+
         onDisconnect();
     }
 
@@ -48,6 +91,87 @@ public abstract class AbstractConnection implements AutoCloseable {
 
     protected abstract void handleMessage(Object message);
 
+    /**
+     * Enables the features for the outgoing data, must be called when the peer has confirmed that it supports
+     * the features. The incoming data may use any feature at any moment.
+     *
+     * @param features the bit mask of FEATURE_* constants.
+     */
+    protected synchronized void enableFeatures(int features) {
+        if ((features & FEATURE_BINARY_PROTOCOL) != 0)
+            binaryProtocol = true;
+
+        if ((features & FEATURE_COMPRESSION) != 0 && deflater == null && !closed) {
+            deflater = new Deflater(Deflater.BEST_SPEED, true);
+            deflaterBuffer = new byte[64 * 1024];
+        }
+    }
+
+    public synchronized boolean isBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    public synchronized boolean isCompressionEnabled() {
+        return deflater != null;
+    }
+
+    /**
+     * @return the ratio of the data size to the size of data sent through the socket, {@code 1} if the compression is disabled.
+     */
+    public double getSentCompressionRatio() {
+        long compressed = compressedBytesSent;
+        return compressed == 0 ? 1 : (double) uncompressedBytesSent / compressed;
+    }
+
+    /**
+     * @return the ratio of the decompressed data size to the size of data received from the socket, {@code 1} if
+     * the peer doesn't compress data.
+     */
+    public double getReceivedCompressionRatio() {
+        long compressed = messageReader.getCompressedBytesReceived();
+        return compressed == 0 ? 1 : (double) messageReader.getDecompressedBytesReceived() / compressed;
+    }
+
+    /**
+     * Converts the serialized messages to the data sent through the socket. The data is compressed per batch of messages,
+     * the Deflate stream is flushed at the end of each batch, so the peer can decode all the messages of the batch immediately.
+     */
+    private ByteBuffer toSocketData(OpenByteArrayOutputStream messages) {
+        assert Thread.holdsLock(this);
+
+        if (deflater == null)
+            return ByteBuffer.wrap(messages.getBuffer(), 0, messages.size());
+
+        byte[] data = messages.getBuffer();
+        int length = messages.size();
+
+        OpenByteArrayOutputStream res = new OpenByteArrayOutputStream(length / 4 + 64);
+
+        for (int off = 0; off < length; off += COMPRESSION_CHUNK_SIZE) {
+            int chunkStart = res.size();
+
+            res.write(0);
+            res.write(0);
+            res.write(0);
+            res.write(0);
+
+            deflater.setInput(data, off, Math.min(COMPRESSION_CHUNK_SIZE, length - off));
+
+            int n;
+            do {
+                n = deflater.deflate(deflaterBuffer, 0, deflaterBuffer.length, Deflater.SYNC_FLUSH);
+                res.write(deflaterBuffer, 0, n);
+            } while (n == deflaterBuffer.length);
+
+            ByteBuffer.wrap(res.getBuffer()).putInt(chunkStart, (res.size() - chunkStart - 4) | MessageReader.COMPRESSED_CHUNK_FLAG);
+        }
+
+        uncompressedBytesSent += length;
+        compressedBytesSent += res.size();
+
+        return ByteBuffer.wrap(res.getBuffer(), 0, res.size());
+    }
+
     protected synchronized void sendMessage(Message message) {
         WriteCompletionHandler handler = new WriteCompletionHandler();
 
@@ -66,16 +190,16 @@ public abstract class AbstractConnection implements AutoCloseable {
                         continue;
                     }
 
-                    MessageReader.serializeMessages(outcomeMsgQueue, message);
+                    MessageReader.serializeMessages(outcomeMsgQueue, message, binaryProtocol ? codec : null);
                     break;
                 }
 
                 OpenByteArrayOutputStream buff = new OpenByteArrayOutputStream();
-                MessageReader.serializeMessages(buff, message);
+                MessageReader.serializeMessages(buff, message, binaryProtocol ? codec : null);
 
                 outcomeMsgQueue = new OpenByteArrayOutputStream();
 
-                ByteBuffer byteBuffer = ByteBuffer.wrap(buff.getBuffer(), 0, buff.size());
+                ByteBuffer byteBuffer = toSocketData(buff);
 
                 socket.write(byteBuffer, byteBuffer, handler);
                 break;
@@ -101,8 +225,7 @@ public abstract class AbstractConnection implements AutoCloseable {
                 }
 
                 try {
-                    Object msg = messageReader.onReceive();
-                    if (msg != null) {
+                    for (Object msg = messageReader.onReceive(); msg != null; msg = messageReader.pollMessage()) {
                         handleMessage(msg);
                     }
 
@@ -148,7 +271,7 @@ public abstract class AbstractConnection implements AutoCloseable {
                         outcomeMsgQueue = null;
                     }
                     else {
-                        ByteBuffer bb = ByteBuffer.wrap(outcomeMsgQueue.getBuffer(), 0, outcomeMsgQueue.size());
+                        ByteBuffer bb = toSocketData(outcomeMsgQueue);
                         outcomeMsgQueue = new OpenByteArrayOutputStream();
                         socket.write(bb, bb, this);
                     }
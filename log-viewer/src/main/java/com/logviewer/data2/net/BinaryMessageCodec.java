@@ -0,0 +1,598 @@
+package com.logviewer.data2.net;
+
+import com.logviewer.data2.FieldSchema;
+import com.logviewer.data2.LogRecord;
+import com.logviewer.data2.RecordList;
+import com.logviewer.data2.net.server.Message;
+import com.logviewer.data2.net.server.msg.MessageTaskCallbackCall;
+import com.logviewer.data2.net.server.msg.MessageTaskChangeEvent;
+import com.logviewer.utils.MessageReader;
+import com.logviewer.utils.OpenByteArrayOutputStream;
+import com.logviewer.utils.Pair;
+import com.logviewer.web.session.SearchResult;
+import com.logviewer.web.session.Status;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A compact binary encoding of the messages sent between the nodes. The record batches, the statuses, the search results
+ * and the task cancellation are encoded natively: the numbers are written as varints, the log ids, hashes and field name
+ * sets are replaced with the references to a per-connection dictionary. The other messages and values are written using
+ * Java serialization.
+ * <p>
+ * The codec is stateful, one instance must be used per connection. The messages must be decoded in the same order as
+ * they have been encoded. The encoding methods must be called under the connection lock, the decoding methods must be called
+ * from the reading thread only.
+ * <p>
+ * The nodes negotiate the protocol when the connection is established: the client sends {@link MessageTaskChangeEvent}
+ * with a negative task id containing the offered features, the nodes that don't support the binary protocol ignore
+ * the events of unknown tasks. The server answers with {@link MessageTaskCallbackCall} having a negative task id, after
+ * that both nodes send binary messages. Each node can read both formats. See {@link AbstractConnection#FEATURE_BINARY_PROTOCOL}.
+ */
+public class BinaryMessageCodec {
+
+    public static final int VERSION = 1;
+
+    private static final int MAX_DICTIONARY_SIZE = 16 * 1024;
+    private static final int MAX_DICTIONARY_STRING_LENGTH = 512;
+
+    private static final int MSG_JAVA = 0;
+    private static final int MSG_CALLBACK = 1;
+    private static final int MSG_CANCEL_TASK = 2;
+
+    private static final int VAL_NULL = 0;
+    private static final int VAL_JAVA = 1;
+    private static final int VAL_RECORD_LIST = 2;
+    private static final int VAL_STATUS_AND_EOF = 3;
+    private static final int VAL_SEARCH_RESULT = 4;
+
+    private static final int REF_NULL = 0;
+    private static final int REF_NEW_ENTRY = 1;
+    private static final int REF_INLINE = 2;
+    private static final int REF_DICTIONARY = 3;
+
+    private static final int CALLBACK_TASK_STOPPED = 1;
+    private static final int CALLBACK_ERROR = 2;
+
+    private static final int SEARCH_RESULT_HAS_DATA = 1;
+    private static final int SEARCH_RESULT_HAS_SKIPPED_LINE = 2;
+    private static final int SEARCH_RESULT_FOUND = 4;
+
+    private final Map<String, Integer> outStrings = new HashMap<>();
+    private final Map<List<String>, Integer> outSchemas = new HashMap<>();
+    private final Map<Map<String, Integer>, Integer> outSchemaByInstance = new IdentityHashMap<>();
+
+    /**
+     * The dictionary entries added by the message being encoded, they are removed if the encoding fails.
+     */
+    private final List<Object> addedEntries = new ArrayList<>();
+
+    private final List<String> inStrings = new ArrayList<>();
+    private final List<FieldSchema> inSchemas = new ArrayList<>();
+
+    public void encode(@NonNull OutputStream out, @NonNull Message message) throws IOException {
+        assert addedEntries.isEmpty();
+
+        Output o = new Output();
+
+        try {
+            o.writeByte(VERSION);
+
+            if (message instanceof MessageTaskCallbackCall) {
+                MessageTaskCallbackCall call = (MessageTaskCallbackCall) message;
+
+                o.writeByte(MSG_CALLBACK);
+                o.writeSignedVarLong(call.getTaskId());
+                o.writeByte((call.isTaskStopped() ? CALLBACK_TASK_STOPPED : 0) | (call.getError() != null ? CALLBACK_ERROR : 0));
+
+                if (call.getError() != null) {
+                    assert call.isTaskStopped();
+                    writeJavaObject(o, call.getError());
+                } else {
+                    writeValue(o, call.getEvent());
+                }
+            } else if (message instanceof MessageTaskChangeEvent && ((MessageTaskChangeEvent) message).getModifier() == null) {
+                o.writeByte(MSG_CANCEL_TASK);
+                o.writeSignedVarLong(((MessageTaskChangeEvent) message).getTaskId());
+            } else {
+                o.writeByte(MSG_JAVA);
+                writeJavaObject(o, message);
+            }
+
+            if (o.size > MessageReader.MAX_MESSAGE_SIZE)
+                throw new IllegalArgumentException("Message too big: " + o.size);
+        } catch (IOException | RuntimeException e) {
+            rollbackDictionary();
+            throw e;
+        }
+
+        addedEntries.clear();
+
+        out.write(o.buf, 0, o.size);
+    }
+
+    @NonNull
+    public Message decode(@NonNull byte[] data, int offset, int length) throws IOException, ClassNotFoundException {
+        Input in = new Input(data, offset, offset + length);
+
+        int version = in.readByte();
+        if (version < 1 || version > VERSION)
+            throw new IOException("Unsupported binary protocol version: " + version);
+
+        int type = in.readByte();
+
+        Message res;
+
+        switch (type) {
+            case MSG_CALLBACK: {
+                long taskId = in.readSignedVarLong();
+                int flags = in.readByte();
+
+                if ((flags & CALLBACK_ERROR) != 0) {
+                    res = new MessageTaskCallbackCall(taskId, (Throwable) readJavaObject(in));
+                } else {
+                    res = new MessageTaskCallbackCall(taskId, readValue(in), (flags & CALLBACK_TASK_STOPPED) != 0);
+                }
+                break;
+            }
+
+            case MSG_CANCEL_TASK:
+                res = new MessageTaskChangeEvent(in.readSignedVarLong(), null);
+                break;
+
+            case MSG_JAVA:
+                res = (Message) readJavaObject(in);
+                break;
+
+            default:
+                throw new IOException("Unknown message type: " + type);
+        }
+
+        if (in.pos != in.end)
+            throw new IOException("Invalid message length");
+
+        return res;
+    }
+
+    private void writeValue(Output o, @Nullable Object value) throws IOException {
+        if (value == null) {
+            o.writeByte(VAL_NULL);
+        } else if (value.getClass() == RecordList.class) {
+            o.writeByte(VAL_RECORD_LIST);
+            writeRecordList(o, (RecordList) value);
+        } else if (value instanceof Pair && ((Pair<?, ?>) value).getFirst() instanceof Status
+                && ((Pair<?, ?>) value).getSecond() instanceof Boolean) {
+            // The result of RecordLoaderRemoteTask
+            o.writeByte(VAL_STATUS_AND_EOF);
+            writeStatus(o, (Status) ((Pair<?, ?>) value).getFirst());
+            o.writeByte((Boolean) ((Pair<?, ?>) value).getSecond() ? 1 : 0);
+        } else if (value.getClass() == SearchResult.class) {
+            SearchResult searchResult = (SearchResult) value;
+
+            o.writeByte(VAL_SEARCH_RESULT);
+            o.writeByte((searchResult.getData() != null ? SEARCH_RESULT_HAS_DATA : 0)
+                    | (searchResult.isHasSkippedLine() ? SEARCH_RESULT_HAS_SKIPPED_LINE : 0)
+                    | (searchResult.isFound() ? SEARCH_RESULT_FOUND : 0));
+
+            if (searchResult.getData() != null)
+                writeRecordList(o, searchResult.getData());
+
+            writeStatus(o, searchResult.getStatus());
+        } else {
+            o.writeByte(VAL_JAVA);
+            writeJavaObject(o, value);
+        }
+    }
+
+    private Object readValue(Input in) throws IOException, ClassNotFoundException {
+        int type = in.readByte();
+
+        switch (type) {
+            case VAL_NULL:
+                return null;
+
+            case VAL_JAVA:
+                return readJavaObject(in);
+
+            case VAL_RECORD_LIST:
+                return readRecordList(in);
+
+            case VAL_STATUS_AND_EOF: {
+                Status status = readStatus(in);
+                return Pair.of(status, in.readByte() != 0);
+            }
+
+            case VAL_SEARCH_RESULT: {
+                int flags = in.readByte();
+                RecordList data = (flags & SEARCH_RESULT_HAS_DATA) != 0 ? readRecordList(in) : null;
+                Status status = readStatus(in);
+
+                return new SearchResult(data, status, (flags & SEARCH_RESULT_HAS_SKIPPED_LINE) != 0,
+                        (flags & SEARCH_RESULT_FOUND) != 0);
+            }
+
+            default:
+                throw new IOException("Unknown value type: " + type);
+        }
+    }
+
+    private void writeStatus(Output o, Status status) throws IOException {
+        if (status.getError() != null) {
+            o.writeByte(1);
+            writeJavaObject(o, status.getError());
+        } else {
+            o.writeByte(0);
+            writeDictionaryString(o, status.getHash());
+            o.writeVarLong(status.getSize());
+            o.writeSignedVarLong(status.getLastModification());
+        }
+    }
+
+    private Status readStatus(Input in) throws IOException, ClassNotFoundException {
+        if (in.readByte() != 0)
+            return new Status((Throwable) readJavaObject(in));
+
+        String hash = readDictionaryString(in);
+        long size = in.readVarLong();
+        long lastModification = in.readSignedVarLong();
+
+        return new Status(hash, size, lastModification);
+    }
+
+    private void writeRecordList(Output o, RecordList list) throws IOException {
+        o.writeVarLong(list.size());
+
+        long prevEnd = 0;
+
+        for (Pair<LogRecord, Throwable> pair : list) {
+            LogRecord record = pair.getFirst();
+
+            writeDictionaryString(o, record.getLogId());
+            o.writeString(record.getMessage());
+            o.writeSignedVarLong(record.getTime()); // The dates before 1970 are negative
+
+            // The records are usually adjacent, the offset of the record relative to the previous one is small
+            o.writeSignedVarLong(record.getStart() - prevEnd);
+            o.writeVarLong(record.getEnd() - record.getStart());
+            o.writeSignedVarLong((record.getEnd() - record.getStart()) - record.getLoadedTextLengthBytes());
+            prevEnd = record.getEnd();
+
+            writeSchema(o, record.getFieldIndexes());
+
+            int[] fieldPositions = record.getFieldPositions();
+            for (int fieldPosition : fieldPositions) {
+                o.writeSignedVarLong(fieldPosition);
+            }
+
+            if (pair.getSecond() == null) {
+                o.writeByte(0);
+            } else {
+                o.writeByte(1);
+                writeJavaObject(o, pair.getSecond());
+            }
+        }
+    }
+
+    private RecordList readRecordList(Input in) throws IOException, ClassNotFoundException {
+        int size = (int) in.readVarLong();
+
+        RecordList res = new RecordList();
+        res.ensureCapacity(size);
+
+        long prevEnd = 0;
+
+        for (int i = 0; i < size; i++) {
+            String logId = readDictionaryString(in);
+            String message = in.readString();
+            long time = in.readSignedVarLong();
+            long start = prevEnd + in.readSignedVarLong();
+            long end = start + in.readVarLong();
+            int loadedTextLengthBytes = (int) ((end - start) - in.readSignedVarLong());
+            prevEnd = end;
+
+            FieldSchema fieldIndexes = readSchema(in);
+
+            int[] fieldPositions = new int[fieldIndexes.size() * 2];
+            for (int j = 0; j < fieldPositions.length; j++) {
+                fieldPositions[j] = (int) in.readSignedVarLong();
+            }
+
+            Throwable error = in.readByte() == 0 ? null : (Throwable) readJavaObject(in);
+
+            LogRecord record = new LogRecord(message, time, start, end, loadedTextLengthBytes, fieldPositions, fieldIndexes);
+            record.setLogId(logId);
+
+            res.add(Pair.of(record, error));
+        }
+
+        return res;
+    }
+
+    private void writeSchema(Output o, Map<String, Integer> fieldIndexes) {
+        Integer id = outSchemaByInstance.get(fieldIndexes);
+
+        if (id == null) {
+            String[] names = new String[fieldIndexes.size()];
+            for (Map.Entry<String, Integer> entry : fieldIndexes.entrySet()) {
+                names[entry.getValue()] = entry.getKey();
+            }
+
+            List<String> key = Arrays.asList(names);
+
+            id = outSchemas.get(key);
+
+            if (id == null) {
+                if (outSchemas.size() < MAX_DICTIONARY_SIZE) {
+                    id = outSchemas.size();
+                    outSchemas.put(key, id);
+                    addedEntries.add(key);
+
+                    o.writeVarLong(REF_NEW_ENTRY);
+                } else {
+                    o.writeVarLong(REF_INLINE);
+                }
+
+                o.writeVarLong(names.length);
+                for (String name : names) {
+                    o.writeString(name);
+                }
+
+                if (id == null)
+                    return;
+            } else {
+                o.writeVarLong(REF_DICTIONARY + id);
+            }
+
+            if (outSchemaByInstance.size() < MAX_DICTIONARY_SIZE)
+                outSchemaByInstance.put(fieldIndexes, id);
+        } else {
+            o.writeVarLong(REF_DICTIONARY + id);
+        }
+    }
+
+    private FieldSchema readSchema(Input in) throws IOException {
+        long header = in.readVarLong();
+
+        if (header >= REF_DICTIONARY) {
+            long id = header - REF_DICTIONARY;
+            if (id >= inSchemas.size())
+                throw new IOException("Invalid field set reference: " + id);
+
+            return inSchemas.get((int) id);
+        }
+
+        if (header != REF_NEW_ENTRY && header != REF_INLINE)
+            throw new IOException("Invalid field set header: " + header);
+
+        int size = (int) in.readVarLong();
+
+        String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = in.readString();
+        }
+
+        FieldSchema res;
+
+        try {
+            // The schemas are interned, the records of a remote log share the schema instance with the local records
+            res = FieldSchema.of(names);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid field set: " + e.getMessage(), e);
+        }
+
+        if (header == REF_NEW_ENTRY)
+            inSchemas.add(res);
+
+        return res;
+    }
+
+    private void writeDictionaryString(Output o, @Nullable String s) {
+        if (s == null) {
+            o.writeVarLong(REF_NULL);
+            return;
+        }
+
+        Integer id = outStrings.get(s);
+        if (id != null) {
+            o.writeVarLong(REF_DICTIONARY + id);
+            return;
+        }
+
+        if (s.length() <= MAX_DICTIONARY_STRING_LENGTH && outStrings.size() < MAX_DICTIONARY_SIZE) {
+            outStrings.put(s, outStrings.size());
+            addedEntries.add(s);
+
+            o.writeVarLong(REF_NEW_ENTRY);
+        } else {
+            o.writeVarLong(REF_INLINE);
+        }
+
+        o.writeString(s);
+    }
+
+    private String readDictionaryString(Input in) throws IOException {
+        long header = in.readVarLong();
+
+        if (header == REF_NULL)
+            return null;
+
+        if (header == REF_NEW_ENTRY) {
+            String res = in.readString();
+            inStrings.add(res);
+            return res;
+        }
+
+        if (header == REF_INLINE)
+            return in.readString();
+
+        long id = header - REF_DICTIONARY;
+        if (id >= inStrings.size())
+            throw new IOException("Invalid string reference: " + id);
+
+        return inStrings.get((int) id);
+    }
+
+    private void rollbackDictionary() {
+        for (Object entry : addedEntries) {
+            if (entry instanceof String) {
+                outStrings.remove(entry);
+            } else {
+                outSchemas.remove(entry);
+                outSchemaByInstance.values().removeIf(id -> id >= outSchemas.size());
+            }
+        }
+
+        addedEntries.clear();
+    }
+
+    private static void writeJavaObject(Output o, Object obj) throws IOException {
+        OpenByteArrayOutputStream bOut = new OpenByteArrayOutputStream();
+
+        try (ObjectOutputStream objOut = new ObjectOutputStream(bOut)) {
+            objOut.writeObject(obj);
+        }
+
+        o.writeVarLong(bOut.size());
+        o.ensureCapacity(bOut.size());
+        System.arraycopy(bOut.getBuffer(), 0, o.buf, o.size, bOut.size());
+        o.size += bOut.size();
+    }
+
+    private static Object readJavaObject(Input in) throws IOException, ClassNotFoundException {
+        int length = (int) in.readVarLong();
+        if (length > in.end - in.pos)
+            throw new EOFException();
+
+        Object res;
+
+        try (ObjectInputStream oIn = new ObjectInputStream(new ByteArrayInputStream(in.data, in.pos, length))) {
+            res = oIn.readObject();
+        }
+
+        in.pos += length;
+
+        return res;
+    }
+
+    private static final class Output {
+        private byte[] buf = new byte[256];
+        private int size;
+
+        void ensureCapacity(int length) {
+            if (size + length > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + length));
+        }
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            buf[size++] = (byte) b;
+        }
+
+        void writeVarLong(long value) {
+            assert value >= 0;
+
+            ensureCapacity(10);
+
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            buf[size++] = (byte) value;
+        }
+
+        void writeSignedVarLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * Writes the string as the length in chars and the chars encoded like UTF-8, but each char is encoded separately,
+         * so the unpaired surrogates are preserved.
+         */
+        void writeString(String s) {
+            int length = s.length();
+
+            writeVarLong(length);
+            ensureCapacity(length * 3);
+
+            for (int i = 0; i < length; i++) {
+                char a = s.charAt(i);
+
+                if (a < 0x80) {
+                    buf[size++] = (byte) a;
+                } else if (a < 0x800) {
+                    buf[size++] = (byte) (0xC0 | (a >> 6));
+                    buf[size++] = (byte) (0x80 | (a & 0x3F));
+                } else {
+                    buf[size++] = (byte) (0xE0 | (a >> 12));
+                    buf[size++] = (byte) (0x80 | ((a >> 6) & 0x3F));
+                    buf[size++] = (byte) (0x80 | (a & 0x3F));
+                }
+            }
+        }
+    }
+
+    private static final class Input {
+        private final byte[] data;
+        private final int end;
+        private int pos;
+
+        Input(byte[] data, int pos, int end) {
+            this.data = data;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        int readByte() throws EOFException {
+            if (pos >= end)
+                throw new EOFException();
+
+            return data[pos++] & 0xFF;
+        }
+
+        long readVarLong() throws IOException {
+            long res = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                res |= (long) (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0)
+                    return res;
+            }
+
+            throw new IOException("Malformed varint");
+        }
+
+        long readSignedVarLong() throws IOException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() throws IOException {
+            long length = readVarLong();
+            if (length > end - pos)
+                throw new EOFException();
+
+            char[] chars = new char[(int) length];
+
+            for (int i = 0; i < chars.length; i++) {
+                int b = readByte();
+
+                if (b < 0x80) {
+                    chars[i] = (char) b;
+                } else if (b < 0xE0) {
+                    chars[i] = (char) (((b & 0x1F) << 6) | (readByte() & 0x3F));
+                } else {
+                    int b2 = readByte();
+                    chars[i] = (char) (((b & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (readByte() & 0x3F));
+                }
+            }
+
+            return new String(chars);
+        }
+    }
+}
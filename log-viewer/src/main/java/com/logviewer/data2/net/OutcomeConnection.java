@@ -38,10 +38,24 @@ public class OutcomeConnection extends AbstractConnection {
         this.node = node;
     }
 
+    @Override
+    public void init() {
+        super.init();
+
+        // Offer the protocol features, the nodes not supporting them ignore the events of unknown tasks
+        sendMessage(new MessageTaskChangeEvent(-SUPPORTED_FEATURES, null));
+    }
+
     protected void handleMessage(Object msg) {
         if (msg instanceof MessageTaskCallbackCall) {
             MessageTaskCallbackCall message = (MessageTaskCallbackCall) msg;
 
+            if (message.getTaskId() < 0) {
+                // The server has answered with the supported features
+                enableFeatures((int) -message.getTaskId() & SUPPORTED_FEATURES);
+                return;
+            }
+
             RemoteTaskControllerImpl controller;
             synchronized (OutcomeConnection.this) {
                 if (message.isTaskStopped()) {
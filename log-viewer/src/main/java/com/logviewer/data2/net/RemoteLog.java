@@ -48,7 +48,7 @@ public class RemoteLog implements LogView {
         this.format = format;
         this.hostname = hostname;
 
-        this.serializedFormat = LvGsonUtils.GSON.toJson(format, LogFormat.class);
+        this.serializedFormat = LvGsonUtils.COMPACT_GSON.toJson(format, LogFormat.class);
     }
 
     @Override
@@ -79,7 +79,7 @@ public class RemoteLog implements LogView {
     @Override
     public LogProcess loadRecords(RecordPredicate filter, int recordCount, Position start, boolean backward, String hash, long sizeLimit, @NonNull LogDataListener listener) {
         return new RemoteLogProcess<>(new RecordLoaderRemoteTask(path.getFile(), serializedFormat, start, backward, hash,
-                LvGsonUtils.GSON.toJson(filter, RecordPredicate.class), recordCount, sizeLimit), (o, error) -> {
+                LvGsonUtils.COMPACT_GSON.toJson(filter, RecordPredicate.class), recordCount, sizeLimit), (o, error) -> {
             if (error != null) {
                 listener.onFinish(new Status(error), true);
                 return;
@@ -103,7 +103,7 @@ public class RemoteLog implements LogView {
     public LogProcess createRecordSearcher(@NonNull Position start, boolean backward, RecordPredicate recordPredicate,
                                            @NonNull String hash, int recordCount, @NonNull SearchPattern searchPattern, @NonNull Consumer<SearchResult> listener) {
         return new RemoteLogProcess<>(new RecordSearcherRemoteTask(path.getFile(), serializedFormat,
-                start, backward, hash, LvGsonUtils.GSON.toJson(recordPredicate, RecordPredicate.class),
+                start, backward, hash, LvGsonUtils.COMPACT_GSON.toJson(recordPredicate, RecordPredicate.class),
                 recordCount, searchPattern),
                 (o, error) -> {
                     if (error != null) {
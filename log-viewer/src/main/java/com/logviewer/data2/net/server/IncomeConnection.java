@@ -82,6 +82,16 @@ public class IncomeConnection extends AbstractConnection {
 
                 long taskId = message.getTaskId();
 
+                if (taskId < 0) {
+                    // The client offers the protocol features, see OutcomeConnection#init()
+                    int features = (int) -taskId & SUPPORTED_FEATURES;
+                    if (features != 0) {
+                        sendMessage(new MessageTaskCallbackCall(-features, null, true));
+                        enableFeatures(features);
+                    }
+                    return;
+                }
+
                 RemoteTask task = tasks.get(taskId);
                 if (task == null)
                     return;
@@ -30,21 +30,19 @@ public class LogWatcherTask implements RemoteTask<FileAttributes> {
     public void start(@NonNull RemoteTaskContext<FileAttributes> ctx) {
         Path path = Paths.get(this.path).toAbsolutePath();
         try {
-            closeable = ctx.getLogService().getFileWatcherService().watchDirectory(path.getParent(), changedDirs -> {
-                if (changedDirs.contains(path)) {
-                    ctx.getLogService().getTimer().scheduleTask(this, () -> {
-                        FileAttributes attr;
-
-                        try {
-                            attr = FileAttributes.fromPath(path);
-                        } catch (IOException e) {
-                            LOG.error("Failed to read file attributes", e);
-                            return;
-                        }
-
-                        ctx.send(attr);
-                    }, DELAY);
-                }
+            closeable = ctx.getLogService().getFileWatcherService().watchFile(path, () -> {
+                ctx.getLogService().getTimer().scheduleTask(this, () -> {
+                    FileAttributes attr;
+
+                    try {
+                        attr = FileAttributes.fromPath(path);
+                    } catch (IOException e) {
+                        LOG.error("Failed to read file attributes", e);
+                        return;
+                    }
+
+                    ctx.send(attr);
+                }, DELAY);
             });
         } catch (IOException e) {
             throw new RuntimeException(e);
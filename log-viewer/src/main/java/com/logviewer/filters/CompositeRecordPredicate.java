@@ -2,19 +2,40 @@ package com.logviewer.filters;
 
 import com.logviewer.data2.LogFilterContext;
 import com.logviewer.data2.LogRecord;
+import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 
 import java.util.*;
 
 /**
- *
+ * AND/OR of the child predicates. The children are evaluated in the order that gives the result faster: the composite
+ * measures the cost and the pass rate of each child on sampled records and moves the cheap children that usually
+ * decide the result to the beginning. The result and the thrown errors are the same as if the children were evaluated
+ * in the original order.
  */
 public class CompositeRecordPredicate implements RecordPredicate {
 
+    /**
+     * Each N-th evaluation is sampled: all children are evaluated in the original order and measured.
+     */
+    private static final int SAMPLE_INTERVAL = 64;
+
+    /**
+     * The number of samples between the reorderings.
+     */
+    private static final int SAMPLES_PER_REORDER = 16;
+
     private final List<RecordPredicate> predicates = new ArrayList<>();
 
     private boolean isAnd;
 
+    private transient volatile EvaluationStats stats;
+
+    /**
+     * The counter of the evaluations, the updates from different threads may be lost, that only affects the sampling.
+     */
+    private transient int evaluationCounter;
+
     public CompositeRecordPredicate() {
 
     }
@@ -31,6 +52,7 @@ public class CompositeRecordPredicate implements RecordPredicate {
 
     public void addPredicate(RecordPredicate recordPredicate) {
         predicates.add(recordPredicate);
+        stats = null;
     }
 
     public boolean isAnd() {
@@ -43,22 +65,133 @@ public class CompositeRecordPredicate implements RecordPredicate {
 
     @Override
     public boolean test(LogRecord record, LogFilterContext ctx) {
-        if (isAnd) {
-            for (RecordPredicate predicate : predicates) {
-                if (!predicate.test(record, ctx))
-                    return false;
+        if (predicates.size() < 2)
+            return testInOriginalOrder(record, ctx);
+
+        EvaluationStats stats = getStats();
+
+        if (++evaluationCounter % SAMPLE_INTERVAL == 0)
+            return testSampled(record, ctx, stats);
+
+        EvaluationOrder order = stats.order;
+        if (order == null)
+            return testInOriginalOrder(record, ctx);
+
+        try {
+            for (int idx : order.order) {
+                if (predicates.get(idx).test(record, ctx) != isAnd) {
+                    testSkippedPrefix(record, ctx, stats, order, idx);
+                    return !isAnd;
+                }
             }
 
-            return true;
+            return isAnd;
+        } catch (RuntimeException | Error e) {
+            // A child that would not be evaluated in the original order may fail, the original order decides
+            // whether the error is reported
+            return testInOriginalOrder(record, ctx);
+        }
+    }
+
+    /**
+     * The child {@code decidedIdx} has decided the result. In the original order the children before it are evaluated
+     * first and may fail, so the children that haven't been evaluated yet and may fail are evaluated in the original
+     * order. The result is the same, one of them may only decide it earlier.
+     */
+    private void testSkippedPrefix(LogRecord record, LogFilterContext ctx, EvaluationStats stats, EvaluationOrder order,
+                                   int decidedIdx) {
+        int decidedPosition = order.positions[decidedIdx];
+
+        for (int i = 0; i < decidedIdx; i++) {
+            if (order.positions[i] < decidedPosition || stats.errorFree[i])
+                continue; // Already evaluated or can't fail
+
+            if (predicates.get(i).test(record, ctx) != isAnd)
+                return;
         }
-        else {
-            for (RecordPredicate predicate : predicates) {
-                if (predicate.test(record, ctx))
-                    return true;
+    }
+
+    private boolean testInOriginalOrder(LogRecord record, LogFilterContext ctx) {
+        for (RecordPredicate predicate : predicates) {
+            if (predicate.test(record, ctx) != isAnd)
+                return !isAnd;
+        }
+
+        return isAnd;
+    }
+
+    /**
+     * Evaluates all children in the original order measuring the time and the results, returns the same result as
+     * {@link #testInOriginalOrder(LogRecord, LogFilterContext)}.
+     */
+    private boolean testSampled(LogRecord record, LogFilterContext ctx, EvaluationStats stats) {
+        int size = predicates.size();
+
+        long[] times = new long[size];
+        boolean[] results = new boolean[size];
+        Throwable[] errors = null;
+
+        for (int i = 0; i < size; i++) {
+            long startTime = System.nanoTime();
+
+            try {
+                results[i] = predicates.get(i).test(record, ctx);
+            } catch (RuntimeException | Error e) {
+                if (errors == null)
+                    errors = new Throwable[size];
+
+                errors[i] = e;
             }
 
-            return false;
+            times[i] = System.nanoTime() - startTime;
         }
+
+        stats.addSample(times, results, errors, isAnd);
+
+        for (int i = 0; i < size; i++) {
+            if (errors != null && errors[i] != null) {
+                if (errors[i] instanceof Error)
+                    throw (Error) errors[i];
+
+                throw (RuntimeException) errors[i];
+            }
+
+            if (results[i] != isAnd)
+                return !isAnd;
+        }
+
+        return isAnd;
+    }
+
+    private EvaluationStats getStats() {
+        EvaluationStats res = stats;
+
+        if (res == null) {
+            res = new EvaluationStats(predicates);
+            stats = res;
+        }
+
+        return res;
+    }
+
+    /**
+     * The statistics of the children for diagnostics, the list is in the original order of the children.
+     */
+    @NonNull
+    public List<PredicateStats> getPredicateStats() {
+        EvaluationStats stats = this.stats;
+
+        List<PredicateStats> res = new ArrayList<>(predicates.size());
+
+        for (int i = 0; i < predicates.size(); i++) {
+            if (stats == null) {
+                res.add(new PredicateStats(predicates.get(i), i, 0, 0, 0));
+            } else {
+                res.add(stats.getStats(predicates.get(i), i));
+            }
+        }
+
+        return res;
     }
 
     @Nullable
@@ -78,4 +211,192 @@ public class CompositeRecordPredicate implements RecordPredicate {
         
         return new CompositeRecordPredicate(true, filters);
     }
+
+    /**
+     * The cost and the pass rate of a child predicate.
+     */
+    public static class PredicateStats {
+        private final RecordPredicate predicate;
+        private final int position;
+        private final long samples;
+        private final double averageNanos;
+        private final double passRate;
+
+        PredicateStats(RecordPredicate predicate, int position, long samples, double averageNanos, double passRate) {
+            this.predicate = predicate;
+            this.position = position;
+            this.samples = samples;
+            this.averageNanos = averageNanos;
+            this.passRate = passRate;
+        }
+
+        public RecordPredicate getPredicate() {
+            return predicate;
+        }
+
+        /**
+         * The position of the predicate in the current evaluation order.
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        public double getAverageNanos() {
+            return averageNanos;
+        }
+
+        /**
+         * The part of the sampled records accepted by the predicate.
+         */
+        public double getPassRate() {
+            return passRate;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s [position=%d, samples=%d, avgNanos=%.0f, passRate=%.3f]", predicate.getClass().getSimpleName(),
+                    position, samples, averageNanos, passRate);
+        }
+    }
+
+    /**
+     * @return {@code true} if the predicate never throws an error.
+     */
+    static boolean isErrorFree(RecordPredicate predicate) {
+        if (predicate instanceof ErrorFreePredicate)
+            return ((ErrorFreePredicate) predicate).isErrorFree();
+
+        if (predicate instanceof NotPredicate)
+            return isErrorFree(((NotPredicate) predicate).getDelegate());
+
+        if (predicate instanceof CompositeRecordPredicate) {
+            for (RecordPredicate child : ((CompositeRecordPredicate) predicate).predicates) {
+                if (!isErrorFree(child))
+                    return false;
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private static class EvaluationOrder {
+        private final int[] order;
+
+        /**
+         * The position of each child in {@link #order}.
+         */
+        private final int[] positions;
+
+        EvaluationOrder(int[] order) {
+            this.order = order;
+
+            positions = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                positions[order[i]] = i;
+            }
+        }
+    }
+
+    private static class EvaluationStats {
+        private final long[] samples;
+        private final double[] nanos;
+        private final double[] passes;
+
+        private int samplesSinceReorder;
+
+        /**
+         * The children that never throw an error, they may be skipped regardless of the original order.
+         */
+        private final boolean[] errorFree;
+
+        /**
+         * The evaluation order, {@code null} means the original order.
+         */
+        private volatile EvaluationOrder order;
+
+        EvaluationStats(List<RecordPredicate> predicates) {
+            int size = predicates.size();
+
+            samples = new long[size];
+            nanos = new double[size];
+            passes = new double[size];
+
+            errorFree = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                errorFree[i] = isErrorFree(predicates.get(i));
+            }
+        }
+
+        synchronized void addSample(long[] times, boolean[] results, @Nullable Throwable[] errors, boolean isAnd) {
+            for (int i = 0; i < samples.length; i++) {
+                samples[i]++;
+                nanos[i] += times[i];
+
+                if (results[i] && (errors == null || errors[i] == null))
+                    passes[i]++;
+            }
+
+            if (++samplesSinceReorder == SAMPLES_PER_REORDER) {
+                samplesSinceReorder = 0;
+                reorder(isAnd);
+            }
+        }
+
+        private void reorder(boolean isAnd) {
+            int size = samples.length;
+
+            Integer[] indexes = new Integer[size];
+            double[] score = new double[size];
+
+            for (int i = 0; i < size; i++) {
+                indexes[i] = i;
+
+                // The probability that the child decides the result: "false" for AND, "true" for OR
+                double decideRate = isAnd ? 1 - passes[i] / samples[i] : passes[i] / samples[i];
+
+                // The expected cost of the evaluation per a decided result
+                score[i] = nanos[i] / samples[i] / Math.max(decideRate, 0.001);
+            }
+
+            Arrays.sort(indexes, Comparator.comparingDouble(i -> score[i]));
+
+            int[] newOrder = new int[size];
+            boolean originalOrder = true;
+
+            for (int i = 0; i < size; i++) {
+                newOrder[i] = indexes[i];
+                originalOrder &= indexes[i] == i;
+            }
+
+            order = originalOrder ? null : new EvaluationOrder(newOrder);
+
+            // The old samples have less weight, the order follows the changes of the data
+            for (int i = 0; i < size; i++) {
+                if (samples[i] >= SAMPLES_PER_REORDER * 8) {
+                    samples[i] /= 2;
+                    nanos[i] /= 2;
+                    passes[i] /= 2;
+                }
+            }
+        }
+
+        synchronized PredicateStats getStats(RecordPredicate predicate, int idx) {
+            int position = idx;
+
+            EvaluationOrder order = this.order;
+            if (order != null)
+                position = order.positions[idx];
+
+            if (samples[idx] == 0)
+                return new PredicateStats(predicate, position, 0, 0, 0);
+
+            return new PredicateStats(predicate, position, samples[idx], nanos[idx] / samples[idx], passes[idx] / samples[idx]);
+        }
+    }
 }
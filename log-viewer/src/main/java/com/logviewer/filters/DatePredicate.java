@@ -8,7 +8,7 @@ import com.logviewer.utils.LvDateUtils;
 
 import java.util.Date;
 
-public class DatePredicate implements RecordPredicate {
+public class DatePredicate implements ErrorFreePredicate {
 
     /**
      * Date in milliseconds.
@@ -0,0 +1,15 @@
+package com.logviewer.filters;
+
+/**
+ * A predicate that never throws an error, {@link CompositeRecordPredicate} may skip it when another child decides
+ * the result.
+ */
+interface ErrorFreePredicate extends RecordPredicate {
+
+    /**
+     * @return {@code false} if the predicate may fail, for example, if its configuration is invalid.
+     */
+    default boolean isErrorFree() {
+        return true;
+    }
+}
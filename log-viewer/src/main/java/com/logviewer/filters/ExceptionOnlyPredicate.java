@@ -8,7 +8,7 @@ import java.util.regex.Pattern;
 /**
  *
  */
-public class ExceptionOnlyPredicate implements RecordPredicate {
+public class ExceptionOnlyPredicate implements ErrorFreePredicate {
 
     private static final Pattern EXCEPTION_PATTERN = Pattern.compile("" +
             "^\\tat " +
@@ -9,7 +9,7 @@ import java.util.Objects;
 /**
  *
  */
-public class FieldArgPredicate implements RecordPredicate {
+public class FieldArgPredicate implements ErrorFreePredicate {
 
     private String fieldName;
 
@@ -17,6 +17,8 @@ public class FieldArgPredicate implements RecordPredicate {
 
     private Operator operator = Operator.EQUALS;
 
+    private transient volatile FieldIndexes fieldIndex;
+
     public FieldArgPredicate(@NonNull String fieldName, String value) {
         this(fieldName, value, Operator.EQUALS);
     }
@@ -34,6 +36,7 @@ public class FieldArgPredicate implements RecordPredicate {
 
     public void setFieldName(@NonNull String fieldName) {
         this.fieldName = fieldName;
+        this.fieldIndex = null;
     }
 
     public String getValue() {
@@ -60,7 +63,13 @@ public class FieldArgPredicate implements RecordPredicate {
         if (LogRecord.WHOLE_LINE.equals(fieldName)) {
             fieldValue = record.getMessage();
         } else {
-            fieldValue = record.getFieldText(fieldName);
+            FieldIndexes fieldIndex = this.fieldIndex;
+            if (fieldIndex == null || !fieldIndex.isResolvedFor(record.getFieldSchema())) {
+                fieldIndex = FieldIndexes.byName(record.getFieldSchema(), fieldName);
+                this.fieldIndex = fieldIndex;
+            }
+
+            fieldValue = fieldIndex.getIndex() < 0 ? null : record.getFieldText(fieldIndex.getIndex());
         }
 
         return operator.test(fieldValue, value);
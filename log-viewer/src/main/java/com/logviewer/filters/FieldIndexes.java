@@ -0,0 +1,105 @@
+package com.logviewer.filters;
+
+import com.logviewer.data2.FieldSchema;
+import com.logviewer.data2.FieldTypes;
+import com.logviewer.data2.LogFilterContext;
+import com.logviewer.data2.LogFormat;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * The indexes of the fields a predicate reads, resolved for a record schema. The records of one log share
+ * the {@link FieldSchema} instance, so a predicate resolves the field names once per log instead of once per record.
+ * The instances are immutable, a predicate keeps the last resolved instance in a volatile field.
+ */
+final class FieldIndexes {
+
+    private final FieldSchema schema;
+
+    /**
+     * The format the fields have been selected by type for, {@code null} if the fields are selected by name.
+     */
+    private final LogFormat format;
+
+    private final int[] indexes;
+
+    private FieldIndexes(@NonNull FieldSchema schema, @Nullable LogFormat format, @NonNull int[] indexes) {
+        this.schema = schema;
+        this.format = format;
+        this.indexes = indexes;
+    }
+
+    /**
+     * @return {@code true} if the indexes can be used for a record with the specified schema.
+     */
+    boolean isResolvedFor(@NonNull FieldSchema schema) {
+        return this.schema == schema;
+    }
+
+    /**
+     * @return {@code true} if the indexes can be used for a record with the specified schema checked in the context.
+     */
+    boolean isResolvedFor(@NonNull FieldSchema schema, @NonNull LogFilterContext ctx) {
+        return this.schema == schema && format == ctx.getLogFormat();
+    }
+
+    /**
+     * @return the field indexes in the schema.
+     */
+    @NonNull
+    int[] getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * @return the index of the single field or {@code -1} if the schema doesn't contain the field.
+     */
+    int getIndex() {
+        return indexes[0];
+    }
+
+    @NonNull
+    static FieldIndexes byName(@NonNull FieldSchema schema, @NonNull String fieldName) {
+        return new FieldIndexes(schema, null, new int[]{schema.indexOf(fieldName)});
+    }
+
+    /**
+     * Resolves all fields from {@link LogFilterContext#getFields()}, the index of a field absent in the schema is {@code -1}.
+     */
+    @NonNull
+    static FieldIndexes allFields(@NonNull FieldSchema schema, @NonNull LogFilterContext ctx) {
+        LogFormat.FieldDescriptor[] fields = ctx.getFields();
+
+        int[] res = new int[fields.length];
+
+        for (int i = 0; i < fields.length; i++) {
+            res[i] = schema.indexOf(fields[i].name());
+        }
+
+        return new FieldIndexes(schema, ctx.getLogFormat(), res);
+    }
+
+    /**
+     * Selects the fields of the specified type from {@link LogFilterContext#getFields()} in the same order. The fields
+     * absent in the schema are skipped.
+     */
+    @NonNull
+    static FieldIndexes byType(@NonNull FieldSchema schema, @NonNull LogFilterContext ctx, @NonNull String fieldType) {
+        LogFormat.FieldDescriptor[] fields = ctx.getFields();
+
+        int[] res = new int[fields.length];
+        int size = 0;
+
+        for (LogFormat.FieldDescriptor field : fields) {
+            if (FieldTypes.is(field.type(), fieldType)) {
+                int idx = schema.indexOf(field.name());
+                if (idx >= 0)
+                    res[size++] = idx;
+            }
+        }
+
+        return new FieldIndexes(schema, ctx.getLogFormat(), Arrays.copyOf(res, size));
+    }
+}
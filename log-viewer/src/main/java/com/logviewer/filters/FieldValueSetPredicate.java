@@ -1,18 +1,18 @@
 package com.logviewer.filters;
 
-import com.logviewer.data2.FieldTypes;
 import com.logviewer.data2.LogFilterContext;
-import com.logviewer.data2.LogFormat;
 import com.logviewer.data2.LogRecord;
 
 import java.util.List;
 
-public class FieldValueSetPredicate implements RecordPredicate {
+public class FieldValueSetPredicate implements ErrorFreePredicate {
 
     private String fieldType;
 
     private List<String> values;
 
+    private transient volatile FieldIndexes fieldIndexes;
+
     public FieldValueSetPredicate() {
 
     }
@@ -27,15 +27,17 @@ public class FieldValueSetPredicate implements RecordPredicate {
         if (fieldType == null || values == null)
             return false;
 
-        LogFormat.FieldDescriptor[] fields = ctx.getFields();
-        for (int i = 0; i < fields.length; i++) {
-            LogFormat.FieldDescriptor field = fields[i];
-            if (FieldTypes.is(field.type(), fieldType)) {
-                String fieldValue = record.getFieldText(field.name());
+        FieldIndexes fieldIndexes = this.fieldIndexes;
+        if (fieldIndexes == null || !fieldIndexes.isResolvedFor(record.getFieldSchema(), ctx)) {
+            fieldIndexes = FieldIndexes.byType(record.getFieldSchema(), ctx, fieldType);
+            this.fieldIndexes = fieldIndexes;
+        }
+
+        for (int fieldIdx : fieldIndexes.getIndexes()) {
+            String fieldValue = record.getFieldText(fieldIdx);
 
-                if (fieldValue != null && values.contains(fieldValue))
-                    return true;
-            }
+            if (fieldValue != null && values.contains(fieldValue))
+                return true;
         }
 
         return false;
@@ -47,6 +49,7 @@ public class FieldValueSetPredicate implements RecordPredicate {
 
     public void setFieldType(String fieldType) {
         this.fieldType = fieldType;
+        this.fieldIndexes = null;
     }
 
     public List<String> getValues() {
@@ -0,0 +1,1112 @@
+package com.logviewer.filters;
+
+import com.logviewer.data2.LogFilterContext;
+import com.logviewer.data2.LogRecord;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Translates simple filter scripts to a tree of {@link RecordPredicate}s, so the most of the filters don't need Rhino.
+ * The supported scripts are functions containing a single return statement, for example:
+ * <pre>
+ * function isVisible(text, fields) { return fields.level == 'ERROR' || text.includes('Exception') }
+ * </pre>
+ * The expression may contain "==", "===", "!=", "!==" comparisons of the text or a field with a string literal,
+ * {@code includes()}, {@code startsWith()}, {@code endsWith()}, {@code indexOf() >= 0} calls, {@code /regex/.test()}
+ * and {@code match(/regex/)} calls, "&&", "||", "!" and parentheses. The other scripts are executed by Rhino.
+ * <p>
+ * The compiled predicate must return the same result as the script. If the script would fail or behave
+ * differently on a particular record (a method is called on a missing field, a regex is applied to a text with
+ * surrogate characters), the predicate throws {@link #FALLBACK} and the caller executes the script by Rhino.
+ */
+final class JsExpressionCompiler {
+
+    /**
+     * Thrown by the compiled predicate if the record must be checked by Rhino.
+     */
+    static final FallbackException FALLBACK = new FallbackException();
+
+    /**
+     * The characters matched by "\s" in JavaScript, Java "\s" matches ASCII whitespaces only.
+     */
+    private static final String JS_SPACES = "\\t\\n\\x0B\\f\\r \\u00A0\\u1680\\u2000-\\u200A\\u2028\\u2029\\u202F\\u205F\\u3000\\uFEFF";
+
+    private static final Set<String> RESERVED_WORDS = new HashSet<>(Arrays.asList(
+            "break", "case", "catch", "class", "const", "continue", "debugger", "default", "delete", "do", "else",
+            "enum", "export", "extends", "false", "finally", "for", "function", "if", "import", "in", "instanceof",
+            "let", "new", "null", "return", "super", "switch", "this", "throw", "true", "try", "typeof", "var",
+            "void", "while", "with", "yield"));
+
+    private final String script;
+
+    private int pos;
+
+    private String textParam;
+    private String fieldsParam;
+
+    private JsExpressionCompiler(@NonNull String script) {
+        this.script = script;
+    }
+
+    /**
+     * @return the predicate or {@code null} if the script is not in the supported subset.
+     */
+    @Nullable
+    static RecordPredicate compile(@NonNull String script) {
+        try {
+            return new JsExpressionCompiler(script).parseFunction();
+        } catch (UnsupportedScriptException e) {
+            return null;
+        }
+    }
+
+    private RecordPredicate parseFunction() {
+        skipSpaces();
+        expectWord("function");
+        skipSpaces();
+
+        if (isIdentifierStart(peek()))
+            checkNotReserved(identifier());
+
+        skipSpaces();
+        expect('(');
+
+        List<String> params = new ArrayList<>();
+
+        skipSpaces();
+        if (peek() != ')') {
+            while (true) {
+                skipSpaces();
+                params.add(checkNotReserved(identifier()));
+                skipSpaces();
+
+                if (peek() == ')')
+                    break;
+
+                expect(',');
+            }
+        }
+
+        expect(')');
+
+        if (params.size() > 0)
+            textParam = params.get(0);
+        if (params.size() > 1)
+            fieldsParam = params.get(1);
+
+        if (params.size() > 1 && params.get(0).equals(params.get(1)))
+            throw unsupported();
+
+        skipSpaces();
+        expect('{');
+        skipSpaces();
+        expectWord("return");
+
+        // "return" followed by a line break returns undefined
+        if (skipSpaces())
+            throw unsupported();
+
+        RecordPredicate res = parseOr();
+
+        skipSpaces();
+        if (peek() == ';') {
+            pos++;
+            skipSpaces();
+        }
+
+        expect('}');
+        skipSpaces();
+
+        if (pos != script.length())
+            throw unsupported();
+
+        return res;
+    }
+
+    private RecordPredicate parseOr() {
+        List<RecordPredicate> list = new ArrayList<>();
+        list.add(parseAnd());
+
+        while (true) {
+            skipSpaces();
+            if (!script.startsWith("||", pos))
+                break;
+
+            pos += 2;
+            list.add(parseAnd());
+        }
+
+        return list.size() == 1 ? list.get(0) : new CompositeRecordPredicate(false, list);
+    }
+
+    private RecordPredicate parseAnd() {
+        List<RecordPredicate> list = new ArrayList<>();
+        list.add(parseUnary());
+
+        while (true) {
+            skipSpaces();
+            if (!script.startsWith("&&", pos))
+                break;
+
+            pos += 2;
+            list.add(parseUnary());
+        }
+
+        return list.size() == 1 ? list.get(0) : new CompositeRecordPredicate(true, list);
+    }
+
+    private RecordPredicate parseUnary() {
+        skipSpaces();
+
+        if (peek() == '!') {
+            pos++;
+            skipSpaces();
+
+            // "!" binds tighter than the comparisons, "!fields.level == 'x'" means "(!fields.level) == 'x'"
+            if (!isNegatableOperand())
+                throw unsupported();
+
+            return new NotPredicate(parseUnary());
+        }
+
+        return parsePrimary();
+    }
+
+    /**
+     * @return {@code true} if the operand at the current position can't be followed by a comparison: a parenthesized
+     * expression, a negation, a regex test, a method call returning a boolean or a match, or a boolean literal.
+     */
+    private boolean isNegatableOperand() {
+        char a = peek();
+        if (a == '(' || a == '!' || a == '/')
+            return true;
+
+        if (!isIdentifierStart(a))
+            return false;
+
+        int start = pos;
+
+        try {
+            String word = identifier();
+            if (word.equals("true") || word.equals("false"))
+                return true;
+
+            pos = start;
+            valueRef();
+            skipSpaces();
+
+            if (peek() != '.')
+                return false;
+
+            pos++;
+            skipSpaces();
+
+            if (!isIdentifierStart(peek()))
+                return false;
+
+            String method = identifier();
+
+            return method.equals("includes") || method.equals("startsWith") || method.equals("endsWith")
+                    || method.equals("match");
+        } finally {
+            pos = start;
+        }
+    }
+
+    private RecordPredicate parsePrimary() {
+        skipSpaces();
+
+        char a = peek();
+
+        if (a == '(') {
+            pos++;
+            RecordPredicate res = parseOr();
+            skipSpaces();
+            expect(')');
+            return res;
+        }
+
+        if (a == '/') {
+            RegexTest res = regexLiteral();
+
+            skipSpaces();
+            expect('.');
+            skipSpaces();
+            expectWord("test");
+            skipSpaces();
+            expect('(');
+            skipSpaces();
+            res.fieldName = valueRef();
+            skipSpaces();
+            expect(')');
+
+            return res;
+        }
+
+        if (a == '\'' || a == '"') {
+            String literal = stringLiteral();
+            skipSpaces();
+            FieldArgPredicate.Operator operator = equalityOperator();
+            skipSpaces();
+            return new FieldArgPredicate(fieldArgName(valueRef()), literal, operator);
+        }
+
+        if (!isIdentifierStart(a))
+            throw unsupported();
+
+        int wordStart = pos;
+        String word = identifier();
+
+        if (word.equals("true") || word.equals("false")) {
+            boolean value = word.equals("true");
+            return (ErrorFreePredicate) (record, ctx) -> value;
+        }
+
+        pos = wordStart;
+
+        String fieldName = valueRef();
+
+        skipSpaces();
+
+        if (peek() == '.') {
+            pos++;
+            skipSpaces();
+            String method = identifier();
+            skipSpaces();
+            expect('(');
+            skipSpaces();
+
+            if (method.equals("match")) {
+                RegexTest res = regexLiteral();
+                res.fieldName = fieldName;
+                skipSpaces();
+                expect(')');
+                return res;
+            }
+
+            String arg = stringLiteral();
+            skipSpaces();
+            expect(')');
+
+            switch (method) {
+                case "includes":
+                    return new StringTest(fieldName, s -> s.contains(arg));
+                case "startsWith":
+                    return new StringTest(fieldName, s -> s.startsWith(arg));
+                case "endsWith":
+                    return new StringTest(fieldName, s -> s.endsWith(arg));
+                case "indexOf":
+                    return indexOfComparison(fieldName, arg);
+                default:
+                    throw unsupported();
+            }
+        }
+
+        FieldArgPredicate.Operator operator = equalityOperator();
+        skipSpaces();
+
+        return new FieldArgPredicate(fieldArgName(fieldName), stringLiteral(), operator);
+    }
+
+    private RecordPredicate indexOfComparison(@Nullable String fieldName, String arg) {
+        skipSpaces();
+
+        String operator;
+        if (script.startsWith("===", pos) || script.startsWith("!==", pos)) {
+            operator = script.substring(pos, pos + 3);
+            pos += 3;
+        } else if (script.startsWith("==", pos) || script.startsWith("!=", pos)
+                || script.startsWith(">=", pos) || script.startsWith("<=", pos)) {
+            operator = script.substring(pos, pos + 2);
+            pos += 2;
+        } else if (peek() == '>' || peek() == '<') {
+            operator = script.substring(pos, pos + 1);
+            pos++;
+        } else {
+            throw unsupported();
+        }
+
+        skipSpaces();
+
+        String number;
+        if (script.startsWith("-1", pos)) {
+            number = "-1";
+        } else if (peek() == '0') {
+            number = "0";
+        } else {
+            throw unsupported();
+        }
+
+        pos += number.length();
+
+        if (isIdentifierPart(peek()) || peek() == '.')
+            throw unsupported();
+
+        switch (operator + number) {
+            case ">=0":
+            case ">-1":
+            case "!=-1":
+            case "!==-1":
+                return new StringTest(fieldName, s -> s.contains(arg));
+            case "<0":
+            case "<=-1":
+            case "==-1":
+            case "===-1":
+                return new StringTest(fieldName, s -> !s.contains(arg));
+            case "==0":
+            case "===0":
+                return new StringTest(fieldName, s -> s.startsWith(arg));
+            default:
+                throw unsupported();
+        }
+    }
+
+    private FieldArgPredicate.Operator equalityOperator() {
+        if (script.startsWith("===", pos)) {
+            pos += 3;
+            return FieldArgPredicate.Operator.EQUALS;
+        }
+        if (script.startsWith("!==", pos)) {
+            pos += 3;
+            return FieldArgPredicate.Operator.NOT_EQUALS;
+        }
+        if (script.startsWith("==", pos)) {
+            pos += 2;
+            return FieldArgPredicate.Operator.EQUALS;
+        }
+        if (script.startsWith("!=", pos)) {
+            pos += 2;
+            return FieldArgPredicate.Operator.NOT_EQUALS;
+        }
+
+        throw unsupported();
+    }
+
+    /**
+     * Parses a reference to the text or to a field.
+     *
+     * @return the field name or {@code null} if the reference is the record text.
+     */
+    @Nullable
+    private String valueRef() {
+        String name = identifier();
+
+        if (name.equals(textParam))
+            return null;
+
+        if (!name.equals(fieldsParam))
+            throw unsupported();
+
+        skipSpaces();
+
+        String fieldName;
+
+        if (peek() == '.') {
+            pos++;
+            skipSpaces();
+            fieldName = identifier();
+        } else if (peek() == '[') {
+            pos++;
+            skipSpaces();
+            fieldName = stringLiteral();
+            skipSpaces();
+            expect(']');
+        } else {
+            throw unsupported();
+        }
+
+        // "_" is a special name for FieldArgPredicate
+        if (fieldName.equals(LogRecord.WHOLE_LINE))
+            throw unsupported();
+
+        return fieldName;
+    }
+
+    private static String fieldArgName(@Nullable String fieldName) {
+        return fieldName == null ? LogRecord.WHOLE_LINE : fieldName;
+    }
+
+    private String stringLiteral() {
+        char quote = peek();
+        if (quote != '\'' && quote != '"')
+            throw unsupported();
+
+        pos++;
+
+        StringBuilder res = new StringBuilder();
+
+        while (true) {
+            char a = next();
+
+            if (a == quote)
+                return res.toString();
+
+            if (a == '\n' || a == '\r' || a == '\u2028' || a == '\u2029')
+                throw unsupported();
+
+            if (a != '\\') {
+                res.append(a);
+                continue;
+            }
+
+            a = next();
+
+            switch (a) {
+                case '\\':
+                case '\'':
+                case '"':
+                    res.append(a);
+                    break;
+                case 'n': res.append('\n'); break;
+                case 't': res.append('\t'); break;
+                case 'r': res.append('\r'); break;
+                case 'b': res.append('\b'); break;
+                case 'f': res.append('\f'); break;
+                case 'v': res.append('\u000B'); break;
+                case 'x':
+                    res.append((char) hex(2));
+                    break;
+                case 'u':
+                    res.append((char) hex(4));
+                    break;
+                default:
+                    throw unsupported();
+            }
+        }
+    }
+
+    private int hex(int length) {
+        if (pos + length > script.length())
+            throw unsupported();
+
+        int res = 0;
+
+        for (int i = 0; i < length; i++) {
+            int digit = Character.digit(script.charAt(pos++), 16);
+            if (digit < 0)
+                throw unsupported();
+
+            res = res * 16 + digit;
+        }
+
+        return res;
+    }
+
+    private RegexTest regexLiteral() {
+        expect('/');
+
+        int start = pos;
+        boolean inClass = false;
+
+        while (true) {
+            char a = next();
+
+            if (a == '\n' || a == '\r' || a == '\u2028' || a == '\u2029')
+                throw unsupported();
+
+            if (a == '\\') {
+                next();
+            } else if (a == '[') {
+                inClass = true;
+            } else if (a == ']') {
+                inClass = false;
+            } else if (a == '/' && !inClass) {
+                break;
+            }
+        }
+
+        String source = script.substring(start, pos - 1);
+
+        if (source.isEmpty())
+            throw unsupported();
+
+        int flagsStart = pos;
+        while (isIdentifierPart(peek())) {
+            pos++;
+        }
+
+        String flags = script.substring(flagsStart, pos);
+
+        boolean ignoreCase = false;
+
+        for (int i = 0; i < flags.length(); i++) {
+            // "g" and "y" make the regex stateful, "m", "s" and "u" change the semantic too much
+            if (flags.charAt(i) != 'i' || ignoreCase)
+                throw unsupported();
+
+            ignoreCase = true;
+        }
+
+        RegexTranslator translator = new RegexTranslator(source, ignoreCase);
+        String javaRegex = translator.translate();
+
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(javaRegex, ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
+        } catch (PatternSyntaxException e) {
+            throw unsupported();
+        }
+
+        return new RegexTest(pattern, translator.surrogateSensitive);
+    }
+
+    private String identifier() {
+        if (!isIdentifierStart(peek()))
+            throw unsupported();
+
+        int start = pos;
+        pos++;
+
+        while (isIdentifierPart(peek())) {
+            pos++;
+        }
+
+        return script.substring(start, pos);
+    }
+
+    private void expectWord(String word) {
+        if (!script.startsWith(word, pos))
+            throw unsupported();
+
+        pos += word.length();
+
+        if (isIdentifierPart(peek()))
+            throw unsupported();
+    }
+
+    private void expect(char a) {
+        if (peek() != a)
+            throw unsupported();
+
+        pos++;
+    }
+
+    private char peek() {
+        return pos < script.length() ? script.charAt(pos) : 0;
+    }
+
+    private char next() {
+        if (pos >= script.length())
+            throw unsupported();
+
+        return script.charAt(pos++);
+    }
+
+    /**
+     * @return {@code true} if the skipped spaces contain a line break.
+     */
+    private boolean skipSpaces() {
+        boolean lineBreak = false;
+
+        while (pos < script.length()) {
+            char a = script.charAt(pos);
+
+            if (a == '\n' || a == '\r' || a == '\u2028' || a == '\u2029') {
+                lineBreak = true;
+            } else if (a != ' ' && a != '\t') {
+                break;
+            }
+
+            pos++;
+        }
+
+        if (script.startsWith("//", pos) || script.startsWith("/*", pos))
+            throw unsupported();
+
+        return lineBreak;
+    }
+
+    private static String checkNotReserved(String identifier) {
+        if (RESERVED_WORDS.contains(identifier))
+            throw unsupported();
+
+        return identifier;
+    }
+
+    private static boolean isIdentifierStart(char a) {
+        return (a >= 'a' && a <= 'z') || (a >= 'A' && a <= 'Z') || a == '_' || a == '$';
+    }
+
+    private static boolean isIdentifierPart(char a) {
+        return isIdentifierStart(a) || (a >= '0' && a <= '9');
+    }
+
+    private static UnsupportedScriptException unsupported() {
+        return UnsupportedScriptException.INSTANCE;
+    }
+
+    /**
+     * Translates a JavaScript regex (without "u" flag) to the Java regex with the same semantic. The constructions
+     * that cannot be translated exactly make the script unsupported.
+     */
+    private static class RegexTranslator {
+
+        private final String source;
+
+        private final boolean ignoreCase;
+
+        private final StringBuilder res = new StringBuilder();
+
+        private int pos;
+
+        /**
+         * Java matches the surrogate pairs as a single character, JavaScript matches the surrogates separately.
+         * {@code true} if the regex may match a surrogate, the texts containing surrogates are checked by Rhino.
+         */
+        private boolean surrogateSensitive;
+
+        RegexTranslator(String source, boolean ignoreCase) {
+            this.source = source;
+            this.ignoreCase = ignoreCase;
+        }
+
+        String translate() {
+            // Java and JavaScript case-insensitive matching are the same for ASCII characters only
+            if (ignoreCase) {
+                for (int i = 0; i < source.length(); i++) {
+                    if (source.charAt(i) >= 0x80)
+                        throw unsupported();
+                }
+            }
+
+            // Whether the previous element can be quantified
+            boolean quantifiable = false;
+
+            // The open groups, "true" for lookaheads
+            List<Boolean> groups = new ArrayList<>();
+
+            while (pos < source.length()) {
+                char a = source.charAt(pos++);
+
+                switch (a) {
+                    case '\\':
+                        quantifiable = escape();
+                        break;
+
+                    case '.':
+                        res.append("[^\\n\\r\\u2028\\u2029]");
+                        surrogateSensitive = true;
+                        quantifiable = true;
+                        break;
+
+                    case '^':
+                        res.append('^');
+                        quantifiable = false;
+                        break;
+
+                    case '$':
+                        // Java "$" matches before the final line terminator
+                        res.append("\\z");
+                        quantifiable = false;
+                        break;
+
+                    case '(':
+                        boolean lookahead = false;
+
+                        if (source.startsWith("?:", pos)) {
+                            res.append("(?:");
+                            pos += 2;
+                        } else if (source.startsWith("?=", pos) || source.startsWith("?!", pos)) {
+                            res.append("(?").append(source.charAt(pos + 1));
+                            pos += 2;
+                            lookahead = true;
+                        } else if (pos < source.length() && source.charAt(pos) == '?') {
+                            throw unsupported(); // lookbehind, named groups
+                        } else {
+                            res.append('(');
+                        }
+
+                        groups.add(lookahead);
+                        quantifiable = false;
+                        break;
+
+                    case ')':
+                        if (groups.isEmpty())
+                            throw unsupported();
+
+                        res.append(')');
+                        // The quantified lookaheads are not supported by Java
+                        quantifiable = !groups.remove(groups.size() - 1);
+                        break;
+
+                    case '|':
+                        res.append('|');
+                        quantifiable = false;
+                        break;
+
+                    case '*':
+                    case '+':
+                    case '?':
+                        if (!quantifiable)
+                            throw unsupported();
+
+                        res.append(a);
+                        lazyModifier();
+                        quantifiable = false;
+                        break;
+
+                    case '{':
+                        if (!quantifiable)
+                            throw unsupported();
+
+                        int end = source.indexOf('}', pos);
+                        if (end < 0)
+                            throw unsupported();
+
+                        String range = source.substring(pos, end);
+                        if (!range.matches("\\d{1,5}(,(\\d{1,5})?)?"))
+                            throw unsupported();
+
+                        String[] bounds = range.split(",", -1);
+                        if (bounds.length == 2 && !bounds[1].isEmpty() && Integer.parseInt(bounds[0]) > Integer.parseInt(bounds[1]))
+                            throw unsupported();
+
+                        res.append('{').append(range).append('}');
+                        pos = end + 1;
+                        lazyModifier();
+                        quantifiable = false;
+                        break;
+
+                    case '[':
+                        charClass();
+                        quantifiable = true;
+                        break;
+
+                    case ']':
+                    case '}':
+                        literal(a);
+                        quantifiable = true;
+                        break;
+
+                    default:
+                        literal(a);
+                        quantifiable = true;
+                }
+            }
+
+            if (!groups.isEmpty())
+                throw unsupported();
+
+            return res.toString();
+        }
+
+        private void lazyModifier() {
+            if (pos < source.length() && source.charAt(pos) == '?') {
+                res.append('?');
+                pos++;
+            }
+        }
+
+        /**
+         * Translates an escape sequence outside of a character class.
+         *
+         * @return {@code true} if the escape sequence is a character or a character class.
+         */
+        private boolean escape() {
+            if (pos >= source.length())
+                throw unsupported();
+
+            char a = source.charAt(pos++);
+
+            switch (a) {
+                case 'd':
+                case 'w':
+                    res.append('\\').append(a);
+                    return true;
+
+                case 'D':
+                case 'W':
+                    res.append('\\').append(a);
+                    surrogateSensitive = true;
+                    return true;
+
+                case 's':
+                    res.append('[').append(JS_SPACES).append(']');
+                    return true;
+
+                case 'S':
+                    res.append("[^").append(JS_SPACES).append(']');
+                    surrogateSensitive = true;
+                    return true;
+
+                case 'b':
+                    res.append("(?:(?<=\\w)(?!\\w)|(?<!\\w)(?=\\w))");
+                    return false;
+
+                case 'B':
+                    res.append("(?:(?<=\\w)(?=\\w)|(?<!\\w)(?!\\w))");
+                    return false;
+
+                default:
+                    literal(escapedChar(a));
+                    return true;
+            }
+        }
+
+        /**
+         * Translates the escape sequences that mean a single character.
+         */
+        private char escapedChar(char a) {
+            switch (a) {
+                case 't': return '\t';
+                case 'n': return '\n';
+                case 'r': return '\r';
+                case 'f': return '\f';
+                case 'v': return '\u000B';
+
+                case '0':
+                    if (pos < source.length() && Character.isDigit(source.charAt(pos)))
+                        throw unsupported();
+                    return '\0';
+
+                case 'x':
+                    return (char) hex(2);
+
+                case 'u':
+                    char res = (char) hex(4);
+                    if (ignoreCase && res >= 0x80)
+                        throw unsupported();
+                    return res;
+
+                default:
+                    // Back references, control characters and the identity escapes of letters are not supported
+                    if (Character.isLetterOrDigit(a) || a >= 0x80)
+                        throw unsupported();
+
+                    return a;
+            }
+        }
+
+        private int hex(int length) {
+            if (pos + length > source.length())
+                throw unsupported();
+
+            int res = 0;
+
+            for (int i = 0; i < length; i++) {
+                int digit = Character.digit(source.charAt(pos++), 16);
+                if (digit < 0)
+                    throw unsupported();
+
+                res = res * 16 + digit;
+            }
+
+            return res;
+        }
+
+        private void charClass() {
+            boolean negated = pos < source.length() && source.charAt(pos) == '^';
+            if (negated) {
+                pos++;
+                surrogateSensitive = true;
+            }
+
+            // "[]" and "[^]" are not supported by Java
+            if (pos >= source.length() || source.charAt(pos) == ']')
+                throw unsupported();
+
+            res.append(negated ? "[^" : "[");
+
+            while (true) {
+                if (pos >= source.length())
+                    throw unsupported();
+
+                char a = source.charAt(pos++);
+
+                if (a == ']')
+                    break;
+
+                int lo = classAtom(a);
+
+                if (pos + 1 < source.length() && source.charAt(pos) == '-' && source.charAt(pos + 1) != ']') {
+                    pos++;
+                    int hi = classAtom(source.charAt(pos++));
+
+                    if (lo < 0 || hi < 0 || lo > hi)
+                        throw unsupported();
+
+                    if (lo <= 0xDFFF && hi >= 0xD800)
+                        surrogateSensitive = true;
+
+                    appendClassChar((char) lo);
+                    res.append('-');
+                    appendClassChar((char) hi);
+                } else if (lo >= 0) {
+                    appendClassChar((char) lo);
+                }
+            }
+
+            res.append(']');
+        }
+
+        /**
+         * @return the character or -1 if the atom is a character class escape, the class escape is appended to the result.
+         */
+        private int classAtom(char a) {
+            if (a != '\\')
+                return a;
+
+            if (pos >= source.length())
+                throw unsupported();
+
+            char escaped = source.charAt(pos++);
+
+            switch (escaped) {
+                case 'd':
+                case 'w':
+                    res.append('\\').append(escaped);
+                    return -1;
+
+                case 'D':
+                case 'W':
+                    res.append('\\').append(escaped);
+                    surrogateSensitive = true;
+                    return -1;
+
+                case 's':
+                    res.append(JS_SPACES);
+                    return -1;
+
+                case 'b':
+                    return '\b';
+
+                case '-':
+                    return '-';
+
+                default:
+                    return escapedChar(escaped);
+            }
+        }
+
+        private void appendClassChar(char a) {
+            if (Character.isSurrogate(a))
+                throw unsupported();
+
+            if (Character.isLetterOrDigit(a) && a < 0x80) {
+                res.append(a);
+            } else {
+                res.append(String.format("\\u%04X", (int) a));
+            }
+        }
+
+        private void literal(char a) {
+            if (Character.isSurrogate(a))
+                surrogateSensitive = true;
+
+            if (Character.isLetterOrDigit(a) || a == ' ') {
+                res.append(a);
+            } else {
+                res.append(String.format("\\u%04X", (int) a));
+            }
+        }
+    }
+
+    /**
+     * Reads the text or a field value of the record.
+     */
+    private abstract static class ValueTest implements ErrorFreePredicate {
+
+        /**
+         * The field name, {@code null} for the record text.
+         */
+        String fieldName;
+
+        private volatile FieldIndexes fieldIndex;
+
+        ValueTest(@Nullable String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        /**
+         * The record text is always defined, a test of the text falls back to Rhino only to get the same result. A
+         * method call on a missing field fails in JavaScript.
+         */
+        @Override
+        public boolean isErrorFree() {
+            return fieldName == null;
+        }
+
+        /**
+         * @return the value, {@link #FALLBACK} is thrown if the value is undefined, JavaScript fails on the method calls
+         * on undefined.
+         */
+        @NonNull
+        protected String getValue(LogRecord record) {
+            if (fieldName == null)
+                return record.getMessage();
+
+            FieldIndexes fieldIndex = this.fieldIndex;
+            if (fieldIndex == null || !fieldIndex.isResolvedFor(record.getFieldSchema())) {
+                fieldIndex = FieldIndexes.byName(record.getFieldSchema(), fieldName);
+                this.fieldIndex = fieldIndex;
+            }
+
+            String res = fieldIndex.getIndex() < 0 ? null : record.getFieldText(fieldIndex.getIndex());
+            if (res == null)
+                throw FALLBACK;
+
+            return res;
+        }
+    }
+
+    private static class StringTest extends ValueTest {
+
+        private final Predicate<String> predicate;
+
+        StringTest(@Nullable String fieldName, Predicate<String> predicate) {
+            super(fieldName);
+            this.predicate = predicate;
+        }
+
+        @Override
+        public boolean test(LogRecord record, LogFilterContext ctx) {
+            return predicate.test(getValue(record));
+        }
+    }
+
+    private static class RegexTest extends ValueTest {
+
+        private final Pattern pattern;
+
+        private final boolean surrogateSensitive;
+
+        RegexTest(Pattern pattern, boolean surrogateSensitive) {
+            super(null);
+            this.pattern = pattern;
+            this.surrogateSensitive = surrogateSensitive;
+        }
+
+        @Override
+        public boolean test(LogRecord record, LogFilterContext ctx) {
+            String value = getValue(record);
+
+            if (surrogateSensitive) {
+                for (int i = 0; i < value.length(); i++) {
+                    if (Character.isSurrogate(value.charAt(i)))
+                        throw FALLBACK;
+                }
+            }
+
+            return pattern.matcher(value).find();
+        }
+    }
+
+    static final class FallbackException extends RuntimeException {
+        private FallbackException() {
+            super("The record must be checked by the script engine", null, false, false);
+        }
+    }
+
+    private static final class UnsupportedScriptException extends RuntimeException {
+        static final UnsupportedScriptException INSTANCE = new UnsupportedScriptException();
+
+        private UnsupportedScriptException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -4,55 +4,191 @@ import com.logviewer.data2.LogFilterContext;
 import com.logviewer.data2.LogFormat;
 import com.logviewer.data2.LogRecord;
 import org.mozilla.javascript.*;
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.ExpressionStatement;
+import org.mozilla.javascript.ast.FunctionNode;
+import org.mozilla.javascript.ast.ParenthesizedExpression;
 import org.springframework.lang.Nullable;
 
-public class JsPredicate implements RecordPredicate {
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class JsPredicate implements ErrorFreePredicate {
 
     private static final String KEY = "js-context";
 
+    /**
+     * The optimization level of Rhino, the scripts are compiled to JVM bytecode.
+     */
+    private static final int OPTIMIZATION_LEVEL = 9;
+
+    /**
+     * The maximum number of the compiled scripts cached by a thread.
+     */
+    private static final int SCRIPT_CACHE_SIZE = 16;
+
+    /**
+     * The compiled scripts by the script text. The filters are checked by the same threads again and again, the
+     * compilation to bytecode is expensive. The cache contains the code only, each execution of the compiled script
+     * creates a new function object bound to the scope of the checker, so the global variables of a filter are never
+     * visible to the other searches.
+     */
+    private static final ThreadLocal<Map<String, Script>> SCRIPT_CACHE = ThreadLocal.withInitial(() ->
+            new LinkedHashMap<String, Script>(SCRIPT_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Script> eldest) {
+                    return size() > SCRIPT_CACHE_SIZE;
+                }
+            });
+
     private final String script;
 
-    private transient Function compiledScript;
-    private transient RuntimeException compilationError;
-    private volatile transient boolean initialized;
+    private transient volatile RuntimeException compilationError;
+
+    /**
+     * The script translated to Java predicates, see {@link JsExpressionCompiler}. {@code null} if the script must be
+     * executed by Rhino.
+     */
+    private transient volatile RecordPredicate nativePredicate;
+    private transient volatile boolean nativePredicateInitialized;
 
     public JsPredicate(String script) {
         this.script = script;
     }
 
-    public Function getCompiledScript(JsContext jsContext) {
-        if (!initialized) {
+    @Nullable
+    private RecordPredicate getNativePredicate() {
+        if (!nativePredicateInitialized) {
+            nativePredicate = JsExpressionCompiler.compile(script);
+            nativePredicateInitialized = true;
+        }
+
+        return nativePredicate;
+    }
+
+    private Script getCompiledScript(Context cx) {
+        RuntimeException error = compilationError;
+        if (error != null)
+            throw error;
+
+        Map<String, Script> cache = SCRIPT_CACHE.get();
+
+        Script res = cache.get(script);
+
+        if (res == null) {
             try {
-                compiledScript = jsContext.cx.compileFunction(jsContext.scriptableObject, script, "JsFilter", 1, null);
+                res = compileScript(cx, script);
             } catch (RuntimeException exception) {
-                if (exception instanceof IllegalArgumentException
-                        && exception.getMessage().startsWith("compileFunction only accepts source with single JS function")) {
-                    exception = new IllegalArgumentException("Script must be a function. Example: \"function isVisibleEvent(text, fields) { ... }\"");
-                }
-
                 compilationError = exception;
+                throw exception;
             }
 
-            initialized = true;
+            cache.put(script, res);
         }
 
-        if (compilationError != null)
-            throw compilationError;
+        return res;
+    }
+
+    /**
+     * Compiles the first function of the script as an expression, the result of the compiled script is the function
+     * object.
+     */
+    private static Script compileScript(Context cx, String script) {
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.initFromContext(cx);
+
+        String expression;
+
+        try {
+            AstNode first = (AstNode) new Parser(env).parse(script, "JsFilter", 1).getFirstChild();
+            if (!(first instanceof FunctionNode))
+                throw notFunctionError();
+
+            int start = first.getAbsolutePosition();
+            int end = start + first.getLength();
+
+            expression = script.substring(0, start) + '(' + script.substring(start, end) + "\n)";
+        } catch (EvaluatorException e) {
+            // An anonymous function is not a valid statement, but it's a valid expression
+            expression = "(" + script + "\n)";
+
+            AstRoot root;
+
+            try {
+                root = new Parser(env).parse(expression, "JsFilter", 1);
+            } catch (EvaluatorException ignored) {
+                throw e;
+            }
+
+            if (!isSingleFunction(root))
+                throw e;
+        }
 
-        return compiledScript;
+        return cx.compileString(expression, "JsFilter", 1, null);
+    }
+
+    private static boolean isSingleFunction(AstRoot root) {
+        AstNode statement = (AstNode) root.getFirstChild();
+        if (!(statement instanceof ExpressionStatement) || statement.getNext() != null)
+            return false;
+
+        AstNode expression = ((ExpressionStatement) statement).getExpression();
+
+        return expression instanceof ParenthesizedExpression
+                && ((ParenthesizedExpression) expression).getExpression() instanceof FunctionNode;
+    }
+
+    private static IllegalArgumentException notFunctionError() {
+        return new IllegalArgumentException("Script must be a function. Example: \"function isVisibleEvent(text, fields) { ... }\"");
+    }
+
+    /**
+     * @return {@code true} if the script is translated to Java predicates that never fall back to Rhino on a failing
+     * record, see {@link JsExpressionCompiler}.
+     */
+    @Override
+    public boolean isErrorFree() {
+        RecordPredicate nativePredicate = getNativePredicate();
+        return nativePredicate != null && CompositeRecordPredicate.isErrorFree(nativePredicate);
     }
 
     @Override
     public boolean test(LogRecord record, LogFilterContext ctx) {
+        RecordPredicate nativePredicate = getNativePredicate();
+
+        if (nativePredicate != null) {
+            try {
+                return nativePredicate.test(record, ctx);
+            } catch (JsExpressionCompiler.FallbackException ignored) {
+                // The record is checked by Rhino to get the same result or error as the script gives
+            }
+        }
+
+        return testByScriptEngine(record, ctx);
+    }
+
+    boolean testByScriptEngine(LogRecord record, LogFilterContext ctx) {
         JsContext jsContext = ctx.getProperty(KEY, name -> {
             Context cx = Context.enter();
+            cx.setOptimizationLevel(OPTIMIZATION_LEVEL);
             return new JsContext(cx);
         });
 
-        jsContext.jsRecordObject.init(record, ctx);
+        BoundFunction function = jsContext.functions.get(script);
+        if (function == null) {
+            Script compiledScript = getCompiledScript(jsContext.cx);
 
-        Object res = getCompiledScript(jsContext).call(jsContext.cx, jsContext.scriptableObject, jsContext.scriptableObject,
-                new Object[]{record.getMessage(), jsContext.jsRecordObject});
+            function = new BoundFunction(jsContext.getScope(),
+                    (Function) compiledScript.exec(jsContext.cx, jsContext.getScope()));
+            jsContext.functions.put(script, function);
+        }
+
+        function.recordObject.init(record, ctx);
+
+        Object res = function.function.call(jsContext.cx, function.scope, function.scope,
+                new Object[]{record.getMessage(), function.recordObject});
 
         return jsResultToBool(res);
     }
@@ -73,19 +209,26 @@ public class JsPredicate implements RecordPredicate {
         return true;
     }
 
+    /**
+     * The state of the scripts in a checker. The filters of the checker share a top-level scope, the scope is created
+     * for every checker.
+     */
     private static class JsContext implements AutoCloseable {
         private final Context cx;
 
-        private final ScriptableObject scriptableObject;
+        private ScriptableObject scope;
 
-        private final JsRecordObject jsRecordObject;
+        private final Map<String, BoundFunction> functions = new HashMap<>();
 
         public JsContext(Context cx) {
             this.cx = cx;
+        }
 
-            scriptableObject = cx.initSafeStandardObjects();
+        ScriptableObject getScope() {
+            if (scope == null)
+                scope = cx.initSafeStandardObjects();
 
-            jsRecordObject = new JsRecordObject(scriptableObject);
+            return scope;
         }
 
         @Override
@@ -94,6 +237,20 @@ public class JsPredicate implements RecordPredicate {
         }
     }
 
+    private static class BoundFunction {
+        private final ScriptableObject scope;
+
+        private final Function function;
+
+        private final JsRecordObject recordObject;
+
+        BoundFunction(ScriptableObject scope, Function function) {
+            this.scope = scope;
+            this.function = function;
+            this.recordObject = new JsRecordObject(scope);
+        }
+    }
+
     private static class JsRecordObject implements Scriptable {
         protected Scriptable prototype;
 
@@ -102,6 +259,11 @@ public class JsPredicate implements RecordPredicate {
         private LogRecord record;
         private LogFilterContext ctx;
 
+        /**
+         * The indexes of the context fields in the record schema.
+         */
+        private FieldIndexes fieldIndexes;
+
         private JsRecordObject(Scriptable parent) {
             this.parent = parent;
         }
@@ -133,7 +295,8 @@ public class JsPredicate implements RecordPredicate {
 
         @Override
         public Object get(String name, Scriptable start) {
-            String res = record.getFieldText(name);
+            int fieldIdx = record.getFieldSchema().indexOf(name);
+            String res = fieldIdx < 0 ? null : record.getFieldText(fieldIdx);
             return res == null ? NOT_FOUND : res;
         }
 
@@ -142,9 +305,15 @@ public class JsPredicate implements RecordPredicate {
             if (index < 0 || index >= ctx.getFields().length)
                 return NOT_FOUND;
 
-            LogFormat.FieldDescriptor field = ctx.getFields()[index];
+            FieldIndexes fieldIndexes = this.fieldIndexes;
+            if (fieldIndexes == null || !fieldIndexes.isResolvedFor(record.getFieldSchema(), ctx)) {
+                fieldIndexes = FieldIndexes.allFields(record.getFieldSchema(), ctx);
+                this.fieldIndexes = fieldIndexes;
+            }
+
+            int fieldIdx = fieldIndexes.getIndexes()[index];
 
-            return record.getFieldText(field.name());
+            return fieldIdx < 0 ? null : record.getFieldText(fieldIdx);
         }
 
         @Override
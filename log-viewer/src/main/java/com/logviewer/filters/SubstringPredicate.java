@@ -7,7 +7,7 @@ import org.springframework.lang.NonNull;
 
 import java.util.function.Predicate;
 
-public class SubstringPredicate implements RecordPredicate {
+public class SubstringPredicate implements ErrorFreePredicate {
 
     private final SearchPattern search;
 
@@ -17,8 +17,7 @@ public class SubstringPredicate implements RecordPredicate {
         this.search = search;
     }
 
-    @Override
-    public boolean test(LogRecord record, LogFilterContext ctx) {
+    private Predicate<String> getMatcher() {
         Predicate<String> matcher = this.matcher;
 
         if (matcher == null) {
@@ -26,6 +25,24 @@ public class SubstringPredicate implements RecordPredicate {
             this.matcher = matcher;
         }
 
-        return matcher.test(record.getMessage());
+        return matcher;
+    }
+
+    @Override
+    public boolean test(LogRecord record, LogFilterContext ctx) {
+        return getMatcher().test(record.getMessage());
+    }
+
+    /**
+     * @return {@code false} if the pattern is an invalid regular expression.
+     */
+    @Override
+    public boolean isErrorFree() {
+        try {
+            getMatcher();
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
     }
 }
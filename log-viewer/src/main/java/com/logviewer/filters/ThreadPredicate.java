@@ -2,7 +2,6 @@ package com.logviewer.filters;
 
 import com.logviewer.data2.FieldTypes;
 import com.logviewer.data2.LogFilterContext;
-import com.logviewer.data2.LogFormat;
 import com.logviewer.data2.LogRecord;
 import com.logviewer.utils.RegexUtils;
 import org.springframework.lang.NonNull;
@@ -11,7 +10,7 @@ import org.springframework.lang.Nullable;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
-public class ThreadPredicate implements RecordPredicate {
+public class ThreadPredicate implements ErrorFreePredicate {
 
     private String[] includes;
     private String[] excludes;
@@ -19,6 +18,8 @@ public class ThreadPredicate implements RecordPredicate {
     private transient volatile Predicate<String>[] includePredicate;
     private transient volatile Predicate<String>[] excludePredicate;
 
+    private transient volatile FieldIndexes threadFields;
+
     public ThreadPredicate() {
 
     }
@@ -85,23 +86,27 @@ public class ThreadPredicate implements RecordPredicate {
 
     @Override
     public boolean test(LogRecord record, LogFilterContext ctx) {
-        for (LogFormat.FieldDescriptor field : ctx.getFields()) {
-            if (FieldTypes.is(field.type(), FieldTypes.THREAD)) {
-                String fieldValue = record.getFieldText(field.name());
-                if (fieldValue == null || fieldValue.isEmpty())
-                    continue;
-
-                Predicate<String>[] includePredicate = getIncludePredicate();
-                if (includePredicate != null && includePredicate.length > 0) {
-                    if (!anyMatches(includePredicate, fieldValue))
-                        return false;
-                }
-
-                Predicate<String>[] excludePredicate = getExcludePredicate();
-                if (excludePredicate != null) {
-                    if (anyMatches(excludePredicate, fieldValue))
-                        return false;
-                }
+        FieldIndexes threadFields = this.threadFields;
+        if (threadFields == null || !threadFields.isResolvedFor(record.getFieldSchema(), ctx)) {
+            threadFields = FieldIndexes.byType(record.getFieldSchema(), ctx, FieldTypes.THREAD);
+            this.threadFields = threadFields;
+        }
+
+        for (int fieldIdx : threadFields.getIndexes()) {
+            String fieldValue = record.getFieldText(fieldIdx);
+            if (fieldValue == null || fieldValue.isEmpty())
+                continue;
+
+            Predicate<String>[] includePredicate = getIncludePredicate();
+            if (includePredicate != null && includePredicate.length > 0) {
+                if (!anyMatches(includePredicate, fieldValue))
+                    return false;
+            }
+
+            Predicate<String>[] excludePredicate = getExcludePredicate();
+            if (excludePredicate != null) {
+                if (anyMatches(excludePredicate, fieldValue))
+                    return false;
             }
         }
 
@@ -1,26 +1,33 @@
 package com.logviewer.formats;
 
 import com.logviewer.data2.*;
+import com.logviewer.formats.utils.LogLineBuffer;
 import com.logviewer.formats.utils.LvLayoutNode;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class CompoundFieldSet implements FieldSet {
 
+    private final Charset charset;
+
     private final DefaultFieldSet[] fieldSets;
 
     private final LogFormat.FieldDescriptor[] fields;
 
-    private final Map<String, Integer> fieldNameIndexes;
+    private final FieldSchema fieldNameIndexes;
 
     private final int[][] fields2mergedFieldsIndexes;
 
     private final int dateFieldIndex;
 
     public CompoundFieldSet(@Nullable Locale locale, @Nullable Charset charset, LvLayoutNode[][] layout) {
+        this.charset = charset == null ? Charset.defaultCharset() : charset;
+
         fieldSets = new DefaultFieldSet[layout.length];
         for (int i = 0; i < layout.length; i++) {
             fieldSets[i] = new DefaultFieldSet(locale, charset, layout[i]);
@@ -78,11 +85,7 @@ public class CompoundFieldSet implements FieldSet {
 
         fields = mergedFields.toArray(LogFormat.FieldDescriptor.EMPTY_ARRAY);
 
-        fieldNameIndexes = new LinkedHashMap<>();
-        for (int i = 0; i < fields.length; i++) {
-            LogFormat.FieldDescriptor field = fields[i];
-            fieldNameIndexes.put(field.name(), i);
-        }
+        fieldNameIndexes = FieldSchema.of(Stream.of(fields).map(LogFormat.FieldDescriptor::name).collect(Collectors.toList()));
 
         fields2mergedFieldsIndexes = new int[fieldSets.length][];
 
@@ -136,10 +139,13 @@ public class CompoundFieldSet implements FieldSet {
     @NonNull
     @Override
     public LogReader createReader() {
+        // The line is decoded once for all patterns
+        LogLineBuffer line = new LogLineBuffer(charset);
+
         LogReader[] readers = new LogReader[fieldSets.length];
 
         for (int i = 0; i < fieldSets.length; i++) {
-            readers[i] = fieldSets[i].createReader();
+            readers[i] = fieldSets[i].createReader(line);
         }
 
         return new CompaundLogReader(readers, (rec, readerIndex) -> {
@@ -157,9 +163,13 @@ public class CompoundFieldSet implements FieldSet {
                 mergedFieldPosition[mergedFieldIdx * 2 + 1] = originalPositions[i * 2 + 1];
             }
 
-            return new LogRecord(rec.getMessage(), rec.getTime(), rec.getStart(), rec.getEnd(), rec.getLoadedTextLengthBytes(),
-                    mergedFieldPosition, fieldNameIndexes);
-        });
+            return rec.withFields(mergedFieldPosition, fieldNameIndexes);
+        }) {
+            @Override
+            protected void prepareLine(byte[] data, int offset, int length) {
+                line.reset(data, offset, length);
+            }
+        };
     }
 
     private static boolean isUniqueName(@NonNull List<LogFormat.FieldDescriptor> fields, @NonNull String baseName) {
@@ -2,7 +2,6 @@ package com.logviewer.formats;
 
 import com.logviewer.data2.*;
 import com.logviewer.formats.utils.*;
-import com.logviewer.utils.Utils;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 
@@ -10,6 +9,7 @@ import java.nio.charset.Charset;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
 
 public class DefaultFieldSet implements FieldSet {
 
@@ -24,10 +24,12 @@ public class DefaultFieldSet implements FieldSet {
     private final LogFormat.FieldDescriptor[] fields;
     private final int[] fieldIndex;
 
-    private final Map<String, Integer> fieldNameIndexes = new LinkedHashMap<>();
+    private final FieldSchema fieldNameIndexes;
 
     private final int dateNodeIndex;
 
+    private final LinePrefixFilter prefixFilter;
+
     public DefaultFieldSet(@Nullable Charset charset, LvLayoutNode ... layout) {
         this(null, charset, canAppendTail(layout), layout);
     }
@@ -68,7 +70,6 @@ public class DefaultFieldSet implements FieldSet {
             }
 
             if (field != null) {
-                fieldNameIndexes.put(field.name(), fields.size());
                 fieldIndex[i] = fields.size();
                 fields.add(field);
             } else {
@@ -78,7 +79,10 @@ public class DefaultFieldSet implements FieldSet {
 
         this.dateNodeIndex = dateNodeIndex;
         this.fields = fields.toArray(LogFormat.FieldDescriptor.EMPTY_ARRAY);
+        this.fieldNameIndexes = FieldSchema.of(fields.stream().map(LogFormat.FieldDescriptor::name).collect(Collectors.toList()));
         this.fieldIndex = fieldIndex;
+
+        this.prefixFilter = LogLineBuffer.isAsciiCompatible(this.charset) ? LinePrefixFilter.fromLayout(this.layout) : null;
     }
 
     public LvLayoutNode[] getLayout() {
@@ -101,7 +105,18 @@ public class DefaultFieldSet implements FieldSet {
     @Override
     @NonNull
     public LogReader createReader() {
-        return new LogReaderImpl();
+        return new LogReaderImpl(new LogLineBuffer(charset), true);
+    }
+
+    /**
+     * Creates a reader that doesn't decode the lines itself, the owner decodes each line to {@code sharedLine} before
+     * calling {@link LogReader#parseRecord(byte[], int, int, long, long)}.
+     *
+     * @see CompaundLogReader#prepareLine(byte[], int, int)
+     */
+    @NonNull
+    LogReader createReader(@NonNull LogLineBuffer sharedLine) {
+        return new LogReaderImpl(sharedLine, false);
     }
 
     @Override
@@ -127,7 +142,7 @@ public class DefaultFieldSet implements FieldSet {
         return lastNode instanceof LvLayoutStretchNode;
     }
 
-    private static boolean spacesOnlyAfter(String s, int offset, int end) {
+    private static boolean spacesOnlyAfter(CharSequence s, int offset, int end) {
         for (; offset < end; offset++) {
             if (s.charAt(offset) != ' ')
                 return false;
@@ -146,12 +161,21 @@ public class DefaultFieldSet implements FieldSet {
 
         private final int[] stretchFields;
 
-        private String s;
+        private final LogLineBuffer line;
+
+        private final boolean decodeLine;
+
+        private final RecordTextBuffer text;
+
         private long start;
         private long end;
         private int loadedTextLengthBytes;
 
-        public LogReaderImpl() {
+        LogReaderImpl(LogLineBuffer line, boolean decodeLine) {
+            this.line = line;
+            this.decodeLine = decodeLine;
+            this.text = new RecordTextBuffer(charset);
+
             layoutCopy = DefaultFieldSet.this.layout.clone();
 
             for (int i = 0; i < layoutCopy.length; i++) {
@@ -179,10 +203,18 @@ public class DefaultFieldSet implements FieldSet {
             };
         }
 
+        @Override
+        public boolean canStartRecord(byte[] data, int offset, int length) {
+            return prefixFilter == null || prefixFilter.test(data, offset, length);
+        }
+
         @Override
         public boolean parseRecord(byte[] data, int offset, int length, long start, long end) {
-            String s = new String(data, offset, length, charset);
-            s = Utils.removeAsciiColorCodes(s);
+            // The nodes work with the reusable buffer, the string is created only if the line is a record start
+            if (decodeLine)
+                line.reset(data, offset, length);
+
+            LogLineBuffer s = line;
 
             int idx = 0;
             int endStr = s.length();
@@ -293,7 +325,7 @@ public class DefaultFieldSet implements FieldSet {
                 i++;
             }
 
-            this.s = s;
+            text.reset(line, data, offset, length);
             this.start = start;
             this.end = end;
             loadedTextLengthBytes = length;
@@ -335,28 +367,28 @@ public class DefaultFieldSet implements FieldSet {
             if (fieldOffset[lastFieldOffset] == -1)
                 throw new IllegalStateException();
 
-            if (fieldOffset[lastFieldOffset + 1] != s.length())
+            if (fieldOffset[lastFieldOffset + 1] != text.length())
                 throw new IllegalStateException();
 
-            s = s + Utils.removeAsciiColorCodes(new String(data, offset, length, charset));
-            fieldOffset[lastFieldOffset + 1] = s.length();
+            text.append(data, offset, length);
+            fieldOffset[lastFieldOffset + 1] = text.length();
 
             loadedTextLengthBytes += length;
         }
 
         @Override
         public boolean hasParsedRecord() {
-            return s != null;
+            return !text.isEmpty();
         }
 
         @Override
         public void clear() {
-            s = null;
+            text.clear();
         }
 
         @Override
         public LogRecord buildRecord() {
-            if (s == null)
+            if (text.isEmpty())
                 throw new IllegalStateException();
 
             long time = 0;
@@ -365,11 +397,8 @@ public class DefaultFieldSet implements FieldSet {
                 time = dateExtractor.getAsLong();
             }
 
-            LogRecord res = new LogRecord(s, time, start, end, loadedTextLengthBytes, fieldOffset.clone(), fieldNameIndexes);
-
-            s = null;
-
-            return res;
+            // The message is decoded only if somebody needs it, the records dropped by the time filters are never decoded
+            return text.buildRecord(time, start, end, loadedTextLengthBytes, fieldOffset.clone(), fieldNameIndexes);
         }
     }
 }
@@ -1,7 +1,10 @@
 package com.logviewer.formats;
 
 import com.logviewer.data2.*;
+import com.logviewer.formats.utils.CompiledDateParser;
 import com.logviewer.formats.utils.FastDateTimeParser;
+import com.logviewer.formats.utils.LogLineBuffer;
+import com.logviewer.formats.utils.RegexPrefilter;
 import com.logviewer.utils.LvDateUtils;
 import com.logviewer.utils.Utils;
 import org.springframework.lang.NonNull;
@@ -17,6 +20,7 @@ import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class RegexLogFormat implements LogFormat, Cloneable {
@@ -36,6 +40,7 @@ public class RegexLogFormat implements LogFormat, Cloneable {
     private String datePattern;
 
     private transient volatile Pattern pattern;
+    private transient volatile RegexPrefilter prefilter;
 
     public RegexLogFormat(@NonNull String regex, RegexField... fields) {
         this(regex, null, null, fields);
@@ -92,6 +97,7 @@ public class RegexLogFormat implements LogFormat, Cloneable {
                 throw new IllegalArgumentException("Invalid pattern [" + regex + "] " + e.getMessage(), e);
             }
 
+            prefilter = RegexPrefilter.create(regex);
             pattern = res;
         }
 
@@ -102,6 +108,7 @@ public class RegexLogFormat implements LogFormat, Cloneable {
         int groupCount = getPattern().matcher("").groupCount();
 
         Set<Object> usedGroups = new HashSet<>();
+        Set<String> usedNames = new HashSet<>();
 
         for (RegexField field : fields) {
             if (field.name() == null || field.name().isEmpty())
@@ -110,6 +117,9 @@ public class RegexLogFormat implements LogFormat, Cloneable {
             if (!Utils.isIdentifier(field.name()))
                 throw new IllegalArgumentException("Invalid field name '" + field.name() + "'. Field names can contains only letters, digits and '_'");
 
+            if (!usedNames.add(field.name()))
+                throw new IllegalArgumentException("Duplicated field name: " + field.name());
+
             if (field.groupIndex != null && field.groupIndex <= 0)
                 throw new IllegalArgumentException("Invalid group index in regex format, 'groupIndex' must be greater than 0");
 
@@ -193,30 +203,38 @@ public class RegexLogFormat implements LogFormat, Cloneable {
          */
         private int loadedTextLengthBytes;
 
-        private BiFunction<String, ParsePosition, Supplier<Instant>> dateFormat;
+        private BiFunction<CharSequence, ParsePosition, Supplier<Instant>> dateFormat;
 
         private final Charset charset = RegexLogFormat.this.charset == null ? Charset.defaultCharset() : RegexLogFormat.this.charset;
 
         private final int[] fields = new int[RegexLogFormat.this.fields.length * 2];
 
-        private final Map<String, Integer> fieldNames = new LinkedHashMap<>();
+        private final FieldSchema fieldNames = FieldSchema.of(Stream.of(RegexLogFormat.this.fields).map(RegexField::name).collect(Collectors.toList()));
 
-        public RegexReader() {
-            for (int i = 0; i < RegexLogFormat.this.fields.length; i++) {
-                fieldNames.put(RegexLogFormat.this.fields[i].name(), i);
-            }
+        private final LogLineBuffer line = new LogLineBuffer(charset);
+
+        private final Matcher matcher = getPattern().matcher(line);
+
+        /**
+         * Rejects the lines that can't match the regex without decoding, {@code null} if the charset is not
+         * ASCII-compatible or nothing is known about the matching lines.
+         */
+        private final RegexPrefilter prefilter = LogLineBuffer.isAsciiCompatible(charset) ? RegexLogFormat.this.prefilter : null;
+
+        @Override
+        public boolean canStartRecord(byte[] data, int offset, int length) {
+            return prefilter == null || prefilter.test(data, offset, length);
         }
 
         @Override
         public boolean parseRecord(byte[] data, int offset, int length, long start, long end) {
-            String s = new String(data, offset, length, charset);
-            s = Utils.removeAsciiColorCodes(s);
+            line.reset(data, offset, length);
 
-            Matcher matcher = getPattern().matcher(s);
+            Matcher matcher = this.matcher.reset(line);
             if (!matcher.matches())
                 return false;
 
-            this.s = s;
+            this.s = line.toString();
             this.start = start;
             this.end = end;
             loadedTextLengthBytes = length;
@@ -319,10 +337,16 @@ public class RegexLogFormat implements LogFormat, Cloneable {
                     if (dateFormat == null)
                         dateFormat = FastDateTimeParser.createFormatter(datePattern, locale, null);
 
-                    Supplier<Instant> timestamp = dateFormat.apply(s, new ParsePosition(fields[dateFieldIdx * 2]));
-                    if (timestamp != null) {
-                        Instant instant = timestamp.get();
-                        time = LvDateUtils.toNanos(instant);
+                    if (dateFormat instanceof CompiledDateParser) {
+                        CompiledDateParser parser = (CompiledDateParser) dateFormat;
+                        if (parser.parse(s, fields[dateFieldIdx * 2]) >= 0)
+                            time = parser.getTimeNanos();
+                    } else {
+                        Supplier<Instant> timestamp = dateFormat.apply(s, new ParsePosition(fields[dateFieldIdx * 2]));
+                        if (timestamp != null) {
+                            Instant instant = timestamp.get();
+                            time = LvDateUtils.toNanos(instant);
+                        }
                     }
                 }
             }
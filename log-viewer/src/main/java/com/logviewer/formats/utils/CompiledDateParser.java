@@ -0,0 +1,727 @@
+package com.logviewer.formats.utils;
+
+import com.logviewer.utils.Utils;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.text.ParsePosition;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * A date parser compiled from a date pattern. The parser is a sequence of positional elements (fixed and variable width
+ * numbers, literals, texts like month names), it parses the same texts as {@link DateTimeFormatter} with the default
+ * (strict parsing, smart resolving) settings, but doesn't allocate objects for each parsed date.
+ *
+ * The epoch day of the last parsed date and the zone offset of the current period between zone transitions are cached,
+ * so the consecutive records of a log don't need calendar calculations.
+ *
+ * Not all patterns are supported, see {@link #compile(String, Locale, boolean, TimeZone)}.
+ */
+public final class CompiledDateParser implements BiFunction<CharSequence, ParsePosition, Supplier<Instant>> {
+
+    private static final int YEAR = 0;
+    private static final int MONTH = 1;
+    private static final int DAY = 2;
+    private static final int HOUR_OF_DAY = 3;
+    private static final int CLOCK_HOUR_OF_DAY = 4;
+    private static final int HOUR_OF_AMPM = 5;
+    private static final int CLOCK_HOUR_OF_AMPM = 6;
+    private static final int MINUTE = 7;
+    private static final int SECOND = 8;
+    private static final int NANO = 9;
+    private static final int AMPM = 10;
+    private static final int DAY_OF_WEEK = 11;
+
+    private static final int FIELD_COUNT = 12;
+
+    private static final int[] POW10 = {1, 10, 100, 1000, 10_000, 100_000, 1000_000, 10_000_000, 100_000_000, 1000_000_000};
+
+    private final Element[] elements;
+
+    private final boolean[] present;
+
+    private final int hourField;
+
+    private final boolean hasTimezone;
+
+    private final TimeZone defaultTimeZone;
+
+    private final int[] values = new int[FIELD_COUNT];
+
+    private long epochSecond;
+    private int nano;
+
+    // The epoch day of the last parsed date
+    private int cachedYear = Integer.MIN_VALUE;
+    private int cachedMonth;
+    private int cachedDay;
+    private long cachedEpochDay;
+
+    // The offset of the zone is constant for the local times in [offsetValidFrom, offsetValidTo)
+    private TimeZone cachedZone;
+    private ZoneId cachedZoneId;
+    private int cachedOffset;
+    private long offsetValidFrom;
+    private long offsetValidTo;
+
+    private String lastTimezoneStr;
+    private TimeZone lastTimeZone;
+
+    private CompiledDateParser(Element[] elements, boolean[] present, int hourField, boolean hasTimezone,
+                               @Nullable TimeZone defaultTimeZone) {
+        this.elements = elements;
+        this.present = present;
+        this.hourField = hourField;
+        this.hasTimezone = hasTimezone;
+        this.defaultTimeZone = defaultTimeZone == null ? TimeZone.getDefault() : defaultTimeZone;
+    }
+
+    /**
+     * Parses the date at the specified position, the result is available via {@link #getEpochSecond()},
+     * {@link #getNano()} and {@link #getTimeNanos()} until the next call.
+     *
+     * @return the end of the date or {@code -1} if the text doesn't contain a valid date at the specified position.
+     */
+    public int parse(@NonNull CharSequence s, int offset) {
+        int[] values = this.values;
+
+        int pos = offset;
+
+        for (Element element : elements) {
+            pos = element.parse(s, pos, values);
+            if (pos < 0)
+                return -1;
+        }
+
+        TimeZone zone = defaultTimeZone;
+
+        if (hasTimezone) {
+            if (lastTimezoneStr != null && Utils.startsWith(s, lastTimezoneStr, pos)) {
+                zone = lastTimeZone;
+                pos += lastTimezoneStr.length();
+            } else {
+                ParsePosition position = new ParsePosition(pos);
+                zone = FastDateTimeParser.parseTimezone(s, position);
+                if (zone == null)
+                    return -1;
+
+                lastTimezoneStr = s.subSequence(pos, position.getIndex()).toString();
+                lastTimeZone = zone;
+                pos = position.getIndex();
+            }
+        }
+
+        if (!resolve(values, zone))
+            return -1;
+
+        return pos;
+    }
+
+    public long getEpochSecond() {
+        return epochSecond;
+    }
+
+    public int getNano() {
+        return nano;
+    }
+
+    public long getTimeNanos() {
+        return epochSecond * 1000_000_000L + nano;
+    }
+
+    /**
+     * Resolves the parsed fields the same way as {@link java.time.format.ResolverStyle#SMART} does.
+     */
+    private boolean resolve(int[] values, TimeZone zone) {
+        int month = values[MONTH];
+        if (month < 1 || month > 12)
+            return false;
+
+        int day = values[DAY];
+        if (day < 1 || day > 31)
+            return false;
+
+        int year = values[YEAR];
+        if (year < 1 || year > Year.MAX_VALUE)
+            return false;
+
+        if (day > 28) {
+            // The smart resolver changes an invalid day-of-month to the last valid one
+            day = Math.min(day, Month.of(month).length(Year.isLeap(year)));
+        }
+
+        int hour;
+
+        switch (hourField) {
+            case HOUR_OF_DAY:
+                hour = values[HOUR_OF_DAY];
+                if (hour < 0 || hour > 24)
+                    return false;
+                break;
+
+            case CLOCK_HOUR_OF_DAY:
+                hour = values[CLOCK_HOUR_OF_DAY];
+                if (hour > 24)
+                    return false;
+
+                if (hour == 24)
+                    hour = 0;
+                break;
+
+            case HOUR_OF_AMPM:
+                hour = values[HOUR_OF_AMPM];
+                if (hour > 11)
+                    return false;
+
+                hour += values[AMPM] * 12;
+                break;
+
+            case CLOCK_HOUR_OF_AMPM:
+                hour = values[CLOCK_HOUR_OF_AMPM];
+                if (hour > 12)
+                    return false;
+
+                if (hour == 12)
+                    hour = 0;
+
+                hour += values[AMPM] * 12;
+                break;
+
+            default:
+                throw new IllegalStateException();
+        }
+
+        int minute = present[MINUTE] ? values[MINUTE] : 0;
+        if (minute > 59)
+            return false;
+
+        int second = present[SECOND] ? values[SECOND] : 0;
+        if (second > 59)
+            return false;
+
+        int nano = present[NANO] ? values[NANO] : 0;
+
+        // "24:00" is the end of the day in the smart mode
+        if (hour == 24 && (minute != 0 || second != 0 || nano != 0))
+            return false;
+
+        long epochDay = toEpochDay(year, month, day);
+
+        if (present[DAY_OF_WEEK] && Math.floorMod(epochDay + 3, 7) + 1 != values[DAY_OF_WEEK])
+            return false;
+
+        long localSecond = epochDay * 86400 + hour * 3600 + minute * 60 + second;
+
+        this.epochSecond = toEpochSecond(localSecond, zone);
+        this.nano = nano;
+
+        return true;
+    }
+
+    private long toEpochDay(int year, int month, int day) {
+        if (year != cachedYear || month != cachedMonth || day != cachedDay) {
+            cachedEpochDay = LocalDate.of(year, month, day).toEpochDay();
+            cachedYear = year;
+            cachedMonth = month;
+            cachedDay = day;
+        }
+
+        return cachedEpochDay;
+    }
+
+    private long toEpochSecond(long localSecond, TimeZone zone) {
+        if (zone != cachedZone) {
+            cachedZone = zone;
+            cachedZoneId = zone.toZoneId();
+            offsetValidFrom = Long.MAX_VALUE;
+            offsetValidTo = Long.MIN_VALUE;
+        }
+
+        if (localSecond >= offsetValidFrom && localSecond < offsetValidTo)
+            return localSecond - cachedOffset;
+
+        LocalDateTime localDateTime = LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC);
+        ZonedDateTime zonedDateTime = localDateTime.atZone(cachedZoneId);
+
+        long res = zonedDateTime.toEpochSecond();
+
+        if (zonedDateTime.toLocalDateTime().equals(localDateTime)) { // Not in a gap
+            int offset = zonedDateTime.getOffset().getTotalSeconds();
+
+            ZoneRules rules = cachedZoneId.getRules();
+            Instant instant = Instant.ofEpochSecond(res);
+
+            ZoneOffsetTransition prev = rules.previousTransition(instant.plusSeconds(1));
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+
+            if (prev == null || prev.getOffsetAfter().getTotalSeconds() == offset) {
+                // The local times in the overlap after the previous transition belong to the previous offset
+                offsetValidFrom = prev == null ? Long.MIN_VALUE
+                        : prev.toEpochSecond() + Math.max(offset, prev.getOffsetBefore().getTotalSeconds());
+                offsetValidTo = next == null ? Long.MAX_VALUE : next.toEpochSecond() + offset;
+                cachedOffset = offset;
+            }
+        }
+
+        return res;
+    }
+
+    @Override
+    public Supplier<Instant> apply(CharSequence s, ParsePosition pos) {
+        int res = parse(s, pos.getIndex());
+        if (res < 0) {
+            pos.setErrorIndex(pos.getIndex());
+            return null;
+        }
+
+        pos.setIndex(res);
+
+        Instant instant = Instant.ofEpochSecond(epochSecond, nano);
+        return () -> instant;
+    }
+
+    /**
+     * Compiles the pattern. The following pattern letters are supported: 'y', 'M', 'd', 'H', 'k', 'K', 'h', 'm', 's', 'S',
+     * 'a', 'E'. The pattern must contain the year, the month, the day and the hour. Optional sections and signed years are
+     * not supported.
+     *
+     * @param pattern the pattern in the {@link DateTimeFormatter} format without the timezone.
+     * @param hasTimezone whether the timezone follows the date.
+     * @return the parser or {@code null} if the pattern is not supported.
+     */
+    @Nullable
+    public static CompiledDateParser compile(@NonNull String pattern, @Nullable Locale locale, boolean hasTimezone,
+                                             @Nullable TimeZone defaultTimeZone) {
+        if (locale == null)
+            locale = Locale.getDefault(Locale.Category.FORMAT);
+
+        List<Element> elements = new ArrayList<>();
+        boolean[] present = new boolean[FIELD_COUNT];
+
+        NumberElement chainHead = null;
+
+        int i = 0;
+        while (i < pattern.length()) {
+            char a = pattern.charAt(i);
+
+            if ((a >= 'a' && a <= 'z') || (a >= 'A' && a <= 'Z')) {
+                int count = 1;
+                while (i + count < pattern.length() && pattern.charAt(i + count) == a) {
+                    count++;
+                }
+
+                i += count;
+
+                Element element = createElement(a, count, locale);
+                if (element == null)
+                    return null;
+
+                if (present[element.field])
+                    return null; // the same field twice
+
+                present[element.field] = true;
+
+                if (element instanceof NumberElement) {
+                    NumberElement number = (NumberElement) element;
+
+                    // Adjacent value parsing, see DateTimeFormatterBuilder.appendValue(NumberPrinterParser)
+                    // The fraction joins the chain as in JDK 9+ (JDK-8031085), "sSSS" patterns are handled by
+                    // FastDateTimeParser.createFormatter() before compiling on the older JDKs
+                    if (chainHead != null && number.isFixedWidth()) {
+                        chainHead.subsequentWidth += number.maxWidth;
+                    } else {
+                        chainHead = number;
+                    }
+                } else {
+                    chainHead = null;
+                }
+
+                elements.add(element);
+                continue;
+            }
+
+            if (a == '[' || a == ']' || a == '{' || a == '}' || a == '#')
+                return null;
+
+            chainHead = null;
+
+            if (a == '\'') {
+                int end = i + 1;
+                StringBuilder text = new StringBuilder();
+
+                while (true) {
+                    if (end >= pattern.length())
+                        return null;
+
+                    if (pattern.charAt(end) == '\'') {
+                        if (end + 1 < pattern.length() && pattern.charAt(end + 1) == '\'') {
+                            text.append('\'');
+                            end += 2;
+                            continue;
+                        }
+
+                        break;
+                    }
+
+                    text.append(pattern.charAt(end++));
+                }
+
+                if (text.length() == 0 && end == i + 1) {
+                    elements.add(new LiteralElement('\'')); // "''" is a single quote
+                } else {
+                    for (int k = 0; k < text.length(); k++) {
+                        elements.add(new LiteralElement(text.charAt(k)));
+                    }
+                }
+
+                i = end + 1;
+                continue;
+            }
+
+            elements.add(new LiteralElement(a));
+            i++;
+        }
+
+        int hourField = -1;
+        for (int field : new int[]{HOUR_OF_DAY, CLOCK_HOUR_OF_DAY, HOUR_OF_AMPM, CLOCK_HOUR_OF_AMPM}) {
+            if (present[field]) {
+                if (hourField >= 0)
+                    return null;
+
+                hourField = field;
+            }
+        }
+
+        if (!present[YEAR] || !present[MONTH] || !present[DAY] || hourField < 0)
+            return null;
+
+        boolean amPmHour = hourField == HOUR_OF_AMPM || hourField == CLOCK_HOUR_OF_AMPM;
+        if (amPmHour != present[AMPM])
+            return null;
+
+        if ((present[SECOND] && !present[MINUTE]) || (present[NANO] && !present[SECOND]))
+            return null;
+
+        return new CompiledDateParser(elements.toArray(new Element[0]), present, hourField, hasTimezone, defaultTimeZone);
+    }
+
+    @Nullable
+    private static Element createElement(char letter, int count, Locale locale) {
+        switch (letter) {
+            case 'y':
+                if (count == 2)
+                    return new ReducedYearElement();
+
+                // DateTimeFormatter requires a sign if "yyyy" year has more than 4 digits
+                return new NumberElement(YEAR, count, 19, count >= 4);
+
+            case 'M':
+                if (count <= 2)
+                    return number(MONTH, count);
+
+                if (count <= 4)
+                    return TextElement.create(MONTH, "MMMM".substring(0, count), locale, Month.values());
+
+                return null;
+
+            case 'd': return number(DAY, count);
+            case 'H': return number(HOUR_OF_DAY, count);
+            case 'k': return number(CLOCK_HOUR_OF_DAY, count);
+            case 'K': return number(HOUR_OF_AMPM, count);
+            case 'h': return number(CLOCK_HOUR_OF_AMPM, count);
+            case 'm': return number(MINUTE, count);
+            case 's': return number(SECOND, count);
+
+            case 'S':
+                if (count > 9)
+                    return null;
+
+                return new FractionElement(count);
+
+            case 'a':
+                if (count != 1)
+                    return null;
+
+                return TextElement.create(AMPM, "a", locale, LocalTime.MIDNIGHT, LocalTime.NOON);
+
+            case 'E':
+                if (count > 4)
+                    return null;
+
+                return TextElement.create(DAY_OF_WEEK, "EEEE".substring(0, count), locale, DayOfWeek.values());
+
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    private static NumberElement number(int field, int count) {
+        if (count == 1)
+            return new NumberElement(field, 1, 19);
+
+        if (count == 2)
+            return new NumberElement(field, 2, 2);
+
+        return null;
+    }
+
+    private static boolean isDigit(char a) {
+        return a >= '0' && a <= '9';
+    }
+
+    private abstract static class Element {
+
+        final int field;
+
+        Element(int field) {
+            this.field = field;
+        }
+
+        /**
+         * @return the position after the parsed element or {@code -1}.
+         */
+        abstract int parse(CharSequence s, int pos, int[] values);
+    }
+
+    private static class LiteralElement extends Element {
+
+        private final char a;
+
+        LiteralElement(char a) {
+            super(-1);
+            this.a = a;
+        }
+
+        @Override
+        int parse(CharSequence s, int pos, int[] values) {
+            if (pos < s.length() && s.charAt(pos) == a)
+                return pos + 1;
+
+            return -1;
+        }
+    }
+
+    private static class NumberElement extends Element {
+
+        final int minWidth;
+        final int maxWidth;
+
+        /**
+         * Width greater than {@link #minWidth} is rejected, the same as {@link java.time.format.SignStyle#EXCEEDS_PAD}
+         * does in the strict mode for unsigned numbers.
+         */
+        final boolean exceedsPad;
+
+        /**
+         * The total width of the fixed-width numbers following this one without separators.
+         */
+        int subsequentWidth;
+
+        NumberElement(int field, int minWidth, int maxWidth) {
+            this(field, minWidth, maxWidth, false);
+        }
+
+        NumberElement(int field, int minWidth, int maxWidth, boolean exceedsPad) {
+            super(field);
+            this.minWidth = minWidth;
+            this.maxWidth = maxWidth;
+            this.exceedsPad = exceedsPad;
+        }
+
+        boolean isFixedWidth() {
+            return minWidth == maxWidth;
+        }
+
+        @Override
+        int parse(CharSequence s, int pos, int[] values) {
+            int len = s.length();
+
+            int width;
+
+            if (isFixedWidth()) {
+                width = minWidth;
+                if (pos + width > len)
+                    return -1;
+            } else {
+                int maxEnd = (int) Math.min((long) pos + maxWidth + subsequentWidth, len);
+
+                int end = pos;
+                while (end < maxEnd && isDigit(s.charAt(end))) {
+                    end++;
+                }
+
+                width = end - pos;
+                if (width < minWidth)
+                    return -1;
+
+                if (subsequentWidth > 0)
+                    width = Math.max(minWidth, width - subsequentWidth);
+
+                if (exceedsPad && width > minWidth)
+                    return -1;
+            }
+
+            long value = 0;
+
+            for (int i = pos, end = pos + width; i < end; i++) {
+                char a = s.charAt(i);
+                if (!isDigit(a))
+                    return -1;
+
+                value = value * 10 + (a - '0');
+
+                if (value > Integer.MAX_VALUE)
+                    return -1; // out of the range of any field
+            }
+
+            values[field] = convert((int) value);
+
+            return pos + width;
+        }
+
+        int convert(int value) {
+            return value;
+        }
+    }
+
+    private static class ReducedYearElement extends NumberElement {
+
+        ReducedYearElement() {
+            super(YEAR, 2, 2);
+        }
+
+        @Override
+        int convert(int value) {
+            return 2000 + value;
+        }
+    }
+
+    private static class FractionElement extends NumberElement {
+
+        FractionElement(int width) {
+            super(NANO, width, width);
+        }
+
+        @Override
+        int convert(int value) {
+            return value * POW10[9 - minWidth];
+        }
+    }
+
+    private static class TextElement extends Element {
+
+        private final TextTrie trie;
+
+        TextElement(int field, TextTrie trie) {
+            super(field);
+            this.trie = trie;
+        }
+
+        @Override
+        int parse(CharSequence s, int pos, int[] values) {
+            int end = trie.match(s, pos);
+            if (end < 0)
+                return -1;
+
+            values[field] = trie.getMatchedValue();
+            return end;
+        }
+
+        @Nullable
+        static TextElement create(int field, String pattern, Locale locale, TemporalAccessor... values) {
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern, locale);
+
+            TextTrie trie = new TextTrie();
+            Set<String> texts = new HashSet<>();
+
+            for (int i = 0; i < values.length; i++) {
+                String text = formatter.format(values[i]);
+
+                // DateTimeFormatter parses non-unique texts as numbers
+                if (text.isEmpty() || !texts.add(text))
+                    return null;
+
+                // month and day-of-week are 1-based, AM is 0
+                trie.add(text, field == AMPM ? i : i + 1);
+            }
+
+            return new TextElement(field, trie);
+        }
+    }
+
+    /**
+     * Finds the longest text at the position, the same as {@link DateTimeFormatter} does.
+     */
+    private static class TextTrie {
+
+        private char[] chars = new char[0];
+        private TextTrie[] children = new TextTrie[0];
+
+        private int value = -1;
+
+        private int matchedValue;
+
+        void add(String text, int value) {
+            TextTrie node = this;
+
+            for (int i = 0; i < text.length(); i++) {
+                char a = text.charAt(i);
+
+                int idx = node.indexOf(a);
+                if (idx < 0) {
+                    idx = node.chars.length;
+                    node.chars = Arrays.copyOf(node.chars, idx + 1);
+                    node.children = Arrays.copyOf(node.children, idx + 1);
+                    node.chars[idx] = a;
+                    node.children[idx] = new TextTrie();
+                }
+
+                node = node.children[idx];
+            }
+
+            node.value = value;
+        }
+
+        private int indexOf(char a) {
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == a)
+                    return i;
+            }
+
+            return -1;
+        }
+
+        int match(CharSequence s, int pos) {
+            int res = -1;
+
+            TextTrie node = this;
+
+            for (int i = pos, len = s.length(); i < len; i++) {
+                int idx = node.indexOf(s.charAt(i));
+                if (idx < 0)
+                    break;
+
+                node = node.children[idx];
+
+                if (node.value >= 0) {
+                    res = i + 1;
+                    matchedValue = node.value;
+                }
+            }
+
+            return res;
+        }
+
+        int getMatchedValue() {
+            return matchedValue;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.logviewer.formats.utils;
 
+import com.logviewer.utils.Utils;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 
@@ -18,7 +19,7 @@ import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class FastDateTimeParser implements BiFunction<String, ParsePosition, Supplier<Instant>> {
+public class FastDateTimeParser implements BiFunction<CharSequence, ParsePosition, Supplier<Instant>> {
 
     private static final Pattern TIME_PATTERN = Pattern.compile("(.*?)(?:z+|Z+|X+)");
 
@@ -70,7 +71,7 @@ public class FastDateTimeParser implements BiFunction<String, ParsePosition, Sup
     }
 
     @Override
-    public Supplier<Instant> apply(String s, ParsePosition pos) {
+    public Supplier<Instant> apply(CharSequence s, ParsePosition pos) {
         TemporalAccessor res = parseTimestampWithoutZone(formatter, s, pos);
         if (res == null)
             return null;
@@ -99,17 +100,17 @@ public class FastDateTimeParser implements BiFunction<String, ParsePosition, Sup
      * Parse the following timezone formats: "Z", "+0300", "-04:00", "GMT+0600", "GMT+01:00", "GMT+03", "MSK"
      */
     @Nullable
-    private TimeZone getTimezone(String s, ParsePosition pos) {
+    private TimeZone getTimezone(CharSequence s, ParsePosition pos) {
         int idx = pos.getIndex();
 
-        if (lastTimezoneStr != null && s.startsWith(lastTimezoneStr, idx)) {
+        if (lastTimezoneStr != null && Utils.startsWith(s, lastTimezoneStr, idx)) {
             pos.setIndex(idx + lastTimezoneStr.length());
             return lastTimeZone;
         }
 
         TimeZone res = parseTimezone(s, pos);
         if (res != null) {
-            lastTimezoneStr = s.substring(idx, pos.getIndex());
+            lastTimezoneStr = s.subSequence(idx, pos.getIndex()).toString();
             lastTimeZone = res;
         }
 
@@ -117,7 +118,7 @@ public class FastDateTimeParser implements BiFunction<String, ParsePosition, Sup
     }
 
     @Nullable
-    public static TimeZone parseTimezone(String s, ParsePosition pos) {
+    public static TimeZone parseTimezone(CharSequence s, ParsePosition pos) {
         int idx = pos.getIndex();
 
         if (idx >= s.length())
@@ -135,7 +136,7 @@ public class FastDateTimeParser implements BiFunction<String, ParsePosition, Sup
 
         if (isUpperLetter(a) && idx + 3 <= s.length() && isUpperLetter(s.charAt(idx + 1)) && isUpperLetter(s.charAt(idx + 2))) {
             if (idx + 3 == s.length() || !Character.isLetter(s.charAt(idx + 3))) {
-                String id = s.substring(idx, idx + 3);
+                String id = s.subSequence(idx, idx + 3).toString();
 
                 if (id.equals("GMT") && idx + 3 < s.length() && (s.charAt(idx + 3) == '-' || s.charAt(idx + 3) == '+')) {
                     TimeZone res = parseOffset(s, idx + 3, pos);
@@ -160,7 +161,7 @@ public class FastDateTimeParser implements BiFunction<String, ParsePosition, Sup
      * parse offset like "+0300", "-04:00"
      */
     @Nullable
-    private static TimeZone parseOffset(String s, int idx, ParsePosition pos) {
+    private static TimeZone parseOffset(CharSequence s, int idx, ParsePosition pos) {
         if (idx + 3 > s.length())
             return null;
 
@@ -177,25 +178,25 @@ public class FastDateTimeParser implements BiFunction<String, ParsePosition, Sup
             return null;
         }
 
-        if (idx + 6 <= s.length() && s.charAt(idx + 3) == ':' && (s.startsWith("00", idx + 4) || s.startsWith("30", idx + 4)) && isNotDigit(s, idx + 6)) {
+        if (idx + 6 <= s.length() && s.charAt(idx + 3) == ':' && (Utils.startsWith(s, "00", idx + 4) || Utils.startsWith(s, "30", idx + 4)) && isNotDigit(s, idx + 6)) {
             pos.setIndex(idx + 6);
-            return TimeZone.getTimeZone("GMT" + s.substring(idx, idx + 6));
+            return TimeZone.getTimeZone("GMT" + s.subSequence(idx, idx + 6));
         }
 
-        if (idx + 5 <= s.length() && (s.startsWith("00", idx + 3) || s.startsWith("30", idx + 3)) && isNotDigit(s, idx + 5)) {
+        if (idx + 5 <= s.length() && (Utils.startsWith(s, "00", idx + 3) || Utils.startsWith(s, "30", idx + 3)) && isNotDigit(s, idx + 5)) {
             pos.setIndex(idx + 5);
-            return TimeZone.getTimeZone("GMT" + s.substring(idx, idx + 5));
+            return TimeZone.getTimeZone("GMT" + s.subSequence(idx, idx + 5));
         }
 
         if (isNotDigit(s, idx + 3)) {
             pos.setIndex(idx + 3);
-            return TimeZone.getTimeZone("GMT" + s.substring(idx, idx + 3) + "00");
+            return TimeZone.getTimeZone("GMT" + s.subSequence(idx, idx + 3) + "00");
         }
 
         return null;
     }
 
-    private static boolean isNotDigit(String s, int offset) {
+    private static boolean isNotDigit(CharSequence s, int offset) {
         if (offset >= s.length())
             return true;
 
@@ -204,13 +205,13 @@ public class FastDateTimeParser implements BiFunction<String, ParsePosition, Sup
     }
 
     @Nullable
-    private static TemporalAccessor parseTimestampWithoutZone(Format formatter, String s, ParsePosition parsePosition) {
-        return (TemporalAccessor)formatter.parseObject(s, parsePosition);
+    private static TemporalAccessor parseTimestampWithoutZone(Format formatter, CharSequence s, ParsePosition parsePosition) {
+        return (TemporalAccessor)formatter.parseObject(s.toString(), parsePosition);
     }
 
-    private static BiFunction<String, ParsePosition, Supplier<Instant>> simpleDateFormatter(@NonNull SimpleDateFormat format) {
+    private static BiFunction<CharSequence, ParsePosition, Supplier<Instant>> simpleDateFormatter(@NonNull SimpleDateFormat format) {
         return (s, pos) -> {
-            Date parsed = format.parse(s, pos);
+            Date parsed = format.parse(s.toString(), pos);
             if (parsed == null)
                 return null;
 
@@ -218,7 +219,74 @@ public class FastDateTimeParser implements BiFunction<String, ParsePosition, Sup
         };
     }
 
-    public static BiFunction<String, ParsePosition, Supplier<Instant>> createFormatter(@NonNull String pattern,
+    /**
+     * Adds the fixed part of the pattern to the prefix filter. {@link DateTimeFormatter} parses "MM", "dd", "HH", "mm",
+     * "ss", "yy", "S..." as fixed-width numbers, the literals must match exactly.
+     *
+     * @return {@code true} if the whole pattern is added to the filter.
+     */
+    static boolean appendPrefix(@NonNull String pattern, @NonNull LinePrefixFilter.Builder prefix) {
+        int i = 0;
+
+        while (i < pattern.length()) {
+            char a = pattern.charAt(i);
+
+            if ((a >= 'a' && a <= 'z') || (a >= 'A' && a <= 'Z')) {
+                int count = 1;
+                while (i + count < pattern.length() && pattern.charAt(i + count) == a) {
+                    count++;
+                }
+
+                int digits = fixedWidthDigits(a, count);
+                if (digits == 0) {
+                    if ((a == 'y' || a == 'u') && count == 4)
+                        prefix.add("+-0123456789"); // the year may have more digits and a sign
+
+                    return false;
+                }
+
+                for (int k = 0; k < digits; k++) {
+                    prefix.addDigit();
+                }
+
+                i += count;
+                continue;
+            }
+
+            if (a == '\'' || a == '[' || a == ']' || a == '{' || a == '}' || a == '#' || a >= 128)
+                return false;
+
+            prefix.add(String.valueOf(a));
+            i++;
+        }
+
+        return true;
+    }
+
+    private static int fixedWidthDigits(char letter, int count) {
+        switch (letter) {
+            case 'M':
+            case 'L':
+            case 'd':
+            case 'H':
+            case 'h':
+            case 'k':
+            case 'K':
+            case 'm':
+            case 's':
+            case 'y':
+            case 'u':
+                return count == 2 ? 2 : 0;
+
+            case 'S':
+                return count;
+
+            default:
+                return 0;
+        }
+    }
+
+    public static BiFunction<CharSequence, ParsePosition, Supplier<Instant>> createFormatter(@NonNull String pattern,
                                                                                        @Nullable Locale locale,
                                                                                        @Nullable TimeZone defaultTimeZone) throws IllegalArgumentException {
         if (!isJDK8031085fixed) {
@@ -239,11 +307,16 @@ public class FastDateTimeParser implements BiFunction<String, ParsePosition, Sup
         }
 
         Matcher matcher = TIME_PATTERN.matcher(pattern);
-        if (!matcher.matches()) {
-            return new FastDateTimeParser(pattern, locale, false, defaultTimeZone);
+        boolean hasTimezone = matcher.matches();
+        String datePattern = hasTimezone ? matcher.group(1) : pattern;
+
+        CompiledDateParser compiled = CompiledDateParser.compile(datePattern, locale, hasTimezone, defaultTimeZone);
+        if (compiled != null) {
+            DateTimeFormatter.ofPattern(datePattern); // validation
+            return compiled;
         }
 
-        return new FastDateTimeParser(matcher.group(1), locale, true, defaultTimeZone);
+        return new FastDateTimeParser(datePattern, locale, hasTimezone, defaultTimeZone);
     }
 
 }
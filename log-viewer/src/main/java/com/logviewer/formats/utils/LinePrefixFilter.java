@@ -0,0 +1,174 @@
+package com.logviewer.formats.utils;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A cheap check that a line may be a record start. The filter is a sequence of ASCII character classes, the line
+ * matches the filter if its first characters belong to the classes. The filter works with the raw bytes, so it can
+ * be used for ASCII-compatible charsets only.
+ *
+ * @see LvLayoutNode#appendPrefix(Builder)
+ */
+public class LinePrefixFilter {
+
+    private static final byte ESCAPE = '\u001B';
+
+    private final long[] lowMasks;
+    private final long[] highMasks;
+    private final boolean[] skipSpaces;
+
+    private LinePrefixFilter(long[] lowMasks, long[] highMasks, boolean[] skipSpaces) {
+        this.lowMasks = lowMasks;
+        this.highMasks = highMasks;
+        this.skipSpaces = skipSpaces;
+    }
+
+    /**
+     * @return {@code false} if the line definitely cannot be parsed, {@code true} if the line may be a record start.
+     */
+    public boolean test(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int idx = offset;
+
+        for (int i = 0; i < lowMasks.length; i++) {
+            if (skipSpaces[i]) {
+                while (idx < end && data[idx] == ' ') {
+                    idx++;
+                }
+            }
+
+            if (idx == end)
+                return false;
+
+            byte b = data[idx++];
+
+            // Non-ASCII characters and color codes can be checked only after decoding
+            if (b < 0 || b == ESCAPE)
+                return true;
+
+            long mask = b < 64 ? lowMasks[i] : highMasks[i];
+            if ((mask & (1L << (b & 63))) == 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    public int size() {
+        return lowMasks.length;
+    }
+
+    /**
+     * Creates a filter from the first nodes of the layout. The nodes are added until a node that cannot describe
+     * its whole text by the fixed character classes.
+     */
+    @Nullable
+    public static LinePrefixFilter fromLayout(@NonNull LvLayoutNode[] layout) {
+        Builder builder = new Builder();
+
+        for (LvLayoutNode node : layout) {
+            if (node instanceof LvLayoutStretchNode)
+                break;
+
+            if (node.removeSpacesBefore())
+                builder.skipSpaces();
+
+            if (!node.appendPrefix(builder))
+                break;
+        }
+
+        return builder.build();
+    }
+
+    public static class Builder {
+
+        private long[] lowMasks = new long[16];
+        private long[] highMasks = new long[16];
+        private boolean[] skipSpaces = new boolean[16];
+
+        private int size;
+
+        private boolean skipSpacesBeforeNext;
+
+        /**
+         * The spaces before the next character are skipped, the same as {@link LvLayoutNode#removeSpacesBefore()} does.
+         */
+        public Builder skipSpaces() {
+            skipSpacesBeforeNext = true;
+            return this;
+        }
+
+        /**
+         * Adds a character that must be one of the specified ASCII characters.
+         */
+        public Builder add(@NonNull String chars) {
+            long low = 0;
+            long high = 0;
+
+            for (int i = 0; i < chars.length(); i++) {
+                char a = chars.charAt(i);
+                if (a >= 128)
+                    throw new IllegalArgumentException("Only ASCII characters are supported: " + chars);
+
+                if (a < 64) {
+                    low |= 1L << a;
+                } else {
+                    high |= 1L << (a - 64);
+                }
+            }
+
+            return add(low, high);
+        }
+
+        /**
+         * Adds a character that must be one of the ASCII characters specified by the masks, the bit N of
+         * {@code lowMask} is the character N, the bit N of {@code highMask} is the character (64 + N).
+         */
+        Builder add(long lowMask, long highMask) {
+            if (size == lowMasks.length) {
+                lowMasks = Arrays.copyOf(lowMasks, size * 2);
+                highMasks = Arrays.copyOf(highMasks, size * 2);
+                skipSpaces = Arrays.copyOf(skipSpaces, size * 2);
+            }
+
+            lowMasks[size] = lowMask;
+            highMasks[size] = highMask;
+            skipSpaces[size] = skipSpacesBeforeNext;
+            size++;
+
+            skipSpacesBeforeNext = false;
+
+            return this;
+        }
+
+        public Builder addDigit() {
+            return add("0123456789");
+        }
+
+        /**
+         * Adds the characters of the text, each character must match exactly.
+         */
+        public Builder addText(@NonNull String text) {
+            for (int i = 0; i < text.length(); i++) {
+                add(String.valueOf(text.charAt(i)));
+            }
+
+            return this;
+        }
+
+        /**
+         * @return the filter or {@code null} if the filter accepts any line.
+         */
+        @Nullable
+        public LinePrefixFilter build() {
+            if (size == 0)
+                return null;
+
+            return new LinePrefixFilter(Arrays.copyOf(lowMasks, size), Arrays.copyOf(highMasks, size),
+                    Arrays.copyOf(skipSpaces, size));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.logviewer.formats.utils;
+
+import com.logviewer.utils.Utils;
+import org.springframework.lang.NonNull;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A reusable char view of a log line with removed ASCII color codes. If the charset is ASCII-compatible and the line
+ * contains ASCII characters only, the bytes are copied to the internal buffer directly, a {@link String} is created
+ * only when {@link #toString()} is called. This allows to check that a line is not a record start without allocations.
+ */
+public class LogLineBuffer implements CharSequence {
+
+    private final Charset charset;
+
+    private final boolean asciiCompatible;
+
+    private char[] buf = new char[256];
+    private int length;
+
+    private String str;
+
+    private boolean ascii;
+
+    public LogLineBuffer(@NonNull Charset charset) {
+        this.charset = charset;
+        this.asciiCompatible = isAsciiCompatible(charset);
+    }
+
+    /**
+     * @return {@code true} if every byte below 0x80 is a single ASCII character in the charset.
+     */
+    public static boolean isAsciiCompatible(@NonNull Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1))
+            return true;
+
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1)
+            return false;
+
+        byte[] ascii = new byte[0x80];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+
+        String decoded = new String(ascii, charset);
+        if (decoded.length() != ascii.length)
+            return false;
+
+        for (int i = 0; i < ascii.length; i++) {
+            if (decoded.charAt(i) != i)
+                return false;
+        }
+
+        return true;
+    }
+
+    public void reset(byte[] data, int offset, int length) {
+        str = null;
+
+        if (asciiCompatible && decodeAscii(data, offset, length)) {
+            ascii = true;
+        } else {
+            reset(Utils.removeAsciiColorCodes(new String(data, offset, length, charset)));
+        }
+    }
+
+    public void reset(@NonNull String s) {
+        ensureCapacity(s.length());
+        s.getChars(0, s.length(), buf, 0);
+        length = s.length();
+        str = s;
+        ascii = false;
+    }
+
+    /**
+     * @return {@code true} if the line has been decoded from the bytes containing ASCII characters only, the bytes may
+     * include the color codes.
+     */
+    public boolean isAscii() {
+        return ascii;
+    }
+
+    /**
+     * Copies ASCII bytes to the buffer skipping the color codes, the same codes as {@link Utils#removeAsciiColorCodes(String)}
+     * removes.
+     *
+     * @return {@code false} if the line contains a non-ASCII byte.
+     */
+    private boolean decodeAscii(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+
+        char[] buf = this.buf;
+        int n = 0;
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            byte b = data[i];
+
+            if (b < 0)
+                return false;
+
+            if (b == '\u001B' && i + 2 < end && data[i + 1] == '[') {
+                int k = i + 2;
+                while (k < end && (data[k] == ';' || (data[k] >= '0' && data[k] <= '9'))) {
+                    k++;
+                }
+
+                if (k < end && data[k] == 'm') {
+                    i = k;
+                    continue;
+                }
+            }
+
+            buf[n++] = (char) b;
+        }
+
+        this.length = n;
+        return true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buf.length < capacity)
+            buf = Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length)
+            throw new StringIndexOutOfBoundsException(index);
+
+        return buf[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length)
+            throw new StringIndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+
+        return new String(buf, start, end - start);
+    }
+
+    /**
+     * @return the line as a string, the string is cached until the next {@link #reset(byte[], int, int)} call.
+     */
+    @NonNull
+    @Override
+    public String toString() {
+        String res = str;
+        if (res == null) {
+            res = new String(buf, 0, length);
+            str = res;
+        }
+
+        return res;
+    }
+}
@@ -8,7 +8,7 @@ public class LvLayoutClassNode implements LvLayoutNode {
     private static final int STATE_FINISH = 3;
 
     @Override
-    public int parse(String s, int offset, int end) {
+    public int parse(CharSequence s, int offset, int end) {
         int state = STATE_INIT;
 
         int i;
@@ -67,6 +67,12 @@ public class LvLayoutClassNode implements LvLayoutNode {
         return i;
     }
 
+    @Override
+    public boolean appendPrefix(LinePrefixFilter.Builder prefix) {
+        prefix.add(".$_ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz");
+        return false;
+    }
+
     @Override
     public LvLayoutClassNode clone() {
         return new LvLayoutClassNode();
@@ -1,5 +1,6 @@
 package com.logviewer.formats.utils;
 
+import com.logviewer.utils.Utils;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 
@@ -18,15 +19,32 @@ public class LvLayoutFixedTextNode extends LvLayoutCustomTypeNode implements LvL
     }
 
     @Override
-    public int parse(String s, int offset, int end) {
+    public int parse(CharSequence s, int offset, int end) {
         for (String value : values) {
-            if (offset + value.length() <= end && s.startsWith(value, offset))
+            if (offset + value.length() <= end && Utils.startsWith(s, value, offset))
                 return offset + value.length();
         }
 
         return PARSE_FAILED;
     }
 
+    @Override
+    public boolean appendPrefix(LinePrefixFilter.Builder prefix) {
+        StringBuilder firstChars = new StringBuilder();
+
+        for (String value : values) {
+            if (value.isEmpty() || value.charAt(0) >= 128)
+                return false;
+
+            firstChars.append(value.charAt(0));
+        }
+
+        if (firstChars.length() > 0)
+            prefix.add(firstChars.toString());
+
+        return false;
+    }
+
     @Override
     public LvLayoutFixedTextNode clone() {
         return new LvLayoutFixedTextNode(getFieldName(), getFieldType(), values);
@@ -17,7 +17,7 @@ public class LvLayoutHexNode extends LvLayoutCustomTypeNode {
     }
 
     @Override
-    public int parse(String s, int offset, int end) {
+    public int parse(CharSequence s, int offset, int end) {
         int i = offset;
 
         while (i < end) {
@@ -41,7 +41,7 @@ public class LvLayoutHexNode extends LvLayoutCustomTypeNode {
     }
 
 //    @Override
-//    public int search(String s, int offset, int end) {
+//    public int search(CharSequence s, int offset, int end) {
 //        for (int i = offset; i < end; i++) {
 //            char c = s.charAt(i);
 //
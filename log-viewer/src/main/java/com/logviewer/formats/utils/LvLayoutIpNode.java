@@ -9,7 +9,7 @@ public class LvLayoutIpNode extends LvLayoutCustomTypeNode {
         super(fieldName, fieldType);
     }
 
-    private int readNumber(String s, int offset, int end) {
+    private int readNumber(CharSequence s, int offset, int end) {
         if (offset == end)
             return PARSE_FAILED;
 
@@ -41,7 +41,7 @@ public class LvLayoutIpNode extends LvLayoutCustomTypeNode {
     }
 
     @Override
-    public int parse(String s, int offset, int end) {
+    public int parse(CharSequence s, int offset, int end) {
         for (int i = 0; i < 3; i++) {
             offset = readNumber(s, offset, end);
             if (offset == PARSE_FAILED)
@@ -1,6 +1,7 @@
 package com.logviewer.formats.utils;
 
 import com.logviewer.utils.LvDateUtils;
+import com.logviewer.utils.Utils;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 
@@ -43,7 +44,7 @@ public class LvLayoutLog4jISO8601Date extends LvLayoutDateNode {
     }
 
     @Override
-    public int parse(String s, int offset, int end) {
+    public int parse(CharSequence s, int offset, int end) {
         int expectedLength = 19 + (milliseconds == 0 ? 0 : milliseconds + 1);
 
         if (end - offset < expectedLength) {
@@ -146,8 +147,8 @@ public class LvLayoutLog4jISO8601Date extends LvLayoutDateNode {
         return offset;
     }
 
-    private int parseAndSetTimezone(String s, int offset, Calendar calendar) {
-        if (currentTimezoneStr != null && s.startsWith(currentTimezoneStr, offset)) {
+    private int parseAndSetTimezone(CharSequence s, int offset, Calendar calendar) {
+        if (currentTimezoneStr != null && Utils.startsWith(s, currentTimezoneStr, offset)) {
             return offset + currentTimezoneStr.length();
         }
 
@@ -160,11 +161,11 @@ public class LvLayoutLog4jISO8601Date extends LvLayoutDateNode {
             return -1;
 
         calendar.setTimeZone(res);
-        currentTimezoneStr = s.substring(offset, position.getIndex());
+        currentTimezoneStr = s.subSequence(offset, position.getIndex()).toString();
         return position.getIndex();
     }
 
-    private static int readInt(String s, int offset, int end) {
+    private static int readInt(CharSequence s, int offset, int end) {
         int res = 0;
 
         while (offset < end) {
@@ -179,6 +180,27 @@ public class LvLayoutLog4jISO8601Date extends LvLayoutDateNode {
         return res;
     }
 
+    @Override
+    public boolean appendPrefix(LinePrefixFilter.Builder prefix) {
+        // The year is between 1970 and 2034
+        prefix.add("12").addDigit().addDigit().addDigit()
+                .add("-/").addDigit().addDigit()
+                .add("-/").addDigit().addDigit()
+                .add("T _").addDigit().addDigit()
+                .add(":").addDigit().addDigit()
+                .add(":").addDigit().addDigit();
+
+        if (milliseconds > 0) {
+            prefix.add(",.");
+
+            for (int i = 0; i < milliseconds; i++) {
+                prefix.addDigit();
+            }
+        }
+
+        return !hasTimezone;
+    }
+
     @Override
     public boolean isFull() {
         return true;
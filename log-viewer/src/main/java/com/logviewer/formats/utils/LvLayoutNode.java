@@ -13,15 +13,27 @@ public interface LvLayoutNode extends Cloneable {
      * @return the end of parsed field, or {@link #SKIP_FIELD} if the part is not present,
      *         or {@link #PARSE_FAILED} if the string is not a valid log line.
      */
-    int parse(String s, int offset, int end);
+    int parse(CharSequence s, int offset, int end);
 
     default boolean removeSpacesBefore() {
         return true;
     }
 
-    default int getValueStart(String s, int idx, int endStr) {
+    default int getValueStart(CharSequence s, int idx, int endStr) {
         return idx;
     }
 
+    /**
+     * Describes the first characters of any text accepted by the node, the description is used to reject lines that
+     * cannot be a record start without parsing.
+     *
+     * @param prefix the builder to add the character classes to.
+     * @return {@code true} if the added classes describe the whole text of the node, so the next node can add its
+     *          prefix too, {@code false} if the node text may be longer or the node adds nothing.
+     */
+    default boolean appendPrefix(LinePrefixFilter.Builder prefix) {
+        return false;
+    }
+
     LvLayoutNode clone();
 }
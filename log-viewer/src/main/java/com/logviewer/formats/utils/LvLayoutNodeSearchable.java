@@ -2,6 +2,6 @@ package com.logviewer.formats.utils;
 
 public interface LvLayoutNodeSearchable {
 
-    int search(String s, int offset, int end);
+    int search(CharSequence s, int offset, int end);
 
 }
@@ -24,7 +24,7 @@ public class LvLayoutNumberNode extends LvLayoutCustomTypeNode {
     }
 
     @Override
-    public int parse(String s, int offset, int end) {
+    public int parse(CharSequence s, int offset, int end) {
         if (offset == end)
             return PARSE_FAILED;
 
@@ -71,13 +71,19 @@ public class LvLayoutNumberNode extends LvLayoutCustomTypeNode {
         return offset;
     }
 
+    @Override
+    public boolean appendPrefix(LinePrefixFilter.Builder prefix) {
+        prefix.add(canBeNegative ? "-0123456789" : "0123456789");
+        return false;
+    }
+
     @Override
     public LvLayoutNumberNode clone() {
         return new LvLayoutNumberNode(getFieldName(), getFieldType(), canBeNegative, canHaveFraction);
     }
 
 //    @Override
-//    public int search(String s, int offset, int end) {
+//    public int search(CharSequence s, int offset, int end) {
 //        for (int i = offset; i < end; i++) {
 //            char c = s.charAt(i);
 //
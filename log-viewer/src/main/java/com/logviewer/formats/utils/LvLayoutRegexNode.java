@@ -22,7 +22,7 @@ public class LvLayoutRegexNode extends LvLayoutCustomTypeNode implements LvLayou
         this.pattern = pattern;
     }
 
-    private Matcher getMatcher(String s) {
+    private Matcher getMatcher(CharSequence s) {
         if (matcher == null) {
             matcher = pattern.matcher(s);
         } else {
@@ -33,7 +33,7 @@ public class LvLayoutRegexNode extends LvLayoutCustomTypeNode implements LvLayou
     }
 
     @Override
-    public int parse(String s, int offset, int end) {
+    public int parse(CharSequence s, int offset, int end) {
         Matcher matcher = getMatcher(s);
 
         matcher.region(offset, end);
@@ -46,7 +46,7 @@ public class LvLayoutRegexNode extends LvLayoutCustomTypeNode implements LvLayou
     }
 
     @Override
-    public int search(String s, int offset, int end) {
+    public int search(CharSequence s, int offset, int end) {
         Matcher matcher = getMatcher(s);
 
         matcher.region(offset, end);
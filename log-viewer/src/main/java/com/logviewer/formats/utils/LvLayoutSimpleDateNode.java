@@ -13,7 +13,7 @@ public class LvLayoutSimpleDateNode extends LvLayoutDateNode {
 
     private final String format;
 
-    private transient BiFunction<String, ParsePosition, Supplier<Instant>> formatter;
+    private transient BiFunction<CharSequence, ParsePosition, Supplier<Instant>> formatter;
 
     protected transient Supplier<Instant> timestamp;
 
@@ -27,12 +27,22 @@ public class LvLayoutSimpleDateNode extends LvLayoutDateNode {
     }
 
     @Override
-    public int parse(String s, int offset, int end) {
-        ParsePosition position = new ParsePosition(offset);
-
+    public int parse(CharSequence s, int offset, int end) {
         if (formatter == null)
             formatter = FastDateTimeParser.createFormatter(format, locale, zone);
 
+        if (formatter instanceof CompiledDateParser) {
+            int res = ((CompiledDateParser) formatter).parse(s, offset);
+            if (res < 0 || res > end) {
+                currentDate = -1;
+                return PARSE_FAILED;
+            }
+
+            return res;
+        }
+
+        ParsePosition position = new ParsePosition(offset);
+
         timestamp = formatter.apply(s, position);
         if (timestamp == null || position.getIndex() > end) {
             currentDate = -1;
@@ -42,8 +52,21 @@ public class LvLayoutSimpleDateNode extends LvLayoutDateNode {
         return position.getIndex();
     }
 
+    @Override
+    public boolean appendPrefix(LinePrefixFilter.Builder prefix) {
+        // SimpleDateFormat is used for some patterns as a workaround, it doesn't require the exact number of digits
+        BiFunction<CharSequence, ParsePosition, Supplier<Instant>> parser = FastDateTimeParser.createFormatter(format, locale, zone);
+        if (!(parser instanceof FastDateTimeParser) && !(parser instanceof CompiledDateParser))
+            return false;
+
+        return FastDateTimeParser.appendPrefix(format, prefix);
+    }
+
     @Override
     public long getCurrentDate() {
+        if (formatter instanceof CompiledDateParser)
+            return ((CompiledDateParser) formatter).getTimeNanos();
+
         Instant instant = timestamp.get();
 
         return LvDateUtils.toNanos(instant);
@@ -28,7 +28,7 @@ public class LvLayoutStretchNode extends LvLayoutCustomTypeNode {
         return end;
     }
 
-    public boolean reset(String s, int start, int endStr) {
+    public boolean reset(CharSequence s, int start, int endStr) {
         this.start = start;
 
         if (start + minSize > endStr)
@@ -40,7 +40,7 @@ public class LvLayoutStretchNode extends LvLayoutCustomTypeNode {
     }
 
     @Override
-    public final int parse(String s, int offset, int end) {
+    public final int parse(CharSequence s, int offset, int end) {
         throw new UnsupportedOperationException();
     }
 
@@ -50,7 +50,7 @@ public class LvLayoutStretchNode extends LvLayoutCustomTypeNode {
     }
 
     @Override
-    public int getValueStart(String s, int idx, int endStr) {
+    public int getValueStart(CharSequence s, int idx, int endStr) {
         if (!removeSpacesBefore)
             return idx;
 
@@ -78,7 +78,7 @@ public class LvLayoutStretchNode extends LvLayoutCustomTypeNode {
         return new LvLayoutStretchNode("msg", FieldTypes.MESSAGE, true, 0);
     }
 
-    public boolean grow(String s, int targetPosition, int endStr) {
+    public boolean grow(CharSequence s, int targetPosition, int endStr) {
         assert targetPosition <= endStr;
 
         if (end < targetPosition) {
@@ -1,5 +1,6 @@
 package com.logviewer.formats.utils;
 
+import com.logviewer.utils.Utils;
 import org.springframework.lang.NonNull;
 
 public class LvLayoutTextNode implements LvLayoutNode, LvLayoutNodeSearchable, Cloneable {
@@ -17,7 +18,7 @@ public class LvLayoutTextNode implements LvLayoutNode, LvLayoutNodeSearchable, C
     }
 
     @Override
-    public int parse(String s, int offset, int end) {
+    public int parse(CharSequence s, int offset, int end) {
         int nonSpaceIdx = offset;
         while (nonSpaceIdx < end && s.charAt(nonSpaceIdx) == ' ') {
             nonSpaceIdx++;
@@ -27,7 +28,7 @@ public class LvLayoutTextNode implements LvLayoutNode, LvLayoutNodeSearchable, C
         if (spaceCount < prefixSpaces)
             return PARSE_FAILED;
 
-        if (end - nonSpaceIdx < trimmedStartTxt.length() || !s.startsWith(trimmedStartTxt, nonSpaceIdx))
+        if (end - nonSpaceIdx < trimmedStartTxt.length() || !Utils.startsWith(s, trimmedStartTxt, nonSpaceIdx))
             return PARSE_FAILED;
 
         return nonSpaceIdx + trimmedStartTxt.length();
@@ -38,6 +39,28 @@ public class LvLayoutTextNode implements LvLayoutNode, LvLayoutNodeSearchable, C
         return false;
     }
 
+    @Override
+    public boolean appendPrefix(LinePrefixFilter.Builder prefix) {
+        if (!isAscii(txt))
+            return false;
+
+        for (int i = 0; i < prefixSpaces; i++) {
+            prefix.add(" ");
+        }
+
+        prefix.skipSpaces().addText(trimmedStartTxt);
+        return true;
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 128)
+                return false;
+        }
+
+        return true;
+    }
+
     @Override
     public LvLayoutTextNode clone() {
         try {
@@ -53,8 +76,8 @@ public class LvLayoutTextNode implements LvLayoutNode, LvLayoutNodeSearchable, C
     }
 
     @Override
-    public int search(String s, int offset, int end) {
-        return s.indexOf(txt, offset);
+    public int search(CharSequence s, int offset, int end) {
+        return Utils.indexOf(s, txt, offset);
     }
 
     public static LvLayoutTextNode of(@NonNull String txt) {
@@ -65,14 +88,20 @@ public class LvLayoutTextNode implements LvLayoutNode, LvLayoutNodeSearchable, C
             if (prefixSpaces == txt.length()) {
                 return new LvLayoutTextNode(txt, "", prefixSpaces) {
                     @Override
-                    public int parse(String s, int offset, int end) {
+                    public int parse(CharSequence s, int offset, int end) {
                         int next = offset + this.prefixSpaces;
 
-                        if (next <= end && s.startsWith(this.txt, offset))
+                        if (next <= end && Utils.startsWith(s, this.txt, offset))
                             return next;
 
                         return PARSE_FAILED;
                     }
+
+                    @Override
+                    public boolean appendPrefix(LinePrefixFilter.Builder prefix) {
+                        prefix.addText(this.txt);
+                        return true;
+                    }
                 };
             }
 
@@ -88,7 +117,7 @@ public class LvLayoutTextNode implements LvLayoutNode, LvLayoutNodeSearchable, C
                 private final char a = this.txt.charAt(0);
 
                 @Override
-                public int parse(String s, int offset, int end) {
+                public int parse(CharSequence s, int offset, int end) {
                     int next = offset + 1;
                     if (next <= end && s.charAt(offset) == a)
                         return next;
@@ -100,6 +129,15 @@ public class LvLayoutTextNode implements LvLayoutNode, LvLayoutNodeSearchable, C
                 public boolean removeSpacesBefore() {
                     return true;
                 }
+
+                @Override
+                public boolean appendPrefix(LinePrefixFilter.Builder prefix) {
+                    if (a >= 128)
+                        return false;
+
+                    prefix.add(this.txt);
+                    return true;
+                }
             };
         }
 
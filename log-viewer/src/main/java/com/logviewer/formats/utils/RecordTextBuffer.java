@@ -0,0 +1,153 @@
+package com.logviewer.formats.utils;
+
+import com.logviewer.data2.LogRecord;
+import com.logviewer.utils.Utils;
+import org.springframework.lang.NonNull;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Collects the text of a record being parsed. If the record consists of ASCII lines, the raw bytes are collected and
+ * the record decodes the message only when it is requested, see {@link LogRecord#LogRecord(byte[], int[], long, long, long, int, int[], Map)}.
+ * Otherwise, the text is collected as a string.
+ */
+public class RecordTextBuffer {
+
+    private final Charset charset;
+
+    private LogLineBuffer tailLine;
+
+    private byte[] data = new byte[256];
+    private int size;
+
+    private int[] lineEnds = new int[8];
+    private int lineCount;
+
+    private boolean hasColorCodes;
+
+    private int length = -1;
+
+    /**
+     * The text of the record if the record contains non-ASCII lines.
+     */
+    private String str;
+
+    public RecordTextBuffer(@NonNull Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Starts a new record.
+     *
+     * @param line the decoded first line.
+     * @param data the raw first line, the same bytes that have been passed to {@link LogLineBuffer#reset(byte[], int, int)}.
+     */
+    public void reset(@NonNull LogLineBuffer line, byte[] data, int offset, int length) {
+        lineCount = 0;
+        this.size = 0;
+
+        if (line.isAscii()) {
+            str = null;
+            hasColorCodes = false;
+            appendLine(data, offset, length, line.length());
+        } else {
+            str = line.toString();
+            this.length = str.length();
+        }
+    }
+
+    /**
+     * Appends a line to the record.
+     */
+    public void append(byte[] data, int offset, int length) {
+        if (this.length < 0)
+            throw new IllegalStateException();
+
+        if (str == null) {
+            if (tailLine == null)
+                tailLine = new LogLineBuffer(charset);
+
+            tailLine.reset(data, offset, length);
+
+            if (tailLine.isAscii()) {
+                appendLine(data, offset, length, tailLine.length());
+                return;
+            }
+
+            str = decode();
+        }
+
+        str = str + Utils.removeAsciiColorCodes(new String(data, offset, length, charset));
+        this.length = str.length();
+    }
+
+    private void appendLine(byte[] data, int offset, int length, int decodedLength) {
+        if (this.size + length > this.data.length)
+            this.data = Arrays.copyOf(this.data, Math.max(this.size + length, this.data.length * 2));
+
+        System.arraycopy(data, offset, this.data, this.size, length);
+        this.size += length;
+
+        if (lineCount == lineEnds.length)
+            lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+
+        lineEnds[lineCount++] = this.size;
+
+        if (decodedLength != length)
+            hasColorCodes = true;
+
+        this.length = lineCount == 1 ? decodedLength : this.length + decodedLength;
+    }
+
+    private String decode() {
+        StringBuilder res = new StringBuilder(size);
+
+        int lineStart = 0;
+
+        for (int i = 0; i < lineCount; i++) {
+            String line = new String(data, lineStart, lineEnds[i] - lineStart, charset);
+            res.append(hasColorCodes ? Utils.removeAsciiColorCodes(line) : line);
+            lineStart = lineEnds[i];
+        }
+
+        return res.toString();
+    }
+
+    /**
+     * @return the length of the decoded text or {@code -1} if there is no record.
+     */
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length < 0;
+    }
+
+    public void clear() {
+        length = -1;
+        str = null;
+    }
+
+    @NonNull
+    public LogRecord buildRecord(long timeNanos, long start, long end, int loadedTextLengthBytes,
+                                 @NonNull int[] fieldPositions, @NonNull Map<String, Integer> fieldNames) {
+        if (length < 0)
+            throw new IllegalStateException();
+
+        LogRecord res;
+
+        if (str != null) {
+            res = new LogRecord(str, timeNanos, start, end, loadedTextLengthBytes, fieldPositions, fieldNames);
+        } else {
+            res = new LogRecord(Arrays.copyOf(data, size), hasColorCodes ? Arrays.copyOf(lineEnds, lineCount) : null,
+                    timeNanos, start, end, loadedTextLengthBytes, fieldPositions, fieldNames);
+        }
+
+        clear();
+
+        return res;
+    }
+}
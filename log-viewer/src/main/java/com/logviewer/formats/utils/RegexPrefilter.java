@@ -0,0 +1,645 @@
+package com.logviewer.formats.utils;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A cheap check that a line may match a regular expression. The expression is analyzed once, the filter contains
+ * the shape of the line start (see {@link LinePrefixFilter}) and the literals that every matching line contains in
+ * the same order. The filter works with the raw bytes, so it can be used for ASCII-compatible charsets only.
+ * <br>
+ * The analysis is conservative: the parts of the expression that are not understood are skipped, if the expression
+ * uses the features that change the meaning of the other parts (inline flags, quotation), no filter is created.
+ */
+public class RegexPrefilter {
+
+    private static final byte ESCAPE = '\u001B';
+
+    /**
+     * The limit of the characters taken from a single node, e.g. from "\d{1000}".
+     */
+    private static final int MAX_REPEAT = 64;
+
+    private static final long ALL = -1L;
+
+    @Nullable
+    private final LinePrefixFilter prefix;
+
+    private final byte[][] literals;
+
+    private RegexPrefilter(@Nullable LinePrefixFilter prefix, byte[][] literals) {
+        this.prefix = prefix;
+        this.literals = literals;
+    }
+
+    /**
+     * @return {@code false} if the line definitely doesn't match the expression.
+     */
+    public boolean test(byte[] data, int offset, int length) {
+        if (prefix != null && !prefix.test(data, offset, length))
+            return false;
+
+        int end = offset + length;
+        int pos = offset;
+
+        for (byte[] literal : literals) {
+            int idx = indexOf(data, pos, end, literal);
+            if (idx < 0) {
+                // A color code may split the literal, the codes are removed before matching
+                return indexOf(data, offset, end, ESCAPE) >= 0;
+            }
+
+            pos = idx + literal.length;
+        }
+
+        return true;
+    }
+
+    @Nullable
+    LinePrefixFilter getPrefix() {
+        return prefix;
+    }
+
+    List<String> getLiterals() {
+        return Arrays.stream(literals).map(l -> new String(l, StandardCharsets.US_ASCII)).collect(Collectors.toList());
+    }
+
+    private static int indexOf(byte[] data, int from, int end, byte b) {
+        for (int i = from; i < end; i++) {
+            if (data[i] == b)
+                return i;
+        }
+
+        return -1;
+    }
+
+    private static int indexOf(byte[] data, int from, int end, byte[] literal) {
+        byte first = literal[0];
+
+        for (int i = from, last = end - literal.length; i <= last; i++) {
+            if (data[i] != first)
+                continue;
+
+            int k = 1;
+            while (k < literal.length && data[i + k] == literal[k]) {
+                k++;
+            }
+
+            if (k == literal.length)
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Analyzes the regular expression. The expression must be valid, the line must match the whole expression
+     * ({@link java.util.regex.Matcher#matches()}).
+     *
+     * @return the filter or {@code null} if no restrictions can be extracted from the expression.
+     */
+    @Nullable
+    public static RegexPrefilter create(@NonNull String regex) {
+        Group root;
+
+        try {
+            RegexParser parser = new RegexParser(regex);
+            root = parser.parseSequence();
+            if (parser.pos != regex.length())
+                return null;
+        } catch (UnsupportedRegexException e) {
+            return null;
+        }
+
+        if (root.sequence == null)
+            return null;
+
+        LinePrefixFilter.Builder builder = new LinePrefixFilter.Builder();
+        appendPrefix(root.sequence, builder, new int[1]);
+
+        List<String> literals = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        collectLiterals(root.sequence, run, literals);
+        flush(run, literals);
+
+        LinePrefixFilter prefix = builder.build();
+
+        if (prefix == null && literals.isEmpty())
+            return null;
+
+        byte[][] literalBytes = literals.stream().map(l -> l.getBytes(StandardCharsets.US_ASCII)).toArray(byte[][]::new);
+
+        return new RegexPrefilter(prefix, literalBytes);
+    }
+
+    /**
+     * @return {@code true} if the whole sequence has a fixed shape and the following nodes can be added.
+     */
+    private static boolean appendPrefix(List<Node> sequence, LinePrefixFilter.Builder builder, int[] size) {
+        for (Node node : sequence) {
+            if (node instanceof ZeroWidth)
+                continue;
+
+            if (node instanceof CharClass) {
+                CharClass charClass = (CharClass) node;
+
+                int count = Math.min(node.min, MAX_REPEAT - size[0]);
+                for (int i = 0; i < count; i++) {
+                    builder.add(charClass.low, charClass.high);
+                }
+                size[0] += count;
+
+                if (node.min != node.max || size[0] >= MAX_REPEAT)
+                    return false;
+
+                continue;
+            }
+
+            if (node instanceof Group && ((Group) node).sequence != null && node.min > 0) {
+                boolean fixed = appendPrefix(((Group) node).sequence, builder, size);
+
+                // The next repetitions of the group can't be added, the position of the next node is unknown
+                if (!fixed || node.max != 1)
+                    return false;
+
+                continue;
+            }
+
+            return false;
+        }
+
+        return true;
+    }
+
+    private static void collectLiterals(List<Node> sequence, StringBuilder run, List<String> res) {
+        for (Node node : sequence) {
+            if (node instanceof ZeroWidth)
+                continue;
+
+            if (node instanceof CharClass && ((CharClass) node).literal >= 0) {
+                char literal = (char) ((CharClass) node).literal;
+
+                for (int i = Math.min(node.min, MAX_REPEAT); i > 0; i--) {
+                    run.append(literal);
+                }
+
+                // The truncated repetition is not adjacent to the next characters
+                if (node.min != node.max || node.min > MAX_REPEAT)
+                    flush(run, res);
+
+                continue;
+            }
+
+            if (node instanceof Group && ((Group) node).sequence != null && node.min > 0) {
+                if (node.min == 1 && node.max == 1) {
+                    collectLiterals(((Group) node).sequence, run, res);
+                } else {
+                    // Only the first repetition is taken, the literals are not adjacent to the surrounding text
+                    flush(run, res);
+                    collectLiterals(((Group) node).sequence, run, res);
+                    flush(run, res);
+                }
+
+                continue;
+            }
+
+            flush(run, res);
+        }
+    }
+
+    private static void flush(StringBuilder run, List<String> res) {
+        if (run.length() > 0) {
+            res.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    private abstract static class Node {
+        int min = 1;
+        int max = 1;
+    }
+
+    /**
+     * A single character, the masks contain the ASCII characters matched by the node.
+     */
+    private static class CharClass extends Node {
+        final long low;
+        final long high;
+
+        /**
+         * The ASCII character if the node matches this character only, -1 otherwise.
+         */
+        final int literal;
+
+        CharClass(long low, long high) {
+            this.low = low;
+            this.high = high;
+
+            if (Long.bitCount(low) + Long.bitCount(high) == 1 && (low & (1L << ESCAPE)) == 0) {
+                literal = low != 0 ? Long.numberOfTrailingZeros(low) : 64 + Long.numberOfTrailingZeros(high);
+            } else {
+                literal = -1;
+            }
+        }
+
+        static CharClass of(char a) {
+            if (a >= 128)
+                return new CharClass(0, 0); // matches a non-ASCII character only
+
+            return a < 64 ? new CharClass(1L << a, 0) : new CharClass(0, 1L << (a - 64));
+        }
+    }
+
+    /**
+     * A group, {@link #sequence} is {@code null} if the group contains alternatives or is a lookaround.
+     */
+    private static class Group extends Node {
+        final List<Node> sequence;
+
+        Group(List<Node> sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * A node with unknown content, e.g. a back reference.
+     */
+    private static class Unknown extends Node {
+    }
+
+    private static class ZeroWidth extends Node {
+    }
+
+    private static class UnsupportedRegexException extends Exception {
+        UnsupportedRegexException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static class RegexParser {
+
+        private static final long DIGIT_LOW = 0x3FFL << '0';
+
+        private static final long WORD_HIGH = (0x3FFFFFFL << ('a' - 64)) | (0x3FFFFFFL << ('A' - 64)) | (1L << ('_' - 64));
+
+        private static final long SPACE_LOW = (1L << ' ') | (1L << '\t') | (1L << '\n') | (1L << 0x0B) | (1L << '\f') | (1L << '\r');
+
+        private final String regex;
+        private int pos;
+
+        /**
+         * Whether the last parsed class escape matches the characters that are not known to the parser, e.g. "\p{Lu}".
+         */
+        private boolean unknownClassEscape;
+
+        RegexParser(String regex) {
+            this.regex = regex;
+        }
+
+        Group parseSequence() throws UnsupportedRegexException {
+            List<Node> sequence = new ArrayList<>();
+            boolean alternation = false;
+
+            while (pos < regex.length()) {
+                char a = regex.charAt(pos);
+
+                if (a == ')')
+                    break;
+
+                if (a == '|') {
+                    alternation = true;
+                    pos++;
+                    continue;
+                }
+
+                if (a == '?' || a == '*' || a == '+' || a == '{') {
+                    if (sequence.isEmpty())
+                        throw new UnsupportedRegexException();
+
+                    parseQuantifier(sequence.get(sequence.size() - 1));
+                    continue;
+                }
+
+                sequence.add(parseAtom());
+            }
+
+            return new Group(alternation ? null : sequence);
+        }
+
+        private Node parseAtom() throws UnsupportedRegexException {
+            char a = regex.charAt(pos++);
+
+            switch (a) {
+                case '.':
+                    return new CharClass(ALL & ~((1L << '\n') | (1L << '\r')), ALL);
+
+                case '^':
+                case '$':
+                    return new ZeroWidth();
+
+                case '[':
+                    return parseClass();
+
+                case '\\':
+                    return parseEscape();
+
+                case '(':
+                    return parseGroup();
+
+                default:
+                    return CharClass.of(a);
+            }
+        }
+
+        private Node parseGroup() throws UnsupportedRegexException {
+            boolean lookaround = false;
+
+            if (regex.startsWith("?", pos)) {
+                if (regex.startsWith("?:", pos) || regex.startsWith("?>", pos)) {
+                    pos += 2;
+                } else if (regex.startsWith("?=", pos) || regex.startsWith("?!", pos)) {
+                    pos += 2;
+                    lookaround = true;
+                } else if (regex.startsWith("?<=", pos) || regex.startsWith("?<!", pos)) {
+                    pos += 3;
+                    lookaround = true;
+                } else if (regex.startsWith("?<", pos)) {
+                    int end = regex.indexOf('>', pos);
+                    if (end < 0)
+                        throw new UnsupportedRegexException();
+
+                    pos = end + 1;
+                } else {
+                    throw new UnsupportedRegexException(); // inline flags
+                }
+            }
+
+            Group res = parseSequence();
+
+            if (pos >= regex.length() || regex.charAt(pos) != ')')
+                throw new UnsupportedRegexException();
+
+            pos++;
+
+            if (lookaround)
+                return new ZeroWidth();
+
+            return res;
+        }
+
+        private void parseQuantifier(Node node) throws UnsupportedRegexException {
+            if (node.min != 1 || node.max != 1)
+                throw new UnsupportedRegexException();
+
+            char a = regex.charAt(pos++);
+
+            switch (a) {
+                case '?':
+                    node.min = 0;
+                    break;
+
+                case '*':
+                    node.min = 0;
+                    node.max = Integer.MAX_VALUE;
+                    break;
+
+                case '+':
+                    node.max = Integer.MAX_VALUE;
+                    break;
+
+                case '{':
+                    node.min = parseNumber();
+                    if (pos < regex.length() && regex.charAt(pos) == ',') {
+                        pos++;
+                        node.max = pos < regex.length() && regex.charAt(pos) == '}' ? Integer.MAX_VALUE : parseNumber();
+                    } else {
+                        node.max = node.min;
+                    }
+
+                    if (pos >= regex.length() || regex.charAt(pos) != '}')
+                        throw new UnsupportedRegexException();
+
+                    pos++;
+                    break;
+
+                default:
+                    throw new IllegalStateException();
+            }
+
+            // Lazy and possessive quantifiers don't change the set of the matched strings
+            if (pos < regex.length() && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+'))
+                pos++;
+        }
+
+        private int parseNumber() throws UnsupportedRegexException {
+            int start = pos;
+            long res = 0;
+
+            while (pos < regex.length() && isDigit(regex.charAt(pos))) {
+                res = Math.min(res * 10 + (regex.charAt(pos) - '0'), Integer.MAX_VALUE);
+                pos++;
+            }
+
+            if (pos == start)
+                throw new UnsupportedRegexException();
+
+            return (int) res;
+        }
+
+        private Node parseEscape() throws UnsupportedRegexException {
+            if (pos >= regex.length())
+                throw new UnsupportedRegexException();
+
+            char a = regex.charAt(pos++);
+
+            switch (a) {
+                case 'b': case 'B': case 'A': case 'z': case 'Z': case 'G':
+                    return new ZeroWidth();
+
+                case 'R': case 'X':
+                    return new Unknown();
+
+                case 'k':
+                    int end = regex.indexOf('>', pos);
+                    if (!regex.startsWith("<", pos) || end < 0)
+                        throw new UnsupportedRegexException();
+
+                    pos = end + 1;
+                    return new Unknown();
+
+                default:
+                    if (a >= '1' && a <= '9') {
+                        while (pos < regex.length() && isDigit(regex.charAt(pos))) {
+                            pos++;
+                        }
+
+                        return new Unknown();
+                    }
+
+                    long[] masks = new long[2];
+                    int c = parseClassEscape(a, masks);
+                    if (c >= 0)
+                        return CharClass.of((char) c);
+
+                    return new CharClass(masks[0], masks[1]);
+            }
+        }
+
+        /**
+         * Parses an escape that matches a single character.
+         *
+         * @return the character or -1 if the escape is a character class, the class is added to the masks.
+         */
+        private int parseClassEscape(char a, long[] masks) throws UnsupportedRegexException {
+            switch (a) {
+                case 'd': masks[0] |= DIGIT_LOW; return -1;
+                case 'D': masks[0] |= ~DIGIT_LOW; masks[1] |= ALL; return -1;
+                case 'w': masks[0] |= DIGIT_LOW; masks[1] |= WORD_HIGH; return -1;
+                case 'W': masks[0] |= ~DIGIT_LOW; masks[1] |= ~WORD_HIGH; return -1;
+                case 's': masks[0] |= SPACE_LOW; return -1;
+                case 'S': masks[0] |= ~SPACE_LOW; masks[1] |= ALL; return -1;
+
+                case 'h': case 'H': case 'v': case 'V':
+                    masks[0] |= ALL;
+                    masks[1] |= ALL;
+                    unknownClassEscape = true;
+                    return -1;
+
+                case 'p': case 'P':
+                    if (regex.startsWith("{", pos)) {
+                        int end = regex.indexOf('}', pos);
+                        if (end < 0)
+                            throw new UnsupportedRegexException();
+
+                        pos = end + 1;
+                    } else {
+                        pos++;
+                    }
+
+                    masks[0] |= ALL;
+                    masks[1] |= ALL;
+                    unknownClassEscape = true;
+                    return -1;
+
+                case 't': return '\t';
+                case 'n': return '\n';
+                case 'r': return '\r';
+                case 'f': return '\f';
+                case 'a': return '\u0007';
+                case 'e': return ESCAPE;
+
+                case 'x':
+                    return parseHex(2);
+
+                case 'u':
+                    return parseHex(4);
+
+                default:
+                    // "\Q", octal and control characters, named characters
+                    if ((a >= 'a' && a <= 'z') || (a >= 'A' && a <= 'Z') || (a >= '0' && a <= '9'))
+                        throw new UnsupportedRegexException();
+
+                    return a;
+            }
+        }
+
+        private static boolean isDigit(char a) {
+            return a >= '0' && a <= '9';
+        }
+
+        private int parseHex(int length) throws UnsupportedRegexException {
+            if (pos + length > regex.length())
+                throw new UnsupportedRegexException();
+
+            try {
+                int res = Integer.parseInt(regex.substring(pos, pos + length), 16);
+                pos += length;
+                return res;
+            } catch (NumberFormatException e) {
+                throw new UnsupportedRegexException(); // "\x{...}"
+            }
+        }
+
+        private Node parseClass() throws UnsupportedRegexException {
+            boolean negative = false;
+            if (regex.startsWith("^", pos)) {
+                negative = true;
+                pos++;
+            }
+
+            long[] masks = new long[2];
+            boolean first = true;
+            boolean unknown = false;
+
+            while (true) {
+                if (pos >= regex.length())
+                    throw new UnsupportedRegexException();
+
+                char a = regex.charAt(pos++);
+
+                if (a == ']' && !first)
+                    break;
+
+                // Nested classes and intersections. ']' at the first position is a literal
+                if (a == '[' || (a == '&' && regex.startsWith("&", pos)))
+                    throw new UnsupportedRegexException();
+
+                first = false;
+
+                int c;
+
+                if (a == '\\') {
+                    if (pos >= regex.length())
+                        throw new UnsupportedRegexException();
+
+                    unknownClassEscape = false;
+                    c = parseClassEscape(regex.charAt(pos++), masks);
+                    unknown |= unknownClassEscape;
+                    if (c < 0)
+                        continue;
+                } else {
+                    c = a;
+                }
+
+                int to = c;
+
+                if (regex.startsWith("-", pos) && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+                    pos++;
+
+                    char b = regex.charAt(pos++);
+                    if (b == '[')
+                        throw new UnsupportedRegexException();
+
+                    if (b == '\\') {
+                        if (pos >= regex.length())
+                            throw new UnsupportedRegexException();
+
+                        to = parseClassEscape(regex.charAt(pos++), masks);
+                        if (to < 0)
+                            throw new UnsupportedRegexException();
+                    } else {
+                        to = b;
+                    }
+                }
+
+                for (int i = c; i <= Math.min(to, 127); i++) {
+                    masks[i >> 6] |= 1L << (i & 63);
+                }
+            }
+
+            if (unknown)
+                return new CharClass(ALL, ALL);
+
+            if (negative)
+                return new CharClass(~masks[0], ~masks[1]);
+
+            return new CharClass(masks[0], masks[1]);
+        }
+    }
+}
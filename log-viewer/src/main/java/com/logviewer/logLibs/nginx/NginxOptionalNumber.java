@@ -1,5 +1,6 @@
 package com.logviewer.logLibs.nginx;
 
+import com.logviewer.formats.utils.LinePrefixFilter;
 import com.logviewer.formats.utils.LvLayoutNumberNode;
 import org.springframework.lang.NonNull;
 
@@ -10,7 +11,7 @@ public class NginxOptionalNumber extends LvLayoutNumberNode {
     }
 
     @Override
-    public int parse(String s, int offset, int end) {
+    public int parse(CharSequence s, int offset, int end) {
         if (offset == end)
             return PARSE_FAILED;
 
@@ -21,6 +22,12 @@ public class NginxOptionalNumber extends LvLayoutNumberNode {
         return super.parse(s, offset, end);
     }
 
+    @Override
+    public boolean appendPrefix(LinePrefixFilter.Builder prefix) {
+        prefix.add("-0123456789");
+        return false;
+    }
+
     @Override
     public LvLayoutNumberNode clone() {
         return new NginxOptionalNumber(getFieldName(), getFieldType());
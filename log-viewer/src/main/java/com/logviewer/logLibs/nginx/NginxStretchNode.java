@@ -21,7 +21,7 @@ public class NginxStretchNode extends LvLayoutStretchNode {
         return true;
     }
 
-    private boolean doGrow(String s, int endStr) {
+    private boolean doGrow(CharSequence s, int endStr) {
         if (end == endStr)
             return false;
 
@@ -56,7 +56,7 @@ public class NginxStretchNode extends LvLayoutStretchNode {
     }
 
     @Override
-    public boolean reset(String s, int start, int endStr) {
+    public boolean reset(CharSequence s, int start, int endStr) {
         this.start = start;
         this.end = start;
 
@@ -69,7 +69,7 @@ public class NginxStretchNode extends LvLayoutStretchNode {
     }
 
     @Override
-    public boolean grow(String s, int targetPosition, int endStr) {
+    public boolean grow(CharSequence s, int targetPosition, int endStr) {
         while (end < targetPosition) {
             if (!doGrow(s, endStr))
                 return false;
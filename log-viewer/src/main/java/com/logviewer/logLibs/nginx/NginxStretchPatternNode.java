@@ -15,7 +15,7 @@ public class NginxStretchPatternNode extends NginxStretchNode {
     }
 
     @Override
-    public boolean reset(String s, int start, int endStr) {
+    public boolean reset(CharSequence s, int start, int endStr) {
         Matcher matcher = pattern.matcher(s);
         matcher.region(start, endStr);
 
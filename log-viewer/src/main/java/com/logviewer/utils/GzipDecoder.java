@@ -0,0 +1,694 @@
+package com.logviewer.utils;
+
+import org.springframework.lang.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * Streaming decoder of gzip files (RFC 1951, RFC 1952) that can be suspended at a deflate block boundary and resumed
+ * from it later. {@link java.util.zip.Inflater} cannot start from the middle of a stream because the deflate blocks
+ * are not aligned on byte boundaries, so the format is decoded here.
+ * <p>
+ * The decoded data is available in {@link #getBuffer()} between {@link #getChunkStart()} and {@link #getChunkEnd()}
+ * after each call of {@link #decode()}. The buffer also contains up to {@link #WINDOW_SIZE} bytes decoded before
+ * the chunk. The decoder is not thread-safe.
+ */
+public final class GzipDecoder {
+
+    /**
+     * The maximum distance of a back reference in deflate.
+     */
+    public static final int WINDOW_SIZE = 32 * 1024;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int MAX_MATCH = 258;
+
+    private static final int MAX_BITS = 15;
+
+    private static final int STATE_HEADER = 0;
+    private static final int STATE_BLOCK = 1;
+    private static final int STATE_STORED = 2;
+    private static final int STATE_CODES = 3;
+    private static final int STATE_TRAILER = 4;
+    private static final int STATE_DONE = 5;
+
+    private static final int[] LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DIST_BASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073,
+            4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DIST_EXTRA = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final Huffman FIXED_LITERALS;
+    private static final Huffman FIXED_DISTANCES;
+
+    static {
+        int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+
+        int[] distLengths = new int[30];
+        Arrays.fill(distLengths, 5);
+
+        try {
+            FIXED_LITERALS = new Huffman(288);
+            FIXED_LITERALS.build(lengths, 0, 288);
+
+            FIXED_DISTANCES = new Huffman(30);
+            FIXED_DISTANCES.build(distLengths, 0, 30);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final SeekableByteChannel channel;
+    private final long inputSize;
+
+    private final byte[] input = new byte[64 * 1024];
+    private int inputPtr;
+    private int inputLimit;
+    /**
+     * The position in the file of {@code input[0]}.
+     */
+    private long inputOffset;
+
+    private long bitBuf;
+    private int bitCount;
+
+    private final byte[] out = new byte[WINDOW_SIZE + CHUNK_SIZE + MAX_MATCH];
+    private int outPos;
+    private int chunkStart;
+    /**
+     * The offset in the decoded data of {@code out[0]}.
+     */
+    private long outOffset;
+
+    private int state;
+    private boolean lastBlock;
+    private int storedRemaining;
+
+    private Huffman literals;
+    private Huffman distances;
+    private final Huffman dynamicLiterals = new Huffman(288);
+    private final Huffman dynamicDistances = new Huffman(30);
+    private final Huffman codeLengths = new Huffman(19);
+    private final int[] lengths = new int[288 + 32];
+
+    private boolean firstMember = true;
+
+    /**
+     * The CRC is checked only if the member has been decoded from its start.
+     */
+    private CRC32 crc;
+    private int crcPos;
+    private long memberStart;
+
+    /**
+     * Creates a decoder reading the gzip data from the beginning of the channel.
+     */
+    public GzipDecoder(@NonNull SeekableByteChannel channel) throws IOException {
+        this.channel = channel;
+        inputSize = channel.size();
+
+        state = STATE_HEADER;
+    }
+
+    /**
+     * Moves the decoder to a block boundary remembered before.
+     *
+     * @param bitPosition the position of the block in the compressed data in bits, see {@link #getBitPosition()}.
+     * @param outputOffset the offset of the block in the decoded data.
+     * @param window the data decoded before the block, at most {@link #WINDOW_SIZE} bytes.
+     */
+    public void resume(long bitPosition, long outputOffset, @NonNull byte[] window) throws IOException {
+        if (window.length > WINDOW_SIZE || window.length > outputOffset)
+            throw new IllegalArgumentException();
+
+        inputOffset = bitPosition >>> 3;
+        inputPtr = 0;
+        inputLimit = 0;
+        bitBuf = 0;
+        bitCount = 0;
+
+        int skip = (int) (bitPosition & 7);
+        if (skip > 0)
+            bits(skip);
+
+        System.arraycopy(window, 0, out, 0, window.length);
+        outPos = window.length;
+        chunkStart = outPos;
+        outOffset = outputOffset - window.length;
+
+        state = STATE_BLOCK;
+        lastBlock = false;
+        firstMember = false;
+        crc = null;
+    }
+
+    public byte[] getBuffer() {
+        return out;
+    }
+
+    public int getChunkStart() {
+        return chunkStart;
+    }
+
+    public int getChunkEnd() {
+        return outPos;
+    }
+
+    /**
+     * @return the offset in the decoded data of {@link #getChunkStart()}.
+     */
+    public long getChunkOffset() {
+        return outOffset + chunkStart;
+    }
+
+    /**
+     * @return the offset in the decoded data of {@link #getChunkEnd()}.
+     */
+    public long getOutputPosition() {
+        return outOffset + outPos;
+    }
+
+    /**
+     * @return {@code true} if the decoder is stopped at a block boundary where it can be resumed using
+     * {@link #resume(long, long, byte[])}.
+     */
+    public boolean isAtBlockBoundary() {
+        return state == STATE_BLOCK && !lastBlock;
+    }
+
+    /**
+     * @return the position of the next unread bit of the compressed data.
+     */
+    public long getBitPosition() {
+        return (inputOffset + inputPtr) * 8 - bitCount;
+    }
+
+    /**
+     * @return the last decoded bytes required to resume the decoding from the current position.
+     */
+    public byte[] getWindow() {
+        int len = Math.min(outPos, WINDOW_SIZE);
+        return Arrays.copyOfRange(out, outPos - len, outPos);
+    }
+
+    /**
+     * Decodes the next part of the data. The decoder stops at every block boundary, so the chunk may be shorter than
+     * the buffer.
+     *
+     * @return {@code false} if the end of the data is reached and no data has been decoded.
+     */
+    public boolean decode() throws IOException {
+        if (out.length - MAX_MATCH - outPos < CHUNK_SIZE / 2 && outPos > WINDOW_SIZE) {
+            int shift = outPos - WINDOW_SIZE;
+            System.arraycopy(out, shift, out, 0, WINDOW_SIZE);
+            outOffset += shift;
+            outPos = WINDOW_SIZE;
+        }
+
+        chunkStart = outPos;
+        crcPos = outPos;
+
+        while (true) {
+            switch (state) {
+                case STATE_HEADER:
+                    if (!readHeader()) {
+                        state = STATE_DONE;
+                        break;
+                    }
+
+                    crc = new CRC32();
+                    memberStart = getOutputPosition();
+                    state = STATE_BLOCK;
+                    break;
+
+                case STATE_BLOCK:
+                    if (lastBlock) {
+                        state = STATE_TRAILER;
+                        break;
+                    }
+
+                    if (outPos > chunkStart) {
+                        updateCrc();
+                        return true;
+                    }
+
+                    readBlockHeader();
+                    break;
+
+                case STATE_STORED:
+                    copyStored();
+
+                    if (storedRemaining == 0) {
+                        state = STATE_BLOCK;
+                    } else {
+                        updateCrc();
+                        return true;
+                    }
+                    break;
+
+                case STATE_CODES:
+                    if (decodeCodes()) {
+                        state = STATE_BLOCK;
+                    } else {
+                        updateCrc();
+                        return true;
+                    }
+                    break;
+
+                case STATE_TRAILER:
+                    readTrailer();
+                    lastBlock = false;
+                    state = STATE_HEADER;
+                    break;
+
+                case STATE_DONE:
+                    return outPos > chunkStart;
+
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+    }
+
+    private boolean readHeader() throws IOException {
+        if (inputSize * 8 - getBitPosition() < 16) {
+            if (firstMember)
+                throw new EOFException("Unexpected end of gzip data");
+
+            // The end of the data or a garbage byte after the last member
+            return false;
+        }
+
+        int magic = bits(16);
+        if (magic != 0x8b1f) {
+            if (firstMember)
+                throw new ZipException("Not in GZIP format");
+
+            // Garbage after the last member, gzip utility ignores it as well
+            return false;
+        }
+
+        if (bits(8) != 8)
+            throw new ZipException("Unsupported compression method");
+
+        int flags = bits(8);
+        bits(16); // MTIME
+        bits(16);
+        bits(8); // XFL
+        bits(8); // OS
+
+        if ((flags & 4) != 0) { // FEXTRA
+            int len = bits(16);
+            for (int i = 0; i < len; i++) {
+                bits(8);
+            }
+        }
+
+        if ((flags & 8) != 0) { // FNAME
+            while (bits(8) != 0) {
+                // skip
+            }
+        }
+
+        if ((flags & 16) != 0) { // FCOMMENT
+            while (bits(8) != 0) {
+                // skip
+            }
+        }
+
+        if ((flags & 2) != 0) // FHCRC
+            bits(16);
+
+        firstMember = false;
+
+        return true;
+    }
+
+    private void readTrailer() throws IOException {
+        updateCrc();
+
+        dropToByteBoundary();
+
+        long expectedCrc = bits(16) | ((long) bits(16) << 16);
+        long expectedSize = bits(16) | ((long) bits(16) << 16);
+
+        if (crc != null) {
+            if (crc.getValue() != expectedCrc)
+                throw new ZipException("Corrupt GZIP trailer: CRC mismatch");
+
+            if (((getOutputPosition() - memberStart) & 0xFFFFFFFFL) != expectedSize)
+                throw new ZipException("Corrupt GZIP trailer: size mismatch");
+        }
+    }
+
+    private void updateCrc() {
+        if (crc != null && outPos > crcPos)
+            crc.update(out, crcPos, outPos - crcPos);
+
+        crcPos = outPos;
+    }
+
+    private void readBlockHeader() throws IOException {
+        lastBlock = bits(1) == 1;
+
+        switch (bits(2)) {
+            case 0:
+                dropToByteBoundary();
+
+                int len = bits(16);
+                int nlen = bits(16);
+                if (len != (~nlen & 0xFFFF))
+                    throw new ZipException("Invalid deflate data: stored block length mismatch");
+
+                storedRemaining = len;
+                state = STATE_STORED;
+                break;
+
+            case 1:
+                literals = FIXED_LITERALS;
+                distances = FIXED_DISTANCES;
+                state = STATE_CODES;
+                break;
+
+            case 2:
+                readDynamicTables();
+                literals = dynamicLiterals;
+                distances = dynamicDistances;
+                state = STATE_CODES;
+                break;
+
+            default:
+                throw new ZipException("Invalid deflate data: invalid block type");
+        }
+    }
+
+    private void readDynamicTables() throws IOException {
+        int nlen = bits(5) + 257;
+        int ndist = bits(5) + 1;
+        int ncode = bits(4) + 4;
+
+        if (nlen > 286 || ndist > 30)
+            throw new ZipException("Invalid deflate data: bad counts");
+
+        int[] lengths = this.lengths;
+
+        Arrays.fill(lengths, 0, 19, 0);
+        for (int i = 0; i < ncode; i++) {
+            lengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+
+        codeLengths.build(lengths, 0, 19);
+
+        int idx = 0;
+        while (idx < nlen + ndist) {
+            int sym = decodeSymbol(codeLengths);
+
+            if (sym < 16) {
+                lengths[idx++] = sym;
+            } else {
+                int len = 0;
+                int repeat;
+
+                if (sym == 16) {
+                    if (idx == 0)
+                        throw new ZipException("Invalid deflate data: repeat with no first length");
+
+                    len = lengths[idx - 1];
+                    repeat = 3 + bits(2);
+                } else if (sym == 17) {
+                    repeat = 3 + bits(3);
+                } else {
+                    repeat = 11 + bits(7);
+                }
+
+                if (idx + repeat > nlen + ndist)
+                    throw new ZipException("Invalid deflate data: too many lengths");
+
+                Arrays.fill(lengths, idx, idx + repeat, len);
+                idx += repeat;
+            }
+        }
+
+        if (lengths[256] == 0)
+            throw new ZipException("Invalid deflate data: no end-of-block code");
+
+        dynamicLiterals.build(lengths, 0, nlen);
+        dynamicDistances.build(lengths, nlen, ndist);
+    }
+
+    private void copyStored() throws IOException {
+        int n = Math.min(storedRemaining, out.length - outPos);
+
+        for (int i = 0; i < n; i++) {
+            out[outPos++] = (byte) bits(8);
+        }
+
+        storedRemaining -= n;
+    }
+
+    /**
+     * @return {@code true} if the end of the block is reached, {@code false} if the buffer is full.
+     */
+    private boolean decodeCodes() throws IOException {
+        byte[] out = this.out;
+        int pos = outPos;
+        int limit = out.length - MAX_MATCH;
+
+        Huffman literals = this.literals;
+        Huffman distances = this.distances;
+
+        try {
+            while (pos < limit) {
+                int sym = decodeSymbol(literals);
+
+                if (sym < 256) {
+                    out[pos++] = (byte) sym;
+                } else if (sym == 256) {
+                    return true;
+                } else {
+                    sym -= 257;
+                    if (sym >= 29)
+                        throw new ZipException("Invalid deflate data: invalid length code");
+
+                    int len = LENGTH_BASE[sym] + bits(LENGTH_EXTRA[sym]);
+
+                    int distSym = decodeSymbol(distances);
+                    if (distSym >= 30)
+                        throw new ZipException("Invalid deflate data: invalid distance code");
+
+                    int dist = DIST_BASE[distSym] + bits(DIST_EXTRA[distSym]);
+                    if (dist > pos)
+                        throw new ZipException("Invalid deflate data: distance too far back");
+
+                    int from = pos - dist;
+
+                    if (dist >= len) {
+                        System.arraycopy(out, from, out, pos, len);
+                        pos += len;
+                    } else {
+                        for (int i = 0; i < len; i++) {
+                            out[pos++] = out[from++];
+                        }
+                    }
+                }
+            }
+
+            return false;
+        } finally {
+            outPos = pos;
+        }
+    }
+
+    private int decodeSymbol(Huffman h) throws IOException {
+        if (bitCount < MAX_BITS)
+            fill();
+
+        int entry = h.fast[(int) bitBuf & Huffman.FAST_MASK];
+        if (entry != 0) {
+            int len = entry & 0xF;
+            if (len > bitCount)
+                throw new EOFException("Unexpected end of gzip data");
+
+            bitBuf >>>= len;
+            bitCount -= len;
+            return entry >>> 4;
+        }
+
+        // The code is longer than the fast table index, decode it bit by bit
+        long buf = bitBuf;
+        int code = 0;
+        int first = 0;
+        int index = 0;
+
+        for (int len = 1; len <= MAX_BITS; len++) {
+            if (len > bitCount)
+                throw new EOFException("Unexpected end of gzip data");
+
+            code |= (int) (buf & 1);
+            buf >>>= 1;
+
+            int count = h.count[len];
+            if (code - count < first) {
+                bitBuf >>>= len;
+                bitCount -= len;
+                return h.symbol[index + (code - first)];
+            }
+
+            index += count;
+            first += count;
+            first <<= 1;
+            code <<= 1;
+        }
+
+        throw new ZipException("Invalid deflate data: invalid code");
+    }
+
+    private int bits(int n) throws IOException {
+        if (n == 0)
+            return 0;
+
+        if (bitCount < n) {
+            fill();
+
+            if (bitCount < n)
+                throw new EOFException("Unexpected end of gzip data");
+        }
+
+        int res = (int) (bitBuf & ((1L << n) - 1));
+        bitBuf >>>= n;
+        bitCount -= n;
+
+        return res;
+    }
+
+    private void dropToByteBoundary() {
+        int n = bitCount & 7;
+        bitBuf >>>= n;
+        bitCount -= n;
+    }
+
+    private void fill() throws IOException {
+        while (bitCount <= 56) {
+            if (inputPtr == inputLimit && !loadInput())
+                return;
+
+            bitBuf |= (input[inputPtr++] & 0xFFL) << bitCount;
+            bitCount += 8;
+        }
+    }
+
+    private boolean loadInput() throws IOException {
+        long position = inputOffset + inputLimit;
+        if (position >= inputSize)
+            return false;
+
+        ByteBuffer buf = ByteBuffer.wrap(input, 0, (int) Math.min(input.length, inputSize - position));
+
+        if (channel instanceof FileChannel) {
+            while (buf.hasRemaining()) {
+                if (((FileChannel) channel).read(buf, position + buf.position()) < 0)
+                    throw new EOFException();
+            }
+        } else {
+            // The channel may be shared by the decoders of different spans
+            synchronized (channel) {
+                channel.position(position);
+                Utils.readFully(channel, buf);
+            }
+        }
+
+        inputOffset = position;
+        inputPtr = 0;
+        inputLimit = buf.position();
+
+        return true;
+    }
+
+    /**
+     * A canonical Huffman code. The codes up to {@link #FAST_BITS} bits are decoded by a table lookup, the longer codes
+     * are decoded bit by bit using the number of codes of each length.
+     */
+    private static final class Huffman {
+        static final int FAST_BITS = 10;
+        static final int FAST_MASK = (1 << FAST_BITS) - 1;
+
+        final short[] count = new short[MAX_BITS + 1];
+        final short[] symbol;
+
+        /**
+         * {@code (symbol << 4) | length} indexed by the next {@link #FAST_BITS} bits, 0 if the code is longer.
+         */
+        final int[] fast = new int[1 << FAST_BITS];
+
+        private final short[] offsets = new short[MAX_BITS + 2];
+
+        Huffman(int maxSymbols) {
+            symbol = new short[maxSymbols];
+        }
+
+        void build(int[] lengths, int off, int n) throws IOException {
+            Arrays.fill(count, (short) 0);
+
+            for (int i = 0; i < n; i++) {
+                count[lengths[off + i]]++;
+            }
+
+            int left = 1;
+            for (int len = 1; len <= MAX_BITS; len++) {
+                left <<= 1;
+                left -= count[len];
+                if (left < 0)
+                    throw new ZipException("Invalid deflate data: over-subscribed code");
+            }
+
+            offsets[1] = 0;
+            for (int len = 1; len < MAX_BITS; len++) {
+                offsets[len + 1] = (short) (offsets[len] + count[len]);
+            }
+
+            for (int sym = 0; sym < n; sym++) {
+                int len = lengths[off + sym];
+                if (len != 0)
+                    symbol[offsets[len]++] = (short) sym;
+            }
+
+            Arrays.fill(fast, 0);
+
+            int code = 0;
+            int idx = 0;
+
+            for (int len = 1; len <= FAST_BITS; len++) {
+                for (int k = 0; k < count[len]; k++) {
+                    int reversed = Integer.reverse(code) >>> (32 - len);
+                    int entry = (symbol[idx++] << 4) | len;
+
+                    for (int i = reversed; i < fast.length; i += 1 << len) {
+                        fast[i] = entry;
+                    }
+
+                    code++;
+                }
+
+                code <<= 1;
+            }
+        }
+    }
+}
@@ -22,11 +22,14 @@ public class LvGsonUtils {
 
     public static final Gson GSON;
 
+    /**
+     * The same as {@link #GSON}, but without pretty printing. Used for the data sent between the nodes.
+     */
+    public static final Gson COMPACT_GSON;
+
     static {
         GsonBuilder gsonBuilder = new GsonBuilder();
 
-        gsonBuilder.setPrettyPrinting();
-
         RuntimeTypeAdapterFactory<LogFormat> logFormatFactory = RuntimeTypeAdapterFactory.of(LogFormat.class)
                 .registerSubtype(RegexLogFormat.class)
                 .registerSubtype(NginxLogFormat.class)
@@ -66,6 +69,10 @@ public class LvGsonUtils {
             }
         });
 
+        COMPACT_GSON = gsonBuilder.create();
+
+        gsonBuilder.setPrettyPrinting();
+
         GSON = gsonBuilder.create();
     }
 
@@ -5,69 +5,258 @@ import org.slf4j.LoggerFactory;
 import org.springframework.lang.NonNull;
 
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Runs delayed tasks on a small pool of daemon threads, so a slow task doesn't delay the others. Cancelled tasks are
+ * removed from the queue immediately.
+ */
 public class LvTimer {
 
     private static final Logger LOG = LoggerFactory.getLogger(LvTimer.class);
 
-    private final Map<Object, Boolean> uniqueTaskMap = new ConcurrentHashMap<>();
+    public static final int DEFAULT_THREADS = 2;
 
-    private final Timer timer = new Timer("log-viewer-timer", true);
+    /**
+     * The tasks scheduled by {@link #scheduleTask(Object, Runnable, long)}, a task stays in the map until it's finished.
+     */
+    private final Map<Object, KeyedTask> uniqueTaskMap = new ConcurrentHashMap<>();
 
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final LongAdder executedTaskCount = new LongAdder();
+    private final LongAdder totalLag = new LongAdder();
+    private final AtomicLong maxLag = new AtomicLong();
+    private final AtomicLong maxDuration = new AtomicLong();
+
+    public LvTimer() {
+        this(DEFAULT_THREADS);
+    }
+
+    public LvTimer(int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+
+        AtomicInteger counter = new AtomicInteger();
+
+        executor = new ScheduledThreadPoolExecutor(threads, run -> {
+            Thread res = new Thread(run, "log-viewer-timer-" + counter.incrementAndGet());
+            res.setDaemon(true);
+            return res;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Schedules the task if no task with the same key is waiting for execution. The tasks with the same key never run
+     * concurrently: if the task with the key is running, the new task is scheduled after it's finished.
+     *
+     * @return {@code true} if the task has been scheduled, {@code false} if a task with the same key is already waiting.
+     */
     public boolean scheduleTask(@NonNull Object key, @NonNull Runnable task, long delay) {
-        if (uniqueTaskMap.putIfAbsent(key, true) == null) {
-            boolean scheduled = false;
+        boolean[] res = new boolean[1];
 
-            try {
-                timer.schedule(new TimerTaskImpl(() -> {
-                    uniqueTaskMap.remove(key);
-                    task.run();
-                }), delay);
+        uniqueTaskMap.compute(key, (k, current) -> {
+            if (current == null) {
+                KeyedTask keyedTask = new KeyedTask(key, task);
+                schedule(keyedTask, delay);
+                res[0] = true;
+                return keyedTask;
+            }
 
-                scheduled = true;
-            } finally {
-                if (!scheduled)
-                    uniqueTaskMap.remove(key);
+            if (current.started && current.next == null) {
+                current.next = task;
+                current.nextDelay = delay;
+                res[0] = true;
             }
 
-            return true;
-        }
+            return current;
+        });
 
-        return false;
+        return res[0];
     }
 
     public void cancel() {
-        timer.cancel();
+        executor.shutdownNow();
+        uniqueTaskMap.clear();
+    }
+
+    /**
+     * @return the handle to cancel the task, use {@code cancel(false)}, the running task must not be interrupted.
+     */
+    public ScheduledFuture<?> schedule(@NonNull Runnable run, long delay) {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0));
+
+        return executor.schedule(new TaskImpl(run, System.nanoTime() + delayNanos), delayNanos, TimeUnit.NANOSECONDS);
     }
 
-    public TimerTask schedule(Runnable run, long delay) {
-        TimerTaskImpl task = new TimerTaskImpl(run);
-        timer.schedule(task, delay);
-        return task;
+    public TimerStats getStats() {
+        long executed = executedTaskCount.sum();
+
+        return new TimerStats(executor.getQueue().size(), executor.getActiveCount(), executed,
+                executed == 0 ? 0 : totalLag.sum() / executed, maxLag.get(), maxDuration.get());
     }
 
-    public void schedule(TimerTask timerTask, long delay) {
-        timer.schedule(timerTask, delay);
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value))
+                break;
+        }
     }
 
-    private static class TimerTaskImpl extends TimerTask {
+    private class KeyedTask implements Runnable {
+
+        private final Object key;
+
+        private final Runnable task;
+
+        /**
+         * The fields are guarded by the map entry, they are accessed in {@link Map#compute} only.
+         */
+        private boolean started;
+        private Runnable next;
+        private long nextDelay;
+
+        KeyedTask(Object key, Runnable task) {
+            this.key = key;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            uniqueTaskMap.computeIfPresent(key, (k, current) -> {
+                if (current == this)
+                    started = true;
+                return current;
+            });
+
+            try {
+                task.run();
+            } finally {
+                uniqueTaskMap.computeIfPresent(key, (k, current) -> {
+                    if (current != this)
+                        return current;
+
+                    if (next == null)
+                        return null;
+
+                    KeyedTask nextTask = new KeyedTask(key, next);
+
+                    try {
+                        schedule(nextTask, nextDelay);
+                    } catch (RejectedExecutionException e) {
+                        return null; // The timer has been cancelled
+                    }
+
+                    return nextTask;
+                });
+            }
+        }
+    }
+
+    private class TaskImpl implements Runnable {
 
         private final Runnable run;
 
-        public TimerTaskImpl(Runnable run) {
+        private final long scheduledTime;
+
+        TaskImpl(Runnable run, long scheduledTime) {
             this.run = run;
+            this.scheduledTime = scheduledTime;
         }
 
         @Override
         public void run() {
+            long startTime = System.nanoTime();
+
+            long lag = Math.max(startTime - scheduledTime, 0);
+            totalLag.add(lag);
+            updateMax(maxLag, lag);
+
             try {
                 run.run();
             } catch (Throwable e) {
                 LOG.error("Failed to execute timer task", e);
+            } finally {
+                executedTaskCount.increment();
+                updateMax(maxDuration, System.nanoTime() - startTime);
             }
         }
     }
+
+    /**
+     * The state of the timer for diagnostics. A growing lag means that the timer threads are saturated.
+     */
+    public static class TimerStats {
+        private final int queueSize;
+        private final int activeCount;
+        private final long executedTaskCount;
+        private final long averageLagNanos;
+        private final long maxLagNanos;
+        private final long maxDurationNanos;
+
+        TimerStats(int queueSize, int activeCount, long executedTaskCount, long averageLagNanos, long maxLagNanos,
+                   long maxDurationNanos) {
+            this.queueSize = queueSize;
+            this.activeCount = activeCount;
+            this.executedTaskCount = executedTaskCount;
+            this.averageLagNanos = averageLagNanos;
+            this.maxLagNanos = maxLagNanos;
+            this.maxDurationNanos = maxDurationNanos;
+        }
+
+        /**
+         * The number of tasks waiting for execution.
+         */
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        /**
+         * The number of tasks being executed.
+         */
+        public int getActiveCount() {
+            return activeCount;
+        }
+
+        public long getExecutedTaskCount() {
+            return executedTaskCount;
+        }
+
+        /**
+         * The average time between the scheduled time of a task and the start of its execution.
+         */
+        public long getAverageLagNanos() {
+            return averageLagNanos;
+        }
+
+        public long getMaxLagNanos() {
+            return maxLagNanos;
+        }
+
+        /**
+         * The execution time of the slowest task.
+         */
+        public long getMaxDurationNanos() {
+            return maxDurationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "{queueSize=" + queueSize + ", activeCount=" + activeCount +
+                    ", executedTaskCount=" + executedTaskCount +
+                    ", averageLag=" + TimeUnit.NANOSECONDS.toMicros(averageLagNanos) + "us" +
+                    ", maxLag=" + TimeUnit.NANOSECONDS.toMicros(maxLagNanos) + "us" +
+                    ", maxDuration=" + TimeUnit.NANOSECONDS.toMicros(maxDurationNanos) + "us}";
+        }
+    }
 }
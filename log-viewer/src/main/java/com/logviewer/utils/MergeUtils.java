@@ -0,0 +1,96 @@
+package com.logviewer.utils;
+
+import org.springframework.lang.NonNull;
+
+import java.util.*;
+
+public class MergeUtils {
+
+    private MergeUtils() {
+
+    }
+
+    /**
+     * Merges the lists sorted by the comparator using a heap of cursors, the cost is O(n log k) where n is the number of
+     * returned elements and k is the number of lists. A list that is not sorted is sorted before the merging, so the result
+     * is always the same as the result of sorting the concatenation of the lists.
+     *
+     * @param lists the lists to merge.
+     * @param comparator the order of the elements.
+     * @param limit the maximum number of the elements to return, the first elements in the merged order are returned.
+     * @return the merged list, a new modifiable list.
+     */
+    @NonNull
+    public static <T> List<T> mergeSorted(@NonNull Collection<? extends List<? extends T>> lists,
+                                          @NonNull Comparator<? super T> comparator, int limit) {
+        PriorityQueue<Cursor<T>> heap = new PriorityQueue<>(Math.max(lists.size(), 1),
+                (a, b) -> comparator.compare(a.current(), b.current()));
+
+        int size = 0;
+
+        for (List<? extends T> list : lists) {
+            if (list.isEmpty())
+                continue;
+
+            if (!isSorted(list, comparator)) {
+                List<T> sorted = new ArrayList<>(list);
+                sorted.sort(comparator);
+                list = sorted;
+            }
+
+            heap.add(new Cursor<>(list));
+            size += list.size();
+        }
+
+        List<T> res = new ArrayList<>(Math.min(size, limit));
+
+        while (res.size() < limit && !heap.isEmpty()) {
+            Cursor<T> cursor = heap.poll();
+
+            if (heap.isEmpty()) {
+                // The rest of the last list
+                List<? extends T> tail = cursor.list.subList(cursor.idx, cursor.list.size());
+                res.addAll(tail.subList(0, Math.min(tail.size(), limit - res.size())));
+                break;
+            }
+
+            res.add(cursor.current());
+
+            if (++cursor.idx < cursor.list.size())
+                heap.add(cursor);
+        }
+
+        return res;
+    }
+
+    public static <T> boolean isSorted(@NonNull List<? extends T> list, @NonNull Comparator<? super T> comparator) {
+        Iterator<? extends T> itr = list.iterator();
+        if (!itr.hasNext())
+            return true;
+
+        T prev = itr.next();
+
+        while (itr.hasNext()) {
+            T next = itr.next();
+            if (comparator.compare(prev, next) > 0)
+                return false;
+
+            prev = next;
+        }
+
+        return true;
+    }
+
+    private static class Cursor<T> {
+        private final List<? extends T> list;
+        private int idx;
+
+        Cursor(List<? extends T> list) {
+            this.list = list;
+        }
+
+        T current() {
+            return list.get(idx);
+        }
+    }
+}
@@ -1,20 +1,58 @@
 package com.logviewer.utils;
 
+import com.logviewer.data2.net.BinaryMessageCodec;
 import com.logviewer.data2.net.server.Message;
+import org.springframework.lang.Nullable;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 public class MessageReader {
 
     public static final int MAX_MESSAGE_SIZE = 5*1024*1024;
 
+    /**
+     * The flag in the message size marking the messages encoded by {@link BinaryMessageCodec}. The nodes not supporting
+     * the binary protocol never receive such messages, see {@link BinaryMessageCodec}.
+     */
+    private static final int BINARY_MESSAGE_FLAG = 0x80000000;
+
+    /**
+     * The flag in the message size marking a chunk of the compressed stream. The compressed stream is a raw Deflate stream
+     * shared by all chunks of the connection, each chunk ends with a sync flush. The decompressed data contains the usual
+     * messages, a message may be split between chunks.
+     */
+    public static final int COMPRESSED_CHUNK_FLAG = 0x40000000;
+
     private final ByteBuffer countBuffer = ByteBuffer.allocate(4);
     private ByteBuffer buffer;
     private boolean readingCount = true;
+    private boolean binaryMessage;
+    private boolean compressedChunk;
+
+    private final BinaryMessageCodec codec;
+
+    private Inflater inflater;
+    private MessageReader inflatedDataReader;
+    private byte[] inflaterBuffer;
+    private final ArrayDeque<Object> decodedMessages = new ArrayDeque<>();
+
+    private volatile long compressedBytesReceived;
+    private volatile long decompressedBytesReceived;
+
+    public MessageReader() {
+        this(new BinaryMessageCodec());
+    }
+
+    public MessageReader(BinaryMessageCodec codec) {
+        this.codec = codec;
+    }
 
     public ByteBuffer getCurrentBuffer() {
         return readingCount ? countBuffer : buffer;
@@ -27,6 +65,11 @@ public class MessageReader {
             }
 
             int packageSize = countBuffer.getInt(0);
+
+            binaryMessage = (packageSize & BINARY_MESSAGE_FLAG) != 0;
+            compressedChunk = (packageSize & COMPRESSED_CHUNK_FLAG) != 0;
+            packageSize &= ~(BINARY_MESSAGE_FLAG | COMPRESSED_CHUNK_FLAG);
+
             if (packageSize > MAX_MESSAGE_SIZE) {
                 throw new IOException("Message too big: " + packageSize);
             }
@@ -41,8 +84,15 @@ public class MessageReader {
 
             Object res;
 
-            try (ObjectInputStream oIn = new ObjectInputStream(new ByteArrayInputStream(buffer.array()))) {
-                res = oIn.readObject();
+            if (compressedChunk) {
+                inflate(buffer.array(), buffer.capacity());
+                res = decodedMessages.poll();
+            } else if (binaryMessage) {
+                res = codec.decode(buffer.array(), 0, buffer.capacity());
+            } else {
+                try (ObjectInputStream oIn = new ObjectInputStream(new ByteArrayInputStream(buffer.array()))) {
+                    res = oIn.readObject();
+                }
             }
 
             readingCount = true;
@@ -53,7 +103,76 @@ public class MessageReader {
         }
     }
 
+    /**
+     * A compressed chunk may contain several messages, {@link #onReceive()} returns the first one, the rest are returned
+     * by this method.
+     *
+     * @return the next message decoded from the last compressed chunk or {@code null} if there are no more messages.
+     */
+    @Nullable
+    public Object pollMessage() {
+        return decodedMessages.poll();
+    }
+
+    public long getCompressedBytesReceived() {
+        return compressedBytesReceived;
+    }
+
+    public long getDecompressedBytesReceived() {
+        return decompressedBytesReceived;
+    }
+
+    private void inflate(byte[] data, int length) throws IOException, ClassNotFoundException {
+        if (inflater == null) {
+            inflater = new Inflater(true);
+            inflatedDataReader = new MessageReader(codec);
+            inflaterBuffer = new byte[64 * 1024];
+        }
+
+        inflater.setInput(data, 0, length);
+
+        long decompressed = 0;
+
+        try {
+            while (true) {
+                int n = inflater.inflate(inflaterBuffer);
+
+                if (n == 0) {
+                    if (inflater.needsInput())
+                        break;
+
+                    throw new IOException("Invalid compressed data");
+                }
+
+                decompressed += n;
+
+                for (int off = 0; off < n; ) {
+                    ByteBuffer buf = inflatedDataReader.getCurrentBuffer();
+                    int k = Math.min(n - off, buf.remaining());
+                    buf.put(inflaterBuffer, off, k);
+                    off += k;
+
+                    Object msg = inflatedDataReader.onReceive();
+                    if (msg != null)
+                        decodedMessages.add(msg);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+
+        compressedBytesReceived += length;
+        decompressedBytesReceived += decompressed;
+    }
+
     public static void serializeMessages(OpenByteArrayOutputStream bOut, Message message) throws IOException {
+        serializeMessages(bOut, message, null);
+    }
+
+    /**
+     * @param codec the codec to encode the message or {@code null} to use Java serialization.
+     */
+    public static void serializeMessages(OpenByteArrayOutputStream bOut, Message message, @Nullable BinaryMessageCodec codec) throws IOException {
         int start = bOut.size();
 
         bOut.write(0);
@@ -61,15 +180,27 @@ public class MessageReader {
         bOut.write(0);
         bOut.write(0);
 
-        try (ObjectOutputStream objOut = new ObjectOutputStream(bOut)) {
-            objOut.writeObject(message);
-        }
+        int messageSize;
+
+        try {
+            if (codec != null) {
+                codec.encode(bOut, message);
+            } else {
+                try (ObjectOutputStream objOut = new ObjectOutputStream(bOut)) {
+                    objOut.writeObject(message);
+                }
+            }
 
-        int messageSize = bOut.size() - 4 - start;
+            messageSize = bOut.size() - 4 - start;
 
-        if (messageSize > MAX_MESSAGE_SIZE)
-            throw new IllegalArgumentException("Message too big: " + messageSize);
+            if (messageSize > MAX_MESSAGE_SIZE)
+                throw new IllegalArgumentException("Message too big: " + messageSize);
+        } catch (IOException | RuntimeException e) {
+            // Don't leave a broken message in the queue
+            bOut.truncate(start);
+            throw e;
+        }
 
-        ByteBuffer.wrap(bOut.getBuffer(), 0, bOut.size()).putInt(start, messageSize);
+        ByteBuffer.wrap(bOut.getBuffer(), 0, bOut.size()).putInt(start, codec != null ? messageSize | BINARY_MESSAGE_FLAG : messageSize);
     }
 }
@@ -15,4 +15,14 @@ public class OpenByteArrayOutputStream extends ByteArrayOutputStream {
         return buf;
     }
 
+    /**
+     * Discards the bytes written after the specified position.
+     */
+    public synchronized void truncate(int size) {
+        if (size < 0 || size > count)
+            throw new IllegalArgumentException();
+
+        count = size;
+    }
+
 }
@@ -2,51 +2,85 @@ package com.logviewer.utils;
 
 import com.logviewer.filters.CompositeRecordPredicate;
 import com.logviewer.filters.DatePredicate;
+import com.logviewer.filters.NotPredicate;
 import com.logviewer.filters.RecordPredicate;
+import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 
-import java.util.List;
-
 public class PredicateUtils {
 
     public static Long extractTimeLimit(@Nullable RecordPredicate filter, boolean isUpperLimit) {
+        TimeRanges ranges = extractTimeRanges(filter);
+
+        return isUpperLimit ? ranges.getUpperBound() : ranges.getLowerBound();
+    }
+
+    /**
+     * Derives the time ranges containing all records with a timestamp accepted by the filter. The records outside
+     * the ranges are rejected by the filter, the records inside the ranges may be rejected by other conditions.
+     * The records without a timestamp are not limited by the result.
+     */
+    @NonNull
+    public static TimeRanges extractTimeRanges(@Nullable RecordPredicate filter) {
         if (filter == null)
-            return null;
+            return TimeRanges.ALL;
+
+        return extractWindow(filter).ranges;
+    }
 
+    private static TimeWindow extractWindow(@NonNull RecordPredicate filter) {
         if (filter instanceof DatePredicate) {
             DatePredicate datePredicate = (DatePredicate) filter;
 
-            if (datePredicate.getDate() == 0)
-                return null;
+            long date = datePredicate.getDate();
+            if (date == 0)
+                return new TimeWindow(TimeRanges.ALL, true);
 
-            if (datePredicate.isGreater() != isUpperLimit) {
-                return datePredicate.getDate();
-            }
-        } else if (filter instanceof CompositeRecordPredicate) {
-            CompositeRecordPredicate comp = (CompositeRecordPredicate) filter;
+            return new TimeWindow(datePredicate.isGreater() ? TimeRanges.from(date) : TimeRanges.to(date), true);
+        }
+
+        if (filter instanceof NotPredicate) {
+            TimeWindow window = extractWindow(((NotPredicate) filter).getDelegate());
 
-            List<RecordPredicate> predicates = comp.getPredicates();
-            if (predicates.isEmpty() || !comp.isAnd())
-                return null;
+            // The complement of an approximation says nothing about the accepted records
+            if (!window.exact)
+                return TimeWindow.UNKNOWN;
 
-            Long res = null;
+            return new TimeWindow(window.ranges.complement(), true);
+        }
+
+        if (filter instanceof CompositeRecordPredicate) {
+            CompositeRecordPredicate comp = (CompositeRecordPredicate) filter;
+
+            TimeWindow res = new TimeWindow(comp.isAnd() ? TimeRanges.ALL : TimeRanges.EMPTY, true);
 
             for (RecordPredicate predicate : comp.getPredicates()) {
-                Long limit = extractTimeLimit(predicate, isUpperLimit);
-
-                if (limit != null) {
-                    if (res == null) {
-                        res = limit;
-                    } else {
-                        res = isUpperLimit ? Math.min(res, limit) : Math.max(res, limit);
-                    }
-                }
+                TimeWindow window = extractWindow(predicate);
+
+                TimeRanges ranges = comp.isAnd() ? res.ranges.intersect(window.ranges) : res.ranges.union(window.ranges);
+                res = new TimeWindow(ranges, res.exact && window.exact);
             }
 
             return res;
         }
-        
-        return null;
+
+        return TimeWindow.UNKNOWN;
     }
 
+    /**
+     * The time ranges of a predicate. If the window is exact, the predicate accepts a record with a timestamp
+     * if and only if the timestamp is inside the ranges, otherwise the predicate may reject some records inside
+     * the ranges.
+     */
+    private static class TimeWindow {
+        static final TimeWindow UNKNOWN = new TimeWindow(TimeRanges.ALL, false);
+
+        final TimeRanges ranges;
+        final boolean exact;
+
+        TimeWindow(TimeRanges ranges, boolean exact) {
+            this.ranges = ranges;
+            this.exact = exact;
+        }
+    }
 }
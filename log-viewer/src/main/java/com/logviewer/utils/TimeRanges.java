@@ -0,0 +1,247 @@
+package com.logviewer.utils;
+
+import org.springframework.lang.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of disjoint time ranges. The bounds are timestamps in nanoseconds, both bounds are inclusive,
+ * {@link Long#MIN_VALUE} and {@link Long#MAX_VALUE} mean an unbounded range.
+ */
+public final class TimeRanges {
+
+    public static final TimeRanges ALL = new TimeRanges(new long[]{Long.MIN_VALUE, Long.MAX_VALUE});
+
+    public static final TimeRanges EMPTY = new TimeRanges(new long[0]);
+
+    /**
+     * The sorted bounds: [from0, to0, from1, to1, ...], the ranges neither intersect nor touch each other.
+     */
+    private final long[] bounds;
+
+    private TimeRanges(long[] bounds) {
+        this.bounds = bounds;
+    }
+
+    public static TimeRanges of(long from, long to) {
+        if (from > to)
+            return EMPTY;
+
+        if (from == Long.MIN_VALUE && to == Long.MAX_VALUE)
+            return ALL;
+
+        return new TimeRanges(new long[]{from, to});
+    }
+
+    public static TimeRanges from(long from) {
+        return of(from, Long.MAX_VALUE);
+    }
+
+    public static TimeRanges to(long to) {
+        return of(Long.MIN_VALUE, to);
+    }
+
+    public int size() {
+        return bounds.length / 2;
+    }
+
+    public boolean isEmpty() {
+        return bounds.length == 0;
+    }
+
+    public boolean isAll() {
+        return bounds.length == 2 && bounds[0] == Long.MIN_VALUE && bounds[1] == Long.MAX_VALUE;
+    }
+
+    public long getFrom(int idx) {
+        return bounds[idx * 2];
+    }
+
+    public long getTo(int idx) {
+        return bounds[idx * 2 + 1];
+    }
+
+    /**
+     * @return the start of the first range or {@code null} if the set is empty or has no lower bound.
+     */
+    @Nullable
+    public Long getLowerBound() {
+        if (bounds.length == 0 || bounds[0] == Long.MIN_VALUE)
+            return null;
+
+        return bounds[0];
+    }
+
+    /**
+     * @return the end of the last range or {@code null} if the set is empty or has no upper bound.
+     */
+    @Nullable
+    public Long getUpperBound() {
+        if (bounds.length == 0 || bounds[bounds.length - 1] == Long.MAX_VALUE)
+            return null;
+
+        return bounds[bounds.length - 1];
+    }
+
+    /**
+     * Searches the range containing the timestamp.
+     *
+     * @return the index of the range containing the timestamp, otherwise {@code (-(insertion point) - 1)}, where
+     * the insertion point is the index of the first range after the timestamp.
+     */
+    public int indexOf(long time) {
+        int low = 0;
+        int high = size() - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+
+            if (bounds[mid * 2 + 1] < time) {
+                low = mid + 1;
+            } else if (bounds[mid * 2] > time) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    public boolean contains(long time) {
+        return indexOf(time) >= 0;
+    }
+
+    public TimeRanges intersect(TimeRanges other) {
+        if (isAll() || other.isEmpty())
+            return other;
+        if (other.isAll() || isEmpty())
+            return this;
+
+        long[] res = new long[bounds.length + other.bounds.length];
+        int size = 0;
+
+        int i = 0;
+        int j = 0;
+
+        while (i < bounds.length && j < other.bounds.length) {
+            long from = Math.max(bounds[i], other.bounds[j]);
+            long to = Math.min(bounds[i + 1], other.bounds[j + 1]);
+
+            if (from <= to) {
+                res[size++] = from;
+                res[size++] = to;
+            }
+
+            if (bounds[i + 1] < other.bounds[j + 1]) {
+                i += 2;
+            } else {
+                j += 2;
+            }
+        }
+
+        return create(res, size);
+    }
+
+    public TimeRanges union(TimeRanges other) {
+        if (isAll() || other.isEmpty())
+            return this;
+        if (other.isAll() || isEmpty())
+            return other;
+
+        long[] res = new long[bounds.length + other.bounds.length];
+        int size = 0;
+
+        int i = 0;
+        int j = 0;
+
+        while (i < bounds.length || j < other.bounds.length) {
+            long from;
+            long to;
+
+            if (j == other.bounds.length || (i < bounds.length && bounds[i] <= other.bounds[j])) {
+                from = bounds[i];
+                to = bounds[i + 1];
+                i += 2;
+            } else {
+                from = other.bounds[j];
+                to = other.bounds[j + 1];
+                j += 2;
+            }
+
+            if (size > 0 && (res[size - 1] == Long.MAX_VALUE || res[size - 1] + 1 >= from)) {
+                res[size - 1] = Math.max(res[size - 1], to);
+            } else {
+                res[size++] = from;
+                res[size++] = to;
+            }
+        }
+
+        return create(res, size);
+    }
+
+    public TimeRanges complement() {
+        if (isEmpty())
+            return ALL;
+        if (isAll())
+            return EMPTY;
+
+        long[] res = new long[bounds.length + 2];
+        int size = 0;
+
+        if (bounds[0] != Long.MIN_VALUE) {
+            res[size++] = Long.MIN_VALUE;
+            res[size++] = bounds[0] - 1;
+        }
+
+        for (int i = 1; i < bounds.length - 1; i += 2) {
+            res[size++] = bounds[i] + 1;
+            res[size++] = bounds[i + 1] - 1;
+        }
+
+        if (bounds[bounds.length - 1] != Long.MAX_VALUE) {
+            res[size++] = bounds[bounds.length - 1] + 1;
+            res[size++] = Long.MAX_VALUE;
+        }
+
+        return create(res, size);
+    }
+
+    private static TimeRanges create(long[] bounds, int size) {
+        if (size == 0)
+            return EMPTY;
+
+        if (size == 2 && bounds[0] == Long.MIN_VALUE && bounds[1] == Long.MAX_VALUE)
+            return ALL;
+
+        return new TimeRanges(Arrays.copyOf(bounds, size));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(bounds, ((TimeRanges) o).bounds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bounds);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder res = new StringBuilder("[");
+
+        for (int i = 0; i < bounds.length; i += 2) {
+            if (i > 0)
+                res.append(", ");
+
+            res.append(bounds[i] == Long.MIN_VALUE ? "-inf" : String.valueOf(bounds[i]))
+                    .append("..")
+                    .append(bounds[i + 1] == Long.MAX_VALUE ? "+inf" : String.valueOf(bounds[i + 1]));
+        }
+
+        return res.append(']').toString();
+    }
+}
@@ -313,6 +313,39 @@ public class Utils {
         return res;
     }
 
+    /**
+     * The same as {@link String#startsWith(String, int)}, but works with any {@link CharSequence}.
+     */
+    public static boolean startsWith(@NonNull CharSequence s, @NonNull String prefix, int offset) {
+        if (s instanceof String)
+            return ((String) s).startsWith(prefix, offset);
+
+        if (offset < 0 || offset > s.length() - prefix.length())
+            return false;
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (s.charAt(offset + i) != prefix.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * The same as {@link String#indexOf(String, int)}, but works with any {@link CharSequence}.
+     */
+    public static int indexOf(@NonNull CharSequence s, @NonNull String str, int fromIndex) {
+        if (s instanceof String)
+            return ((String) s).indexOf(str, fromIndex);
+
+        for (int i = Math.max(fromIndex, 0), lastIdx = s.length() - str.length(); i <= lastIdx; i++) {
+            if (startsWith(s, str, i))
+                return i;
+        }
+
+        return -1;
+    }
+
     public static String removeAsciiColorCodes(String s) {
 //        return s.replaceAll("\u001B\\[[\\d;]*m", "");    - don't use the regexp, the performance of the regexp is not good.
 
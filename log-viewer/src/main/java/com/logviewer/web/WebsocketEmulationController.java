@@ -23,6 +23,7 @@ import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.security.Principal;
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class WebsocketEmulationController extends AbstractRestRequestHandler {
@@ -127,7 +128,7 @@ public class WebsocketEmulationController extends AbstractRestRequestHandler {
         private final List<ToUiMessage> toUiQueue = new ArrayList<>();
 
         private LvAsyncContext asyncContext;
-        private TimerTask asyncContextChecker;
+        private ScheduledFuture<?> asyncContextChecker;
 
         private final AtomicBoolean closed = new AtomicBoolean();
 
@@ -153,7 +154,7 @@ public class WebsocketEmulationController extends AbstractRestRequestHandler {
                         return Collections.emptyList();
 
                     if (asyncContextChecker != null)
-                        asyncContextChecker.cancel();
+                        asyncContextChecker.cancel(false);
 
                     if (asyncContext != null) {
                         LOG.debug("release held connection [sessionId={}, sentMessages={}]", sessionId, toUiQueue.size());
@@ -258,7 +259,7 @@ public class WebsocketEmulationController extends AbstractRestRequestHandler {
 
                 synchronized (toUiQueue) {
                     if (asyncContextChecker != null)
-                        asyncContextChecker.cancel();
+                        asyncContextChecker.cancel(false);
 
                     if (asyncContext != null) {
                         asyncContext.complete();
@@ -284,7 +285,7 @@ public class WebsocketEmulationController extends AbstractRestRequestHandler {
         private void sendResponseQueueToAsync() {
             assert Thread.holdsLock(toUiQueue);
 
-            asyncContextChecker.cancel();
+            asyncContextChecker.cancel(false);
 
             boolean success = false;
 
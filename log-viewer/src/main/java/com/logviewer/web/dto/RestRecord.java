@@ -1,10 +1,10 @@
 package com.logviewer.web.dto;
 
 import com.google.gson.annotations.JsonAdapter;
+import com.logviewer.data2.FieldSchema;
 import com.logviewer.data2.LogRecord;
 import com.logviewer.utils.GsonNanosecondsAdapter;
 import com.logviewer.utils.Pair;
-import com.logviewer.utils.TextRange;
 import com.logviewer.utils.Utils;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
@@ -45,11 +45,14 @@ public class RestRecord {
         end = record.getEnd();
         loadedTextLengthBytes = record.getLoadedTextLengthBytes();
 
-        fields = new ArrayList<>();;
-        for (String fieldName : record.getFieldNames()) {
-            TextRange fieldOffset = record.getFieldOffset(fieldName);
-            if (fieldOffset != null)
-                this.fields.add(new RestField(fieldName, fieldOffset.getStart(), fieldOffset.getEnd()));
+        FieldSchema schema = record.getFieldSchema();
+        int[] fieldPositions = record.getFieldPositions();
+
+        fields = new ArrayList<>(schema.size());
+        for (int i = 0; i < schema.size(); i++) {
+            int fieldStart = fieldPositions[i * 2];
+            if (fieldStart >= 0)
+                this.fields.add(new RestField(schema.getName(i), fieldStart, fieldPositions[i * 2 + 1]));
         }
 
         this.filteringError = filteringError;
@@ -0,0 +1,20 @@
+package com.logviewer.web.dto.events;
+
+import com.logviewer.data2.ArchivePreparationProgress;
+
+public class EventArchivePreparation extends BackendEvent {
+
+    private final String logId;
+
+    private final ArchivePreparationProgress progress;
+
+    public EventArchivePreparation(String logId, ArchivePreparationProgress progress) {
+        this.logId = logId;
+        this.progress = progress;
+    }
+
+    @Override
+    public String getName() {
+        return "onArchivePreparation";
+    }
+}
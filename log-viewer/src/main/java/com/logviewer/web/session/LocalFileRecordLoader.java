@@ -4,14 +4,18 @@ import com.logviewer.data2.*;
 import com.logviewer.filters.RecordPredicate;
 import com.logviewer.utils.Pair;
 import com.logviewer.utils.PredicateUtils;
+import com.logviewer.utils.TimeRanges;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -20,6 +24,16 @@ public class LocalFileRecordLoader implements LogProcess {
 
     private static final Logger LOG = LoggerFactory.getLogger(LocalFileRecordLoader.class);
 
+    /**
+     * The records are passed to the listener by batches, a batch is sent when it reaches the maximum record count,
+     * the maximum text length, or when the first record of the batch waits longer than {@link #BATCH_MAX_DELAY_NANOS}.
+     */
+    static final int BATCH_MAX_RECORDS = 500;
+
+    static final long BATCH_MAX_LENGTH = 256 * 1024;
+
+    static final long BATCH_MAX_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(30);
+
     private final Supplier<Snapshot> snapshotFactory;
 
     private final ExecutorService executor;
@@ -29,6 +43,7 @@ public class LocalFileRecordLoader implements LogProcess {
     private final Position start;
 
     private final RecordPredicate filter;
+    private final TimeRanges timeRangesFromFilter;
     private final Long timeLimitFromFilter;
     private final int recordCountLimit;
     private final boolean backward;
@@ -57,7 +72,8 @@ public class LocalFileRecordLoader implements LogProcess {
         this.sizeLimit = sizeLimit;
         this.hash = hash;
 
-        timeLimitFromFilter = PredicateUtils.extractTimeLimit(filter, !backward);
+        timeRangesFromFilter = PredicateUtils.extractTimeRanges(filter);
+        timeLimitFromFilter = backward ? timeRangesFromFilter.getLowerBound() : timeRangesFromFilter.getUpperBound();
     }
 
     @Override
@@ -72,25 +88,26 @@ public class LocalFileRecordLoader implements LogProcess {
                 boolean processedAllLined;
                 Status status;
 
+                MyRecordPredicate predicate = null;
+
                 try {
                     if (hash != null && !snapshot.isValidHash(hash))
                         throw new LogCrashedException();
 
-                    MyRecordPredicate predicate = new MyRecordPredicate(snapshot);
+                    predicate = new MyRecordPredicate(snapshot);
 
-                    boolean hasMoreLine;
+                    boolean hasMoreLine = TimeRangeScanner.scan(snapshot, timeRangesFromFilter, backward, predicate, p -> {
+                        if (start == null) {
+                            assert backward;
+                            Long startTime = timeRangesFromFilter.getUpperBound();
+                            if (startTime != null)
+                                return snapshot.processFromTimeBack(startTime, p);
 
-                    if (start == null) {
-                        assert backward;
-                        Long startTime = PredicateUtils.extractTimeLimit(filter, true);
-                        if (startTime != null) {
-                            hasMoreLine = snapshot.processFromTimeBack(startTime, predicate);
-                        } else {
-                            hasMoreLine = snapshot.processRecordsBack(snapshot.getSize(), false, predicate);
+                            return snapshot.processRecordsBack(snapshot.getSize(), false, p);
                         }
-                    } else {
-                        hasMoreLine = searchFromPosition(snapshot, predicate);
-                    }
+
+                        return searchFromPosition(snapshot, p);
+                    });
 
                     processedAllLined = hasMoreLine || predicate.stoppedByFilterTimeLimit;
                     status = new Status(snapshot);
@@ -99,6 +116,9 @@ public class LocalFileRecordLoader implements LogProcess {
                     status = new Status(e);
                 }
 
+                if (predicate != null)
+                    predicate.flush();
+
                 listener.onFinish(status, processedAllLined);
             } catch (Throwable e) {
                 LOG.error("Failed to load records", e);
@@ -142,7 +162,7 @@ public class LocalFileRecordLoader implements LogProcess {
     }
 
     private boolean searchFromPosition(Snapshot snapshot, Predicate<LogRecord> predicate) throws IOException {
-        Long startTimeFromFilters = PredicateUtils.extractTimeLimit(filter, backward);
+        Long startTimeFromFilters = backward ? timeRangesFromFilter.getUpperBound() : timeRangesFromFilter.getLowerBound();
 
         int idCmp = start.getLogId().compareTo(snapshot.getLog().getId());
         if (idCmp == 0) {
@@ -222,12 +242,31 @@ public class LocalFileRecordLoader implements LogProcess {
 
         private boolean stoppedByFilterTimeLimit;
 
+        private final List<Pair<LogRecord, Throwable>> batch = new ArrayList<>();
+        private long batchLength;
+        private long batchStartTime;
+
         public MyRecordPredicate(Snapshot snapshot) {
             this.predicateChecker = new LvPredicateChecker(snapshot.getLog());
         }
 
+        void flush() {
+            if (batch.isEmpty())
+                return;
+
+            RecordList data = new RecordList(batch);
+
+            batch.clear();
+            batchLength = 0;
+
+            listener.onData(data);
+        }
+
         @Override
         public boolean test(LogRecord record) {
+            if (!batch.isEmpty() && System.nanoTime() - batchStartTime >= BATCH_MAX_DELAY_NANOS)
+                flush();
+
             if (timeLimitFromFilter != null && record.hasTime()) {
                 if (backward ? record.getTime() < timeLimitFromFilter : record.getTime() > timeLimitFromFilter) {
                     stoppedByFilterTimeLimit = true;
@@ -244,7 +283,14 @@ public class LocalFileRecordLoader implements LogProcess {
                 recordCount++;
                 readSize += record.getMessage().length();
 
-                listener.onData(new RecordList(restRecord));
+                if (batch.isEmpty())
+                    batchStartTime = System.nanoTime();
+
+                batch.add(restRecord);
+                batchLength += record.getMessage().length();
+
+                if (batch.size() >= BATCH_MAX_RECORDS || batchLength >= BATCH_MAX_LENGTH)
+                    flush();
             }
 
             return recordCount < recordCountLimit && readSize < sizeLimit;
@@ -4,14 +4,21 @@ import com.logviewer.data2.*;
 import com.logviewer.filters.RecordPredicate;
 import com.logviewer.utils.Pair;
 import com.logviewer.utils.PredicateUtils;
+import com.logviewer.utils.TimeRanges;
+import com.logviewer.utils.Utils;
 import com.logviewer.web.session.tasks.SearchPattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
 
-import java.util.ArrayDeque;
-import java.util.Queue;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -26,6 +33,7 @@ public class LocalFileRecordSearcher implements LogProcess {
     private final Position start;
     private final boolean backward;
     private final RecordPredicate filter;
+    private final TimeRanges timeRangesFromFilter;
     private final Long timeLimitFomFilter;
     private final SearchPattern pattern;
     private final String hash;
@@ -33,6 +41,16 @@ public class LocalFileRecordSearcher implements LogProcess {
 
     private final Consumer<SearchResult> listener;
 
+    /**
+     * The maximum number of threads scanning the file, {@code 1} disables the parallel search.
+     */
+    private final int parallelism;
+
+    /**
+     * The size of the ranges the file is split into for the parallel search.
+     */
+    private final long chunkSize;
+
     private int state = 0;
 
     private volatile long timeLimit = 0;
@@ -43,6 +61,17 @@ public class LocalFileRecordSearcher implements LogProcess {
     public LocalFileRecordSearcher(Supplier<Snapshot> snapshotFactory, ExecutorService executor,
                                    Position start, boolean backward, RecordPredicate filter, String hash, int recordCount,
                                    SearchPattern pattern, Consumer<SearchResult> listener) {
+        this(snapshotFactory, executor, start, backward, filter, hash, recordCount, pattern, listener, 1, Long.MAX_VALUE);
+    }
+
+    public LocalFileRecordSearcher(Supplier<Snapshot> snapshotFactory, ExecutorService executor,
+                                   Position start, boolean backward, RecordPredicate filter, String hash, int recordCount,
+                                   SearchPattern pattern, Consumer<SearchResult> listener, int parallelism, long chunkSize) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+
         this.snapshotFactory = snapshotFactory;
         this.executor = executor;
         this.start = start;
@@ -52,10 +81,13 @@ public class LocalFileRecordSearcher implements LogProcess {
         this.hash = hash;
         this.recordCount = recordCount;
         this.listener = listener;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
 
         assert recordCount > 0;
 
-        timeLimitFomFilter = PredicateUtils.extractTimeLimit(filter, !backward);
+        timeRangesFromFilter = PredicateUtils.extractTimeRanges(filter);
+        timeLimitFomFilter = backward ? timeRangesFromFilter.getLowerBound() : timeRangesFromFilter.getUpperBound();
     }
 
     @Override
@@ -71,22 +103,28 @@ public class LocalFileRecordSearcher implements LogProcess {
                     if (hash != null && !snapshot.isValidHash(hash))
                         throw new LogCrashedException();
 
-                    Queue<Pair<LogRecord, Throwable>> queue = new ArrayDeque<>(recordCount);
-                    boolean[] hasSkippedLined = new boolean[1];
-                    boolean[] found = new boolean[1];
-
                     Predicate<String> matcher = pattern.matcher();
 
                     final Status status = new Status(snapshot);
 
                     LvPredicateChecker predicateChecker = new LvPredicateChecker(snapshot.getLog());
 
-                    Predicate<LogRecord> predicate = record -> {
-                        if (timeLimitFomFilter != null && record.hasTime()) {
-                            if (backward ? record.getTime() < timeLimitFomFilter : record.getTime() > timeLimitFomFilter)
-                                return false;
+                    if (snapshot instanceof Log.LogSnapshot) {
+                        BytePattern bytePattern = pattern.bytePattern(snapshot.getLog().getEncoding());
+
+                        boolean parallel = parallelism > 1 && snapshot.getSize() >= chunkSize * 2;
+
+                        if (bytePattern != null || parallel) {
+                            listener.accept(searchByRanges((Log.LogSnapshot) snapshot, bytePattern, matcher, predicateChecker, status));
+                            return;
                         }
+                    }
 
+                    Queue<Pair<LogRecord, Throwable>> queue = new ArrayDeque<>(recordCount);
+                    boolean[] hasSkippedLined = new boolean[1];
+                    boolean[] found = new boolean[1];
+
+                    Predicate<LogRecord> predicate = record -> {
                         if (!timeOk(record))
                             return false;
 
@@ -109,33 +147,10 @@ public class LocalFileRecordSearcher implements LogProcess {
                         return true;
                     };
 
-                    int idCmp = start.getLogId().compareTo(snapshot.getLog().getId());
-                    if (idCmp == 0) {
-                        if (backward)
-                            snapshot.processRecordsBack(start.getLocalPosition(), true, predicate);
-                        else
-                            snapshot.processRecords(start.getLocalPosition(), true, predicate);
-                    }
-                    else {
-                        if (backward) {
-                            long startTime;
-                            if (idCmp < 0)
-                                startTime = start.getTime() - 1;
-                            else
-                                startTime = start.getTime();
-
-                            snapshot.processFromTimeBack(startTime, predicate);
-                        }
-                        else {
-                            long startTime;
-                            if (idCmp < 0)
-                                startTime = start.getTime();
-                            else
-                                startTime = start.getTime() + 1;
-
-                            snapshot.processFromTime(startTime, predicate);
-                        }
-                    }
+                    TimeRangeScanner.scan(snapshot, timeRangesFromFilter, backward, predicate, p -> {
+                        processFromStart(snapshot, p);
+                        return true;
+                    });
 
                     listener.accept(new SearchResult(new RecordList(queue), status, hasSkippedLined[0], found[0]));
                 } catch (Throwable e) {
@@ -149,7 +164,498 @@ public class LocalFileRecordSearcher implements LogProcess {
         state = 1;
     }
 
+    private void processFromStart(Snapshot snapshot, Predicate<LogRecord> predicate) throws IOException {
+        int idCmp = start.getLogId().compareTo(snapshot.getLog().getId());
+        if (idCmp == 0) {
+            if (backward)
+                snapshot.processRecordsBack(start.getLocalPosition(), true, predicate);
+            else
+                snapshot.processRecords(start.getLocalPosition(), true, predicate);
+        }
+        else {
+            if (backward) {
+                long startTime;
+                if (idCmp < 0)
+                    startTime = start.getTime() - 1;
+                else
+                    startTime = start.getTime();
+
+                snapshot.processFromTimeBack(startTime, predicate);
+            }
+            else {
+                long startTime;
+                if (idCmp < 0)
+                    startTime = start.getTime();
+                else
+                    startTime = start.getTime() + 1;
+
+                snapshot.processFromTime(startTime, predicate);
+            }
+        }
+    }
+
+    /**
+     * Searches the record stopping the search and loads the records preceding it. The file is split into ranges aligned
+     * on record boundaries, the ranges are scanned concurrently if the parallel search is enabled. The parts of the file
+     * located between the time ranges of the filter are not scanned, as in {@link TimeRangeScanner}. If the byte pattern
+     * is specified, only the records containing the candidates of {@link BytePattern} are parsed and checked, the other
+     * records cannot match. The result is the same as the result of the plain search processing all the records.
+     */
+    private SearchResult searchByRanges(Log.LogSnapshot snapshot, @Nullable BytePattern bytePattern, Predicate<String> matcher,
+                                        LvPredicateChecker predicateChecker, Status status) throws Exception {
+        LogRecord firstRecord = loadFirstRecord(snapshot, this::processFromStart);
+        if (firstRecord == null)
+            return new SearchResult(new RecordList(), status, false, false);
+
+        List<long[]> ranges = splitRange(snapshot, firstRecord);
+
+        List<RangeResult> results;
+
+        if (ranges.size() > 1) {
+            results = scanRangesParallel(snapshot, firstRecord, ranges, bytePattern, matcher);
+        } else {
+            results = Collections.singletonList(scanRange(snapshot, firstRecord, ranges.get(0), bytePattern, matcher,
+                    predicateChecker, () -> false));
+        }
+
+        RangeResult lastRange = results.get(results.size() - 1);
+
+        if (bytePattern == null) {
+            // The filtered records have been collected during the scanning
+            Deque<Pair<LogRecord, Throwable>> queue = new ArrayDeque<>(recordCount);
+            boolean hasSkippedLined = false;
+
+            for (RangeResult range : results) {
+                hasSkippedLined |= range.tailOverflow;
+
+                for (Pair<LogRecord, Throwable> record : range.tail) {
+                    if (queue.size() == recordCount) {
+                        hasSkippedLined = true;
+                        queue.removeFirst();
+                    }
+
+                    queue.addLast(record);
+                }
+            }
+
+            if (lastRange.found != null) {
+                if (queue.size() == recordCount) {
+                    hasSkippedLined = true;
+                    queue.removeFirst();
+                }
+
+                queue.addLast(lastRange.found);
+            }
+
+            return new SearchResult(new RecordList(queue), status, hasSkippedLined, lastRange.found != null);
+        }
+
+        LogRecord stopRecord = lastRange.stopRecord;
+        Pair<LogRecord, Throwable> foundRecord = lastRange.found;
+
+        // The plain search doesn't process the records located beyond the bound
+        long bound = backward ? firstRecord.getEnd() : firstRecord.getStart();
+
+        // Only the candidates have been checked for the time limit, the records between the time limit and the end of
+        // the file must not be parsed
+        LogRecord timeLimitRecord = findTimeLimitRecord(snapshot, bound);
+        if (timeLimitRecord != null && (stopRecord == null
+                || (backward ? timeLimitRecord.getStart() > stopRecord.getStart() : timeLimitRecord.getStart() < stopRecord.getStart()))) {
+            stopRecord = timeLimitRecord;
+            foundRecord = null;
+        }
+
+        // Load the records preceding the found record in the search order
+        Deque<Pair<LogRecord, Throwable>> queue = new ArrayDeque<>(recordCount);
+        boolean[] hasSkippedLined = new boolean[1];
+        boolean[] found = new boolean[1];
+
+        if (foundRecord != null) {
+            queue.add(foundRecord);
+            found[0] = true;
+        }
+
+        Predicate<LogRecord> predicate = record -> {
+            if (backward ? record.getEnd() > bound : record.getStart() < bound)
+                return false;
+
+            if (!timeOk(record)) {
+                // The plain search would stop at this record, only the records preceding it are returned
+                queue.clear();
+                found[0] = false;
+                return true;
+            }
+
+            Pair<LogRecord, Throwable> restRecord = predicateChecker.applyFilter(record, filter);
+
+            if (restRecord != null) {
+                if (queue.size() == recordCount) {
+                    hasSkippedLined[0] = true;
+                    return false;
+                }
+
+                queue.addFirst(restRecord);
+            }
+
+            return true;
+        };
+
+        if (backward) {
+            if (stopRecord == null)
+                snapshot.processRecords(0, false, predicate);
+            else
+                snapshot.processRecords(stopRecord.getEnd(), true, predicate);
+        } else {
+            snapshot.processRecordsBack(stopRecord == null ? snapshot.getSize() : stopRecord.getStart(), true, predicate);
+        }
+
+        return new SearchResult(new RecordList(queue), status, hasSkippedLined[0], found[0]);
+    }
+
+    /**
+     * Finds by the log index the first record in the search order that is beyond the time limit, the plain search
+     * stops at this record.
+     *
+     * @return the record or {@code null} if the search has no time limit or the record is not found.
+     */
+    @Nullable
+    private LogRecord findTimeLimitRecord(Log.LogSnapshot snapshot, long bound) throws IOException {
+        Long time = null;
+
+        if (timeLimitFomFilter != null)
+            time = backward ? timeLimitFomFilter - 1 : timeLimitFomFilter + 1;
+
+        long timeLimit = this.timeLimit;
+        if (timeLimit > 0) {
+            if (time == null)
+                time = timeLimit;
+            else
+                time = backward ? Math.max(time, timeLimit) : Math.min(time, timeLimit);
+        }
+
+        if (time == null || time <= 0)
+            return null;
+
+        long t = time;
+
+        LogRecord res = loadFirstRecord(snapshot, (s, predicate) -> {
+            if (backward)
+                s.processFromTimeBack(t, predicate);
+            else
+                s.processFromTime(t, predicate);
+        });
+
+        if (res == null || timeOk(res) || (backward ? res.getEnd() > bound : res.getStart() < bound))
+            return null;
+
+        return res;
+    }
+
+    /**
+     * Splits the part of the file to be searched into ranges. The ranges are aligned on record boundaries, each range
+     * contains the records which start is located inside the range.
+     *
+     * @return the ranges in the search order as pairs [low, high), the range consists of the records which start is
+     * located in [low, high). The first range contains the first record in the search order unless the record is
+     * located between the time ranges of the filter.
+     */
+    private List<long[]> splitRange(Log.LogSnapshot snapshot, LogRecord firstRecord) throws IOException {
+        List<long[]> res = new ArrayList<>();
+
+        for (long[] part : findTimeRangeParts(snapshot, firstRecord)) {
+            long low = part[0];
+            long high = part[1];
+
+            if (parallelism > 1) {
+                long end = Math.min(high, snapshot.getSize());
+
+                for (long p = low + chunkSize; p < end; p += chunkSize) {
+                    long position = p;
+                    LogRecord record = loadFirstRecord(snapshot, (s, predicate) -> s.processRecords(position, false, predicate));
+                    if (record == null || record.getStart() >= high)
+                        break;
+
+                    if (record.getStart() > low) {
+                        res.add(new long[]{low, record.getStart()});
+                        low = record.getStart();
+                    }
+                }
+            }
+
+            res.add(new long[]{low, high});
+        }
+
+        if (backward)
+            Collections.reverse(res);
+
+        return res;
+    }
+
+    /**
+     * Finds the parts of the file containing the time ranges of the filter. The records located between the time
+     * ranges are rejected by the filter, the positions of the ranges are found by the log index. The records after
+     * the last range in the search order are included, they stop the search by the time limit.
+     *
+     * @return the parts in ascending order as pairs [low, high) limited by the first record in the search order.
+     */
+    private List<long[]> findTimeRangeParts(Log.LogSnapshot snapshot, LogRecord firstRecord) throws IOException {
+        long searchLow = backward ? 0 : firstRecord.getStart();
+        long searchHigh = backward ? firstRecord.getStart() + 1 : Long.MAX_VALUE;
+
+        TimeRanges ranges = timeRangesFromFilter;
+
+        if (ranges.size() < 2)
+            return Collections.singletonList(new long[]{searchLow, searchHigh});
+
+        List<long[]> res = new ArrayList<>();
+        long lastHigh = 0;
+
+        for (int i = 0; i < ranges.size(); i++) {
+            long low = i == 0 && backward ? 0 : findRecordStart(snapshot, ranges.getFrom(i));
+
+            long high;
+            if (i == ranges.size() - 1 && !backward || ranges.getTo(i) == Long.MAX_VALUE) {
+                high = Long.MAX_VALUE;
+            } else {
+                high = findRecordStart(snapshot, ranges.getTo(i) + 1);
+            }
+
+            if (low < lastHigh || high < low) {
+                // The timestamps are not ordered, the whole file is scanned
+                return Collections.singletonList(new long[]{searchLow, searchHigh});
+            }
+
+            lastHigh = high;
+
+            low = Math.max(low, searchLow);
+            high = Math.min(high, searchHigh);
+
+            if (low < high)
+                res.add(new long[]{low, high});
+        }
+
+        return res;
+    }
+
+    /**
+     * @return the start of the first record having a timestamp not less than the specified one.
+     */
+    private static long findRecordStart(Log.LogSnapshot snapshot, long time) throws IOException {
+        if (time == Long.MIN_VALUE)
+            return 0;
+
+        LogRecord record = loadFirstRecord(snapshot, (s, predicate) -> s.processFromTime(time, predicate));
+
+        return record == null ? snapshot.getSize() : record.getStart();
+    }
+
+    /**
+     * Scans the ranges concurrently. The ranges are taken in the search order, the scanning of a range is cancelled when
+     * a stop record is found in a range preceding it. The search task itself takes part in the scanning, so the search
+     * doesn't wait for the executor threads if all of them are busy.
+     *
+     * @return the results of the ranges up to the first range containing a stop record.
+     */
+    private List<RangeResult> scanRangesParallel(Log.LogSnapshot snapshot, LogRecord firstRecord, List<long[]> ranges,
+                                                 @Nullable BytePattern bytePattern, Predicate<String> matcher) throws Exception {
+        int rangeCount = ranges.size();
+
+        RangeResult[] results = new RangeResult[rangeCount];
+        AtomicInteger nextRange = new AtomicInteger();
+        AtomicInteger stopRange = new AtomicInteger(rangeCount); // The nearest range containing a stop record
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch finished = new CountDownLatch(rangeCount);
+
+        Runnable worker = () -> {
+            LvPredicateChecker predicateChecker = new LvPredicateChecker(snapshot.getLog());
+
+            try {
+                int idx;
+
+                while ((idx = nextRange.getAndIncrement()) < rangeCount) {
+                    try {
+                        if (idx < stopRange.get()) {
+                            int rangeIdx = idx;
+
+                            RangeResult res = scanRange(snapshot, firstRecord, ranges.get(idx), bytePattern, matcher,
+                                    predicateChecker, () -> stopRange.get() < rangeIdx);
+
+                            results[idx] = res;
+
+                            if (res != null && res.stopRecord != null)
+                                stopRange.accumulateAndGet(idx, Math::min);
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                        stopRange.set(-1);
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            } finally {
+                Utils.closeQuietly(predicateChecker);
+            }
+        };
+
+        List<Future<?>> helpers = new ArrayList<>();
+
+        boolean success = false;
+
+        try {
+            for (int i = 1; i < Math.min(parallelism, rangeCount); i++) {
+                helpers.add(executor.submit(worker));
+            }
+
+            worker.run();
+            finished.await();
+
+            success = true;
+        } finally {
+            if (!success)
+                stopRange.set(-1);
+
+            for (Future<?> helper : helpers) {
+                helper.cancel(false);
+            }
+        }
+
+        Throwable e = error.get();
+        if (e != null) {
+            if (e instanceof Exception)
+                throw (Exception) e;
+            throw (Error) e;
+        }
+
+        int lastRange = Math.min(stopRange.get(), rangeCount - 1);
+
+        return Arrays.asList(results).subList(0, lastRange + 1);
+    }
+
+    /**
+     * Finds the first record in the search order that stops the search: a record matching the pattern or a record
+     * beyond the time limit. If the byte pattern is not specified, the last filtered records preceding the stop record
+     * are collected.
+     *
+     * @return the result of the range or {@code null} if the scanning is cancelled.
+     */
+    @Nullable
+    private RangeResult scanRange(Log.LogSnapshot snapshot, LogRecord firstRecord, long[] range,
+                                  @Nullable BytePattern bytePattern, Predicate<String> matcher,
+                                  LvPredicateChecker predicateChecker, BooleanSupplier cancelled) throws IOException {
+        // The records of the range have start in [low, high)
+        long low = range[0];
+        long high = range[1];
+
+        boolean startsAtFirstRecord = backward && high == firstRecord.getStart() + 1;
+
+        RangeResult res = new RangeResult();
+
+        if (bytePattern != null) {
+            long position = backward ? (startsAtFirstRecord ? firstRecord.getEnd() : high) : low;
+
+            while (true) {
+                if (cancelled.getAsBoolean())
+                    return null;
+
+                long candidate = snapshot.findCandidate(position, backward, backward ? low : Math.min(high, snapshot.getSize()),
+                        bytePattern);
+                if (candidate < 0)
+                    return res;
+
+                LogRecord record = loadFirstRecord(snapshot, (s, predicate) -> s.processRecords(candidate, false, predicate));
+                assert record != null;
+
+                if (record.getStart() < low || record.getStart() >= high)
+                    return res;
+
+                if (checkStopRecord(record, matcher, predicateChecker, res))
+                    return res;
+
+                position = backward ? Math.min(record.getStart(), candidate) : Math.max(record.getEnd(), candidate + 1);
+            }
+        }
+
+        res.tail = new ArrayDeque<>();
+
+        boolean[] isCancelled = new boolean[1];
+
+        Predicate<LogRecord> predicate = record -> {
+            if (record.getStart() < low || record.getStart() >= high)
+                return false;
+
+            if (cancelled.getAsBoolean()) {
+                isCancelled[0] = true;
+                return false;
+            }
+
+            return !checkStopRecord(record, matcher, predicateChecker, res);
+        };
+
+        if (backward) {
+            if (startsAtFirstRecord)
+                snapshot.processRecordsBack(firstRecord.getStart(), false, predicate);
+            else
+                snapshot.processRecordsBack(high, true, predicate);
+        } else {
+            snapshot.processRecords(low, false, predicate);
+        }
+
+        return isCancelled[0] ? null : res;
+    }
+
+    /**
+     * Checks whether the record stops the search, the filtered records are added to the tail of the range result
+     * if the tail is collected.
+     *
+     * @return {@code true} if the record stops the search.
+     */
+    private boolean checkStopRecord(LogRecord record, Predicate<String> matcher, LvPredicateChecker predicateChecker,
+                                    RangeResult res) {
+        if (!timeOk(record)) {
+            res.stopRecord = record;
+            return true;
+        }
+
+        Pair<LogRecord, Throwable> restRecord = predicateChecker.applyFilter(record, filter);
+        if (restRecord == null)
+            return false;
+
+        if (matcher.test(record.getMessage())) {
+            res.stopRecord = record;
+            res.found = restRecord;
+            return true;
+        }
+
+        if (res.tail != null) {
+            if (res.tail.size() == recordCount) {
+                res.tailOverflow = true;
+                res.tail.removeFirst();
+            }
+
+            res.tail.addLast(restRecord);
+        }
+
+        return false;
+    }
+
+    @Nullable
+    private static LogRecord loadFirstRecord(Snapshot snapshot, RecordProcessor processor) throws IOException {
+        LogRecord[] res = new LogRecord[1];
+
+        processor.process(snapshot, record -> {
+            res[0] = record;
+            return false;
+        });
+
+        return res[0];
+    }
+
     private boolean timeOk(LogRecord record) {
+        if (timeLimitFomFilter != null && record.hasTime()) {
+            if (backward ? record.getTime() < timeLimitFomFilter : record.getTime() > timeLimitFomFilter)
+                return false;
+        }
+
         long timeLimit = this.timeLimit;
         if (timeLimit <= 0)
             return true;
@@ -182,5 +688,35 @@ public class LocalFileRecordSearcher implements LogProcess {
         this.timeLimit = limit;
     }
 
+    private interface RecordProcessor {
+        void process(Snapshot snapshot, Predicate<LogRecord> predicate) throws IOException;
+    }
+
+    private static class RangeResult {
+        /**
+         * The record stopping the search, {@code null} if the range doesn't contain such record.
+         */
+        @Nullable
+        private LogRecord stopRecord;
+
+        /**
+         * The found record, {@code null} if the search is stopped by the time limit.
+         */
+        @Nullable
+        private Pair<LogRecord, Throwable> found;
+
+        /**
+         * The last filtered records preceding the stop record in the search order, {@code null} if the records are not
+         * collected.
+         */
+        @Nullable
+        private Deque<Pair<LogRecord, Throwable>> tail;
+
+        /**
+         * {@code true} if the range contains more filtered records than {@link #tail}.
+         */
+        private boolean tailOverflow;
+    }
+
 
 }
@@ -1,9 +1,11 @@
 package com.logviewer.web.session;
 
+import com.logviewer.data2.ArchivePreparationProgress;
 import com.logviewer.data2.FileAttributes;
 import com.logviewer.data2.LogView;
 import com.logviewer.utils.Destroyer;
 import com.logviewer.utils.LvTimer;
+import com.logviewer.web.dto.events.EventArchivePreparation;
 import com.logviewer.web.dto.events.EventLogChanged;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +14,7 @@ import org.springframework.lang.Nullable;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 public class LogChangeNotifier implements AutoCloseable {
@@ -26,15 +29,30 @@ public class LogChangeNotifier implements AutoCloseable {
 
     private final LvTimer timer;
 
+    @Nullable
+    private final Predicate<Map<String, FileAttributes>> tailFollower;
+
     private Map<String, FileAttributes> changedLogs;
 
     public LogChangeNotifier(LogView[] logs, SessionAdapter sender, LvTimer timer) {
-        watcherCloser = Stream.of(logs).map(log -> log.addChangeListener(attr -> logChanged(log, attr)))
+        this(logs, sender, timer, null);
+    }
+
+    /**
+     * @param tailFollower receives the changed logs before the notification is sent, returns {@code true} if it pushes
+     *                     the appended records to the UI itself, the notification is not sent in this case.
+     */
+    public LogChangeNotifier(LogView[] logs, SessionAdapter sender, LvTimer timer,
+                             @Nullable Predicate<Map<String, FileAttributes>> tailFollower) {
+        watcherCloser = Stream.of(logs).flatMap(log -> Stream.of(
+                        log.addChangeListener(attr -> logChanged(log, attr)),
+                        log.addPreparationListener(progress -> preparationProgress(log, progress))))
                 .filter(Objects::nonNull)
                 .toArray(Destroyer[]::new);
         this.sender = sender;
 
         this.timer = timer;
+        this.tailFollower = tailFollower;
     }
 
     private void logChanged(LogView log, @Nullable FileAttributes attr) {
@@ -58,6 +76,11 @@ public class LogChangeNotifier implements AutoCloseable {
                     LogChangeNotifier.this.changedLogs = null;
                 }
 
+                if (tailFollower != null && tailFollower.test(changedLogs)) {
+                    LOG.debug("Appended records are pushed to the session: {}", changedLogs.keySet());
+                    return;
+                }
+
                 LOG.debug("Sending notification about log update: {}", changedLogs.keySet());
 
                 sender.send(new EventLogChanged(changedLogs));
@@ -65,6 +88,11 @@ public class LogChangeNotifier implements AutoCloseable {
         }
     }
 
+    private void preparationProgress(LogView log, ArchivePreparationProgress progress) {
+        // The log sends the progress at a limited rate, no need to accumulate it
+        sender.send(new EventArchivePreparation(log.getId(), progress));
+    }
+
     @Override
     public void close() {
         if (watcherCloser != null) {
@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -71,6 +72,16 @@ public class LogSession {
     private LogView[] logs;
     private LogChangeNotifier logChangeNotifier;
 
+    /**
+     * The end of the last record sent to the UI if the UI shows the end of the log, {@code null} otherwise. When the logs
+     * grow, the appended records are loaded from this position and pushed to the UI without a request from the UI.
+     */
+    private Position tailPosition;
+    private Map<String, String> tailHashes;
+    private int tailRecordCount;
+    private LoadRecordTask tailTask;
+    private boolean tailChangedWhileLoading;
+
     private static volatile Config defaultConfig;
 
     @Value("${log-viewer.wait-for-data-timeout:100}")
@@ -111,7 +122,7 @@ public class LogSession {
             }
         }
 
-        logChangeNotifier = new LogChangeNotifier(logs, sender, logService.getTimer());
+        logChangeNotifier = new LogChangeNotifier(logs, sender, logService.getTimer(), this::onLogsChanged);
 
         Map<String, String> globalSavedFilters = new LinkedHashMap<>();
         for (LvFilterPanelStateProvider filterSetProvider : filterSetProviders) {
@@ -224,6 +235,8 @@ public class LogSession {
 
         stateVersion = version;
 
+        stopFollowingTail();
+
         for (SessionTask<?> execution : executions) {
             execution.cancel();
         }
@@ -254,6 +267,9 @@ public class LogSession {
             @Override
             protected void handle(LoadNextResponse res) {
                 sender.send(new EventScrollToEdgeResponse(res.getStatuses(), stateVersion, res, isScrollToBegin));
+
+                if (!isScrollToBegin)
+                    followTail(res, null, recordCount);
             }
         });
     }
@@ -271,6 +287,8 @@ public class LogSession {
             @Override
             protected void handle(LoadNextResponse res) {
                 sender.send(new EventResponseAfterFilterScrollDown(res.getStatuses(), stateVersion, res));
+
+                followTail(res, null, recordCount);
             }
         });
     }
@@ -406,6 +424,154 @@ public class LogSession {
             @Override
             protected void handle(LoadNextResponse res) {
                 sender.send(new EventNextDataLoaded(res.getStatuses(), stateVersion, res, start, backward));
+
+                if (!backward) {
+                    if (res.hasNextLine()) {
+                        stopFollowingTail();
+                    } else {
+                        followTail(res, start, recordCount);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Called by the UI when it drops the records at the bottom, the appended records are not needed anymore.
+     */
+    @Remote
+    public synchronized void stopFollowingTail(long stateVersion) {
+        if (stateVersion == this.stateVersion)
+            stopFollowingTail();
+    }
+
+    private void stopFollowingTail() {
+        assert Thread.holdsLock(this);
+
+        tailPosition = null;
+        tailHashes = null;
+        tailTask = null;
+        tailChangedWhileLoading = false;
+    }
+
+    /**
+     * Remembers the end of the loaded records, the UI has received the last records of the logs.
+     *
+     * @param start the start of the load, used if no records have been loaded.
+     */
+    private void followTail(@NonNull LoadNextResponse res, @Nullable Position start, int recordCount) {
+        assert Thread.holdsLock(this);
+
+        Map<String, String> hashes = new HashMap<>();
+
+        for (Map.Entry<String, Status> entry : res.getStatuses().entrySet()) {
+            if (entry.getValue().getError() == null)
+                hashes.put(entry.getKey(), entry.getValue().getHash());
+        }
+
+        if (hashes.isEmpty()) {
+            stopFollowingTail();
+            return;
+        }
+
+        List<Pair<LogRecord, Throwable>> data = res.getData();
+
+        Position position;
+        if (!data.isEmpty()) {
+            position = new Position(data.get(data.size() - 1).getFirst(), false);
+        } else if (start != null) {
+            position = start;
+        } else {
+            position = new Position(logs.length == 1 ? logs[0].getId() : "", 0, 0);
+        }
+
+        tailPosition = position;
+        tailHashes = hashes;
+        tailRecordCount = recordCount;
+    }
+
+    /**
+     * Handles the notification about log changes.
+     *
+     * @return {@code true} if the appended records will be pushed to the UI, so the UI doesn't need to request them.
+     */
+    private synchronized boolean onLogsChanged(Map<String, FileAttributes> changedLogs) {
+        if (tailPosition == null)
+            return false;
+
+        if (tailTask != null) {
+            tailChangedWhileLoading = true;
+        } else {
+            loadTail();
+        }
+
+        return true;
+    }
+
+    private void loadTail() {
+        assert Thread.holdsLock(this);
+        assert tailPosition != null && tailTask == null;
+
+        Position start = tailPosition;
+
+        // The load starts after the end of the last sent record. If the last record has been extended by appended lines,
+        // the loader parses it again from its start and the UI replaces the record.
+        LoadRecordTask task = new LoadRecordTask(logs, tailRecordCount, filter, start, false, tailHashes);
+
+        tailTask = task;
+        tailChangedWhileLoading = false;
+
+        execute(task).whenComplete(new LogExecutionHandler<LoadNextResponse>() {
+            @Override
+            public void accept(LoadNextResponse res, Throwable e) {
+                synchronized (LogSession.this) {
+                    if (e != null && tailTask == task)
+                        stopFollowingTail();
+
+                    super.accept(res, e);
+                }
+            }
+
+            @Override
+            protected void handle(LoadNextResponse res) {
+                if (tailTask != task)
+                    return; // Following has been stopped
+
+                tailTask = null;
+
+                if (!start.equals(tailPosition)) {
+                    // The UI has loaded the records itself, the result may be out of date
+                    if (tailChangedWhileLoading)
+                        loadTail();
+
+                    return;
+                }
+
+                sender.send(new EventNextDataLoaded(res.getStatuses(), stateVersion, res, start, false));
+
+                if (res.hasNextLine()) {
+                    // More records than the UI needs, the UI loads the rest itself if it needs them
+                    stopFollowingTail();
+                    return;
+                }
+
+                Set<String> logIds = tailHashes.keySet();
+
+                // The hashes of small logs change when data is appended, the loader has checked that the new content
+                // is compatible with the old hashes
+                followTail(res, start, tailRecordCount);
+
+                if (tailPosition == null)
+                    return;
+
+                if (!logIds.equals(tailHashes.keySet())) {
+                    // Some logs are broken or have been replaced, the UI reloads the data
+                    stopFollowingTail();
+                    return;
+                }
+
+                if (tailChangedWhileLoading)
+                    loadTail();
             }
         });
     }
@@ -468,7 +634,7 @@ public class LogSession {
                 }
 
                 SendEventTask sendEventTask = new SendEventTask(searchResponse);
-                lvTimer.schedule(sendEventTask, waitForDataTimeoutMS);
+                sendEventTask.schedule(waitForDataTimeoutMS);
 
                 LoadRecordTask loadRecordTask = new LoadRecordTask(logs, recordCount, filter,
                         new Position(found, backward), backward, hashes);
@@ -641,16 +807,21 @@ public class LogSession {
         return res;
     }
 
-    private class SendEventTask extends TimerTask {
+    private class SendEventTask implements Runnable {
 
         private final EventSearchResponse eventSearchResponse;
         private boolean isSent;
         private boolean isCanceled;
+        private ScheduledFuture<?> future;
 
         public SendEventTask(EventSearchResponse eventSearchResponse) {
             this.eventSearchResponse = eventSearchResponse;
         }
 
+        public void schedule(long delay) {
+            future = lvTimer.schedule(this, delay);
+        }
+
         @Override
         public void run() {
             synchronized (LogSession.this) {
@@ -667,11 +838,11 @@ public class LogSession {
             }
         }
 
-        @Override
-        public boolean cancel() {
-            boolean res = super.cancel();
+        public void cancel() {
             isCanceled = true;
-            return res;
+
+            if (future != null)
+                future.cancel(false);
         }
     }
 }
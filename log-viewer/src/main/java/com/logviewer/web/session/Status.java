@@ -34,6 +34,12 @@ public class Status implements Externalizable {
         this.error = error;
     }
 
+    public Status(String hash, long size, long lastModification) {
+        this.hash = hash;
+        this.size = size;
+        this.lastModification = lastModification;
+    }
+
     public Throwable getError() {
         return error;
     }
@@ -0,0 +1,104 @@
+package com.logviewer.web.session;
+
+import com.logviewer.data2.LogRecord;
+import com.logviewer.data2.Snapshot;
+import com.logviewer.utils.TimeRanges;
+import org.springframework.lang.NonNull;
+
+import java.io.IOException;
+import java.util.function.Predicate;
+
+/**
+ * Passes to the consumer the records of the snapshot skipping the gaps between the time ranges of the filter. When
+ * the scan reaches a record in a gap, the scan continues from the next range found by the log index instead of reading
+ * the records of the gap. The records after the last range are passed to the consumer, the consumer decides when
+ * the scan stops.
+ */
+class TimeRangeScanner implements Predicate<LogRecord> {
+
+    private final Snapshot snapshot;
+    private final TimeRanges ranges;
+    private final boolean backward;
+    private final Predicate<LogRecord> consumer;
+
+    /**
+     * The index of the range the scan has jumped to, the scan jumps only in the scan direction, so the number of
+     * jumps is limited even if the timestamps of the log are not ordered.
+     */
+    private int rangeIdx;
+
+    private boolean jumpRequested;
+
+    private boolean hasLastPosition;
+    private long lastPosition;
+
+    TimeRangeScanner(@NonNull Snapshot snapshot, @NonNull TimeRanges ranges, boolean backward,
+                     @NonNull Predicate<LogRecord> consumer) {
+        this.snapshot = snapshot;
+        this.ranges = ranges;
+        this.backward = backward;
+        this.consumer = consumer;
+
+        rangeIdx = backward ? ranges.size() : -1;
+    }
+
+    /**
+     * @param firstScan starts the scan with the specified predicate, returns the result of
+     * {@link Snapshot#processRecords(long, boolean, Predicate)}-like methods.
+     * @return {@code true} if the scan has reached the end of the log, {@code false} if the consumer has stopped the scan.
+     */
+    boolean scan(@NonNull Scan firstScan) throws IOException {
+        boolean res = firstScan.run(this);
+
+        while (jumpRequested) {
+            jumpRequested = false;
+
+            if (backward) {
+                res = snapshot.processFromTimeBack(ranges.getTo(rangeIdx), this);
+            } else {
+                res = snapshot.processFromTime(ranges.getFrom(rangeIdx), this);
+            }
+        }
+
+        return res;
+    }
+
+    @Override
+    public boolean test(LogRecord record) {
+        if (hasLastPosition && (backward ? record.getStart() >= lastPosition : record.getStart() <= lastPosition)) {
+            // The record has been processed before the jump
+            return true;
+        }
+
+        hasLastPosition = true;
+        lastPosition = record.getStart();
+
+        if (record.hasTime()) {
+            int idx = ranges.indexOf(record.getTime());
+
+            if (idx < 0) {
+                int nextRange = backward ? -idx - 2 : -idx - 1;
+
+                if (nextRange >= 0 && nextRange < ranges.size() && (backward ? nextRange < rangeIdx : nextRange > rangeIdx)) {
+                    rangeIdx = nextRange;
+                    jumpRequested = true;
+                    return false;
+                }
+            }
+        }
+
+        return consumer.test(record);
+    }
+
+    static boolean scan(@NonNull Snapshot snapshot, @NonNull TimeRanges ranges, boolean backward,
+                        @NonNull Predicate<LogRecord> consumer, @NonNull Scan firstScan) throws IOException {
+        if (ranges.size() < 2)
+            return firstScan.run(consumer);
+
+        return new TimeRangeScanner(snapshot, ranges, backward, consumer).scan(firstScan);
+    }
+
+    interface Scan {
+        boolean run(Predicate<LogRecord> predicate) throws IOException;
+    }
+}
@@ -5,6 +5,7 @@ import com.logviewer.data2.LogView;
 import com.logviewer.data2.Position;
 import com.logviewer.data2.RecordList;
 import com.logviewer.filters.RecordPredicate;
+import com.logviewer.utils.MergeUtils;
 import com.logviewer.utils.Pair;
 import com.logviewer.web.session.LogDataListener;
 import com.logviewer.web.session.LogProcess;
@@ -145,12 +146,20 @@ public class LoadRecordTask extends SessionTask<LoadNextResponse> {
                 LogRecord oldLastRecord = data.size() == recordCount ? data.get(recordCount - 1).getFirst() : null;
 
                 if (loaders.size() > 1) {
+                    List<Pair<LogRecord, Throwable>> timedRecords = new ArrayList<>(newRecords.size());
+
                     for (Pair<LogRecord, Throwable> newRecord : newRecords) {
                         if (newRecord.getFirst().hasTime()) // Ignore records without time on log merging
-                            data.add(newRecord);
+                            timedRecords.add(newRecord);
                     }
 
-                    data.sort(comparator);
+                    if (data.size() + timedRecords.size() > recordCount)
+                        eof = false;
+
+                    // Both lists are sorted already, only the first "recordCount" records of the merged sequence are needed
+                    List<Pair<LogRecord, Throwable>> merged = MergeUtils.mergeSorted(Arrays.asList(data, timedRecords), comparator, recordCount);
+                    data.clear();
+                    data.addAll(merged);
                 } else {
                     data.addAll(newRecords);
                 }
@@ -1,8 +1,12 @@
 package com.logviewer.web.session.tasks;
 
+import com.logviewer.data2.BytePattern;
 import com.logviewer.utils.Utils;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 
 import java.io.Serializable;
+import java.nio.charset.Charset;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
@@ -33,6 +37,17 @@ public class SearchPattern implements Serializable {
         return str -> Utils.containsIgnoreCase(str, s);
     }
 
+    /**
+     * @return a byte-level prefilter for the pattern or {@code null} if the pattern cannot be searched as bytes.
+     */
+    @Nullable
+    public BytePattern bytePattern(@NonNull Charset charset) {
+        if (regex)
+            return null;
+
+        return BytePattern.create(s, matchCase, charset);
+    }
+
     @Override
     public String toString() {
         if (!matchCase && !regex)
@@ -5,6 +5,7 @@ import com.logviewer.data2.LogView;
 import com.logviewer.data2.Position;
 import com.logviewer.data2.RecordList;
 import com.logviewer.filters.RecordPredicate;
+import com.logviewer.utils.MergeUtils;
 import com.logviewer.utils.Pair;
 import com.logviewer.web.session.*;
 import org.springframework.lang.NonNull;
@@ -104,13 +105,15 @@ public class SearchTask extends SessionTask<SearchTask.SearchResponse> {
 
         Pair<LogRecord, Throwable> o = firstOccurrence.get();
 
-        List<Pair<LogRecord, Throwable>> records = resultPerLog.values().stream()
+        List<List<Pair<LogRecord, Throwable>>> recordsPerLog = resultPerLog.values().stream()
                 .filter(r -> r.getStatus().getError() == null)
-                .flatMap(r -> r.getData().stream())
-                .filter(p -> recordComparator.compare(o, p) >= 0)
-                .sorted(recordComparator)
+                .map(r -> r.getData().stream()
+                        .filter(p -> recordComparator.compare(o, p) >= 0)
+                        .collect(Collectors.toList()))
                 .collect(Collectors.toList());
 
+        List<Pair<LogRecord, Throwable>> records = MergeUtils.mergeSorted(recordsPerLog, recordComparator, Integer.MAX_VALUE);
+
         assert records.get(records.size() - 1) == o;
 
         if (records.size() > recordCount) {
@@ -162,10 +165,13 @@ public class SearchTask extends SessionTask<SearchTask.SearchResponse> {
                         if (finished)
                             return;
 
-                        records.addAll(data);
+                        // The loader reads the records in the opposite direction
+                        List<Pair<LogRecord, Throwable>> loaded = new ArrayList<>(data);
+                        Collections.reverse(loaded);
 
-                        if (logs.length > 1)
-                            records.sort(recordComparator);
+                        List<Pair<LogRecord, Throwable>> merged = MergeUtils.mergeSorted(Arrays.asList(records, loaded), recordComparator, Integer.MAX_VALUE);
+                        records.clear();
+                        records.addAll(merged);
 
                         if (records.size() > recordCount) {
                             records.subList(0, records.size() - recordCount).clear();
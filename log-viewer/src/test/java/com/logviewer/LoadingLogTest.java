@@ -1,5 +1,6 @@
 package com.logviewer;
 
+import com.logviewer.data2.ArchivePreparationProgress;
 import com.logviewer.data2.DirectoryNotVisibleException;
 import com.logviewer.data2.Log;
 import com.logviewer.data2.LogRecord;
@@ -7,11 +8,14 @@ import com.logviewer.data2.Snapshot;
 import com.logviewer.formats.SimpleLogFormat;
 import com.logviewer.logLibs.logback.LogbackLogFormat;
 import com.logviewer.services.LvFileAccessManagerImpl;
+import com.logviewer.utils.Destroyer;
 import com.logviewer.utils.Utils;
 import org.junit.Test;
 import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -20,7 +24,11 @@ import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -84,6 +92,38 @@ public class LoadingLogTest extends AbstractLogTest {
 
     }
 
+    @Test
+    public void gzipReadWithoutUnpacking() throws IOException {
+        clearTempDirectory();
+
+        TestUtils.withSystemProp(Log.UNPACK_GZ_ARCHIVES, "true", () -> {
+            LogbackLogFormat format = new LogbackLogFormat("%d{ddMMyy HH:mm:ss} %m");
+
+            String logPath = getTestLog("gz/search.log.gz");
+
+            byte[] unpacked;
+            try (GZIPInputStream in = new GZIPInputStream(Files.newInputStream(Paths.get(logPath)))) {
+                unpacked = StreamUtils.copyToByteArray(in);
+            }
+
+            Log log = getLogService().openLog(logPath, format);
+
+            try (Snapshot snapshot = log.createSnapshot()) {
+                assertEquals(unpacked.length, snapshot.getSize());
+
+                List<LogRecord> list = new ArrayList<>();
+                snapshot.processRecordsBack(snapshot.getSize(), false, list::add);
+
+                assertTrue(list.size() > 0);
+            }
+
+            try (Stream<Path> files = Files.list(Utils.getTempDir())) {
+                assertEquals(Collections.emptyList(), files.filter(f -> f.getFileName().toString().startsWith("unpacked-"))
+                        .collect(Collectors.toList()));
+            }
+        });
+    }
+
     @Test
     public void unpackGZipCheckAccess() throws IOException {
         clearTempDirectory();
@@ -204,6 +244,102 @@ public class LoadingLogTest extends AbstractLogTest {
         }
     }
 
+    @Test
+    public void gzipPreparedInBackground() throws Exception {
+        clearTempDirectory();
+
+        Path archive = Utils.getTempDir().resolve("background.log.gz");
+        byte[] data = generateLog(300_000);
+
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(archive))) {
+            out.write(data);
+        }
+
+        checkBackgroundPreparation(archive, data.length);
+    }
+
+    @Test
+    public void zipPreparedInBackground() throws Exception {
+        clearTempDirectory();
+
+        Path archive = Utils.getTempDir().resolve("background.zip");
+        byte[] data = generateLog(300_000);
+
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            out.putNextEntry(new ZipEntry("background.log"));
+            out.write(data);
+        }
+
+        checkBackgroundPreparation(archive, data.length);
+    }
+
+    private void checkBackgroundPreparation(Path archive, long unpackedSize) throws Exception {
+        TestUtils.withSystemProp(Log.UNPACK_GZ_ARCHIVES, "true", () -> {
+            TestUtils.withSystemProp("log-viewer.parser.archive-preparation.wait", "0", () -> {
+                TestUtils.withSystemProp("log-viewer.parser.gzip-index.span", "65536", () -> {
+                    Log log = getLogService().openLog(archive, new LogbackLogFormat("%d{ddMMyy HH:mm:ss} %m"));
+
+                    List<ArchivePreparationProgress> progressList = new CopyOnWriteArrayList<>();
+                    Destroyer listener = log.addPreparationListener(progressList::add);
+
+                    try {
+                        // The snapshot doesn't wait for the preparation, it contains the prepared part only
+                        try (Snapshot snapshot = log.createSnapshot()) {
+                            assertNull(snapshot.getError());
+                            assertTrue(snapshot.getSize() < unpackedSize);
+
+                            List<LogRecord> list = new ArrayList<>();
+                            snapshot.processRecords(0, list::add);
+                            assertTrue(list.stream().allMatch(LogRecord::hasTime));
+                        }
+
+                        long deadline = System.currentTimeMillis() + 30_000;
+                        long size;
+
+                        do {
+                            assertTrue(System.currentTimeMillis() < deadline);
+
+                            Thread.sleep(20);
+
+                            try (Snapshot snapshot = log.createSnapshot()) {
+                                assertNull(snapshot.getError());
+                                size = snapshot.getSize();
+
+                                List<LogRecord> list = new ArrayList<>();
+                                snapshot.processRecordsBack(size, false, r -> list.add(r) && list.size() < 10);
+                                assertTrue(size == 0 || list.size() == 10);
+                            }
+                        } while (size < unpackedSize);
+
+                        assertEquals(unpackedSize, size);
+
+                        while (progressList.isEmpty() || !progressList.get(progressList.size() - 1).isFinished()) {
+                            assertTrue(System.currentTimeMillis() < deadline);
+                            Thread.sleep(20);
+                        }
+
+                        ArchivePreparationProgress last = progressList.get(progressList.size() - 1);
+                        assertEquals(unpackedSize, last.getPreparedSize());
+                        assertEquals(last.getTotal(), last.getProcessed());
+                    } finally {
+                        listener.close();
+                    }
+                });
+            });
+        });
+    }
+
+    private static byte[] generateLog(int lineCount) {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < lineCount; i++) {
+            sb.append(String.format("150101 %02d:%02d:%02d record %d %s%n", i / 3600 % 24, i / 60 % 60, i % 60, i,
+                    Integer.toHexString(i * 31)));
+        }
+
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
     private static void clearTempDirectory() throws IOException {
         for (Path tmpFile : Files.list(Utils.getTempDir()).collect(Collectors.toList())) {
             FileSystemUtils.deleteRecursively(tmpFile);
@@ -16,7 +16,9 @@ import org.springframework.context.ApplicationContext;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
@@ -264,6 +266,38 @@ public class LogSessionTest extends LogSessionTestBase {
         adapter.check(EventSearchResponse.class, stateVersion(2), reqId(2), searchResult(true, "150101 10:00:06 a", "150101 10:00:06 ccc c"));
     }
 
+    @Test
+    public void testTailFollowing() throws InterruptedException, IOException {
+        Path file = createTempFile();
+        Files.write(file, "150101 10:00:01 a\n150101 10:00:02 b".getBytes());
+
+        ApplicationContext ctx = createContext(MultifileConfiguration.class);
+        LogSession session = LogSession.fromContext(adapter, ctx);
+
+        session.init(LogList.of(file.toString()));
+        session.scrollToEdge(10, 2, null, false);
+
+        adapter.skipAndCheck(EventScrollToEdgeResponse.class, noError(), records(false, "150101 10:00:01 a", "150101 10:00:02 b"));
+
+        // The appended records are pushed without a request from the UI
+        Files.write(file, "\n150101 10:00:03 c".getBytes(), StandardOpenOption.APPEND);
+
+        adapter.skipAndCheck(EventNextDataLoaded.class, noError(), stateVersion(2), records(false, "150101 10:00:03 c"));
+
+        // The last record is extended by a new line
+        Files.write(file, "\nc2\n150101 10:00:04 d".getBytes(), StandardOpenOption.APPEND);
+
+        adapter.skipAndCheck(EventNextDataLoaded.class, noError(), stateVersion(2),
+                records(false, "150101 10:00:03 c\nc2", "150101 10:00:04 d"));
+
+        // The UI doesn't show the end of the log, it is notified about the change only
+        session.stopFollowingTail(2);
+
+        Files.write(file, "\n150101 10:00:05 e".getBytes(), StandardOpenOption.APPEND);
+
+        adapter.waitForType(EventLogChanged.class);
+    }
+
     @Test
     public void testCanceling() throws InterruptedException {
         ApplicationContext ctx = createContext(MultifileConfiguration.class);
@@ -130,6 +130,44 @@ public class TimeRangeFromFilterTest extends AbstractLogTest {
                 TestPredicate.getPassed().stream().map(r -> r.getFieldText("msg")).collect(Collectors.toList()));
     }
 
+    @Test
+    public void testOrOfRanges() throws InterruptedException {
+        Log log = getLog();
+
+        RecordPredicate filter = CompositeRecordPredicate.and(
+                new CompositeRecordPredicate(false,
+                        CompositeRecordPredicate.and(new DatePredicate(date("150101 10:00:02"), true), new DatePredicate(date("150101 10:00:03"), false)),
+                        CompositeRecordPredicate.and(new DatePredicate(date("150101 10:01:07"), true), new DatePredicate(date("150101 10:01:08"), false))),
+                new TestPredicate());
+
+        List<String> expected = Arrays.asList("222 1", "222 2", "222 3", "333 1", "333 2", "333 3",
+                "777 1b", "777 2b", "777 3b", "888 1b", "888 2b", "888 3b");
+
+        ResultListener res = process(r -> log.loadRecords(filter, 100, new Position(log.getId(), 0, 0), false, null, 1000000, r));
+
+        assertEquals(expected, res.records.stream().map(r -> r.getFieldText("msg")).collect(Collectors.toList()));
+        assert res.eof;
+
+        // The records between the ranges are skipped without evaluating the filter
+        assertEquals(expected, TestPredicate.getPassed().stream().map(r -> r.getFieldText("msg")).collect(Collectors.toList()));
+
+        ResultListener resBackward = process(r -> log.loadRecords(filter, 100, null, true, null, 1000000, r));
+
+        assertEquals(res, resBackward);
+        assertEquals(expected.size(), TestPredicate.getPassed().size());
+
+        SearchConsumer searchRes = new SearchConsumer();
+        TestPredicate.clear();
+        LogProcess process = log.createRecordSearcher(new Position(log.getId(), 0, 0), false, filter, null, 1000,
+                new SearchPattern("888 2b", false, true), searchRes);
+        process.start();
+        searchRes.resultWaiter.await();
+
+        assert searchRes.res.isFound();
+        assertEquals(expected.subList(0, expected.size() - 1),
+                TestPredicate.getPassed().stream().map(r -> r.getFieldText("msg")).collect(Collectors.toList()));
+    }
+
     private ResultListener process(Function<ResultListener, LogProcess> processFactory) throws InterruptedException {
         ResultListener res = new ResultListener();
         TestPredicate.clear();
@@ -13,6 +13,8 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import static org.junit.Assert.assertEquals;
 
@@ -164,6 +166,101 @@ public class BufferedFileTest extends AbstractLogTest {
         checkLine(line, 2, 2, "");
     }
 
+    @Test
+    public void testMappedFile() throws IOException {
+        Path tmpFile = createTempFile();
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < ParserConfig.WINDOW_SIZE * 3; i++) {
+            sb.append("line-").append(i).append('\n');
+        }
+
+        Files.write(tmpFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        MappedLogFile mappedFile = new MappedLogFile(tmpFile, Files.readAttributes(tmpFile, BasicFileAttributes.class).fileKey());
+
+        try {
+            BufferedFile mapped = new BufferedFile(mappedFile, Files.size(tmpFile));
+            BufferedFile plain = bufferedFile(tmpFile);
+
+            BufferedFile.Line mappedLine = new BufferedFile.Line();
+            BufferedFile.Line plainLine = new BufferedFile.Line();
+
+            mapped.loadLine(mappedLine, 0);
+            plain.loadLine(plainLine, 0);
+
+            do {
+                checkLine(mappedLine, plainLine.getStart(), plainLine.getEnd(),
+                        new String(plainLine.getBuf(), plainLine.getBufOffset(), plainLine.getDataLength()));
+            } while (plain.loadNextLine(plainLine) & mapped.loadNextLine(mappedLine));
+
+            do {
+                checkLine(mappedLine, plainLine.getStart(), plainLine.getEnd(),
+                        new String(plainLine.getBuf(), plainLine.getBufOffset(), plainLine.getDataLength()));
+            } while (plain.loadPrevLine(plainLine) & mapped.loadPrevLine(mappedLine));
+
+            // The file grows, the mapping must be extended
+            Files.write(tmpFile, "tail\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+            mapped = new BufferedFile(mappedFile, Files.size(tmpFile));
+            mapped.loadLine(mappedLine, Files.size(tmpFile) - 1);
+            checkLine(mappedLine, sb.length(), sb.length() + 4, "tail");
+        } finally {
+            mappedFile.release();
+        }
+    }
+
+    @Test
+    public void testBlockCache() throws IOException {
+        Path tmpFile = createTempFile();
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < ParserConfig.WINDOW_SIZE + 100; i++) {
+            sb.append("line-").append(i).append('\n');
+        }
+
+        Files.write(tmpFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        BlockCache cache = new BlockCache(1024 * 1024, false);
+
+        try (SeekableByteChannel channel = Files.newByteChannel(tmpFile)) {
+            BufferedFile file = new BufferedFile(cache.wrap(new BufferedFile.ChannelSource(channel), "log", "hash", channel.size()),
+                    channel.size());
+
+            BufferedFile.Line line = new BufferedFile.Line();
+            file.loadLine(line, 0);
+            checkLine(line, 0, 6, "line-0");
+
+            assertEquals(0, cache.getStats().hitCount());
+            assertEquals(1, cache.getCachedBlockCount());
+
+            file = new BufferedFile(cache.wrap(new BufferedFile.ChannelSource(channel), "log", "hash", channel.size()),
+                    channel.size());
+            file.loadLine(line, 0);
+            checkLine(line, 0, 6, "line-0");
+
+            assertEquals(1, cache.getStats().hitCount());
+
+            file.loadLine(line, channel.size() - 1);
+            assertEquals(sb.length() - 1, line.getEnd());
+        }
+
+        // The file grows, the last page must be reloaded
+        Files.write(tmpFile, "tail\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (SeekableByteChannel channel = Files.newByteChannel(tmpFile)) {
+            BufferedFile file = new BufferedFile(cache.wrap(new BufferedFile.ChannelSource(channel), "log", "hash", channel.size()),
+                    channel.size());
+
+            BufferedFile.Line line = new BufferedFile.Line();
+            file.loadLine(line, channel.size() - 1);
+            checkLine(line, sb.length(), sb.length() + 4, "tail");
+
+            file.loadLine(line, 0);
+            checkLine(line, 0, 6, "line-0");
+        }
+    }
+
     private void checkLine(BufferedFile.Line line, long start, long end, String data) {
         assertEquals(start, line.getStart());
         assertEquals(end, line.getEnd());
@@ -0,0 +1,153 @@
+package com.logviewer.data2;
+
+import com.logviewer.AbstractLogTest;
+import com.logviewer.utils.Pair;
+import com.logviewer.web.session.SearchResult;
+import com.logviewer.web.session.tasks.SearchPattern;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.logviewer.TestUtils.MULTIFILE_LOG_FORMAT;
+import static org.junit.Assert.*;
+
+public class BytePatternTest extends AbstractLogTest {
+
+    private static int indexOf(BytePattern pattern, String s) {
+        byte[] data = s.getBytes(StandardCharsets.UTF_8);
+        return pattern.indexOf(data, 0, data.length);
+    }
+
+    private static int lastIndexOf(BytePattern pattern, String s) {
+        byte[] data = s.getBytes(StandardCharsets.UTF_8);
+        return pattern.lastIndexOf(data, 0, data.length);
+    }
+
+    @Test
+    public void matchCase() {
+        BytePattern pattern = BytePattern.create("abc", true, StandardCharsets.UTF_8);
+
+        assertEquals(3, indexOf(pattern, "___abc__abc"));
+        assertEquals(8, lastIndexOf(pattern, "___abc__abc"));
+        assertEquals(-1, indexOf(pattern, "___aBc__ab"));
+        assertEquals(-1, lastIndexOf(pattern, "___aBc__ab"));
+
+        // The escape character is a candidate because the color codes are removed from the messages
+        assertEquals(2, indexOf(pattern, "__\u001B[0m_abc"));
+        assertEquals(7, lastIndexOf(pattern, "__\u001B[0m_abc"));
+
+        pattern = BytePattern.create("фыв", true, StandardCharsets.UTF_8);
+        assertEquals(3, indexOf(pattern, "ab фыв"));
+        assertEquals(-1, indexOf(pattern, "ab ФЫВ"));
+    }
+
+    @Test
+    public void ignoreCase() {
+        BytePattern pattern = BytePattern.create("kEy", false, StandardCharsets.UTF_8);
+
+        assertEquals(2, indexOf(pattern, "__KeY"));
+        assertEquals(-1, indexOf(pattern, "__Ke_Y"));
+
+        // KELVIN SIGN is equal to 'k' ignoring case
+        assertEquals(2, indexOf(pattern, "__\u212Aey"));
+
+        // Only ASCII part of the text is searched
+        pattern = BytePattern.create("фыв key", false, StandardCharsets.UTF_8);
+        assertEquals(9, indexOf(pattern, "ФЫВ -- KEY"));
+    }
+
+    @Test
+    public void unsupportedPatterns() {
+        assertNull(BytePattern.create("ab", true, StandardCharsets.UTF_8));
+        assertNull(BytePattern.create("фыв", false, StandardCharsets.UTF_8));
+        assertNull(BytePattern.create("abc\ndef", true, StandardCharsets.UTF_8));
+        assertNull(BytePattern.create("abc", true, StandardCharsets.UTF_16));
+
+        assertNotNull(BytePattern.create("abc", true, StandardCharsets.ISO_8859_1));
+        assertNotNull(BytePattern.create("abc", false, Charset.forName("windows-1251")));
+
+        assertNull(new SearchPattern("abc", true, true).bytePattern(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void searchSameAsPlainSearch() throws IOException, InterruptedException, ExecutionException {
+        Random rnd = new Random(23);
+
+        String[] words = {"foo", "bar", "Foo", "\u001B[31mfo\u001B[0mo", "baz", "qux"};
+
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder sb = new StringBuilder(String.format("150101 10:%02d:%02d", i / 60 % 60, i % 60));
+
+            for (int j = rnd.nextInt(4); j >= 0; j--) {
+                sb.append(' ').append(words[rnd.nextInt(words.length)]);
+            }
+
+            lines.add(sb.toString());
+
+            if (rnd.nextInt(10) == 0)
+                lines.add("    at " + words[rnd.nextInt(words.length)]);
+        }
+
+        Path file = createTempFile();
+        Files.write(file, lines);
+
+        Log log = getLogService().openLog(file.toString(), MULTIFILE_LOG_FORMAT);
+
+        List<LogRecord> records = new ArrayList<>();
+        try (Snapshot snapshot = log.createSnapshot()) {
+            snapshot.processRecords(0, records::add);
+        }
+
+        List<Long> positions = new ArrayList<>();
+        positions.add(0L);
+        positions.add(Files.size(file));
+        for (int i = 0; i < 10; i++) {
+            LogRecord record = records.get(rnd.nextInt(records.size()));
+            positions.add(record.getStart());
+            positions.add(record.getEnd());
+        }
+
+        for (String text : new String[]{"foo", "bar baz", "qux qux qux", "zzz"}) {
+            for (long position : positions) {
+                for (boolean backward : new boolean[]{false, true}) {
+                    for (int recordCount : new int[]{1, 3, 50}) {
+                        Position start = new Position(log.getId(), 0, position);
+
+                        String expected = search(log, start, backward, recordCount, new SearchPattern(Pattern.quote(text), true, true));
+                        String actual = search(log, start, backward, recordCount, new SearchPattern(text, true, false));
+
+                        assertEquals(text + ", " + position + ", " + backward + ", " + recordCount, expected, actual);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String search(Log log, Position start, boolean backward, int recordCount, SearchPattern pattern)
+            throws InterruptedException, ExecutionException {
+        CompletableFuture<SearchResult> future = new CompletableFuture<>();
+
+        log.createRecordSearcher(start, backward, null, null, recordCount, pattern, future::complete).start();
+
+        SearchResult res = future.get();
+        if (res.getStatus().getError() != null)
+            throw new RuntimeException(res.getStatus().getError());
+
+        return res.isFound() + " " + res.isHasSkippedLine() + " " + res.getData().stream()
+                .map(Pair::getFirst)
+                .map(r -> r.getStart() + "-" + r.getEnd())
+                .collect(Collectors.joining(","));
+    }
+}
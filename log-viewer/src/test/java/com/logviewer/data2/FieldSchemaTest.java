@@ -0,0 +1,99 @@
+package com.logviewer.data2;
+
+import com.logviewer.formats.RegexLogFormat;
+import com.logviewer.formats.RegexLogFormat.RegexField;
+import com.logviewer.TestUtils;
+import org.junit.Test;
+
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FieldSchemaTest {
+
+    @Test
+    public void interning() {
+        FieldSchema schema = FieldSchema.of("date", "level", "msg");
+
+        assertSame(schema, FieldSchema.of(Arrays.asList("date", "level", "msg")));
+        assertNotSame(schema, FieldSchema.of("level", "date", "msg"));
+
+        Map<String, Integer> map = new LinkedHashMap<>();
+        map.put("level", 1);
+        map.put("msg", 2);
+        map.put("date", 0);
+        assertSame(schema, FieldSchema.of(map));
+        assertEquals(map, schema);
+
+        assertEquals(1, schema.indexOf("level"));
+        assertEquals(-1, schema.indexOf("thread"));
+        assertEquals("msg", schema.getName(2));
+        assertEquals(Arrays.asList("date", "level", "msg"), Arrays.asList(schema.keySet().toArray()));
+
+        assertSame(FieldSchema.EMPTY, FieldSchema.of());
+
+        try {
+            FieldSchema.of("a", "b", "a");
+            fail();
+        } catch (IllegalArgumentException ignored) {
+
+        }
+    }
+
+    @Test
+    public void recordSchema() throws IOException, ClassNotFoundException {
+        Map<String, Integer> map = new LinkedHashMap<>();
+        map.put("level", 0);
+        map.put("msg", 1);
+
+        LogRecord record = new LogRecord("INFO text", 0, 0, 9, 9, new int[]{0, 4, 5, 9}, map).setLogId("log");
+
+        assertSame(FieldSchema.of("level", "msg"), record.getFieldSchema());
+        assertEquals("INFO", record.getFieldText(0));
+        assertEquals("text", record.getFieldText("msg"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream objOut = new ObjectOutputStream(out)) {
+            objOut.writeObject(record);
+        }
+
+        LogRecord deserialized = (LogRecord) new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())).readObject();
+        assertSame(record.getFieldSchema(), deserialized.getFieldSchema());
+        assertEquals(record, deserialized);
+    }
+
+    @Test
+    public void readersShareSchema() {
+        RegexLogFormat format = new RegexLogFormat("(\\w+) (.*)",
+                new RegexField("level", 1, FieldTypes.LEVEL), new RegexField("msg", 2));
+
+        LogRecord[] records = new LogRecord[2];
+
+        for (int i = 0; i < records.length; i++) {
+            LogReader reader = format.createReader();
+            assertTrue(reader.parseRecord(new BufferedFile.Line("INFO text")));
+            records[i] = reader.buildRecord();
+        }
+
+        assertSame(records[0].getFieldSchema(), records[1].getFieldSchema());
+        assertSame(FieldSchema.of("level", "msg"), records[0].getFieldSchema());
+    }
+
+    @Test
+    public void unusedSchemasAreCollected() throws InterruptedException {
+        WeakReference<FieldSchema> ref = new WeakReference<>(FieldSchema.of("remote-field-" + System.nanoTime()));
+
+        long deadline = System.currentTimeMillis() + TestUtils.WAIT_TIMEOUT;
+
+        while (ref.get() != null && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(ref.get());
+    }
+}
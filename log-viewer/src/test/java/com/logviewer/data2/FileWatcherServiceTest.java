@@ -1,6 +1,7 @@
 package com.logviewer.data2;
 
 import com.google.common.collect.Sets;
+import com.logviewer.TestUtils;
 import com.logviewer.utils.Destroyer;
 import org.junit.Assert;
 import org.junit.Test;
@@ -9,7 +10,12 @@ import org.springframework.util.FileSystemUtils;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 public class FileWatcherServiceTest {
@@ -105,6 +111,106 @@ public class FileWatcherServiceTest {
         }
     }
 
+    @Test
+    public void fileListenersCoalesceChanges() throws IOException, InterruptedException {
+        FileWatcherService ws = new FileWatcherService(DELAY, 2, false, 1000, null);
+
+        Path dir = Files.createTempDirectory("log-test-");
+
+        try {
+            Path file = dir.resolve("a.log");
+            Path otherFile = dir.resolve("b.log");
+            Files.createFile(file);
+
+            AtomicInteger notifications = new AtomicInteger();
+            AtomicInteger otherNotifications = new AtomicInteger();
+
+            Destroyer destroyer = ws.watchFile(file, notifications::incrementAndGet);
+            Destroyer otherDestroyer = ws.watchFile(otherFile, otherNotifications::incrementAndGet);
+
+            for (int i = 0; i < 20; i++) {
+                Files.write(file, "abc\n".getBytes(), StandardOpenOption.APPEND);
+            }
+
+            Thread.sleep(DELAY * 3);
+
+            Assert.assertEquals(1, notifications.get());
+            Assert.assertEquals(0, otherNotifications.get());
+
+            FileWatcherService.DispatchStats stats = ws.getDispatchStats();
+            Assert.assertEquals(0, stats.getQueueDepth());
+            Assert.assertEquals(1, stats.getDispatchCount());
+            assert stats.getMaxLatencyNanos() >= TimeUnit.MILLISECONDS.toNanos(DELAY);
+
+            Files.createFile(otherFile);
+
+            Thread.sleep(DELAY * 3);
+
+            Assert.assertEquals(1, notifications.get());
+            Assert.assertEquals(1, otherNotifications.get());
+
+            destroyer.close();
+            otherDestroyer.close();
+
+            Files.write(file, "abc\n".getBytes(), StandardOpenOption.APPEND);
+
+            Thread.sleep(DELAY * 3);
+            Assert.assertEquals(1, notifications.get());
+            assert ws.watchedDirectories().isEmpty();
+            assert !isWatcherThreadStarted();
+        }
+        finally {
+            ws.destroy();
+            FileSystemUtils.deleteRecursively(dir.toFile());
+        }
+    }
+
+    @Test
+    public void polling() throws IOException, InterruptedException {
+        FileWatcherService ws = new FileWatcherService(0, 1, true, 50, null);
+
+        Path dir = Files.createTempDirectory("log-test-");
+
+        try {
+            Path file = dir.resolve("a.log");
+            Files.write(file, "abc".getBytes());
+
+            BlockingQueue<Path> changes = new LinkedBlockingQueue<>();
+            AtomicInteger fileNotifications = new AtomicInteger();
+
+            Destroyer dirDestroyer = ws.watchDirectory(dir, changes::addAll);
+            Destroyer fileDestroyer = ws.watchFile(file, fileNotifications::incrementAndGet);
+
+            Assert.assertEquals(Collections.singletonList(dir), ws.polledDirectories());
+            assert !isWatcherThreadStarted();
+
+            Files.write(file, "abc\ndef".getBytes(), StandardOpenOption.APPEND);
+
+            Assert.assertEquals(file, changes.poll(TestUtils.WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+
+            Path newFile = dir.resolve("b.log");
+            Files.createFile(newFile);
+            Assert.assertEquals(newFile, changes.poll(TestUtils.WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+
+            Files.delete(newFile);
+            Assert.assertEquals(newFile, changes.poll(TestUtils.WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+
+            Assert.assertEquals(1, fileNotifications.get());
+
+            dirDestroyer.close();
+            fileDestroyer.close();
+
+            assert ws.polledDirectories().isEmpty();
+
+            Files.write(file, "ghi".getBytes(), StandardOpenOption.APPEND);
+            Assert.assertNull(changes.poll(DELAY * 2, TimeUnit.MILLISECONDS));
+        }
+        finally {
+            ws.destroy();
+            FileSystemUtils.deleteRecursively(dir.toFile());
+        }
+    }
+
     public static boolean isWatcherThreadStarted() {
         return Thread.getAllStackTraces().keySet().stream()
                 .anyMatch(t -> t.getName().equals(FileWatcherService.THREAD_NAME));
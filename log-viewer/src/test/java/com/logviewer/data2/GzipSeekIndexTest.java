@@ -0,0 +1,271 @@
+package com.logviewer.data2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.*;
+
+public class GzipSeekIndexTest {
+
+    private Path dir;
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("gzip-index-test");
+    }
+
+    @After
+    public void deleteDir() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+
+        Files.delete(dir);
+    }
+
+    private static byte[] logText(int lineCount, long seed) {
+        Random rnd = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < lineCount; i++) {
+            sb.append(String.format("150101 10:%02d:%02d.%03d [thread-%d] ", (i / 60000) % 60, (i / 1000) % 60, i % 1000, rnd.nextInt(8)));
+
+            int words = rnd.nextInt(12);
+            for (int j = 0; j < words; j++) {
+                sb.append(Long.toString(rnd.nextInt(1 << (1 + rnd.nextInt(30))), 36)).append(' ');
+            }
+
+            sb.append('\n');
+        }
+
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream res = new ByteArrayOutputStream();
+
+        try (OutputStream out = new GZIPOutputStream(res) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            // Several writes with a flush produce blocks of different types and sizes
+            int pos = 0;
+            Random rnd = new Random(level);
+
+            while (pos < data.length) {
+                int len = Math.min(data.length - pos, rnd.nextInt(100_000));
+                out.write(data, pos, len);
+                pos += len;
+
+                if (rnd.nextInt(4) == 0)
+                    out.flush();
+            }
+        }
+
+        return res.toByteArray();
+    }
+
+    private GzipSeekIndex index(Path gz, int span, boolean persistent) throws IOException {
+        return GzipSeekIndex.loadOrBuild(gz, Files.size(gz), Files.getLastModifiedTime(gz).toMillis(), span,
+                persistent ? dir.resolve(gz.getFileName() + ".idx") : null);
+    }
+
+    private static void checkReads(GzipSeekIndex index, Path gz, byte[] expected) throws IOException {
+        assertEquals(expected.length, index.getSize());
+
+        Random rnd = new Random(1);
+
+        try (SeekableByteChannel channel = Files.newByteChannel(gz, StandardOpenOption.READ)) {
+            BufferedFile.Source source = index.createSource(channel);
+
+            for (int i = 0; i < 200; i++) {
+                int pos = rnd.nextInt(expected.length);
+                int len = Math.min(expected.length - pos, rnd.nextInt(300_000));
+
+                ByteBuffer buf = ByteBuffer.allocate(len);
+                source.read(pos, buf);
+
+                assertArrayEquals(Arrays.copyOfRange(expected, pos, pos + len), buf.array());
+            }
+
+            // The whole data backward by pages, as the log is read when it's opened
+            byte[] res = new byte[expected.length];
+            for (int end = expected.length; end > 0; end -= 65536) {
+                int start = Math.max(0, end - 65536);
+                ByteBuffer buf = ByteBuffer.wrap(res, start, end - start);
+                source.read(start, buf);
+            }
+
+            assertArrayEquals(expected, res);
+        }
+    }
+
+    @Test
+    public void randomAccess() throws IOException {
+        byte[] data = logText(60_000, 1);
+
+        for (int level : new int[]{Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION}) {
+            Path gz = dir.resolve("log-" + level + ".log.gz");
+            Files.write(gz, gzip(data, level));
+
+            GzipSeekIndex index = index(gz, 128 * 1024, false);
+            assertTrue(index.getCheckpointCount() > 5);
+
+            checkReads(index, gz, data);
+        }
+    }
+
+    @Test
+    public void persistentIndex() throws IOException {
+        byte[] data = logText(30_000, 2);
+
+        Path gz = dir.resolve("log.gz");
+        Files.write(gz, gzip(data, Deflater.DEFAULT_COMPRESSION));
+
+        GzipSeekIndex index = index(gz, 64 * 1024, true);
+        assertTrue(Files.exists(dir.resolve("log.gz.idx")));
+
+        // The windows are read from the index file
+        checkReads(index, gz, data);
+
+        GzipSeekIndex loaded = index(gz, 64 * 1024, true);
+        assertEquals(index.getCheckpointCount(), loaded.getCheckpointCount());
+        checkReads(loaded, gz, data);
+
+        // Another version of the file
+        assertFalse(loaded.isValidFor(Files.size(gz) + 1, Files.getLastModifiedTime(gz).toMillis()));
+    }
+
+    @Test
+    public void multipleMembers() throws IOException {
+        byte[] data1 = logText(10_000, 3);
+        byte[] data2 = logText(15_000, 4);
+
+        ByteArrayOutputStream gzData = new ByteArrayOutputStream();
+        gzData.write(gzip(data1, Deflater.BEST_SPEED));
+        gzData.write(gzip(data2, Deflater.BEST_COMPRESSION));
+
+        Path gz = dir.resolve("multi.gz");
+        Files.write(gz, gzData.toByteArray());
+
+        byte[] expected = Arrays.copyOf(data1, data1.length + data2.length);
+        System.arraycopy(data2, 0, expected, data1.length, data2.length);
+
+        checkReads(index(gz, 100_000, false), gz, expected);
+    }
+
+    @Test
+    public void concurrentReads() throws Exception {
+        byte[] data = logText(60_000, 8);
+
+        Path gz = dir.resolve("concurrent.gz");
+        Files.write(gz, gzip(data, Deflater.DEFAULT_COMPRESSION));
+
+        GzipSeekIndex index = index(gz, 64 * 1024, false);
+        index.ensureCachedSpans(4);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try (SeekableByteChannel channel = Files.newByteChannel(gz, StandardOpenOption.READ)) {
+            BufferedFile.Source source = index.createSource(channel);
+
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int t = 0; t < 4; t++) {
+                int seed = t;
+
+                futures.add(executor.submit(() -> {
+                    Random rnd = new Random(seed);
+
+                    for (int i = 0; i < 100; i++) {
+                        int pos = rnd.nextInt(data.length);
+                        int len = Math.min(data.length - pos, rnd.nextInt(200_000));
+
+                        ByteBuffer buf = ByteBuffer.allocate(len);
+                        source.read(pos, buf);
+
+                        assertArrayEquals(Arrays.copyOfRange(data, pos, pos + len), buf.array());
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void trailingGarbage() throws IOException {
+        byte[] data = logText(5_000, 7);
+        byte[] gzData = gzip(data, Deflater.DEFAULT_COMPRESSION);
+
+        // gzip utility and GZIPInputStream ignore the garbage after the last member
+        for (int garbageSize = 1; garbageSize <= 3; garbageSize++) {
+            Path gz = dir.resolve("garbage-" + garbageSize + ".gz");
+
+            byte[] fileData = Arrays.copyOf(gzData, gzData.length + garbageSize);
+            Arrays.fill(fileData, gzData.length, fileData.length, (byte) 0x1f);
+            Files.write(gz, fileData);
+
+            checkReads(index(gz, 64 * 1024, false), gz, data);
+        }
+    }
+
+    @Test
+    public void emptyFile() throws IOException {
+        Path gz = dir.resolve("empty.gz");
+        Files.write(gz, gzip(new byte[0], Deflater.DEFAULT_COMPRESSION));
+
+        GzipSeekIndex index = index(gz, 1024, false);
+        assertEquals(0, index.getSize());
+    }
+
+    @Test(expected = ZipException.class)
+    public void corruptedCrc() throws IOException {
+        byte[] gzData = gzip(logText(1000, 5), Deflater.DEFAULT_COMPRESSION);
+        gzData[gzData.length - 6] ^= 1;
+
+        Path gz = dir.resolve("broken.gz");
+        Files.write(gz, gzData);
+
+        index(gz, 1024, false);
+    }
+
+    @Test(expected = ZipException.class)
+    public void notGzip() throws IOException {
+        Path gz = dir.resolve("plain.gz");
+        Files.write(gz, logText(10, 6));
+
+        index(gz, 1024, false);
+    }
+}
@@ -0,0 +1,64 @@
+package com.logviewer.data2;
+
+import com.logviewer.AbstractLogTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class IndexDirectoryTest extends AbstractLogTest {
+
+    private static Path createFile(Path dir, String name, int size, long ageMinutes) throws IOException {
+        Path res = dir.resolve(name);
+        Files.write(res, new byte[size]);
+        Files.setLastModifiedTime(res, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(ageMinutes)));
+        return res;
+    }
+
+    @Test
+    public void leastRecentlyUsedFilesAreDeleted() throws IOException {
+        Path dir = createTempDirectory();
+
+        Path oldest = createFile(dir, "a.idx", 100, 30);
+        Path old = createFile(dir, "b.idx", 100, 20);
+        Path recent = createFile(dir, "c.idx", 100, 10);
+
+        IndexDirectory.evict(dir, 300);
+        assertTrue(Files.exists(oldest));
+
+        IndexDirectory.evict(dir, 250);
+        assertFalse(Files.exists(oldest));
+        assertTrue(Files.exists(old));
+        assertTrue(Files.exists(recent));
+
+        // Opening the index file marks it as recently used
+        Object owner = new Object();
+        IndexDirectory.register(owner, old);
+
+        IndexDirectory.evict(dir, 100);
+        assertTrue(Files.exists(old)); // The file is in use
+        assertFalse(Files.exists(recent));
+
+        assertNotNull(owner); // Keeps the owner reachable
+    }
+
+    @Test
+    public void staleTemporaryFiles() throws IOException {
+        Path dir = createTempDirectory();
+
+        Path stale = createFile(dir, "a.idx.tmp", 10, 120);
+        Path building = createFile(dir, "b.idx.tmp", 10, 1);
+
+        IndexDirectory.evict(dir, 1000);
+
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(building));
+    }
+}
@@ -0,0 +1,136 @@
+package com.logviewer.data2;
+
+import com.logviewer.AbstractLogTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.logviewer.TestUtils.MULTIFILE_LOG_FORMAT;
+import static com.logviewer.TestUtils.date;
+import static org.junit.Assert.*;
+
+public class LogCheckpointIndexTest extends AbstractLogTest {
+
+    private static final int LINE_LENGTH = 18; // "150101 10:00:01 a\n"
+
+    private static List<String> lines(int fromSec, int toSec) {
+        List<String> res = new ArrayList<>();
+        for (int i = fromSec; i < toSec; i++) {
+            res.add(String.format("150101 10:%02d:%02d a", i / 60, i % 60));
+        }
+        return res;
+    }
+
+    @Test
+    public void buildIndex() throws IOException {
+        Path tempFile = createTempFile();
+        Files.write(tempFile, lines(0, 60));
+
+        try (Snapshot snapshot = log(tempFile, MULTIFILE_LOG_FORMAT)) {
+            LogCheckpointIndex index = new LogCheckpointIndex(null, snapshot.getHash(), 100);
+
+            assertTrue(index.needsUpdate(snapshot.getSize()));
+
+            index.update((Log.LogSnapshot) snapshot);
+
+            assertEquals(snapshot.getSize(), index.getIndexedSize());
+            assertFalse(index.needsUpdate(snapshot.getSize()));
+
+            // Checkpoints at lines 0, 6, 12, ...
+            assertEquals(10, index.getCheckpointCount());
+
+            long[] range = index.findTimeRange(date(0, 15), false, snapshot.getSize());
+            assertEquals(LINE_LENGTH * 12, range[0]);
+            assertEquals(LINE_LENGTH * 18, range[1]);
+
+            range = index.findTimeRange(date(0, 12), false, snapshot.getSize());
+            assertEquals(LINE_LENGTH * 6, range[0]);
+            assertEquals(LINE_LENGTH * 12, range[1]);
+
+            range = index.findTimeRange(date(0, 12), true, snapshot.getSize());
+            assertEquals(LINE_LENGTH * 12, range[0]);
+            assertEquals(LINE_LENGTH * 18, range[1]);
+
+            range = index.findTimeRange(date(0, 0), false, snapshot.getSize());
+            assertEquals(-1, range[0]);
+            assertEquals(0, range[1]);
+        }
+    }
+
+    @Test
+    public void findRecordBoundWithCheckpoints() throws IOException {
+        Path tempFile = createTempFile();
+
+        List<String> content = lines(0, 400);
+        content.addAll(Collections.nCopies(50, "150101 10:07:00 b"));
+        Files.write(tempFile, content);
+
+        try (Snapshot snapshot = log(tempFile, MULTIFILE_LOG_FORMAT)) {
+            LogCheckpointIndex checkpoints = new LogCheckpointIndex(null, snapshot.getHash(), 512);
+            checkpoints.update((Log.LogSnapshot) snapshot);
+
+            LogIndex plainIndex = new LogIndex();
+            LogIndex indexWithCheckpoints = new LogIndex(checkpoints);
+
+            for (int sec = 0; sec < 60 * 8; sec += 7) {
+                for (boolean lastBound : new boolean[]{false, true}) {
+                    LogRecord expected = plainIndex.findRecordBound(date(sec / 60, sec % 60), lastBound, snapshot);
+                    LogRecord actual = indexWithCheckpoints.findRecordBound(date(sec / 60, sec % 60), lastBound, snapshot);
+
+                    if (expected == null) {
+                        assertNull(actual);
+                    } else {
+                        assertEquals(expected.getStart(), actual.getStart());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void persistenceAndIncrementalUpdate() throws IOException {
+        Path tempFile = createTempFile();
+        Path indexFile = createTempDirectory().resolve("index.idx");
+
+        Files.write(tempFile, lines(0, 60));
+
+        String hash;
+
+        try (Snapshot snapshot = log(tempFile, MULTIFILE_LOG_FORMAT)) {
+            hash = snapshot.getHash();
+
+            LogCheckpointIndex index = new LogCheckpointIndex(indexFile, hash, 100);
+            index.update((Log.LogSnapshot) snapshot);
+
+            assertEquals(10, index.getCheckpointCount());
+        }
+
+        assertTrue(Files.exists(indexFile));
+
+        Files.write(tempFile, lines(60, 120), StandardOpenOption.APPEND);
+
+        try (Snapshot snapshot = log(tempFile, MULTIFILE_LOG_FORMAT)) {
+            assertEquals(hash, snapshot.getHash());
+
+            LogCheckpointIndex index = new LogCheckpointIndex(indexFile, hash, 100);
+            index.update((Log.LogSnapshot) snapshot);
+
+            assertEquals(20, index.getCheckpointCount());
+
+            long[] range = index.findTimeRange(date(2, 0), true, snapshot.getSize());
+            assertEquals(LINE_LENGTH * 114, range[0]);
+            assertEquals(-1, range[1]);
+        }
+
+        // Index with other hash must be ignored
+        LogCheckpointIndex index = new LogCheckpointIndex(indexFile, "other-hash", 100);
+        assertTrue(index.needsUpdate(1000));
+        assertEquals(0, index.getCheckpointCount());
+    }
+}
@@ -5,9 +5,12 @@ import com.logviewer.TestUtils;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.logviewer.TestUtils.MULTIFILE_LOG_FORMAT;
 import static com.logviewer.TestUtils.date;
@@ -138,6 +141,46 @@ public class LogIndexTest extends AbstractLogTest {
         }
     }
 
+    @Test
+    public void probeCache() throws IOException {
+        Path tempFile = createTempFile();
+
+        List<String> content = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            content.add(String.format("150101 10:%02d:%02d a", i / 60 % 60, i % 60));
+        }
+
+        Files.write(tempFile, content);
+
+        try (Snapshot snapshot = log(tempFile, MULTIFILE_LOG_FORMAT)) {
+            AtomicInteger processRecordsCalls = new AtomicInteger();
+
+            Snapshot countingSnapshot = (Snapshot) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Snapshot.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("processRecords"))
+                            processRecordsCalls.incrementAndGet();
+
+                        try {
+                            return method.invoke(snapshot, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+
+            LogIndex index = new LogIndex();
+
+            check(18 * 1234, index.findRecordBound(date(20, 34), false, countingSnapshot));
+
+            int firstSearchCalls = processRecordsCalls.getAndSet(0);
+            assert firstSearchCalls > 3 : firstSearchCalls;
+
+            check(18 * 1234, index.findRecordBound(date(20, 34), false, countingSnapshot));
+            check(18 * 1235, index.findRecordBound(date(20, 35), false, countingSnapshot));
+
+            assertEquals(2, processRecordsCalls.get()); // Only the final scans, all probes are cached
+        }
+    }
+
     private void check(long expectedPos, LogRecord record) {
         assertEquals(expectedPos, record.getStart());
     }
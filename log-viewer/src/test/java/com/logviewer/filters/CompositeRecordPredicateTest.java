@@ -0,0 +1,250 @@
+package com.logviewer.filters;
+
+import com.logviewer.data2.FieldSchema;
+import com.logviewer.data2.LogFilterContext;
+import com.logviewer.data2.LogRecord;
+import com.logviewer.web.session.tasks.SearchPattern;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompositeRecordPredicateTest {
+
+    private static LogRecord record(int i) {
+        String text = String.valueOf(i);
+        return new LogRecord(text, 0, i, i + 1, text.length(), new int[0], FieldSchema.EMPTY);
+    }
+
+    @Test
+    public void cheapSelectivePredicateFirst() {
+        TestPredicate slow = new ErrorFreeTestPredicate(i -> true, 20_000);
+        TestPredicate selective = new TestPredicate(i -> i % 10 == 0, 0);
+
+        CompositeRecordPredicate and = new CompositeRecordPredicate(true, slow, selective);
+
+        for (int i = 0; i < 20_000; i++) {
+            assertEquals(i % 10 == 0, and.test(record(i), null));
+        }
+
+        List<CompositeRecordPredicate.PredicateStats> stats = and.getPredicateStats();
+        assertEquals(2, stats.size());
+        assertSame(slow, stats.get(0).getPredicate());
+        assertEquals(1, stats.get(0).getPosition());
+        assertEquals(0, stats.get(1).getPosition());
+        assertTrue(stats.get(1).getSamples() > 0);
+        assertTrue(stats.get(0).getAverageNanos() > stats.get(1).getAverageNanos());
+        assertEquals(1.0, stats.get(0).getPassRate(), 0.0001);
+
+        // The slow predicate is evaluated for the records accepted by the selective one and for the samples only
+        assertTrue(String.valueOf(slow.calls), slow.calls < 20_000 / 5);
+    }
+
+    @Test
+    public void expensiveFilterSkippedAfterCheapOne() {
+        long time = 1_500_000_000_000_000_000L;
+
+        String padding = String.join("", Collections.nCopies(200, "text "));
+
+        int[] regexCalls = new int[1];
+
+        SubstringPredicate regex = new SubstringPredicate(new SearchPattern("(t\\w+ )+foo", false, true)) {
+            @Override
+            public boolean test(LogRecord record, LogFilterContext ctx) {
+                regexCalls[0]++;
+                return super.test(record, ctx);
+            }
+        };
+
+        // The expensive filter is declared first, the date filter rejects 90% of records
+        CompositeRecordPredicate and = new CompositeRecordPredicate(true, regex, new DatePredicate(time + 10, true));
+
+        int count = 20_000;
+
+        for (int i = 0; i < count; i++) {
+            String text = padding + i;
+            LogRecord record = new LogRecord(text, i % 10 == 0 ? time + 10 : time, i, i + 1, text.length());
+
+            assertFalse(and.test(record, null));
+        }
+
+        assertEquals(0, and.getPredicateStats().get(1).getPosition());
+
+        // The regex is evaluated for the records accepted by the date filter and for the samples only
+        assertTrue(String.valueOf(regexCalls[0]), regexCalls[0] < count / 5);
+    }
+
+    @Test
+    public void errorFreeFilters() {
+        assertTrue(CompositeRecordPredicate.isErrorFree(new SubstringPredicate(new SearchPattern("foo"))));
+        assertTrue(CompositeRecordPredicate.isErrorFree(new SubstringPredicate(new SearchPattern("f[o]o", false, true))));
+        assertFalse(CompositeRecordPredicate.isErrorFree(new SubstringPredicate(new SearchPattern("f[o", false, true))));
+
+        assertTrue(CompositeRecordPredicate.isErrorFree(new ExceptionOnlyPredicate()));
+
+        assertTrue(CompositeRecordPredicate.isErrorFree(new JsPredicate(
+                "function isVisible(text, fields) { return fields.level == 'ERROR' || /err/i.test(text) || !true }")));
+        assertFalse(CompositeRecordPredicate.isErrorFree(new JsPredicate(
+                "function isVisible(text, fields) { return fields.msg.includes('x') }")));
+        assertFalse(CompositeRecordPredicate.isErrorFree(new JsPredicate(
+                "function isVisible(text, fields) { var a = 1; return a == 1 }")));
+    }
+
+    @Test
+    public void reorderedOr() {
+        TestPredicate slow = new ErrorFreeTestPredicate(i -> false, 20_000);
+        TestPredicate frequent = new TestPredicate(i -> i % 10 != 0, 0);
+
+        CompositeRecordPredicate or = new CompositeRecordPredicate(false, slow, frequent);
+
+        for (int i = 0; i < 20_000; i++) {
+            assertEquals(i % 10 != 0, or.test(record(i), null));
+        }
+
+        assertEquals(0, or.getPredicateStats().get(1).getPosition());
+        assertTrue(String.valueOf(slow.calls), slow.calls < 20_000 / 5);
+    }
+
+    @Test
+    public void errorsOfSkippedPredicates() {
+        // The second predicate fails on the records rejected by the first one, the error must not be reported
+        TestPredicate first = new TestPredicate(i -> i % 2 == 0, 20_000);
+        TestPredicate failing = new TestPredicate(i -> {
+            if (i % 2 != 0)
+                throw new IllegalStateException();
+            return i % 4 == 0;
+        }, 0);
+
+        CompositeRecordPredicate and = new CompositeRecordPredicate(true, first, failing);
+
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i % 4 == 0, and.test(record(i), null));
+        }
+    }
+
+    @Test
+    public void errorsOfPredicatesBeforeReordered() {
+        // The failing predicate is moved after the cheap one, but its errors are reported as in the original order
+        TestPredicate slowFailing = new TestPredicate(i -> {
+            if (i % 3 == 0)
+                throw new IllegalStateException();
+            return true;
+        }, 20_000);
+        TestPredicate cheap = new TestPredicate(i -> i % 10 == 0, 0);
+
+        CompositeRecordPredicate and = new CompositeRecordPredicate(true, slowFailing, cheap);
+
+        for (int i = 0; i < 10_000; i++) {
+            try {
+                assertEquals(i % 10 == 0, and.test(record(i), null));
+                assertTrue(i % 3 != 0);
+            } catch (IllegalStateException e) {
+                assertEquals(0, i % 3);
+            }
+        }
+
+        assertEquals(0, and.getPredicateStats().get(1).getPosition());
+    }
+
+    @Test
+    public void errorFreePredicates() {
+        assertTrue(CompositeRecordPredicate.isErrorFree(new NotPredicate(new CompositeRecordPredicate(true,
+                new ThreadPredicate(), new FieldArgPredicate("msg", "a")))));
+        assertFalse(CompositeRecordPredicate.isErrorFree(new CompositeRecordPredicate(false,
+                new ThreadPredicate(), new JsPredicate("true"))));
+    }
+
+    @Test
+    public void errorsOfEvaluatedPredicates() {
+        TestPredicate first = new TestPredicate(i -> true, 20_000);
+        TestPredicate failing = new TestPredicate(i -> {
+            if (i % 3 == 0)
+                throw new IllegalStateException();
+            return false;
+        }, 0);
+
+        CompositeRecordPredicate and = new CompositeRecordPredicate(true, first, failing);
+
+        for (int i = 0; i < 10_000; i++) {
+            try {
+                assertFalse(and.test(record(i), null));
+                assertTrue(i % 3 != 0);
+            } catch (IllegalStateException e) {
+                assertEquals(0, i % 3);
+            }
+        }
+    }
+
+    @Test
+    public void sameResultAsOriginalOrder() {
+        Random rnd = new Random(7);
+
+        for (int t = 0; t < 20; t++) {
+            boolean isAnd = rnd.nextBoolean();
+
+            List<RecordPredicate> children = new ArrayList<>();
+            int childCount = 2 + rnd.nextInt(4);
+            for (int c = 0; c < childCount; c++) {
+                int mod = 2 + rnd.nextInt(7);
+                int rem = rnd.nextInt(mod);
+                children.add(new TestPredicate(i -> i % mod == rem, rnd.nextInt(3) * 1000));
+            }
+
+            CompositeRecordPredicate predicate = new CompositeRecordPredicate(isAnd, children);
+
+            for (int i = 0; i < 3000; i++) {
+                LogRecord record = record(i);
+
+                boolean expected = isAnd;
+                for (RecordPredicate child : children) {
+                    if (child.test(record, null) != isAnd) {
+                        expected = !isAnd;
+                        break;
+                    }
+                }
+
+                assertEquals(expected, predicate.test(record, null));
+            }
+        }
+    }
+
+    private interface IntPredicate {
+        boolean test(int i);
+    }
+
+    private static class ErrorFreeTestPredicate extends TestPredicate implements ErrorFreePredicate {
+        ErrorFreeTestPredicate(IntPredicate predicate, long delayNanos) {
+            super(predicate, delayNanos);
+        }
+    }
+
+    private static class TestPredicate implements RecordPredicate {
+        private final IntPredicate predicate;
+        private final long delayNanos;
+
+        private int calls;
+
+        TestPredicate(IntPredicate predicate, long delayNanos) {
+            this.predicate = predicate;
+            this.delayNanos = delayNanos;
+        }
+
+        @Override
+        public boolean test(LogRecord record, LogFilterContext ctx) {
+            calls++;
+
+            if (delayNanos > 0) {
+                long end = System.nanoTime() + delayNanos;
+                while (System.nanoTime() < end) {
+                    // busy wait
+                }
+            }
+
+            return predicate.test((int) record.getStart());
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.logviewer.filters;
+
+import com.logviewer.data2.*;
+import com.logviewer.formats.RegexLogFormat;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class JsExpressionCompilerTest {
+
+    private static final RegexLogFormat FORMAT = new RegexLogFormat("(\\w+) \\[(.*)\\] (.*)",
+            new RegexLogFormat.RegexField("level", 1, FieldTypes.LEVEL),
+            new RegexLogFormat.RegexField("thread", 2, FieldTypes.THREAD),
+            new RegexLogFormat.RegexField("msg", 3, "message"));
+
+    private static final String[] MESSAGES = {
+            "first line",
+            "Error: Connection refused",
+            "ERROR in thread",
+            "warn spaces here",
+            "line\nbreak",
+            "line\u2028separator",
+            "emoji \uD83D\uDE00 text",
+            "word_boundary-test",
+            "ends with newline\n",
+            "Café Жж",
+            "abc123 ABC",
+            "",
+    };
+
+    private static final String[] SCRIPTS = {
+            "function isVisible(text, fields) { return fields.level == 'ERROR' || fields.level === 'WARN' }",
+            "function isVisible(text, fields) { return fields.level != 'INFO' && !(fields.thread == 'main') }",
+            "function isVisible(text, fields) { return 'ERROR' == fields.level }",
+            "function isVisible(text, fields) { return fields['thread'] !== \"main\"; }",
+            "function isVisible(text, fields) { return text.includes('Error') }",
+            "function isVisible(text, fields) {\n  return fields.msg.includes('line')\n}",
+            "function isVisible(text, fields) { return fields.msg.indexOf('line') >= 0 }",
+            "function isVisible(text, fields) { return fields.msg.indexOf('line') == -1 }",
+            "function isVisible(text, fields) { return fields.msg.indexOf('line') === 0 }",
+            "function isVisible(text, fields) { return fields.msg.startsWith('Err') || fields.msg.endsWith('text') }",
+            "function isVisible(text, fields) { return fields.missing == 'x' }",
+            "function isVisible(text, fields) { return fields.missing != 'x' }",
+            "function isVisible(text, fields) { return fields.missing.includes('x') }",
+            "function isVisible(text, fields) { return /error/i.test(text) }",
+            "function isVisible(text, fields) { return /^ERROR\\b/.test(text) }",
+            "function isVisible(text, fields) { return /\\s\\S+\\s/.test(fields.msg) }",
+            "function isVisible(text, fields) { return /line.break/.test(fields.msg) }",
+            "function isVisible(text, fields) { return /line.separator/.test(fields.msg) }",
+            "function isVisible(text, fields) { return /newline$/.test(fields.msg) }",
+            "function isVisible(text, fields) { return /^emoji .. text$/.test(fields.msg) }",
+            "function isVisible(text, fields) { return /^emoji . text$/.test(fields.msg) }",
+            "function isVisible(text, fields) { return /[^a-z ]{2}/.test(fields.msg) }",
+            "function isVisible(text, fields) { return /\\bboundary\\b/.test(fields.msg) }",
+            "function isVisible(text, fields) { return /[\\w-]+-test/.test(fields.msg) }",
+            "function isVisible(text, fields) { return /(?:abc|xyz)\\d{2,3}(?= )/.test(fields.msg) }",
+            "function isVisible(text, fields) { return /[\\s\\d]/.test(fields.msg) }",
+            "function isVisible(text, fields) { return /Ж/.test(fields.msg) }",
+            "function isVisible(text, fields) { return /[.*+?]|\\.|\\//.test(fields.msg) }",
+            "function isVisible(text, fields) { return fields.msg.match(/\\d+/) }",
+            "function isVisible(text, fields) { return fields.missing.match(/\\d+/) }",
+            "function isVisible(text, fields) { return /ab*?c/.test(fields.missing) }",
+            "function isVisible(text, fields) { return true && !false }",
+            "function (t, f) { return f.level == 'INFO' }",
+            "function isVisible(text, fields) { return !text.includes('Error') && !fields.msg.match(/\\d/) }",
+            "function isVisible(text, fields) { return !/error/i.test(text) || ! fields.msg.endsWith('text') }",
+            "function isVisible(text, fields) { return !!(fields.level == 'INFO') }",
+            "function isVisible(text, fields) { return !true || !fields.missing.startsWith('x') }",
+    };
+
+    private final Map<String, Object> properties = new HashMap<>();
+
+    private final LogFilterContext ctx = new LogFilterContext() {
+        @Override
+        public LogFormat getLogFormat() {
+            return FORMAT;
+        }
+
+        @Override
+        public LogFormat.FieldDescriptor[] getFields() {
+            return FORMAT.getFields();
+        }
+
+        @Override
+        public <T> T getProperty(String name, Function<String, T> factory) {
+            return (T) properties.computeIfAbsent(name, factory);
+        }
+    };
+
+    @After
+    public void closeContext() throws Exception {
+        for (Object value : properties.values()) {
+            ((AutoCloseable) value).close();
+        }
+    }
+
+    private static List<LogRecord> records() {
+        List<LogRecord> res = new ArrayList<>();
+
+        for (String level : new String[]{"ERROR", "INFO", "WARN"}) {
+            for (String message : MESSAGES) {
+                String text = level + " [main] " + message;
+                int msgStart = text.length() - message.length();
+
+                int[] positions = {0, level.length(), level.length() + 2, msgStart - 2, msgStart, text.length()};
+
+                res.add(new LogRecord(text, 0, 0, text.length(), text.length(), positions,
+                        FieldSchema.of("level", "thread", "msg")));
+            }
+        }
+
+        return res;
+    }
+
+    @Test
+    public void sameAsRhino() {
+        List<LogRecord> records = records();
+
+        for (String script : SCRIPTS) {
+            RecordPredicate compiled = JsExpressionCompiler.compile(script);
+            assertNotNull(script, compiled);
+
+            JsPredicate predicate = new JsPredicate(script);
+
+            for (LogRecord record : records) {
+                String msg = script + " | " + record.getMessage();
+
+                Boolean expected;
+                try {
+                    expected = predicate.testByScriptEngine(record, ctx);
+                } catch (RuntimeException e) {
+                    expected = null;
+                }
+
+                try {
+                    boolean res = compiled.test(record, ctx);
+                    assertEquals(msg, expected, res);
+                } catch (JsExpressionCompiler.FallbackException e) {
+                    // Rhino will check the record
+                }
+
+                if (expected == null) {
+                    try {
+                        predicate.test(record, ctx);
+                        fail(msg);
+                    } catch (JsExpressionCompiler.FallbackException e) {
+                        fail(msg);
+                    } catch (RuntimeException ignored) {
+
+                    }
+                } else {
+                    assertEquals(msg, expected, predicate.test(record, ctx));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void unsupportedScripts() {
+        String[] scripts = {
+                "fields.level == 'ERROR'",
+                "function isVisible(text, fields) { return\n fields.level == 'ERROR' }",
+                "function isVisible(text, fields) { var a = 1; return fields.level == 'ERROR' }",
+                "function isVisible(text, fields) { return fields.level == 'ERROR' } // comment",
+                "function isVisible(text, fields) { return fields.level }",
+                "function isVisible(text, fields) { return other.level == 'ERROR' }",
+                "function isVisible(text, fields) { return fields._ == 'ERROR' }",
+                "function isVisible(text, fields) { return fields.level == fields.msg }",
+                "function isVisible(text, fields) { return fields.msg.contains('x') }",
+                "function isVisible(text, fields) { return fields.msg.indexOf('x') > 0 }",
+                "function isVisible(text, fields) { return /a/g.test(text) }",
+                "function isVisible(text, fields) { return /^a/m.test(text) }",
+                "function isVisible(text, fields) { return /(a)\\1/.test(text) }",
+                "function isVisible(text, fields) { return /(?<=a)b/.test(text) }",
+                "function isVisible(text, fields) { return /a{,2}/.test(text) }",
+                "function isVisible(text, fields) { return /[^]/.test(text) }",
+                "function isVisible(text, fields) { return /Ж/i.test(text) }",
+                "function isVisible(text, fields) { return /(?=a)*/.test(text) }",
+                "function isVisible(text, text) { return text == 'a' }",
+                "function isVisible(text, fields) { return text == 'a' } extra",
+                // "!" binds tighter than the comparisons
+                "function isVisible(text, fields) { return !fields.level != 'x' }",
+                "function isVisible(text, fields) { return !fields.level == 'ERROR' }",
+                "function isVisible(text, fields) { return !fields.missing != 'null' && fields.missing.includes('\\t') }",
+                "function isVisible(text, fields) { return !fields.msg.indexOf('line') >= 0 }",
+                "function isVisible(text, fields) { return !'ERROR' == fields.level }",
+                "function isVisible(text, fields) { return !(fields.level == 'ERROR') == true }",
+        };
+
+        for (String script : scripts) {
+            assertNull(script, JsExpressionCompiler.compile(script));
+        }
+    }
+}
@@ -12,6 +12,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mozilla.javascript.EcmaError;
+import org.mozilla.javascript.EvaluatorException;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 
@@ -122,4 +123,26 @@ public class JsPredicateTest extends AbstractLogTest {
         checkError("function isVisible(text, fields) { return rrr355.includes('dfsfskjflds453453') }", "rrr355");
         checkError("text.includes('dfsfskjflds453453')", IllegalArgumentException.class, "Script must be a function");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void globalsAreNotSharedBetweenCheckers() throws Exception {
+        String script = "function isVisible(text, fields) { var res = typeof counter == 'undefined'; counter = 1; return res }";
+
+        assert new JsPredicate(script).test(record, ctx);
+        assert !new JsPredicate(script).test(record, ctx); // The variable is visible in the same checker
+
+        Log log = getLogService().openLog(getTestLog("multilog/search.log"), TestUtils.MULTIFILE_LOG_FORMAT);
+
+        try (LvPredicateChecker otherCtx = new LvPredicateChecker(log)) {
+            assert new JsPredicate(script).test(record, otherCtx);
+        }
+    }
+
+    @Test
+    public void functionForms() {
+        check("function(text, fields) { return text.includes('zzz') }", true);
+        checkError("function isVisible(text, fields) { return isVisible2() }\nfunction isVisible2() { return true }", "isVisible2"); // The first function only
+        check("function isVisible(text, fields) { var n = text.length; return n > 0 }", true);
+        checkError("function isVisible(text, fields) { return true ", EvaluatorException.class, null);
+    }
+}
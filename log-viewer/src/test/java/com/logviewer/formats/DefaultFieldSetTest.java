@@ -3,8 +3,10 @@ package com.logviewer.formats;
 import com.logviewer.AbstractLogTest;
 import com.logviewer.data2.*;
 import com.logviewer.formats.utils.*;
+import com.logviewer.utils.Utils;
 import org.junit.Test;
 
+import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
@@ -313,4 +315,59 @@ public class DefaultFieldSetTest extends AbstractLogTest {
 
         assertEquals("2016-12-02_16:05:11.333", new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss.SSS").format(new Date(record.getTimeMillis())));
     }
+
+    @Test
+    public void lazyRecordText() throws IOException, ClassNotFoundException {
+        String first = "2016-12-02_16:05:11.333 [main] INFO  com.behavox.core.PluginManager - ";
+
+        String[][] cases = {
+                {first + "message"},
+                {first + "message", "\n\tat Foo.bar()", "\n\tat Foo.baz()"},
+                {first + "\u001B[31mred\u001B[0m", "\n\u001B[1mtail\u001B[0m"},
+                {first + "ascii", "\nnon-ascii: \u0444\u0444", "\nascii"},
+                {first + "non-ascii: \u0444", "\ntail"},
+        };
+
+        for (String[] lines : cases) {
+            LogReader reader = format.createReader();
+
+            byte[] data = lines[0].getBytes(StandardCharsets.UTF_8);
+            assertTrue(reader.parseRecord(data, 0, data.length, 0, data.length));
+
+            long end = data.length;
+
+            for (int i = 1; i < lines.length; i++) {
+                byte[] tail = lines[i].getBytes(StandardCharsets.UTF_8);
+                reader.appendTail(tail, 0, tail.length, tail.length);
+                end += tail.length;
+            }
+
+            LogRecord record = reader.buildRecord().setLogId("log");
+
+            String expectedMessage = Stream.of(lines).map(Utils::removeAsciiColorCodes).collect(Collectors.joining());
+            String expectedMsgField = expectedMessage.substring(expectedMessage.indexOf(" - ") + 3);
+
+            // The fields are available before the message is decoded
+            assertEquals("INFO", record.getFieldText("level"));
+            assertEquals("main", record.getFieldText("thread"));
+
+            LogRecord copy = record.withFields(record.getFieldPositions(), record.getFieldIndexes());
+
+            assertEquals(expectedMsgField, record.getFieldText("msg"));
+            assertEquals(expectedMessage, record.getMessage());
+            assertEquals(end, record.getEnd());
+
+            assertEquals(expectedMessage, copy.getMessage());
+            assertEquals(expectedMsgField, copy.getFieldText("msg"));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (ObjectOutputStream objOut = new ObjectOutputStream(out)) {
+                objOut.writeObject(record);
+            }
+
+            LogRecord deserialized = (LogRecord) new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())).readObject();
+            assertEquals(record, deserialized);
+            assertEquals(expectedMsgField, deserialized.getFieldText("msg"));
+        }
+    }
 }
@@ -3,11 +3,14 @@ package com.logviewer.formats;
 import com.logviewer.AbstractLogTest;
 import com.logviewer.TestUtils;
 import com.logviewer.data2.LogFormat;
+import com.logviewer.data2.LogReader;
+import com.logviewer.data2.LogRecord;
 import com.logviewer.logLibs.log4j.Log4jLogFormat;
 import com.logviewer.logLibs.logback.LogbackLogFormat;
 import com.logviewer.utils.LvGsonUtils;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -94,4 +97,41 @@ public class MultiPatternLogFormatTest extends AbstractLogTest {
 
         assertFalse(format.hasFullDate());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void firstMatchingPatternWins() {
+        LogbackLogFormat format = new LogbackLogFormat("%d{yyyy-MM-dd HH:mm:ss} [%t] %m%n",
+                "%d{yyyy-MM-dd HH:mm:ss} %p %m%n", "%d{yyyy-MM-dd HH:mm:ss} %m%n");
+
+        LogReader reader = format.createReader();
+
+        // The line matches the second and the third patterns
+        LogRecord record = parse(reader, "2020-01-01 10:00:00 INFO message");
+        assertEquals("INFO", record.getFieldText("level"));
+        assertEquals("message", record.getFieldText("msg"));
+
+        assertNull(parse(reader, "\tat com.example.Foo.bar(Foo.java:10)"));
+
+        record = parse(reader, "\u001B[31m2020-01-01 10:00:00 [main] text\u001B[0m");
+        assertEquals("main", record.getFieldText("thread"));
+        assertEquals("text", record.getFieldText("msg"));
+
+        record = parse(reader, "2020-01-01 10:00:00 text");
+        assertNull(record.getFieldText("level"));
+        assertNull(record.getFieldText("thread"));
+        assertEquals("text", record.getFieldText("msg"));
+
+        record = parse(reader, "2020-01-01 10:00:00 [main] ERROR text");
+        assertEquals("main", record.getFieldText("thread"));
+        assertEquals("ERROR text", record.getFieldText("msg"));
+    }
+
+    private static LogRecord parse(LogReader reader, String line) {
+        byte[] data = line.getBytes(StandardCharsets.UTF_8);
+
+        if (!reader.parseRecord(data, 0, data.length, 0, data.length))
+            return null;
+
+        return reader.buildRecord();
+    }
+}
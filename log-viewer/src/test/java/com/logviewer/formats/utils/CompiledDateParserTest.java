@@ -0,0 +1,153 @@
+package com.logviewer.formats.utils;
+
+import org.junit.Test;
+
+import java.text.Format;
+import java.text.ParsePosition;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAccessor;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class CompiledDateParserTest {
+
+    private static final String[] PATTERNS = {
+            "yyyy-MM-dd HH:mm:ss.SSS",
+            "yyyyMMddHHmmssSSS",
+            "yyMMdd HH:mm:ss",
+            "dd.MM.yy HH:mm",
+            "d/M/yyyy H:m:s",
+            "yyyy-MMM-dd HH:mm:ss",
+            "dd MMMM yyyy hh:mm:ss a",
+            "EEE, dd MMM yyyy HH:mm:ss",
+            "yyyy-MM-dd'T'HH:mm:ss.SSSSSS",
+            "yyyy-MM-dd kk:mm",
+            "yyyy-MM-dd KK:mm a",
+            "y-M-d H",
+            "yyyy-MM-dd HH'h'mm''ss",
+    };
+
+    private static final ZoneId[] ZONES = {ZoneId.of("UTC"), ZoneId.of("Europe/Paris"), ZoneId.of("America/Montreal"),
+            ZoneId.of("Australia/Lord_Howe")};
+
+    @Test
+    public void unsupportedPatterns() {
+        assertNull(CompiledDateParser.compile("HH:mm:ss", Locale.US, false, null));
+        assertNull(CompiledDateParser.compile("yyyy-MM-dd", Locale.US, false, null));
+        assertNull(CompiledDateParser.compile("yyyy-MM-dd hh:mm", Locale.US, false, null));
+        assertNull(CompiledDateParser.compile("yyyy-MM-dd HH:mm[:ss]", Locale.US, false, null));
+        assertNull(CompiledDateParser.compile("uuuu-MM-dd HH:mm", Locale.US, false, null));
+        assertNull(CompiledDateParser.compile("yyyy-MM-dd HH:ss", Locale.US, false, null));
+
+        for (String pattern : PATTERNS) {
+            assertNotNull(pattern, CompiledDateParser.compile(pattern, Locale.US, false, null));
+        }
+
+        assertTrue(FastDateTimeParser.createFormatter("yyyy-MM-dd HH:mm:ss Z", Locale.US, null) instanceof CompiledDateParser);
+        assertFalse(FastDateTimeParser.createFormatter("HH:mm:ss", Locale.US, null) instanceof CompiledDateParser);
+    }
+
+    @Test
+    public void sameAsDateTimeFormatter() {
+        Random rnd = new Random(3);
+
+        for (ZoneId zone : ZONES) {
+            for (String pattern : PATTERNS) {
+                CompiledDateParser parser = CompiledDateParser.compile(pattern, Locale.US, false, TimeZone.getTimeZone(zone));
+                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern, Locale.US);
+                Format format = formatter.toFormat();
+
+                ZonedDateTime date = ZonedDateTime.of(2021, 3, 27, 22, 0, 0, 0, zone);
+
+                for (int i = 0; i < 1500; i++) {
+                    // Consecutive dates with random steps cross the DST transitions
+                    date = date.plus(rnd.nextInt(40 * 60), ChronoUnit.SECONDS).plus(rnd.nextInt(1000_000), ChronoUnit.MICROS);
+                    if (rnd.nextInt(50) == 0)
+                        date = date.plusDays(rnd.nextInt(400));
+
+                    StringBuilder text = new StringBuilder(formatter.format(date));
+
+                    switch (rnd.nextInt(6)) {
+                        case 0:
+                            text.setCharAt(rnd.nextInt(text.length()), (char) ('0' + rnd.nextInt(10)));
+                            break;
+                        case 1:
+                            text.setLength(rnd.nextInt(text.length()));
+                            break;
+                        case 2:
+                            text.insert(rnd.nextInt(text.length() + 1), (char) ('0' + rnd.nextInt(10)));
+                            break;
+                        case 3:
+                            text.append("123 tail");
+                            break;
+                    }
+
+                    check(parser, format, zone, text.toString(), pattern);
+                }
+
+                check(parser, format, zone, formatter.format(date).replaceFirst("\\b\\d\\d\\b", "31"), pattern);
+                check(parser, format, zone, formatter.format(date).replaceFirst("\\b\\d\\d\\b", "00"), pattern);
+            }
+        }
+    }
+
+    @Test
+    public void specialValues() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+
+        CompiledDateParser parser = CompiledDateParser.compile("yyyy-MM-dd HH:mm:ss", Locale.US, false, utc);
+
+        // The smart resolver moves the invalid day to the last day of the month
+        assertEquals(19, parser.parse("2021-02-31 10:00:00", 0));
+        assertEquals(Instant.parse("2021-02-28T10:00:00Z").getEpochSecond(), parser.getEpochSecond());
+
+        // The end of the day
+        assertEquals(19, parser.parse("2021-02-10 24:00:00", 0));
+        assertEquals(Instant.parse("2021-02-11T00:00:00Z").getEpochSecond(), parser.getEpochSecond());
+        assertEquals(-1, parser.parse("2021-02-10 24:00:01", 0));
+
+        assertEquals(-1, parser.parse("2021-02-32 10:00:00", 0));
+        assertEquals(-1, parser.parse("2021-13-10 10:00:00", 0));
+        assertEquals(-1, parser.parse("2021-12-10 10:60:00", 0));
+
+        // The variable-width year leaves the digits for the adjacent fixed-width fields
+        CompiledDateParser adjacent = CompiledDateParser.compile("yyyyMMddHHmmss", Locale.US, false, utc);
+        Format adjacentFormat = DateTimeFormatter.ofPattern("yyyyMMddHHmmss", Locale.US).toFormat();
+        check(adjacent, adjacentFormat, ZoneOffset.UTC, "20210110102030", "yyyyMMddHHmmss");
+        check(adjacent, adjacentFormat, ZoneOffset.UTC, "2021011010203055", "yyyyMMddHHmmss");
+        check(adjacent, adjacentFormat, ZoneOffset.UTC, "202101101020", "yyyyMMddHHmmss");
+
+        // Day of week must match the date
+        CompiledDateParser dow = CompiledDateParser.compile("EEE, dd MMM yyyy HH:mm:ss", Locale.US, false, utc);
+        assertEquals(25, dow.parse("Sun, 10 Jan 2021 10:00:00", 0));
+        assertEquals(-1, dow.parse("Mon, 10 Jan 2021 10:00:00", 0));
+
+        // Parsing from a non-zero offset
+        assertEquals(23, parser.parse("[x] 2021-01-10 10:00:00]", 4));
+        assertEquals(Instant.parse("2021-01-10T10:00:00Z").getEpochSecond(), parser.getEpochSecond());
+    }
+
+    private static void check(CompiledDateParser parser, Format format, ZoneId zone, String text, String pattern) {
+        ParsePosition pos = new ParsePosition(0);
+        TemporalAccessor expected = (TemporalAccessor) format.parseObject(text, pos);
+
+        int res = parser.parse(text, 0);
+
+        String msg = pattern + " | " + text;
+
+        if (expected == null) {
+            assertEquals(msg, -1, res);
+            return;
+        }
+
+        assertEquals(msg, pos.getIndex(), res);
+
+        Instant expectedInstant = LocalDateTime.from(expected).atZone(zone).toInstant();
+        assertEquals(msg, expectedInstant, Instant.ofEpochSecond(parser.getEpochSecond(), parser.getNano()));
+    }
+}
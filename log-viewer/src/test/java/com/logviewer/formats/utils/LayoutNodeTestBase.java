@@ -3,6 +3,8 @@ package com.logviewer.formats.utils;
 import org.junit.Test;
 import org.springframework.lang.Nullable;
 
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.Assert.assertEquals;
 
 public abstract class LayoutNodeTestBase {
@@ -28,6 +30,13 @@ public abstract class LayoutNodeTestBase {
 
             assertEquals(expected, s.substring(idx, res));
         }
+
+        // The result must not depend on the CharSequence implementation
+        LogLineBuffer line = new LogLineBuffer(StandardCharsets.UTF_8);
+        byte[] data = s.getBytes(StandardCharsets.UTF_8);
+        line.reset(data, 0, data.length);
+
+        assertEquals(res, create().clone().parse(line, idx, line.length()));
     }
 
     @Test
@@ -0,0 +1,136 @@
+package com.logviewer.formats.utils;
+
+import com.logviewer.data2.LogFormat;
+import com.logviewer.data2.LogReader;
+import com.logviewer.logLibs.log4j.Log4jLogFormat;
+import com.logviewer.logLibs.logback.LogbackLogFormat;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LinePrefixFilterTest {
+
+    private static boolean test(LinePrefixFilter filter, String s) {
+        byte[] data = ("__" + s).getBytes(StandardCharsets.UTF_8);
+        return filter.test(data, 2, data.length - 2);
+    }
+
+    @Test
+    public void builder() {
+        LinePrefixFilter filter = new LinePrefixFilter.Builder().addDigit().add("-/").skipSpaces().addText("ab").build();
+
+        assertEquals(4, filter.size());
+
+        assertTrue(test(filter, "1-ab"));
+        assertTrue(test(filter, "2/   ab___"));
+        assertFalse(test(filter, "2/   a"));
+        assertFalse(test(filter, " 1-ab"));
+        assertFalse(test(filter, "1-aB"));
+        assertFalse(test(filter, ""));
+
+        // Undecidable without decoding
+        assertTrue(test(filter, "\u001B[0m1-ab"));
+        assertTrue(test(filter, "1-ф"));
+
+        assertNull(new LinePrefixFilter.Builder().skipSpaces().build());
+    }
+
+    @Test
+    public void dateNodes() {
+        LinePrefixFilter iso = LinePrefixFilter.fromLayout(new LvLayoutNode[]{
+                new LvLayoutLog4jISO8601Date(true), LvLayoutTextNode.of(" ["), LvLayoutStretchNode.threadNode()});
+
+        assertEquals(25, iso.size());
+        assertTrue(test(iso, "2020-01-01 10:00:00,123 [main] foo"));
+        assertFalse(test(iso, "\tat com.example.Foo.bar(Foo.java:10)"));
+        assertFalse(test(iso, "Caused by: java.lang.RuntimeException"));
+        assertFalse(test(iso, "2020-01-01 10:00:00,123 main"));
+
+        LinePrefixFilter simple = LinePrefixFilter.fromLayout(new LvLayoutNode[]{new LvLayoutSimpleDateNode("dd.MM.yy HH:mm")});
+        assertEquals(14, simple.size());
+        assertTrue(test(simple, "01.02.20 10:00 foo"));
+        assertFalse(test(simple, "1.02.20 10:00 foo"));
+
+        // The year may have more than 4 digits
+        LinePrefixFilter year = LinePrefixFilter.fromLayout(new LvLayoutNode[]{new LvLayoutSimpleDateNode("yyyy-MM-dd")});
+        assertEquals(1, year.size());
+
+        assertNull(LinePrefixFilter.fromLayout(new LvLayoutNode[]{new LvLayoutSimpleDateNode("MMM dd")}));
+        assertNull(LinePrefixFilter.fromLayout(new LvLayoutNode[]{LvLayoutStretchNode.messageNode()}));
+    }
+
+    @Test
+    public void neverRejectsParsableLines() {
+        LogFormat[] formats = {
+                new LogbackLogFormat("%d{yyyy-MM-dd HH:mm:ss.SSS} [%t] %level %logger - %msg%n"),
+                new LogbackLogFormat("%d [%t] %5level %logger{35} - %msg%n"),
+                new LogbackLogFormat("[%d{dd.MM.yy HH:mm:ss}]  %-5level %msg%n"),
+                new LogbackLogFormat("%level %logger %msg%n"),
+                new Log4jLogFormat("%d{ISO8601} %p %m%n"),
+                new Log4jLogFormat("%r %m%n"),
+        };
+
+        String[] lines = {
+                "2020-01-01 10:00:00.123 [main] INFO com.example.Foo - message",
+                "2020-01-01 10:00:00,123 [main]  INFO com.example.Foo - message",
+                "[01.02.20 10:00:00]  WARN message",
+                "[01.02.20 10:00:00] WARN message",
+                "INFO com.example.Foo message",
+                "2020-01-01T10:00:00,123 ERROR message",
+                "12345 message",
+                "\tat com.example.Foo.bar(Foo.java:10)",
+                "Caused by: java.lang.RuntimeException",
+                "  [01.02.20 10:00:00]  WARN message",
+        };
+
+        Random rnd = new Random(5);
+
+        for (LogFormat format : formats) {
+            LogReader reader = format.createReader();
+
+            List<String> variants = new ArrayList<>();
+
+            for (String line : lines) {
+                variants.add(line);
+                variants.add(" " + line);
+                variants.add("\u001B[31m" + line);
+
+                for (int i = 0; i < 30; i++) {
+                    StringBuilder sb = new StringBuilder(line);
+                    int pos = rnd.nextInt(Math.min(sb.length(), 30));
+
+                    switch (rnd.nextInt(3)) {
+                        case 0: sb.setCharAt(pos, "0 -:[.Tф".charAt(rnd.nextInt(8))); break;
+                        case 1: sb.setLength(pos); break;
+                        default: sb.insert(pos, ' ');
+                    }
+
+                    variants.add(sb.toString());
+                }
+            }
+
+            int parsed = 0;
+
+            for (String line : variants) {
+                byte[] data = line.getBytes(StandardCharsets.UTF_8);
+
+                if (reader.parseRecord(data, 0, data.length, 0, data.length)) {
+                    assertTrue(format + " | " + line, reader.canStartRecord(data, 0, data.length));
+                    parsed++;
+                }
+
+                reader.clear();
+            }
+
+            assertTrue(parsed > 0);
+
+            byte[] stackLine = lines[7].getBytes(StandardCharsets.UTF_8);
+            assertFalse(reader.canStartRecord(stackLine, 0, stackLine.length));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.logviewer.formats.utils;
+
+import com.logviewer.utils.Utils;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LogLineBufferTest {
+
+    private static String decode(LogLineBuffer line, String s, Charset charset) {
+        byte[] bytes = s.getBytes(charset);
+
+        // The line is in the middle of the buffer
+        byte[] data = new byte[bytes.length + 4];
+        System.arraycopy(bytes, 0, data, 2, bytes.length);
+        line.reset(data, 2, bytes.length);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            sb.append(line.charAt(i));
+        }
+
+        assertEquals(sb.toString(), line.toString());
+        assertSame(line.toString(), line.toString());
+
+        return sb.toString();
+    }
+
+    @Test
+    public void colorCodes() {
+        LogLineBuffer line = new LogLineBuffer(StandardCharsets.UTF_8);
+
+        assertEquals("abc", decode(line, "abc", StandardCharsets.UTF_8));
+        assertEquals("bc", line.subSequence(1, 3));
+
+        assertEquals("abc", decode(line, "\u001B[31ma\u001B[0mbc\u001B[m", StandardCharsets.UTF_8));
+        assertEquals("a\u001B[3", decode(line, "a\u001B[3", StandardCharsets.UTF_8));
+        assertEquals("a\u001B[3xb", decode(line, "a\u001B[3xb", StandardCharsets.UTF_8));
+        assertEquals("фыв b", decode(line, "фыв \u001B[1;31mb", StandardCharsets.UTF_8));
+        assertEquals("", decode(line, "", StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void sameAsRemoveColorCodes() {
+        Random rnd = new Random(11);
+
+        String[] parts = {"a", " ", "1", ";", "[", "m", "\u001B", "\u001B[", "\u001B[0m", "ы", "é"};
+
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1,
+                Charset.forName("windows-1251"), StandardCharsets.UTF_16}) {
+            LogLineBuffer line = new LogLineBuffer(charset);
+
+            for (int i = 0; i < 2000; i++) {
+                StringBuilder sb = new StringBuilder();
+                for (int j = rnd.nextInt(12); j > 0; j--) {
+                    String part = parts[rnd.nextInt(parts.length)];
+                    if (charset.newEncoder().canEncode(part))
+                        sb.append(part);
+                }
+
+                String s = sb.toString();
+
+                assertEquals(s, Utils.removeAsciiColorCodes(s), decode(line, s, charset));
+            }
+        }
+    }
+
+    @Test
+    public void asciiCompatibleCharsets() {
+        assertTrue(LogLineBuffer.isAsciiCompatible(StandardCharsets.UTF_8));
+        assertTrue(LogLineBuffer.isAsciiCompatible(StandardCharsets.ISO_8859_1));
+        assertTrue(LogLineBuffer.isAsciiCompatible(Charset.forName("windows-1251")));
+
+        assertFalse(LogLineBuffer.isAsciiCompatible(StandardCharsets.UTF_16));
+        assertFalse(LogLineBuffer.isAsciiCompatible(StandardCharsets.UTF_16LE));
+    }
+}
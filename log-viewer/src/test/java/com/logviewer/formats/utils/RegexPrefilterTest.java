@@ -0,0 +1,131 @@
+package com.logviewer.formats.utils;
+
+import com.logviewer.utils.Utils;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class RegexPrefilterTest {
+
+    private static boolean test(RegexPrefilter filter, String s) {
+        byte[] data = ("__" + s).getBytes(StandardCharsets.UTF_8);
+        return filter.test(data, 2, data.length - 2);
+    }
+
+    @Test
+    public void analysis() {
+        RegexPrefilter filter = RegexPrefilter.create(
+                "(?<date>\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d) \\[(?<thread>[^\\]]+)\\] (?<level>\\w+) (?<msg>.*)");
+
+        assertEquals(22, filter.getPrefix().size());
+        assertEquals(Arrays.asList("-", "-", " ", ":", ":", " [", "] ", " "), filter.getLiterals());
+
+        assertTrue(test(filter, "2020-01-01 10:00:00 [main] INFO message"));
+        assertFalse(test(filter, "\tat com.example.Foo.bar(Foo.java:10)"));
+        assertFalse(test(filter, "2020-01-01 10:00:00 main INFO message"));
+        assertFalse(test(filter, "2020-01-01 10:00:00 [main]"));
+
+        filter = RegexPrefilter.create("(?<date>\\d+) (?<msg>.+)");
+        assertEquals(1, filter.getPrefix().size());
+        assertEquals(Collections.singletonList(" "), filter.getLiterals());
+
+        filter = RegexPrefilter.create(".*(?:ERROR|WARN)\\s+\\[(?<thread>[^]]+)] - x{2,3}(ab)+$");
+        assertNull(filter.getPrefix());
+        assertEquals(Arrays.asList("[", "] - xx", "ab"), filter.getLiterals());
+
+        // Only the known ASCII characters are rejected
+        filter = RegexPrefilter.create("[^\\p{Lu}]ф\\d");
+        assertTrue(test(filter, "aф1"));
+        assertTrue(test(filter, "Bф1"));
+        assertFalse(test(filter, "Ba1"));
+    }
+
+    @Test
+    public void unsupported() {
+        assertNull(RegexPrefilter.create("abc|def"));
+        assertNull(RegexPrefilter.create("(?i)abc"));
+        assertNull(RegexPrefilter.create("(?i:abc)"));
+        assertNull(RegexPrefilter.create("\\Qabc\\E"));
+        assertNull(RegexPrefilter.create("[a-z&&[^e]]bc"));
+        assertNull(RegexPrefilter.create(".*"));
+
+        // A back reference stops the analysis of the following text
+        RegexPrefilter filter = RegexPrefilter.create("(\\w+)\\s\\1-(?<msg>.*)");
+        assertEquals(1, filter.getPrefix().size());
+        assertEquals(Collections.singletonList("-"), filter.getLiterals());
+    }
+
+    @Test
+    public void colorCodes() {
+        RegexPrefilter filter = RegexPrefilter.create("\\d+ - (?<msg>.+)");
+
+        assertTrue(test(filter, "\u001B[31m1\u001B[0m - message"));
+        assertTrue(test(filter, "1 \u001B[31m-\u001B[0m message"));
+        assertTrue(test(filter, "1 -\u001B[0m message"));
+        assertFalse(test(filter, "1 message"));
+    }
+
+    @Test
+    public void neverRejectsMatchingLines() {
+        String[][] cases = {
+                {"(?<date>\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d) \\[(?<thread>[^\\]]+)\\] (?<level>\\w+) (?<msg>.*)",
+                        "2020-01-01 10:00:00 [main] INFO message"},
+                {"(?<date>\\d+) (?<msg>.+)", "111 message text"},
+                {"(?<level>\\w+) (?<date>\\d[^ ]+)? (?<msg>.+)", "DEBUG 2020-02-02:01:01:01 message text"},
+                {"^\\[(?<date>[\\d/: ]+)\\]\\s*(?<level>[A-Z]{4,5})\\s+(?<msg>.*)$", "[2020/01/01 10:00:00]  WARN msg"},
+                {"(?:(?<ip>\\d+(?:\\.\\d+){3})|-) - \"(?<req>[^\"]*)\" (?<status>\\d{3})", "127.0.0.1 - \"GET /\" 200"},
+                {"(?<a>a*?)b{2}(?=c)c\\b(?<tail>.*)", "aabbc tail"},
+                {"\\x41\\u0042\\t(?<x>[\\x00-\\x7F]+)", "AB\tab"},
+                {"(?<time>\\d\\d:\\d\\d)(?:,\\d{3})? \\| (?<msg>.+)", "10:00,123 | message"},
+        };
+
+        Random rnd = new Random(7);
+
+        for (String[] c : cases) {
+            Pattern pattern = Pattern.compile(c[0]);
+            RegexPrefilter filter = RegexPrefilter.create(c[0]);
+            assertNotNull(c[0], filter);
+
+            assertTrue(pattern.matcher(c[1]).matches());
+            assertTrue(test(filter, c[1]));
+
+            for (int i = 0; i < 3000; i++) {
+                StringBuilder sb = new StringBuilder(c[1]);
+
+                for (int k = rnd.nextInt(3); k >= 0; k--) {
+                    int pos = rnd.nextInt(sb.length() + 1);
+
+                    switch (rnd.nextInt(5)) {
+                        case 0:
+                            if (pos < sb.length())
+                                sb.deleteCharAt(pos);
+                            break;
+                        case 1:
+                            sb.insert(pos, "0 a-:[]|.\"ф\t".charAt(rnd.nextInt(12)));
+                            break;
+                        case 2:
+                            sb.insert(pos, "\u001B[0m");
+                            break;
+                        case 3:
+                            if (pos < sb.length())
+                                sb.setCharAt(pos, "0 aA-:[]".charAt(rnd.nextInt(8)));
+                            break;
+                        default:
+                            sb.setLength(pos);
+                    }
+                }
+
+                String line = sb.toString();
+
+                if (pattern.matcher(Utils.removeAsciiColorCodes(line)).matches())
+                    assertTrue(c[0] + " | " + line, test(filter, line));
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.logviewer.net;
+
+import com.logviewer.data2.LogRecord;
+import com.logviewer.data2.RecordList;
+import com.logviewer.data2.net.BinaryMessageCodec;
+import com.logviewer.data2.net.server.Message;
+import com.logviewer.data2.net.server.msg.MessageStartTask;
+import com.logviewer.data2.net.server.msg.MessageTaskCallbackCall;
+import com.logviewer.data2.net.server.msg.MessageTaskChangeEvent;
+import com.logviewer.utils.OpenByteArrayOutputStream;
+import com.logviewer.utils.Pair;
+import com.logviewer.web.session.SearchResult;
+import com.logviewer.web.session.Status;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BinaryMessageCodecTest {
+
+    private final BinaryMessageCodec writer = new BinaryMessageCodec();
+    private final BinaryMessageCodec reader = new BinaryMessageCodec();
+
+    private int lastMessageSize;
+
+    private Message transfer(Message message) throws IOException, ClassNotFoundException {
+        OpenByteArrayOutputStream out = new OpenByteArrayOutputStream();
+        writer.encode(out, message);
+
+        lastMessageSize = out.size();
+
+        return reader.decode(out.getBuffer(), 0, out.size());
+    }
+
+    private static RecordList createRecords(String logId) {
+        Map<String, Integer> fields = new LinkedHashMap<>();
+        fields.put("date", 0);
+        fields.put("level", 1);
+
+        RecordList res = new RecordList();
+
+        long pos = 100;
+        for (String msg : new String[]{"2020-01-01 INFO foo", "2020-01-01 WARN фыв 😀 \uD800", "2020-01-01 ERROR bar"}) {
+            int length = msg.length() + 10;
+
+            LogRecord record = new LogRecord(msg, 1577836800_000_000_000L + pos, pos, pos + length, length - 3,
+                    new int[]{0, 10, 11, 15}, fields);
+            record.setLogId(logId);
+
+            res.add(Pair.of(record, null));
+
+            pos += length + 1;
+        }
+
+        LogRecord noFields = LogRecord.createUnparsedRecord("unparsed", 0, 0, 8, 8);
+        noFields.setLogId(logId);
+        res.add(Pair.of(noFields, new IllegalStateException("err")));
+
+        return res;
+    }
+
+    private static void assertRecordsEqual(RecordList expected, RecordList actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            LogRecord e = expected.get(i).getFirst();
+            LogRecord a = actual.get(i).getFirst();
+
+            assertEquals(e, a);
+            assertEquals(e.getLoadedTextLengthBytes(), a.getLoadedTextLengthBytes());
+            assertEquals(e.getFieldText("level"), a.getFieldText("level"));
+
+            assertEquals(expected.get(i).getSecond() == null, actual.get(i).getSecond() == null);
+        }
+    }
+
+    @Test
+    public void recordList() throws Exception {
+        RecordList records = createRecords("log-1");
+
+        MessageTaskCallbackCall res = (MessageTaskCallbackCall) transfer(new MessageTaskCallbackCall(7, records, false));
+
+        assertEquals(7, res.getTaskId());
+        assertFalse(res.isTaskStopped());
+        assertNull(res.getError());
+        assertRecordsEqual(records, (RecordList) res.getEvent());
+
+        int firstSize = lastMessageSize;
+
+        // The log id and the field names are sent as references to the dictionary
+        RecordList secondBatch = (RecordList) ((MessageTaskCallbackCall) transfer(new MessageTaskCallbackCall(7, records, false))).getEvent();
+        assertRecordsEqual(records, secondBatch);
+        assertTrue(lastMessageSize < firstSize);
+
+        // The field name map is shared
+        assertSame(secondBatch.get(0).getFirst().getFieldIndexes(), secondBatch.get(1).getFirst().getFieldIndexes());
+    }
+
+    @Test
+    public void timesBefore1970() throws Exception {
+        RecordList records = new RecordList();
+
+        LogRecord record = new LogRecord("691231 23:59:59 foo", -1_000_000_000L, 0, 19, 19);
+        record.setLogId("log-1");
+        records.add(Pair.of(record, null));
+
+        RecordList res = (RecordList) ((MessageTaskCallbackCall) transfer(new MessageTaskCallbackCall(1, records, false))).getEvent();
+        assertEquals(-1_000_000_000L, res.get(0).getFirst().getTime());
+        assertRecordsEqual(records, res);
+
+        Pair<Status, Boolean> pair = (Pair<Status, Boolean>) ((MessageTaskCallbackCall) transfer(new MessageTaskCallbackCall(2,
+                Pair.of(new Status("hash1", 100, -1000), true), true))).getEvent();
+        assertEquals(-1000, pair.getFirst().getLastModification());
+    }
+
+    @Test
+    public void statusAndSearchResult() throws Exception {
+        MessageTaskCallbackCall res = (MessageTaskCallbackCall) transfer(new MessageTaskCallbackCall(1,
+                Pair.of(new Status("hash1", 100, 200), true), true));
+
+        assertTrue(res.isTaskStopped());
+
+        Pair<Status, Boolean> pair = (Pair<Status, Boolean>) res.getEvent();
+        assertEquals("hash1", pair.getFirst().getHash());
+        assertEquals(100, pair.getFirst().getSize());
+        assertEquals(200, pair.getFirst().getLastModification());
+        assertTrue(pair.getSecond());
+
+        RecordList records = createRecords("log-2");
+
+        SearchResult searchResult = (SearchResult) ((MessageTaskCallbackCall) transfer(new MessageTaskCallbackCall(2,
+                new SearchResult(records, new Status("hash1", 1, 2), true, false), true))).getEvent();
+
+        assertRecordsEqual(records, searchResult.getData());
+        assertTrue(searchResult.isHasSkippedLine());
+        assertFalse(searchResult.isFound());
+        assertEquals("hash1", searchResult.getStatus().getHash());
+
+        searchResult = (SearchResult) ((MessageTaskCallbackCall) transfer(new MessageTaskCallbackCall(2,
+                new SearchResult(new IOException("not found")), true))).getEvent();
+
+        assertNull(searchResult.getData());
+        assertEquals("not found", searchResult.getStatus().getError().getMessage());
+    }
+
+    @Test
+    public void controlMessages() throws Exception {
+        MessageTaskCallbackCall error = (MessageTaskCallbackCall) transfer(new MessageTaskCallbackCall(3, new IOException("e")));
+        assertTrue(error.isTaskStopped());
+        assertEquals("e", error.getError().getMessage());
+
+        MessageTaskChangeEvent cancel = (MessageTaskChangeEvent) transfer(new MessageTaskChangeEvent(5, null));
+        assertEquals(5, cancel.getTaskId());
+        assertNull(cancel.getModifier());
+
+        // Java serialization is used for other messages
+        MessageStartTask startTask = (MessageStartTask) transfer(new MessageStartTask(6, null));
+        assertEquals(6, startTask.getTaskId());
+
+        MessageTaskCallbackCall stringEvent = (MessageTaskCallbackCall) transfer(new MessageTaskCallbackCall(4, "str", false));
+        assertEquals("str", stringEvent.getEvent());
+    }
+}
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 import static org.junit.Assert.assertEquals;
@@ -57,6 +58,29 @@ public class ConnectionTest extends LogSessionTestBase {
         });
     }
 
+    @Test(timeout = 5000)
+    public void protocolNegotiation() throws Exception {
+        doRemoteTest((local, remote) -> {
+            OutcomeConnection connection = local.getRemoteNodeService().getNodeConnection(NODE).get();
+
+            while (!connection.isBinaryProtocol()) {
+                Thread.sleep(10);
+            }
+
+            assert connection.isCompressionEnabled();
+
+            String logFile = getTestLog("Predicate.log");
+
+            for (int i = 0; i < 3; i++) {
+                Triple<String, String, String> formatAndId = connection.execute(new GetFormatAndIdTask(logFile)).get();
+                assertEquals(remote.openLog(logFile).getId(), formatAndId.getSecond());
+            }
+
+            assert connection.getSentCompressionRatio() > 1;
+            assert connection.getReceivedCompressionRatio() > 1;
+        });
+    }
+
     @Test
     public void tailLoader() throws Exception {
         doRemoteTest((local, remote) -> {
@@ -125,9 +149,11 @@ public class ConnectionTest extends LogSessionTestBase {
     public void bufferOverflow() throws Exception {
         taskTest((remoteNodeService, logServer) -> {
             BlockingQueue<String> queue = new ArrayBlockingQueue<>(5);
+            AtomicBoolean testFinished = new AtomicBoolean();
 
             RemoteTaskController<UnlimitedStringGenerationTask> task = remoteNodeService.startTask(NODE, new UnlimitedStringGenerationTask(), (s, e) -> {
-                if (s != null) {
+                // The callback is called in the socket thread, it must not stay blocked after the test
+                if (s != null && !testFinished.get()) {
                     try {
                         queue.put(s);
                     } catch (InterruptedException ex) {
@@ -160,6 +186,9 @@ public class ConnectionTest extends LogSessionTestBase {
                 assert UnlimitedStringGenerationTask.sendCount > savedSent;
             } catch (InterruptedException e) {
                 task.cancel();
+            } finally {
+                testFinished.set(true);
+                queue.clear();
             }
         });
     }
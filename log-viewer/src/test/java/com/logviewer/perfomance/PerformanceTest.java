@@ -36,7 +36,7 @@ public class PerformanceTest extends AbstractLogTest {
     @Test
     @Ignore
     public void testJs() throws IOException {
-        doPredicateTest(new JsPredicate("level == 'ERROR' || level == 'WARN'"));
+        doPredicateTest(new JsPredicate("function isVisible(text, fields) { return fields.level == 'ERROR' || fields.level == 'WARN' }"));
     }
 
     @Test
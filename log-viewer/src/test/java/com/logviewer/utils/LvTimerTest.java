@@ -0,0 +1,147 @@
+package com.logviewer.utils;
+
+import com.logviewer.TestUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LvTimerTest {
+
+    private final LvTimer timer = new LvTimer(2);
+
+    @After
+    public void cancelTimer() {
+        timer.cancel();
+    }
+
+    @Test
+    public void uniqueTasks() throws InterruptedException {
+        Object key = new Object();
+        AtomicInteger counter = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        assertTrue(timer.scheduleTask(key, () -> {
+            counter.incrementAndGet();
+            latch.countDown();
+        }, 50));
+        assertFalse(timer.scheduleTask(key, counter::incrementAndGet, 0));
+
+        assertTrue(latch.await(TestUtils.WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(1, counter.get());
+
+        // The key is released when the task is finished
+        CountDownLatch latch2 = new CountDownLatch(1);
+        assertTrue(timer.scheduleTask(key, latch2::countDown, 0));
+        assertTrue(latch2.await(TestUtils.WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void sameKeyTasksAreSerialized() throws InterruptedException {
+        Object key = new Object();
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch secondFinished = new CountDownLatch(1);
+
+        assertTrue(timer.scheduleTask(key, () -> {
+            events.add("start-1");
+            firstStarted.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+
+            events.add("end-1");
+        }, 0));
+
+        assertTrue(firstStarted.await(TestUtils.WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // The task with the same key is requested while the first one is running, it waits for the first one
+        assertTrue(timer.scheduleTask(key, () -> {
+            events.add("run-2");
+            secondFinished.countDown();
+        }, 0));
+        assertFalse(timer.scheduleTask(key, () -> events.add("run-3"), 0));
+
+        Thread.sleep(50);
+        assertEquals(Collections.singletonList("start-1"), events);
+
+        release.countDown();
+
+        assertTrue(secondFinished.await(TestUtils.WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList("start-1", "end-1", "run-2"), events);
+    }
+
+    @Test
+    public void slowTaskDoesNotDelayOthers() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch executed = new CountDownLatch(1);
+
+        timer.schedule(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        }, 0);
+
+        timer.schedule(executed::countDown, 10);
+
+        try {
+            assertTrue(executed.await(TestUtils.WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void cancellation() throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger();
+
+        ScheduledFuture<?> future = timer.schedule(counter::incrementAndGet, 100_000);
+        assertEquals(1, timer.getStats().getQueueSize());
+
+        future.cancel(false);
+        assertEquals(0, timer.getStats().getQueueSize()); // The cancelled task doesn't stay in the queue
+
+        CountDownLatch latch = new CountDownLatch(1);
+        timer.schedule(latch::countDown, 0);
+        assertTrue(latch.await(TestUtils.WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        assertEquals(0, counter.get());
+    }
+
+    @Test
+    public void stats() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(3);
+
+        timer.schedule(latch::countDown, 0);
+        timer.schedule(() -> {
+            throw new RuntimeException("Test exception");
+        }, 0);
+        timer.schedule(latch::countDown, 10);
+        timer.schedule(latch::countDown, 20);
+
+        assertTrue(latch.await(TestUtils.WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        long deadline = System.currentTimeMillis() + TestUtils.WAIT_TIMEOUT;
+        while (timer.getStats().getExecutedTaskCount() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        LvTimer.TimerStats stats = timer.getStats();
+        assertEquals(4, stats.getExecutedTaskCount());
+        assertEquals(0, stats.getQueueSize());
+        assertTrue(stats.getMaxLagNanos() >= stats.getAverageLagNanos());
+    }
+}
@@ -0,0 +1,65 @@
+package com.logviewer.utils;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MergeUtilsTest {
+
+    @Test
+    public void mergeSortedLists() {
+        List<Integer> res = MergeUtils.mergeSorted(Arrays.asList(
+                Arrays.asList(1, 4, 7),
+                Collections.emptyList(),
+                Arrays.asList(2, 2, 9),
+                Arrays.asList(3, 5)
+        ), Comparator.naturalOrder(), Integer.MAX_VALUE);
+
+        assertEquals(Arrays.asList(1, 2, 2, 3, 4, 5, 7, 9), res);
+    }
+
+    @Test
+    public void limit() {
+        List<List<Integer>> lists = Arrays.asList(Arrays.asList(1, 4, 7), Arrays.asList(2, 3, 9));
+
+        assertEquals(Arrays.asList(1, 2, 3, 4), MergeUtils.mergeSorted(lists, Comparator.naturalOrder(), 4));
+        assertEquals(Collections.emptyList(), MergeUtils.mergeSorted(lists, Comparator.naturalOrder(), 0));
+        assertEquals(Arrays.asList(1, 4), MergeUtils.mergeSorted(lists.subList(0, 1), Comparator.naturalOrder(), 2));
+    }
+
+    @Test
+    public void sameAsSort() {
+        Random rnd = new Random(7);
+
+        for (int i = 0; i < 200; i++) {
+            List<List<Integer>> lists = new ArrayList<>();
+            List<Integer> all = new ArrayList<>();
+
+            for (int k = rnd.nextInt(5); k >= 0; k--) {
+                List<Integer> list = new ArrayList<>();
+                for (int j = rnd.nextInt(20); j > 0; j--) {
+                    list.add(rnd.nextInt(30));
+                }
+
+                // Unsorted lists are supported too
+                if (rnd.nextBoolean())
+                    Collections.sort(list);
+
+                lists.add(list);
+                all.addAll(list);
+            }
+
+            all.sort(Comparator.reverseOrder());
+
+            int limit = rnd.nextInt(all.size() + 2);
+
+            List<Integer> res = MergeUtils.mergeSorted(lists, Comparator.reverseOrder(), limit);
+
+            assertEquals(all.subList(0, Math.min(limit, all.size())), res);
+            assertTrue(MergeUtils.isSorted(res, Comparator.reverseOrder()));
+        }
+    }
+}
@@ -10,6 +10,8 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 
+import static org.junit.Assert.assertEquals;
+
 @SuppressWarnings("ConstantConditions")
 public class PredicateUtilsTest {
 
@@ -84,15 +86,68 @@ public class PredicateUtilsTest {
         RecordPredicate pr = new CompositeRecordPredicate(false, new DatePredicate(A, true), new DatePredicate(B, true));
 
         assert PredicateUtils.extractTimeLimit(pr, true) == null;
-        assert PredicateUtils.extractTimeLimit(pr, false) == null;
+        assert PredicateUtils.extractTimeLimit(pr, false) == A;
     }
 
     @Test
     public void testRangeOrNot() {
         RecordPredicate pr = new CompositeRecordPredicate(false, new DatePredicate(A, false), new DatePredicate(C, true)).not();
 
-        assert PredicateUtils.extractTimeLimit(pr, true) == null;
-        assert PredicateUtils.extractTimeLimit(pr, false) == null;
+        assert PredicateUtils.extractTimeLimit(pr, true) == C - 1;
+        assert PredicateUtils.extractTimeLimit(pr, false) == A + 1;
+    }
+
+    @Test
+    public void testNotOfUnknown() {
+        RecordPredicate pr = new CompositeRecordPredicate(true, new DatePredicate(A, true), new DatePredicate(C, false),
+                new FieldValueSetPredicate("aaa", Collections.emptyList())).not();
+
+        assertEquals(TimeRanges.ALL, PredicateUtils.extractTimeRanges(pr));
+    }
+
+    @Test
+    public void testOrOfRanges() {
+        RecordPredicate pr = CompositeRecordPredicate.and(
+                new FieldValueSetPredicate("aaa", Collections.emptyList()),
+                new CompositeRecordPredicate(false,
+                        new CompositeRecordPredicate(true, new DatePredicate(A, true), new DatePredicate(A + 10, false)),
+                        new CompositeRecordPredicate(true, new DatePredicate(C, true), new DatePredicate(C + 10, false)),
+                        new CompositeRecordPredicate(true, new DatePredicate(A + 5, true), new DatePredicate(A + 20, false))));
+
+        TimeRanges ranges = PredicateUtils.extractTimeRanges(pr);
+
+        assertEquals(2, ranges.size());
+        assertEquals(A, ranges.getFrom(0));
+        assertEquals(A + 20, ranges.getTo(0));
+        assertEquals(C, ranges.getFrom(1));
+        assertEquals(C + 10, ranges.getTo(1));
+
+        assert PredicateUtils.extractTimeLimit(pr, false) == A;
+        assert PredicateUtils.extractTimeLimit(pr, true) == C + 10;
+
+        // Excluding a part of the range
+        RecordPredicate excluded = CompositeRecordPredicate.and(pr,
+                new CompositeRecordPredicate(true, new DatePredicate(A + 10, true), new DatePredicate(B, false)).not());
+
+        assertEquals(TimeRanges.of(A, A + 9).union(TimeRanges.of(C, C + 10)), PredicateUtils.extractTimeRanges(excluded));
+    }
+
+    @Test
+    public void testRangeSetOperations() {
+        TimeRanges ranges = TimeRanges.of(10, 20).union(TimeRanges.of(30, 40)).union(TimeRanges.of(21, 25));
+
+        assertEquals(TimeRanges.of(10, 25).union(TimeRanges.of(30, 40)), ranges);
+        assertEquals(0, ranges.indexOf(10));
+        assertEquals(1, ranges.indexOf(40));
+        assertEquals(-2, ranges.indexOf(26));
+        assertEquals(-1, ranges.indexOf(9));
+        assertEquals(-3, ranges.indexOf(41));
+
+        assertEquals(TimeRanges.to(9).union(TimeRanges.of(26, 29)).union(TimeRanges.from(41)), ranges.complement());
+        assertEquals(ranges, ranges.complement().complement());
+        assertEquals(TimeRanges.ALL, ranges.union(ranges.complement()));
+        assertEquals(TimeRanges.EMPTY, ranges.intersect(ranges.complement()));
+        assertEquals(TimeRanges.of(20, 25).union(TimeRanges.of(30, 30)), ranges.intersect(TimeRanges.of(20, 30)));
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,69 @@
+package com.logviewer.web.session;
+
+import com.logviewer.AbstractLogTest;
+import com.logviewer.data2.Log;
+import com.logviewer.data2.Position;
+import com.logviewer.data2.RecordList;
+import com.logviewer.utils.Pair;
+import org.junit.Test;
+import org.springframework.lang.NonNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static com.logviewer.TestUtils.MULTIFILE_LOG_FORMAT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocalFileRecordLoaderTest extends AbstractLogTest {
+
+    @Test
+    public void recordsAreSentByBatches() throws IOException, InterruptedException {
+        int recordCount = LocalFileRecordLoader.BATCH_MAX_RECORDS * 2 + 10;
+
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < recordCount; i++) {
+            lines.add(String.format("150101 10:%02d:%02d record-%d", i / 60 % 60, i % 60, i));
+        }
+
+        Path file = createTempFile();
+        Files.write(file, lines);
+
+        Log log = getLogService().openLog(file.toString(), MULTIFILE_LOG_FORMAT);
+
+        List<RecordList> batches = new ArrayList<>();
+        CountDownLatch finished = new CountDownLatch(1);
+
+        LogProcess loader = log.loadRecords(null, Integer.MAX_VALUE, new Position(log.getId(), 0, 0), false, null,
+                Long.MAX_VALUE, new LogDataListener() {
+                    @Override
+                    public void onData(@NonNull RecordList data) {
+                        batches.add(data);
+                    }
+
+                    @Override
+                    public void onFinish(@NonNull Status status, boolean eof) {
+                        finished.countDown();
+                    }
+                });
+
+        loader.start();
+        finished.await();
+
+        // The delay limit may split the data into more batches on a slow machine
+        assertTrue(batches.size() >= 3);
+        assertTrue(batches.stream().allMatch(b -> b.size() <= LocalFileRecordLoader.BATCH_MAX_RECORDS));
+
+        List<String> messages = batches.stream().flatMap(List::stream)
+                .map(Pair::getFirst)
+                .map(r -> r.getMessage().trim())
+                .collect(Collectors.toList());
+
+        assertEquals(lines, messages);
+    }
+}
@@ -0,0 +1,241 @@
+package com.logviewer.web.session;
+
+import com.logviewer.AbstractLogTest;
+import com.logviewer.TestUtils;
+import com.logviewer.data2.Log;
+import com.logviewer.data2.LogRecord;
+import com.logviewer.data2.Position;
+import com.logviewer.data2.Snapshot;
+import com.logviewer.filters.CompositeRecordPredicate;
+import com.logviewer.filters.DatePredicate;
+import com.logviewer.filters.RecordPredicate;
+import com.logviewer.utils.Pair;
+import com.logviewer.web.session.tasks.SearchPattern;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.logviewer.TestUtils.MULTIFILE_LOG_FORMAT;
+import static com.logviewer.TestUtils.date;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocalFileRecordSearcherTest extends AbstractLogTest {
+
+    @Test
+    public void parallelSearchSameAsSerial() throws IOException, InterruptedException, ExecutionException {
+        Random rnd = new Random(11);
+
+        String[] words = {"foo", "bar", "baz", "qux"};
+
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder sb = new StringBuilder(String.format("150101 10:%02d:%02d", i / 60 % 60, i % 60));
+
+            for (int j = rnd.nextInt(4); j >= 0; j--) {
+                sb.append(' ').append(words[rnd.nextInt(words.length)]);
+            }
+
+            lines.add(sb.toString());
+
+            if (rnd.nextInt(10) == 0)
+                lines.add("    at " + words[rnd.nextInt(words.length)]);
+        }
+
+        Path file = createTempFile();
+        Files.write(file, lines);
+
+        Log log = getLogService().openLog(file.toString(), MULTIFILE_LOG_FORMAT);
+
+        List<LogRecord> records = new ArrayList<>();
+        try (Snapshot snapshot = log.createSnapshot()) {
+            snapshot.processRecords(0, records::add);
+        }
+
+        List<Position> positions = new ArrayList<>();
+        positions.add(new Position(log.getId(), 0, 0));
+        positions.add(new Position(log.getId(), 0, Files.size(file)));
+        positions.add(new Position("zzz", TestUtils.date(20, 0), 0));
+        for (int i = 0; i < 10; i++) {
+            positions.add(new Position(records.get(rnd.nextInt(records.size())), rnd.nextBoolean()));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            SearchPattern[] patterns = {
+                    new SearchPattern("foo foo foo"),
+                    new SearchPattern("BAZ QUX BAR", false, false),
+                    new SearchPattern("ba[rz] qux foo", true, true),
+                    new SearchPattern("at qux", true, true),
+                    new SearchPattern("zzz", true, true),
+            };
+
+            for (SearchPattern pattern : patterns) {
+                for (Position start : positions) {
+                    for (boolean backward : new boolean[]{false, true}) {
+                        for (int recordCount : new int[]{1, 5}) {
+                            String expected = search(log, executor, start, backward, recordCount, pattern, 1, Long.MAX_VALUE);
+
+                            for (long chunkSize : new long[]{1000, 7777}) {
+                                String actual = search(log, executor, start, backward, recordCount, pattern, 4, chunkSize);
+
+                                assertEquals(pattern + ", " + start + ", " + backward + ", " + recordCount, expected, actual);
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void parallelSearchSkipsTimeGaps() throws IOException, InterruptedException, ExecutionException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            lines.add(String.format("150101 10:%02d:%02d %s", i / 60 % 60, i % 60, i % 7 == 0 ? "foo" : "bar"));
+        }
+
+        Path file = createTempFile();
+        Files.write(file, lines);
+
+        Log log = getLogService().openLog(file.toString(), MULTIFILE_LOG_FORMAT);
+
+        AtomicInteger checkedInGap = new AtomicInteger();
+
+        RecordPredicate filter = CompositeRecordPredicate.and(
+                (record, ctx) -> {
+                    if (record.getTime() > date(10, 0) && record.getTime() < date(30, 0))
+                        checkedInGap.incrementAndGet();
+                    return true;
+                },
+                new CompositeRecordPredicate(false,
+                        new CompositeRecordPredicate(true, new DatePredicate(date(5, 0), true), new DatePredicate(date(9, 59), false)),
+                        new CompositeRecordPredicate(true, new DatePredicate(date(30, 0), true), new DatePredicate(date(34, 59), false))));
+
+        Position[] positions = {
+                new Position(log.getId(), 0, 0),
+                new Position(log.getId(), 0, Files.size(file)),
+                new Position("zzz", date(20, 0), 0),
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            for (String pattern : new String[]{"zzz", "f[o]o", "1[0]:3[0-9]:00 foo"}) {
+                for (Position start : positions) {
+                    for (boolean backward : new boolean[]{false, true}) {
+                        String expected = search(log, executor, start, backward, 5, new SearchPattern(pattern, true, true),
+                                filter, 1, Long.MAX_VALUE);
+
+                        checkedInGap.set(0);
+
+                        String actual = search(log, executor, start, backward, 5, new SearchPattern(pattern, true, true),
+                                filter, 4, 1000);
+
+                        assertEquals(pattern + ", " + start + ", " + backward, expected, actual);
+                        assertEquals(0, checkedInGap.get());
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void timeLimitedSearchWithoutCandidates() throws IOException, InterruptedException, ExecutionException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            lines.add(String.format("150101 10:%02d:%02d %s", i / 60 % 60, i % 60, i == 100 ? "foo" : "bar"));
+        }
+
+        // The records beyond the time limit must not be processed, the plain search stops at the limit
+        lines.set(2900, "150101 10:35:00 bar");
+        lines.set(2901, "150101 10:35:00 bar");
+
+        Path file = createTempFile();
+        Files.write(file, lines);
+
+        Log log = getLogService().openLog(file.toString(), MULTIFILE_LOG_FORMAT);
+
+        LogRecord start;
+        try (Snapshot snapshot = log.createSnapshot()) {
+            List<LogRecord> records = new ArrayList<>();
+            snapshot.processRecords(0, records::add);
+            start = records.get(2000);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            for (int parallelism : new int[]{1, 4}) {
+                for (int recordCount : new int[]{1, 5}) {
+                    // The pattern is found before the start only
+                    String expected = search(log, executor, new Position(start, false), false, recordCount,
+                            new SearchPattern("f[o]o", true, true), null, date(40, 0), 1, Long.MAX_VALUE);
+                    String actual = search(log, executor, new Position(start, false), false, recordCount,
+                            new SearchPattern("foo"), null, date(40, 0), parallelism, 1000);
+
+                    assertEquals(expected, actual);
+                    assertTrue(expected, expected.startsWith("false "));
+
+                    RecordPredicate filter = new DatePredicate(date(39, 59), false);
+
+                    expected = search(log, executor, new Position(start, false), false, recordCount,
+                            new SearchPattern("f[o]o", true, true), filter, 0, 1, Long.MAX_VALUE);
+                    actual = search(log, executor, new Position(start, false), false, recordCount,
+                            new SearchPattern("foo"), filter, 0, parallelism, 1000);
+
+                    assertEquals(expected, actual);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String search(Log log, ExecutorService executor, Position start, boolean backward, int recordCount,
+                                 SearchPattern pattern, int parallelism, long chunkSize) throws InterruptedException, ExecutionException {
+        return search(log, executor, start, backward, recordCount, pattern, null, parallelism, chunkSize);
+    }
+
+    private static String search(Log log, ExecutorService executor, Position start, boolean backward, int recordCount,
+                                 SearchPattern pattern, RecordPredicate filter, int parallelism, long chunkSize)
+            throws InterruptedException, ExecutionException {
+        return search(log, executor, start, backward, recordCount, pattern, filter, 0, parallelism, chunkSize);
+    }
+
+    private static String search(Log log, ExecutorService executor, Position start, boolean backward, int recordCount,
+                                 SearchPattern pattern, RecordPredicate filter, long timeLimit, int parallelism, long chunkSize)
+            throws InterruptedException, ExecutionException {
+        CompletableFuture<SearchResult> future = new CompletableFuture<>();
+
+        LocalFileRecordSearcher searcher = new LocalFileRecordSearcher(log::createSnapshot, executor, start, backward,
+                filter, null, recordCount, pattern, future::complete, parallelism, chunkSize);
+        searcher.setTimeLimit(timeLimit);
+        searcher.start();
+
+        SearchResult res = future.get();
+        if (res.getStatus().getError() != null)
+            throw new RuntimeException(res.getStatus().getError());
+
+        return res.isFound() + " " + res.isHasSkippedLine() + " " + res.getData().stream()
+                .map(Pair::getFirst)
+                .map(r -> r.getStart() + "-" + r.getEnd())
+                .collect(Collectors.joining(","));
+    }
+}